@@ -1,7 +1,7 @@
 // Function to update summary with function name
-function updateFunctionCallSummaries() {
+function updateFunctionCallSummaries(root = document) {
   // Find all function call detail elements
-	const functionCallDetails = document.querySelectorAll('.function-call details');
+	const functionCallDetails = root.querySelectorAll('.function-call details');
   
   functionCallDetails.forEach(detailsElement => {
       const summaryElement = detailsElement.querySelector('summary');
@@ -24,9 +24,9 @@ function updateFunctionCallSummaries() {
     });
 }
 
-function renderLatex() {
+function renderLatex(root = document) {
     // Convert block latex tags
-    document.querySelectorAll('.block-latex').forEach(elem => {
+    root.querySelectorAll('.block-latex').forEach(elem => {
         let latexString = atob(elem.innerHTML);
         let latexHtml = katex.renderToString(latexString, {throwOnError: false});
         // Create a temporary element to manipulate the generated HTML
@@ -41,7 +41,7 @@ function renderLatex() {
     });
     
     // Convert inline latex tags
-    document.querySelectorAll('.inline-latex').forEach(elem => {
+    root.querySelectorAll('.inline-latex').forEach(elem => {
         let latexString = atob(elem.innerHTML);
         let latexHtml = katex.renderToString(latexString, {throwOnError: false});
         // Create a temporary element to manipulate the generated HTML
@@ -56,15 +56,55 @@ function renderLatex() {
     });
 }
 
-function renderInlineCode() {
-    document.querySelectorAll('.inline-code').forEach(elem => {
+function renderInlineCode(root = document) {
+    root.querySelectorAll('.inline-code').forEach(elem => {
         elem.outerHTML = '<code>' + elem.innerHTML + '</code>';
     });
 }
 
-function renderCode() {
-  renderInlineCode();
-  renderLatex();
-  updateFunctionCallSummaries();
-  hljs.highlightAll(); 
+function renderCode(root = document) {
+  renderInlineCode(root);
+  renderLatex(root);
+  updateFunctionCallSummaries(root);
+  // the bundled highlight.js does not mark the blocks it highlighted, so they are marked here
+  root.querySelectorAll('pre code:not([data-highlighted])').forEach(elem => {
+    hljs.highlightElement(elem);
+    elem.dataset.highlighted = 'yes';
+  });
+}
+
+// Applies the message updates queued by the view. The HTML of completed
+// blocks is rendered once and appended to the message; the open block at
+// the end of a streamed message is replaced on every update and only gets
+// the inexpensive rendering steps.
+function applyMessagePatches() {
+  const patches = eclipseTakeMessagePatches();
+  if (!patches) {
+    return;
+  }
+  for (const [id, reset, completedHtml, openHtml] of patches) {
+    const message = document.getElementById('message-' + id);
+    if (!message) {
+      continue;
+    }
+    let tail = message.querySelector(':scope > .message-tail');
+    if (reset || !tail) {
+      message.innerHTML = '';
+      tail = document.createElement('div');
+      tail.className = 'message-tail';
+      message.appendChild(tail);
+    }
+    if (completedHtml) {
+      const block = document.createElement('div');
+      block.innerHTML = completedHtml;
+      renderCode(block);
+      while (block.firstChild) {
+        message.insertBefore(block.firstChild, tail);
+      }
+    }
+    tail.innerHTML = openHtml;
+    renderInlineCode(tail);
+    updateFunctionCallSummaries(tail);
+  }
+  window.scrollTo(0, document.body.scrollHeight);
 }
\ No newline at end of file
@@ -1,9 +1,18 @@
 package com.github.gradusnikov.eclipse.assistai.chat;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.core.runtime.ILog;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.swt.graphics.ImageData;
 
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
+import com.github.gradusnikov.eclipse.assistai.tools.ImageUtilities;
+
 /**
  * Represents an attachment to a chat message, e.g. an image or content from a
  * file.
@@ -14,7 +23,11 @@ public interface Attachment
 
     String toMarkdownContent();
 
-    ImageData getImageData();
+    /**
+     * @return the image sent to the model, or {@code null} if this is not an
+     *         image attachment
+     */
+    EncodedImage getImage();
 
     void accept( UiVisitor visitor );
 
@@ -38,7 +51,7 @@ public interface Attachment
         }
 
         @Override
-        public ImageData getImageData()
+        public EncodedImage getImage()
         {
             return null;
         }
@@ -198,27 +211,88 @@ public interface Attachment
         }
     }
 
+    /**
+     * An image, compressed on a worker thread when attached. The decoded
+     * image is released once compressed, and the preview is derived on first
+     * display.
+     */
     public class ImageAttachment extends BaseAttachment
     {
-        private final ImageData image;
+        /**
+         * The longest edge kept: OpenAI fits images into 2048x2048 pixels,
+         * Anthropic and Gemini scale them further down on their side.
+         */
+        public static final int                        MAX_EDGE = 2048;
+
+        private static final ExecutorService          ENCODER  = Executors.newSingleThreadExecutor( ImageAttachment::newEncoderThread );
 
-        private final ImageData preview;
+        private final CompletableFuture<EncodedImage> image;
 
-        public ImageAttachment( ImageData image, ImageData preview )
+        private volatile ImageData                    source;
+
+        private ImageData                             preview;
+
+        /**
+         * @param logger
+         *            reports an image that could not be compressed
+         */
+        public ImageAttachment( ImageData source, ILog logger )
         {
-            this.image = image;
-            this.preview = preview;
+            this.source = source;
+            this.image = CompletableFuture.supplyAsync( () -> EncodedImage.encode( source, MAX_EDGE ), ENCODER );
+            this.image.whenComplete( ( encoded, error ) -> {
+                if ( error == null )
+                {
+                    this.source = null;
+                }
+                else
+                {
+                    logger.error( "Cannot compress the attached image: " + error.getMessage(), error );
+                }
+            } );
         }
 
-        public ImageData getImageData()
+        /**
+         * Waits until the image is compressed, if needed.
+         *
+         * @return the compressed image, or {@code null} if it could not be
+         *         compressed, so that the image is left out of the request
+         */
+        @Override
+        public EncodedImage getImage()
         {
-            return image;
+            try
+            {
+                return image.join();
+            }
+            catch ( CompletionException e )
+            {
+                // reported once, when the compression failed
+                return null;
+            }
         }
 
         @Override
         public void accept( UiVisitor visitor )
         {
-            visitor.add( preview, null );
+            visitor.add( getPreview(), null );
+        }
+
+        private synchronized ImageData getPreview()
+        {
+            if ( preview == null )
+            {
+                ImageData decoded = source;
+                preview = ImageUtilities.createPreview( decoded != null ? decoded : getImage().toImageData() );
+            }
+            return preview;
+        }
+
+        private static Thread newEncoderThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "AssistAI image encoder" );
+            thread.setDaemon( true );
+            return thread;
         }
     }
 }
@@ -1,8 +1,13 @@
 package com.github.gradusnikov.eclipse.assistai.chat;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -25,6 +30,13 @@ public class ChatMessage
 
     private final List<Attachment> attachments;
     
+    /** Incremented on every change, to tell outdated JSON forms */
+    private final AtomicInteger revision = new AtomicInteger();
+    
+    private final Map<String, JsonForm> jsonForms = new ConcurrentHashMap<>();
+    
+    private record JsonForm( int revision, byte[] json ) {}
+    
     /**
      * Constructs a ChatMessage with the given ID and role.
      * 
@@ -57,6 +69,7 @@ public class ChatMessage
     public void append( String msg )
     {
         this.content.append( msg );
+        revision.incrementAndGet();
     }
 
     /**
@@ -77,6 +90,7 @@ public class ChatMessage
     public void setFunctionCall( FunctionCall functionCall )
     {
         this.functionCall = functionCall;
+        revision.incrementAndGet();
     }
 
     /**
@@ -89,17 +103,26 @@ public class ChatMessage
     {
         this.content.setLength( 0 );
         this.content.append( message );
+        revision.incrementAndGet();
     }
     
     public void setAttachments( List<Attachment> attachments )
     {
+        // a copy, the given list may be a view of the current attachments
+        var replacement = new ArrayList<>( attachments );
         this.attachments.clear();
-        this.attachments.addAll( attachments );
+        this.attachments.addAll( replacement );
+        revision.incrementAndGet();
     }
 
+    /**
+     * @return the attachments, read-only; they are changed with
+     *         {@link #setAttachments(List)} only, which invalidates the cached
+     *         forms of the message
+     */
     public List<Attachment> getAttachments()
     {
-        return attachments;
+        return Collections.unmodifiableList( attachments );
     }
     
     /**
@@ -127,6 +150,38 @@ public class ChatMessage
         return name;
     }
     
+    /**
+     * @return a number that changes whenever the message changes
+     */
+    public int getRevision()
+    {
+        return revision.get();
+    }
+    
+    /**
+     * Returns the JSON form of this message in a request format, e.g. of a
+     * provider API with the capabilities of a model. The message is serialized
+     * on first use and again only after it changed, so that the completed
+     * messages of a conversation are not serialized for every request.
+     * 
+     * @param format
+     *            identifies the serializer and everything its output depends
+     *            on besides the message
+     * @param serializer
+     *            serializes the message into compact JSON
+     */
+    public byte[] toJson( String format, Function<ChatMessage, byte[]> serializer )
+    {
+        int current = revision.get();
+        JsonForm form = jsonForms.get( format );
+        if ( Objects.isNull( form ) || form.revision() != current )
+        {
+            form = new JsonForm( current, serializer.apply( this ) );
+            jsonForms.put( format, form );
+        }
+        return form.json();
+    }
+    
     public boolean isEmpty()
     {
         return StringUtils.isAllBlank(content) && attachments.isEmpty() && Objects.isNull( functionCall );
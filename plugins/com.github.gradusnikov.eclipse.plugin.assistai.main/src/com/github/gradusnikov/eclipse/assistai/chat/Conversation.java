@@ -28,12 +28,29 @@ public class Conversation
     {
         conversation.add(message);
     }
+
+    /**
+     * Appends several messages at once, so that no other message can be
+     * added in between.
+     */
+    public synchronized void addAll(List<ChatMessage> messages)
+    {
+        conversation.addAll(messages);
+    }
     
     public List<ChatMessage> messages()
     {
         return conversation;
     }
 
+    /**
+     * @return a copy of the current messages
+     */
+    public synchronized List<ChatMessage> snapshot()
+    {
+        return List.copyOf( conversation );
+    }
+
     public Optional<ChatMessage> removeLastMessage()
     {
         ChatMessage removed = !conversation.isEmpty() ? conversation.remove( conversation.size() - 1 ) : null;
@@ -0,0 +1,571 @@
+package com.github.gradusnikov.eclipse.assistai.chat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.e4.core.di.annotations.Creatable;
+
+import com.github.gradusnikov.eclipse.assistai.Activator;
+import com.github.gradusnikov.eclipse.assistai.chat.Attachment.FileContentAttachment;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpToolCatalog;
+import com.github.gradusnikov.eclipse.assistai.preferences.PreferenceConstants;
+import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
+import com.github.gradusnikov.eclipse.assistai.prompt.Prompts;
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
+import com.github.gradusnikov.eclipse.assistai.tools.JsonUtils;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Fits a {@link Conversation} into the context budget of a model before it is
+ * sent.
+ * <p>
+ * The conversation itself is never modified: the compactor works on a
+ * snapshot and returns a new conversation, in which changed messages are
+ * replaced by copies. The pipeline runs in this order:
+ * <ol>
+ * <li>file attachments repeating content attached earlier are replaced by a
+ * short reference;</li>
+ * <li>if the request is over budget, console output and diffs returned by
+ * tools before the last user message are truncated to their first and last
+ * lines, oldest first;</li>
+ * <li>if the request is still over budget, older tool results are replaced by
+ * a summary line, oldest first;</li>
+ * <li>if the request is still over budget, the oldest turns are dropped. The
+ * turn of the last user message is always kept.</li>
+ * </ol>
+ * The copies are kept per source message and reused for as long as the
+ * message does not change, and a message truncated or summarized once stays
+ * so in later requests. A message is thus rewritten at most once per step,
+ * and a request repeats the messages of the previous one as the same
+ * instances and bytes, keeping the token estimates, the JSON forms and the
+ * prompt cache of the provider valid. Token counts are estimated with the
+ * {@link TokenEstimator} of the model and cached per message.
+ */
+@Creatable
+@Singleton
+public class ConversationCompactor
+{
+    private static final String FUNCTION_ROLE     = "function";
+
+    private static final String USER_ROLE         = "user";
+
+    /** Tokens added by the providers for the role and delimiters of a message */
+    private static final int    MESSAGE_OVERHEAD  = 4;
+
+    /** Tokens kept free for the response in the default budgets */
+    private static final int    RESPONSE_RESERVE  = 8192;
+
+    private static final int    DUMP_HEAD_LINES   = 10;
+
+    private static final int    DUMP_TAIL_LINES   = 20;
+
+    /** Tool results with fewer tokens are not worth summarizing */
+    private static final int    SUMMARY_THRESHOLD = 200;
+
+    private record ContextWindow( Pattern modelName, int tokens ) {}
+
+    private static final List<ContextWindow> CONTEXT_WINDOWS = List.of(
+            new ContextWindow( Pattern.compile( "^claude" ), 200_000 ),
+            new ContextWindow( Pattern.compile( "^gemini" ), 1_000_000 ),
+            new ContextWindow( Pattern.compile( "^gpt-4\\.1" ), 1_000_000 ),
+            new ContextWindow( Pattern.compile( "^gpt-5" ), 400_000 ),
+            new ContextWindow( Pattern.compile( "^(gpt-4o|gpt-4-turbo|o1|o3|o4)" ), 128_000 ),
+            new ContextWindow( Pattern.compile( "^deepseek" ), 128_000 ) );
+
+    @Inject
+    private ILog logger;
+
+    @Inject
+    private TokenEstimatorRegistry estimators;
+
+    @Inject
+    private McpClientRetistry mcpClientRegistry;
+
+    /**
+     * The result of a compaction.
+     *
+     * @param conversation
+     *            the conversation to send
+     * @param breakdown
+     *            the estimated token usage of the request
+     */
+    public record Compaction( Conversation conversation, TokenBreakdown breakdown ) {}
+
+    /**
+     * The estimate of a message at a {@link ChatMessage#getRevision()
+     * revision}.
+     */
+    private record MessageTokens( TokenEstimator estimator, int revision, boolean functionResult, int text, int functionCall,
+                                  int attachments, int images )
+    {
+        int total()
+        {
+            return text + functionCall + attachments + images;
+        }
+    }
+
+    private record AttachmentKey( String fileName, int lineNumberStart, int lineNumberEnd, String content ) {}
+
+    private enum Step
+    {
+        DEDUPLICATED, TRUNCATED, SUMMARIZED
+    }
+
+    /**
+     * A compacted copy of a message.
+     *
+     * @param revision
+     *            the revision of the source message the copy was made from
+     * @param variant
+     *            what else the copy depends on, e.g. which attachments were
+     *            replaced
+     */
+    private record Compacted( Step step, int revision, String variant, ChatMessage copy ) {}
+
+    private final Map<ChatMessage, MessageTokens> tokenCache = Collections.synchronizedMap( new WeakHashMap<>() );
+
+    /** The compacted copies by source message; a copy may be the source of a later step */
+    private final Map<ChatMessage, Compacted> compactedCopies = Collections.synchronizedMap( new WeakHashMap<>() );
+
+    private McpToolCatalog toolCatalog;
+
+    private TokenEstimator toolEstimator;
+
+    private int            toolTokens;
+
+    private volatile TokenBreakdown lastBreakdown;
+
+    /**
+     * Compacts the conversation to fit the context budget of the model.
+     */
+    public Compaction compact( Conversation conversation, ModelApiDescriptor model )
+    {
+        TokenEstimator estimator = estimators.forModel( model );
+        int systemPrompt = estimator.estimate( Activator.getDefault().getPreferenceStore().getString( Prompts.SYSTEM.preferenceName() ) );
+        int tools = model.functionCalling() || model.toolCalling() ? estimateTools( estimator ) : 0;
+
+        Compaction compaction = compact( conversation, estimator, budgetFor( model ), systemPrompt, tools );
+        if ( compaction.breakdown().isOverBudget() )
+        {
+            logger.warn( "Conversation exceeds the context budget of " + model.modelName() + ": " + compaction.breakdown() );
+        }
+        lastBreakdown = compaction.breakdown();
+        return compaction;
+    }
+
+    /**
+     * Compacts the conversation to fit a budget.
+     *
+     * @param systemPrompt
+     *            the tokens of the system prompt
+     * @param tools
+     *            the tokens of the tool definitions
+     */
+    Compaction compact( Conversation conversation, TokenEstimator estimator, int budget, int systemPrompt, int tools )
+    {
+        int messageBudget = budget - systemPrompt - tools;
+
+        var messages = new ArrayList<ChatMessage>( conversation.snapshot() );
+        int uncompacted = systemPrompt + tools + sum( messages, estimator );
+
+        deduplicateAttachments( messages );
+        reuseEarlierCompactions( messages );
+        int total = sum( messages, estimator );
+        if ( total > messageBudget )
+        {
+            total = truncateStaleDumps( messages, estimator, total, messageBudget );
+        }
+        if ( total > messageBudget )
+        {
+            total = summarizeStaleToolResults( messages, estimator, total, messageBudget );
+        }
+        int removedMessages = 0;
+        if ( total > messageBudget )
+        {
+            removedMessages = dropOldestTurns( messages, estimator, total, messageBudget );
+        }
+
+        var compacted = new Conversation();
+        compacted.addAll( messages );
+        TokenBreakdown breakdown = breakdown( messages, estimator, budget, systemPrompt, tools, uncompacted, removedMessages );
+        return new Compaction( compacted, breakdown );
+    }
+
+    /**
+     * @return the token breakdown of the last compacted request, or
+     *         {@code null} if no request was compacted yet
+     */
+    public TokenBreakdown getLastBreakdown()
+    {
+        return lastBreakdown;
+    }
+
+    /**
+     * Returns the number of input tokens a request to the model may use: the
+     * budget configured for the model, or else the known context window of
+     * the model less a reserve for the response, or else the default budget
+     * from the preferences.
+     */
+    public int budgetFor( ModelApiDescriptor model )
+    {
+        if ( model.contextBudget() > 0 )
+        {
+            return model.contextBudget();
+        }
+        String modelName = Objects.toString( model.modelName(), "" ).toLowerCase();
+        for ( ContextWindow window : CONTEXT_WINDOWS )
+        {
+            if ( window.modelName().matcher( modelName ).find() )
+            {
+                return window.tokens() - Math.min( window.tokens() / 4, RESPONSE_RESERVE );
+            }
+        }
+        return Activator.getDefault().getPreferenceStore().getInt( PreferenceConstants.ASSISTAI_DEFAULT_CONTEXT_BUDGET );
+    }
+
+    private synchronized int estimateTools( TokenEstimator estimator )
+    {
+        McpToolCatalog catalog = mcpClientRegistry.getToolCatalog();
+        if ( catalog != toolCatalog || estimator != toolEstimator )
+        {
+            int tokens = 0;
+            for ( McpToolCatalog.Entry entry : catalog.getEntries() )
+            {
+                tokens += estimator.estimate( entry.qualifiedName() );
+                tokens += estimator.estimate( entry.tool().description() );
+                tokens += estimator.estimate( JsonUtils.toJsonString( entry.tool().inputSchema() ) );
+            }
+            toolCatalog = catalog;
+            toolEstimator = estimator;
+            toolTokens = tokens;
+        }
+        return toolTokens;
+    }
+
+    /**
+     * Replaces file attachments that repeat the content of an earlier
+     * attachment with a reference to it.
+     */
+    private void deduplicateAttachments( List<ChatMessage> messages )
+    {
+        Set<AttachmentKey> seen = new HashSet<>();
+        for ( int i = 0; i < messages.size(); i++ )
+        {
+            ChatMessage message = messages.get( i );
+            List<Attachment> sourceAttachments = message.getAttachments();
+            if ( sourceAttachments.isEmpty() )
+            {
+                continue;
+            }
+            var replaced = new StringBuilder();
+            for ( int a = 0; a < sourceAttachments.size(); a++ )
+            {
+                if ( sourceAttachments.get( a ) instanceof FileContentAttachment file
+                        && !seen.add( new AttachmentKey( file.getFileName(), file.getLineNumberStart(), file.getLineNumberEnd(),
+                                                         file.getSelectedContent() ) ) )
+                {
+                    replaced.append( a ).append( ',' );
+                }
+            }
+            if ( replaced.isEmpty() )
+            {
+                continue;
+            }
+            String variant = replaced.toString();
+            messages.set( i, compacted( message, Step.DEDUPLICATED, variant, () -> {
+                var attachments = new ArrayList<Attachment>( sourceAttachments.size() );
+                for ( int a = 0; a < sourceAttachments.size(); a++ )
+                {
+                    Attachment attachment = sourceAttachments.get( a );
+                    if ( variant.contains( a + "," ) && attachment instanceof FileContentAttachment file )
+                    {
+                        attachment = new FileContentAttachment( file.getFileName(), file.getLineNumberStart(), file.getLineNumberEnd(),
+                                                                "(unchanged, identical to the content attached earlier in the conversation)" );
+                    }
+                    attachments.add( attachment );
+                }
+                return copyOf( message, message.getContent(), attachments );
+            } ) );
+        }
+    }
+
+    /**
+     * Replaces the messages truncated or summarized for an earlier request by
+     * the same copies again, so that the request starts with the messages the
+     * previous one was sent with.
+     */
+    private void reuseEarlierCompactions( List<ChatMessage> messages )
+    {
+        for ( int i = 0; i < messages.size(); i++ )
+        {
+            for ( ChatMessage copy = earlierCopy( messages.get( i ) ); copy != null; copy = earlierCopy( copy ) )
+            {
+                messages.set( i, copy );
+            }
+        }
+    }
+
+    /**
+     * Truncates console output and diffs returned by tools before the last
+     * user message, oldest first, until the messages fit the budget.
+     *
+     * @return the tokens of the messages after the truncation
+     */
+    private int truncateStaleDumps( List<ChatMessage> messages, TokenEstimator estimator, int total, int budget )
+    {
+        int staleEnd = lastTurnStart( messages );
+        for ( int i = 0; i < staleEnd && total > budget; i++ )
+        {
+            ChatMessage message = messages.get( i );
+            if ( !isDump( message ) )
+            {
+                continue;
+            }
+            String[] lines = message.getContent().split( "\n", -1 );
+            if ( lines.length <= DUMP_HEAD_LINES + DUMP_TAIL_LINES + 1 )
+            {
+                continue;
+            }
+            ChatMessage truncated = compacted( message, Step.TRUNCATED, "", () -> {
+                int omitted = lines.length - DUMP_HEAD_LINES - DUMP_TAIL_LINES;
+                var content = new StringBuilder();
+                for ( int line = 0; line < DUMP_HEAD_LINES; line++ )
+                {
+                    content.append( lines[line] ).append( '\n' );
+                }
+                content.append( "[... " ).append( omitted ).append( " lines omitted ...]\n" );
+                for ( int line = lines.length - DUMP_TAIL_LINES; line < lines.length; line++ )
+                {
+                    content.append( lines[line] );
+                    if ( line < lines.length - 1 )
+                    {
+                        content.append( '\n' );
+                    }
+                }
+                return copyOf( message, content.toString(), message.getAttachments() );
+            } );
+            messages.set( i, truncated );
+            total += tokensOf( truncated, estimator ).total() - tokensOf( message, estimator ).total();
+        }
+        return total;
+    }
+
+    /**
+     * Replaces tool results before the last user message with a summary line,
+     * oldest first, until the messages fit the budget.
+     *
+     * @return the tokens of the messages after the replacement
+     */
+    private int summarizeStaleToolResults( List<ChatMessage> messages, TokenEstimator estimator, int total, int budget )
+    {
+        int staleEnd = lastTurnStart( messages );
+        for ( int i = 0; i < staleEnd && total > budget; i++ )
+        {
+            ChatMessage message = messages.get( i );
+            if ( !FUNCTION_ROLE.equals( message.getRole() ) )
+            {
+                continue;
+            }
+            MessageTokens tokens = tokensOf( message, estimator );
+            if ( tokens.total() < SUMMARY_THRESHOLD )
+            {
+                continue;
+            }
+            ChatMessage summarized = compacted( message, Step.SUMMARIZED, "", () -> {
+                long lineCount = message.getContent().lines().count();
+                String summary = "[Output of " + Objects.toString( message.getName(), "the tool" ) + " removed to save context: "
+                        + lineCount + " lines. Call the tool again if the output is needed.]";
+                return copyOf( message, summary, List.of() );
+            } );
+            messages.set( i, summarized );
+            total += tokensOf( summarized, estimator ).total() - tokens.total();
+        }
+        return total;
+    }
+
+    /**
+     * Drops whole turns from the start of the conversation until the messages
+     * fit the budget. A turn starts with a user message and includes the
+     * function calls and results that follow it, so no function result is
+     * separated from its call.
+     *
+     * @return the number of dropped messages
+     */
+    private int dropOldestTurns( List<ChatMessage> messages, TokenEstimator estimator, int total, int budget )
+    {
+        int removed = 0;
+        while ( total > budget )
+        {
+            int nextTurn = nextTurnStart( messages, 1 );
+            if ( nextTurn < 0 || nextTurn > lastTurnStart( messages ) )
+            {
+                break;
+            }
+            var turn = messages.subList( 0, nextTurn );
+            total -= sum( turn, estimator );
+            removed += turn.size();
+            turn.clear();
+        }
+        return removed;
+    }
+
+    private TokenBreakdown breakdown( List<ChatMessage> messages, TokenEstimator estimator, int budget, int systemPrompt,
+                                      int tools, int uncompacted, int removedMessages )
+    {
+        int text = 0, functionCalls = 0, functionResults = 0, attachments = 0, images = 0;
+        for ( ChatMessage message : messages )
+        {
+            MessageTokens tokens = tokensOf( message, estimator );
+            if ( tokens.functionResult() )
+            {
+                functionResults += tokens.text();
+            }
+            else
+            {
+                text += tokens.text();
+            }
+            functionCalls += tokens.functionCall();
+            attachments += tokens.attachments();
+            images += tokens.images();
+        }
+        return new TokenBreakdown( budget, systemPrompt, tools, text, functionCalls, functionResults, attachments, images,
+                                   uncompacted, removedMessages );
+    }
+
+    private int sum( List<ChatMessage> messages, TokenEstimator estimator )
+    {
+        int total = 0;
+        for ( ChatMessage message : messages )
+        {
+            total += tokensOf( message, estimator ).total();
+        }
+        return total;
+    }
+
+    private MessageTokens tokensOf( ChatMessage message, TokenEstimator estimator )
+    {
+        // read first, so that a change made while estimating is estimated again
+        int revision = message.getRevision();
+        MessageTokens cached = tokenCache.get( message );
+        if ( cached != null && cached.estimator() == estimator && cached.revision() == revision )
+        {
+            return cached;
+        }
+        String content = message.getContent();
+        boolean functionResult = FUNCTION_ROLE.equals( message.getRole() );
+        int text = MESSAGE_OVERHEAD + estimator.estimate( content );
+        int functionCall = 0;
+        if ( !functionResult && message.getFunctionCall() != null )
+        {
+            functionCall = estimator.estimate( message.getFunctionCall().name() )
+                    + estimator.estimate( JsonUtils.toJsonString( message.getFunctionCall().arguments() ) );
+        }
+        int attachments = 0, images = 0;
+        for ( Attachment attachment : message.getAttachments() )
+        {
+            attachments += estimator.estimate( attachment.toChatMessageContent() );
+            EncodedImage image = attachment.getImage();
+            if ( image != null )
+            {
+                images += estimator.estimateImage( image );
+            }
+        }
+        var tokens = new MessageTokens( estimator, revision, functionResult, text, functionCall, attachments, images );
+        tokenCache.put( message, tokens );
+        return tokens;
+    }
+
+    private static boolean isDump( ChatMessage message )
+    {
+        if ( !FUNCTION_ROLE.equals( message.getRole() ) )
+        {
+            return false;
+        }
+        String name = Objects.toString( message.getName(), "" );
+        String content = message.getContent();
+        return name.contains( "Console" ) || content.startsWith( "--- /" ) || content.contains( "\n--- /" )
+                || content.contains( "\n@@ -" );
+    }
+
+    private static int lastTurnStart( List<ChatMessage> messages )
+    {
+        for ( int i = messages.size() - 1; i >= 0; i-- )
+        {
+            if ( isTurnStart( messages.get( i ) ) )
+            {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static int nextTurnStart( List<ChatMessage> messages, int from )
+    {
+        for ( int i = from; i < messages.size(); i++ )
+        {
+            if ( isTurnStart( messages.get( i ) ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isTurnStart( ChatMessage message )
+    {
+        return USER_ROLE.equals( message.getRole() ) && message.getFunctionCall() == null;
+    }
+
+    /**
+     * Returns the copy of a message made by a step, reusing the copy made for
+     * an earlier request if the message has not changed since.
+     */
+    private ChatMessage compacted( ChatMessage source, Step step, String variant, Supplier<ChatMessage> copier )
+    {
+        Compacted cached = compactedCopies.get( source );
+        if ( cached != null && cached.step() == step && cached.revision() == source.getRevision() && cached.variant().equals( variant ) )
+        {
+            return cached.copy();
+        }
+        int revision = source.getRevision();
+        ChatMessage copy = copier.get();
+        compactedCopies.put( source, new Compacted( step, revision, variant, copy ) );
+        return copy;
+    }
+
+    /**
+     * @return the copy of the message truncated or summarized for an earlier
+     *         request, or {@code null} if there is none or the message has
+     *         changed since
+     */
+    private ChatMessage earlierCopy( ChatMessage source )
+    {
+        Compacted cached = compactedCopies.get( source );
+        if ( cached == null || cached.step() == Step.DEDUPLICATED || cached.revision() != source.getRevision() )
+        {
+            return null;
+        }
+        return cached.copy();
+    }
+
+    private static ChatMessage copyOf( ChatMessage message, String content, List<Attachment> attachments )
+    {
+        var copy = new ChatMessage( message.getId(), message.getName(), message.getRole() );
+        copy.setContent( content );
+        copy.setFunctionCall( message.getFunctionCall() );
+        copy.setAttachments( attachments );
+        return copy;
+    }
+}
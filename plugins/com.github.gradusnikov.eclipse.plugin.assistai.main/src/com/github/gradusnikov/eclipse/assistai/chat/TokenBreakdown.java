@@ -0,0 +1,50 @@
+package com.github.gradusnikov.eclipse.assistai.chat;
+
+/**
+ * Estimated token usage of a single request, split by the parts of the
+ * request.
+ *
+ * @param budget
+ *            the number of input tokens the request may use
+ * @param systemPrompt
+ *            tokens of the system prompt
+ * @param tools
+ *            tokens of the tool definitions
+ * @param messages
+ *            tokens of the text of the user and assistant messages
+ * @param functionCalls
+ *            tokens of the function calls requested by the assistant
+ * @param functionResults
+ *            tokens of the function results
+ * @param attachments
+ *            tokens of the text attachments
+ * @param images
+ *            tokens of the image attachments
+ * @param uncompacted
+ *            total tokens of the conversation before compaction
+ * @param removedMessages
+ *            number of messages dropped from the conversation to fit the
+ *            budget
+ */
+public record TokenBreakdown( int budget, int systemPrompt, int tools, int messages, int functionCalls, int functionResults,
+                              int attachments, int images, int uncompacted, int removedMessages )
+{
+    public int total()
+    {
+        return systemPrompt + tools + messages + functionCalls + functionResults + attachments + images;
+    }
+
+    public boolean isOverBudget()
+    {
+        return total() > budget;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "~%d of %d tokens (system prompt %d, tools %d, messages %d, function calls %d, "
+                + "function results %d, attachments %d, images %d; %d before compaction, %d messages removed)",
+                              total(), budget, systemPrompt, tools, messages, functionCalls, functionResults, attachments,
+                              images, uncompacted, removedMessages );
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.gradusnikov.eclipse.assistai.chat;
+
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
+
+/**
+ * Estimates the number of tokens a text occupies in the context window of a
+ * model.
+ * <p>
+ * The estimate is computed locally and does not need to match the tokenizer of
+ * the provider exactly; it is used to keep requests within the context budget
+ * of a model, so implementations should rather overestimate.
+ *
+ * @see TokenEstimatorRegistry
+ */
+@FunctionalInterface
+public interface TokenEstimator
+{
+    int estimate( CharSequence text );
+
+    /**
+     * Estimates the tokens of an image attachment. The default follows the
+     * common rule of one token per 750 pixels, within the limits applied by
+     * the providers when scaling images down.
+     */
+    default int estimateImage( EncodedImage image )
+    {
+        long pixels = (long) image.getWidth() * image.getHeight();
+        return (int) Math.max( 85, Math.min( 1600, pixels / 750 ) );
+    }
+
+    /**
+     * Creates an estimator that counts runs of letters and digits as one
+     * token per {@code charsPerToken} characters, every other symbol as a
+     * token, and whitespace as one token per four characters beyond a single
+     * separator.
+     */
+    static TokenEstimator ofCharsPerToken( double charsPerToken )
+    {
+        if ( charsPerToken <= 0 )
+        {
+            throw new IllegalArgumentException( "Characters per token must be positive: " + charsPerToken );
+        }
+        return text -> {
+            if ( text == null )
+            {
+                return 0;
+            }
+            int tokens = 0;
+            int length = text.length();
+            int i = 0;
+            while ( i < length )
+            {
+                char c = text.charAt( i );
+                int start = i;
+                if ( Character.isLetterOrDigit( c ) )
+                {
+                    while ( i < length && Character.isLetterOrDigit( text.charAt( i ) ) )
+                    {
+                        i++;
+                    }
+                    tokens += (int) Math.ceil( ( i - start ) / charsPerToken );
+                }
+                else if ( Character.isWhitespace( c ) )
+                {
+                    while ( i < length && Character.isWhitespace( text.charAt( i ) ) )
+                    {
+                        i++;
+                    }
+                    tokens += ( i - start - 1 + 3 ) / 4;
+                }
+                else
+                {
+                    i++;
+                    tokens++;
+                }
+            }
+            return tokens;
+        };
+    }
+}
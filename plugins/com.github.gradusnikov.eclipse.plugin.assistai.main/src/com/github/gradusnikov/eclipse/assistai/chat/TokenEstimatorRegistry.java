@@ -0,0 +1,65 @@
+package com.github.gradusnikov.eclipse.assistai.chat;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.e4.core.di.annotations.Creatable;
+
+import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
+
+import jakarta.inject.Singleton;
+
+/**
+ * Selects the {@link TokenEstimator} for a model by its provider. The
+ * provider is recognized from the API URL, the same way the client is
+ * selected, and falls back to the API type of the model.
+ * <p>
+ * The built-in estimators are calibrated on the average number of characters
+ * per token of the provider tokenizers for source code and English text. A
+ * more precise estimator, e.g. one backed by a real tokenizer, can be
+ * registered for a provider with {@link #register(String, TokenEstimator)}.
+ */
+@Creatable
+@Singleton
+public class TokenEstimatorRegistry
+{
+    private static final TokenEstimator DEFAULT_ESTIMATOR = TokenEstimator.ofCharsPerToken( 3.5 );
+
+    private final Map<String, TokenEstimator> estimators = new ConcurrentHashMap<>();
+
+    public TokenEstimatorRegistry()
+    {
+        estimators.put( "openai", TokenEstimator.ofCharsPerToken( 4.0 ) );
+        estimators.put( "claude", TokenEstimator.ofCharsPerToken( 3.5 ) );
+        estimators.put( "gemini", TokenEstimator.ofCharsPerToken( 4.0 ) );
+        estimators.put( "deepseek", TokenEstimator.ofCharsPerToken( 3.6 ) );
+    }
+
+    /**
+     * Registers the estimator used for models of the given provider, e.g.
+     * {@code "claude"}, {@code "gemini"} or an API type like {@code "ollama"}.
+     */
+    public void register( String provider, TokenEstimator estimator )
+    {
+        estimators.put( Objects.requireNonNull( provider ), Objects.requireNonNull( estimator ) );
+    }
+
+    public TokenEstimator forModel( ModelApiDescriptor model )
+    {
+        return estimators.getOrDefault( providerOf( model ), DEFAULT_ESTIMATOR );
+    }
+
+    private static String providerOf( ModelApiDescriptor model )
+    {
+        String apiUrl = Objects.toString( model.apiUrl(), "" ).toLowerCase();
+        return switch ( apiUrl )
+        {
+            case String s when s.contains( "anthropic" ) -> "claude";
+            case String s when s.contains( "deepseek" ) -> "deepseek";
+            case String s when s.contains( "googleapis" ) -> "gemini";
+            case String s when s.contains( "api.openai.com" ) -> "openai";
+            default -> Objects.toString( model.apiType(), "" );
+        };
+    }
+}
@@ -0,0 +1,236 @@
+package com.github.gradusnikov.eclipse.assistai.chat;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Assembles the tool calls of a streamed response.
+ * <p>
+ * The model APIs stream the calls as a start event carrying the id and the
+ * name, followed by fragments of the JSON encoded arguments; several calls
+ * may be streamed at once, told apart by their index. The accumulator keeps
+ * the state of every call by index and tracks the nesting of the arguments
+ * while they arrive, so a call is handed to the consumer as a
+ * {@link FunctionCall} as soon as its arguments object is closed, without
+ * waiting for the end of the stream. Calls whose end cannot be detected this
+ * way, such as calls without arguments, are handed over on {@link #end(int)}
+ * or {@link #finish()}.
+ * <p>
+ * Instances are not thread safe; they are fed by the single thread reading the
+ * stream.
+ */
+public class ToolCallAccumulator
+{
+    private static final ObjectMapper                        OBJECT_MAPPER  = new ObjectMapper();
+
+    private static final TypeReference<Map<String, Object>> ARGUMENTS_TYPE = new TypeReference<>() {};
+
+    private final Consumer<FunctionCall> consumer;
+
+    private final Map<Integer, PendingCall> pending = new TreeMap<>();
+
+    private final Set<Integer> completed = new HashSet<>();
+
+    /**
+     * A call being streamed, with a minimal JSON scanner that knows when the
+     * top level value of the arguments is closed.
+     */
+    private static class PendingCall
+    {
+        String              id;
+        String              name;
+        final StringBuilder arguments = new StringBuilder();
+        int                 depth;
+        boolean             opened;
+        boolean             inString;
+        boolean             escaped;
+
+        void append( CharSequence fragment )
+        {
+            arguments.append( fragment );
+            for ( int i = 0; i < fragment.length(); i++ )
+            {
+                char c = fragment.charAt( i );
+                if ( inString )
+                {
+                    if ( escaped )
+                    {
+                        escaped = false;
+                    }
+                    else if ( c == '\\' )
+                    {
+                        escaped = true;
+                    }
+                    else if ( c == '"' )
+                    {
+                        inString = false;
+                    }
+                }
+                else if ( c == '"' )
+                {
+                    inString = true;
+                }
+                else if ( c == '{' || c == '[' )
+                {
+                    depth++;
+                    opened = true;
+                }
+                else if ( c == '}' || c == ']' )
+                {
+                    depth--;
+                }
+            }
+        }
+
+        boolean isClosed()
+        {
+            return opened && depth == 0 && !inString;
+        }
+    }
+
+    /**
+     * @param consumer
+     *            receives every call once, in the order the calls complete
+     */
+    public ToolCallAccumulator( Consumer<FunctionCall> consumer )
+    {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Starts the call at {@code index}, or completes its id and name if the
+     * call has already been started.
+     */
+    public void start( int index, String id, String name )
+    {
+        PendingCall call = pendingCall( index );
+        if ( call == null )
+        {
+            return;
+        }
+        if ( id != null && !id.isEmpty() )
+        {
+            call.id = id;
+        }
+        if ( name != null && !name.isEmpty() )
+        {
+            call.name = name;
+        }
+        if ( call.isClosed() )
+        {
+            complete( index, false );
+        }
+    }
+
+    /**
+     * Appends a fragment of the arguments of the call at {@code index}.
+     */
+    public void append( int index, CharSequence fragment )
+    {
+        PendingCall call = pendingCall( index );
+        if ( call == null || fragment == null )
+        {
+            return;
+        }
+        call.append( fragment );
+        if ( call.isClosed() )
+        {
+            complete( index, false );
+        }
+    }
+
+    /**
+     * Signals that the API closed the call at {@code index}.
+     */
+    public void end( int index )
+    {
+        if ( pending.containsKey( index ) )
+        {
+            complete( index, true );
+        }
+    }
+
+    /**
+     * Hands over all calls that are still pending, at the end of the stream.
+     */
+    public void finish()
+    {
+        for ( Integer index : pending.keySet().toArray( Integer[]::new ) )
+        {
+            complete( index, true );
+        }
+    }
+
+    /**
+     * @return the number of calls handed to the consumer
+     */
+    public int getCompletedCount()
+    {
+        return completed.size();
+    }
+
+    private PendingCall pendingCall( int index )
+    {
+        if ( completed.contains( index ) )
+        {
+            // late events of a call that has already been handed over
+            return null;
+        }
+        return pending.computeIfAbsent( index, i -> new PendingCall() );
+    }
+
+    /**
+     * Hands the call over. Without {@code force} the call is kept pending
+     * while its name is unknown or its arguments do not parse yet. Forced, a
+     * call without a name is dropped, and arguments that do not parse are
+     * replaced by an empty object, letting the tool report the missing
+     * arguments to the model.
+     */
+    private void complete( int index, boolean force )
+    {
+        PendingCall call = pending.get( index );
+        if ( call.name == null && !force )
+        {
+            return;
+        }
+        Map<String, Object> arguments = parseArguments( call.arguments );
+        if ( arguments == null && !force )
+        {
+            return;
+        }
+        pending.remove( index );
+        completed.add( index );
+        if ( call.name == null )
+        {
+            return;
+        }
+        String id = call.id != null ? call.id : UUID.randomUUID().toString();
+        consumer.accept( new FunctionCall( id, call.name, arguments != null ? arguments : Map.of() ) );
+    }
+
+    private static Map<String, Object> parseArguments( StringBuilder arguments )
+    {
+        String json = arguments.toString().trim();
+        if ( json.isEmpty() )
+        {
+            return Map.of();
+        }
+        try
+        {
+            Map<String, Object> parsed = OBJECT_MAPPER.readValue( json, ARGUMENTS_TYPE );
+            return parsed != null ? parsed : Map.of();
+        }
+        catch ( JsonProcessingException e )
+        {
+            return null;
+        }
+    }
+}
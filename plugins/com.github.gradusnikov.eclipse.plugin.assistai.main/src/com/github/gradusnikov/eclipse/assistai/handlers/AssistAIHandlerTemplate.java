@@ -1,5 +1,6 @@
 package com.github.gradusnikov.eclipse.assistai.handlers;
 
+import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Execute;
 import org.eclipse.e4.ui.services.IServiceConstants;
 import org.eclipse.swt.widgets.Shell;
@@ -13,6 +14,8 @@ import jakarta.inject.Named;
 
 public class AssistAIHandlerTemplate 
 {
+    @Inject
+    protected ILog logger;
     @Inject
     protected ChatMessageFactory chatMessageFactory;
     @Inject
@@ -28,8 +31,13 @@ public class AssistAIHandlerTemplate
     @Execute
     public void execute(@Named(IServiceConstants.ACTIVE_SHELL) Shell s)
     {
-        var message = chatMessageFactory.createUserChatMessage( type );
-        viewPresenter.onSendPredefinedPrompt( type, message );
+        // the context variables are resolved in the background, not to block the UI
+        chatMessageFactory.createUserChatMessageAsync( type )
+                          .thenAccept( message -> viewPresenter.onSendPredefinedPrompt( type, message ) )
+                          .exceptionally( e -> {
+                              logger.error( "Cannot create the user message: " + e.getMessage(), e );
+                              return null;
+                          } );
     }
     
 }
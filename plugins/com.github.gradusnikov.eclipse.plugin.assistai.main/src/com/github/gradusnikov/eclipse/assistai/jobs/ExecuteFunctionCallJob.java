@@ -3,19 +3,23 @@ package com.github.gradusnikov.eclipse.assistai.jobs;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.Callable;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -37,6 +41,7 @@ import com.github.gradusnikov.eclipse.assistai.tools.FunctionCallParser;
 import com.github.gradusnikov.eclipse.assistai.tools.JsonUtils;
 import com.github.gradusnikov.eclipse.assistai.view.ChatViewPresenter;
 
+import io.modelcontextprotocol.spec.McpError;
 import io.modelcontextprotocol.spec.McpSchema;
 import io.modelcontextprotocol.spec.McpSchema.CallToolRequest;
 import io.modelcontextprotocol.spec.McpSchema.CallToolResult;
@@ -61,17 +66,36 @@ public class ExecuteFunctionCallJob extends Job {
 	@Inject
 	private Provider<SendConversationJob> sendConversationJobProvider;
 
-	private HashMap<String, ChatMessage> currentFunctionRespMessage;
+	/** The messages showing the calls in the view, by call id; written by the call threads */
+	private final Map<String, ChatMessage> currentFunctionRespMessage = new ConcurrentHashMap<>();
 	@Inject
 	private Conversation conversation;
 	@Inject
 	private McpClientRetistry mcpClientRetistry;
 
-	private List<FunctionCall> functionCalls = Collections.emptyList();
+	/** Queued after the last function call */
+	private static final Future<CallToolResult> END_OF_CALLS = CompletableFuture.completedFuture(null);
+
+	/** Calls in the order they were received, the results are sent in this order */
+	private final List<FunctionCall> functionCalls = new CopyOnWriteArrayList<>();
+
+	/** 保存 Future -> FunctionCall 映射，guarded by this */
+	private final Map<Future<CallToolResult>, FunctionCall> futureToCall = new HashMap<>();
+
+	/** Finished calls, followed by {@link #END_OF_CALLS} */
+	private final BlockingQueue<Future<CallToolResult>> finishedCalls = new LinkedBlockingQueue<>();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_THREADS);
+	private final ScheduledExecutorService canceller = new ScheduledThreadPoolExecutor(1);
+	private final ExecutorCompletionService<CallToolResult> completionService = new ExecutorCompletionService<>(
+			executor, finishedCalls);
+
+	/** guarded by this */
+	private boolean ended;
+	private volatile boolean sendResults = true;
 
 	public ExecuteFunctionCallJob() {
 		super(JOB_NAME);
-		currentFunctionRespMessage = new HashMap<String, ChatMessage>();
 		super.setRule(new AssistAIJobRule());
 	}
 
@@ -79,111 +103,99 @@ public class ExecuteFunctionCallJob extends Job {
 		this.presenter = presenter;
 	}
 
-	public void setFunctionCalls(List<FunctionCall> functionCalls) {
-		this.functionCalls = Objects.requireNonNull(functionCalls, "Function calls cannot be null");
+	/**
+	 * Starts a function call right away, also before the job runs. The job
+	 * waits for all calls until {@link #endOfFunctionCalls(boolean)}.
+	 */
+	public synchronized void addFunctionCall(FunctionCall functionCall) {
+		Objects.requireNonNull(functionCall, "Function call cannot be null");
+		if (ended) {
+			logger.error("Function call received after the last call: " + functionCall.name());
+			return;
+		}
+		functionCalls.add(functionCall);
+		Future<CallToolResult> future = completionService.submit(() -> callToolWithCatch(functionCall));
+		futureToCall.put(future, functionCall);
+
+		// 在 TOOL_TIMEOUT_MS 后尝试取消该 future（中断线程）
+		canceller.schedule(() -> {
+			if (!future.isDone()) {
+				future.cancel(true);
+				logger.info("Cancelled future (timeout requested) for: " + functionCall.name());
+			}
+		}, TOOL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
 	}
 
-	@Override
-	protected IStatus run(IProgressMonitor monitor) {
-		if (functionCalls == null || functionCalls.isEmpty()) {
-			return Status.error("No function calls to execute");
+	/**
+	 * Signals that no more calls will be added.
+	 *
+	 * @param sendResults whether the results are sent to the LLM once all calls
+	 *                    finished; if not, the running calls are cancelled
+	 */
+	public synchronized void endOfFunctionCalls(boolean sendResults) {
+		if (ended) {
+			return;
+		}
+		ended = true;
+		if (!sendResults) {
+			cancelCalls();
 		}
+		finishedCalls.add(END_OF_CALLS);
+	}
 
-		logger.info("Executing " + functionCalls.size() + " function calls in parallel...");
+	/**
+	 * Cancels the running calls and stops the executors, as the job might never
+	 * run if it is cancelled before it started.
+	 */
+	private synchronized void cancelCalls() {
+		sendResults = false;
+		futureToCall.keySet().forEach(future -> future.cancel(true));
+		executor.shutdown();
+		canceller.shutdownNow();
+	}
 
-		final int poolSize = Math.min(functionCalls.size(), MAX_CONCURRENT_THREADS);
-		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
-		ScheduledExecutorService canceller = new ScheduledThreadPoolExecutor(1);
-		ExecutorCompletionService<CallToolResult> completionService = new ExecutorCompletionService<>(executor);
+	@Override
+	protected void canceling() {
+		endOfFunctionCalls(false);
+		// also if the calls had already ended with their results to be sent
+		cancelCalls();
+	}
 
-		// 保存 Future -> FunctionCall 映射，便于从完成的 Future 找到对应的 FunctionCall
-		Map<Future<CallToolResult>, FunctionCall> futureToCall = new ConcurrentHashMap<>();
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		// messages of every finished call, added to the conversation once all calls finished
+		Map<FunctionCall, List<ChatMessage>> results = new IdentityHashMap<>();
+		boolean interrupted = false;
 
 		try {
-			// 提交所有任务
-			for (FunctionCall fc : functionCalls) {
-				Callable<CallToolResult> task = () -> {
-					return callToolWithCatch(fc);
-				};
-				Future<CallToolResult> future = completionService.submit(task);
-				futureToCall.put(future, fc);
-
-				// 在 TOOL_TIMEOUT_MS 后尝试取消该 future（中断线程）
-				canceller.schedule(() -> {
-					if (!future.isDone()) {
-						future.cancel(true);
-						logger.info("Cancelled future (timeout requested) for: " + fc.name());
-					}
-				}, TOOL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-			}
-
-			// 等待并处理每个完成的任务（无论成功/失败/取消）
-			int remaining = functionCalls.size();
-			while (remaining > 0) {
+			// 等待并处理每个完成的任务（无论成功/失败/取消），直到最后一个调用
+			boolean lastCallReceived = false;
+			int finished = 0;
+			while (!lastCallReceived || finished < functionCalls.size()) {
 				Future<CallToolResult> completedFuture;
 				try {
-					completedFuture = completionService.take(); // 阻塞直到任一任务完成或被取消
+					completedFuture = finishedCalls.take(); // 阻塞直到任一任务完成或被取消
 				} catch (InterruptedException e) {
 					Thread.currentThread().interrupt();
 					logger.error("Job interrupted while waiting for task completion", e);
+					interrupted = true;
 					break;
 				}
+				if (completedFuture == END_OF_CALLS) {
+					lastCallReceived = true;
+					continue;
+				}
+				finished++;
 
-				FunctionCall finishedCall = futureToCall.remove(completedFuture);
+				FunctionCall finishedCall;
+				synchronized (this) {
+					finishedCall = futureToCall.remove(completedFuture);
+				}
 				if (finishedCall == null) {
 					// 不太可能发生，但防御性处理
-					remaining--;
 					continue;
 				}
-
-				try {
-					if (completedFuture.isCancelled()) {
-						// 视为超时/被取消
-						logger.info("Function call cancelled/timed out: " + finishedCall.name());
-						List<McpSchema.Content> errorContent = List
-								.of(new McpSchema.TextContent("Timeout after " + TOOL_TIMEOUT_MS + " ms"));
-						CallToolResult timeoutResult = new CallToolResult(errorContent, true);
-
-						handleFunctionResult(finishedCall, timeoutResult);
-					} else {
-						// get() 不会阻塞太久，因为这是已经完成的 future
-						CallToolResult result = completedFuture.get();
-						if (result == null) {
-							// 防御性：若返回 null，构造错误结果
-							List<McpSchema.Content> nullContext = List
-									.of(new McpSchema.TextContent("Tool returned null result"));
-							CallToolResult nullResult = new CallToolResult(nullContext, true);
-
-							handleFunctionResult(finishedCall, nullResult);
-						} else {
-							handleFunctionResult(finishedCall, result);
-						}
-					}
-				} catch (CancellationException ce) {
-					logger.info("Function call cancelled (CancellationException): " + finishedCall.name());
-
-					List<McpSchema.Content> timeContext = List
-							.of(new McpSchema.TextContent("Timeout after " + TOOL_TIMEOUT_MS + " ms"));
-					CallToolResult timeoutResult = new CallToolResult(timeContext, true);
-					handleFunctionResult(finishedCall, timeoutResult);
-				} catch (ExecutionException ee) {
-					Throwable cause = ee.getCause() == null ? ee : ee.getCause();
-					logger.error("ExecutionException for function call: " + finishedCall.name(), cause);
-					List<McpSchema.Content> errorContext = List
-							.of(new McpSchema.TextContent("Execution error: " + cause.getMessage()));
-					CallToolResult errorResult = new CallToolResult(errorContext, true);
-					handleFunctionResult(finishedCall, errorResult);
-				} catch (InterruptedException ie) {
-					Thread.currentThread().interrupt();
-					logger.error("Interrupted while retrieving result for: " + finishedCall.name(), ie);
-
-					List<McpSchema.Content> errorContext = List
-							.of(new McpSchema.TextContent("Interrupted while waiting for result"));
-					CallToolResult errorResult = new CallToolResult(errorContext, true);
-					handleFunctionResult(finishedCall, errorResult);
-				} finally {
-					remaining--;
-				}
+				handleFunctionResult(results, finishedCall, resultOf(completedFuture, finishedCall));
 			}
 
 		} finally {
@@ -198,11 +210,62 @@ public class ExecuteFunctionCallJob extends Job {
 			} catch (Exception ex) {
 				logger.error("Error shutting down executor", ex);
 			}
+			// calls left without a response, e.g. when the job was interrupted
+			currentFunctionRespMessage.values().forEach(presenter::endFunctionCallMessage);
+			currentFunctionRespMessage.clear();
 		}
 
+		if (interrupted || !sendResults || monitor.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		}
+		// all results go to the LLM in a single follow-up request
+		var messages = new ArrayList<ChatMessage>();
+		for (FunctionCall functionCall : functionCalls) {
+			messages.addAll(results.getOrDefault(functionCall, List.of()));
+		}
+		if (!messages.isEmpty()) {
+			conversation.addAll(messages);
+			scheduleConversationSending();
+		}
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * The result of a finished call; timeouts and failures become error results.
+	 */
+	private CallToolResult resultOf(Future<CallToolResult> completedFuture, FunctionCall finishedCall) {
+		try {
+			if (completedFuture.isCancelled()) {
+				// 视为超时/被取消
+				logger.info("Function call cancelled/timed out: " + finishedCall.name());
+				return errorResult("Timeout after " + TOOL_TIMEOUT_MS + " ms");
+			}
+			// get() 不会阻塞，因为这是已经完成的 future
+			CallToolResult result = completedFuture.get();
+			if (result == null) {
+				// 防御性：若返回 null，构造错误结果
+				return errorResult("Tool returned null result");
+			}
+			return result;
+		} catch (CancellationException ce) {
+			logger.info("Function call cancelled (CancellationException): " + finishedCall.name());
+			return errorResult("Timeout after " + TOOL_TIMEOUT_MS + " ms");
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause() == null ? ee : ee.getCause();
+			logger.error("ExecutionException for function call: " + finishedCall.name(), cause);
+			return errorResult("Execution error: " + cause.getMessage());
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			logger.error("Interrupted while retrieving result for: " + finishedCall.name(), ie);
+			return errorResult("Interrupted while waiting for result");
+		}
+	}
+
+	private static CallToolResult errorResult(String message) {
+		List<McpSchema.Content> errorContent = List.of(new McpSchema.TextContent(message));
+		return new CallToolResult(errorContent, true);
+	}
+
 	/**
 	 * 真正执行工具调用的逻辑（封装异常为 CallToolResult 使用 builder）
 	 */
@@ -220,20 +283,22 @@ public class ExecuteFunctionCallJob extends Job {
 		String clientName = clientToolName.substring(0, separatorIndex);
 		String toolName = clientToolName.substring(separatorIndex + CLIENT_TOOL_SEPARATOR.length());
 
-		var clientOpt = mcpClientRetistry.findClient(clientName);
-		if (clientOpt.isEmpty()) {
-			List<McpSchema.Content> errorContext = List
-					.of(new McpSchema.TextContent("Tool not found: " + clientName + ":" + toolName));
-			return new CallToolResult(errorContext, true);
-		}
-
 		try {
 			CallToolRequest request = new CallToolRequest(toolName, functionCall.arguments());
-			// 这里假设 callTool 是阻塞调用并返回 CallToolResult（你的现有代码亦是如此）
-			CallToolResult result = clientOpt.get().callTool(request);
-			return result;
+			// built-in tools run directly in this thread, the others block on their MCP client
+			var result = mcpClientRetistry.callTool(clientName, request);
+			if (result.isEmpty()) {
+				List<McpSchema.Content> errorContext = List
+						.of(new McpSchema.TextContent("Tool not found: " + clientName + ":" + toolName));
+				return new CallToolResult(errorContext, true);
+			}
+			return result.get();
 		} catch (Throwable t) {
 			logger.error("Tool execution exception for " + clientToolName + ": " + t.getMessage(), t);
+			if (!(t instanceof McpError) && !Thread.currentThread().isInterrupted()) {
+				// neither an error response nor our timeout: the connection to the server may be broken
+				mcpClientRetistry.reportFailure(clientName, t);
+			}
 
 			List<McpSchema.Content> errorContext = List
 					.of(new McpSchema.TextContent("Execution error: " + t.getMessage()));
@@ -241,7 +306,12 @@ public class ExecuteFunctionCallJob extends Job {
 		}
 	}
 
-	private void handleFunctionResult(FunctionCall functionCall, CallToolResult result) {
+	/**
+	 * Shows the result of a finished call in the view and collects the
+	 * messages to add to the conversation once all calls are finished.
+	 */
+	private void handleFunctionResult(Map<FunctionCall, List<ChatMessage>> results, FunctionCall functionCall,
+			CallToolResult result) {
 		try {
 			logger.info("Finished function call " + functionCall.name() + " -> "
 					+ (Boolean.TRUE.equals(result.isError()) ? "error" : "success"));
@@ -249,13 +319,10 @@ public class ExecuteFunctionCallJob extends Job {
 			// 1. assistant 消息（表明调用了 function）
 			ChatMessage assistantMessage = new ChatMessage(UUID.randomUUID().toString(), "assistant");
 			assistantMessage.setFunctionCall(functionCall);
-			conversation.add(assistantMessage);
 
 			// 2. result 消息（返回给 AI）
 			ChatMessage resultMessage = createFunctionResultMessage(functionCall, result);
-			conversation.add(resultMessage);
-			// 3. 发回 LLM
-			scheduleConversationSending();
+			results.put(functionCall, List.of(assistantMessage, resultMessage));
 
 		} catch (Exception e) {
 			logger.error("Error handling function result: " + e.getMessage(), e);
@@ -298,21 +365,23 @@ public class ExecuteFunctionCallJob extends Job {
 	}
 
 	private void handleFunctionCall(FunctionCall functionCall) {
-		System.out.println("工具显示：" + functionCall.id());
 		ChatMessage message = presenter.beginFunctionCallMessage();
 		message.setContent("function_call " + JsonUtils.toJsonString(functionCall));
 		presenter.updateMessageFromAssistant(message);
-		currentFunctionRespMessage.put(functionCall.id(), message);
+		if (functionCall.id() != null) {
+			currentFunctionRespMessage.put(functionCall.id(), message);
+		} else {
+			// no response can be matched to it
+			presenter.endFunctionCallMessage(message);
+		}
 	}
 
 	private void handleFunctionResp(FunctionResp functionResp) {
-		System.out.println("工具响应:" + functionResp.id());
-		if (currentFunctionRespMessage != null) {
-			ChatMessage chatMessage = currentFunctionRespMessage.get(functionResp.id());
-			if (Objects.nonNull(chatMessage)) {
-				chatMessage.setContent(chatMessage.getContent() + "\nresp:" + functionResp.resp());
-				presenter.updateMessageFromAssistant(chatMessage);
-			}
+		ChatMessage chatMessage = functionResp.id() == null ? null : currentFunctionRespMessage.remove(functionResp.id());
+		if (Objects.nonNull(chatMessage)) {
+			chatMessage.setContent(chatMessage.getContent() + "\nresp:" + functionResp.resp());
+			presenter.updateMessageFromAssistant(chatMessage);
+			presenter.endFunctionCallMessage(chatMessage);
 		}
 	}
 
@@ -8,6 +8,9 @@ import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.e4.core.di.annotations.Creatable;
 
 import com.github.gradusnikov.eclipse.assistai.chat.Conversation;
+import com.github.gradusnikov.eclipse.assistai.chat.ConversationCompactor;
+import com.github.gradusnikov.eclipse.assistai.network.clients.LanguageModelClient;
+import com.github.gradusnikov.eclipse.assistai.network.clients.LanguageModelClientConfiguration;
 import com.github.gradusnikov.eclipse.assistai.network.clients.LanguageModelHttpClientProvider;
 
 import jakarta.inject.Inject;
@@ -24,6 +27,15 @@ public class SendConversationJob extends Job
     @Inject
     private Conversation conversation;
     
+    @Inject
+    private ConversationCompactor compactor;
+    
+    @Inject
+    private LanguageModelClientConfiguration configuration;
+    
+    /** The client sending the conversation while the job runs */
+    private volatile LanguageModelClient runningClient;
+    
     public SendConversationJob()
     {
         super( AssistAIJobConstants.JOB_PREFIX + " ask ChatGPT for help");
@@ -34,13 +46,20 @@ public class SendConversationJob extends Job
 	@Override
 	protected IStatus run(IProgressMonitor progressMonitor) 
 	{
-	    var openAIClient = clientProvider.get();
-	    openAIClient.setCancelProvider(() -> progressMonitor.isCanceled()); 
-	    
-        // Get the runnable from the client
-        Runnable task = openAIClient.run(conversation);
         try
         {
+            // Fit the conversation into the context budget of the model, before
+            // the client subscribes the view, which then waits for the end of the stream
+            var model = configuration.getSelectedModel().orElseThrow( () -> new IllegalArgumentException("Model not selected") );
+            var compaction = compactor.compact( conversation, model );
+            logger.info( "Context of " + model.modelName() + ": " + compaction.breakdown() );
+            
+            var openAIClient = clientProvider.get();
+            openAIClient.setCancelProvider(() -> progressMonitor.isCanceled());
+            runningClient = openAIClient;
+            
+            // Get the runnable from the client
+            Runnable task = openAIClient.run(compaction.conversation());
         	task.run();
         }
         catch ( Exception e )
@@ -48,12 +67,30 @@ public class SendConversationJob extends Job
         	logger.error(e.getMessage(), e);
         	return Status.error( e.getMessage(), e);
         }
+        finally
+        {
+            runningClient = null;
+        }
         if ( progressMonitor.isCanceled() )
         {
         	return Status.CANCEL_STATUS;
         }
         return Status.OK_STATUS;
 	}
+	
+	/**
+	 * Tears down the running request at once, rather than when the stream
+	 * delivers its next event.
+	 */
+	@Override
+	protected void canceling()
+	{
+	    var client = runningClient;
+	    if ( client != null )
+	    {
+	        client.cancel();
+	    }
+	}
 
 
 }
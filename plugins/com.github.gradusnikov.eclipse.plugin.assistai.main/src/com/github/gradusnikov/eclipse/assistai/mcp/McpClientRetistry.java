@@ -1,11 +1,17 @@
 
 package com.github.gradusnikov.eclipse.assistai.mcp;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -16,9 +22,10 @@ import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.di.annotations.Creatable;
 import org.eclipse.e4.ui.workbench.lifecycle.PostWorkbenchClose;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.util.IPropertyChangeListener;
 
 import com.github.gradusnikov.eclipse.assistai.Activator;
-import com.github.gradusnikov.eclipse.assistai.mcp.McpClientServerFactory.InMemorySyncClientServer;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpClientServerFactory.DirectServer;
 import com.github.gradusnikov.eclipse.assistai.mcp.servers.McpServerBuiltins;
 import com.github.gradusnikov.eclipse.assistai.preferences.PreferenceConstants;
 import com.github.gradusnikov.eclipse.assistai.preferences.mcp.McpServerDescriptorUtilities;
@@ -29,23 +36,75 @@ import io.modelcontextprotocol.client.McpClient;
 import io.modelcontextprotocol.client.McpSyncClient;
 import io.modelcontextprotocol.client.transport.ServerParameters;
 import io.modelcontextprotocol.client.transport.StdioClientTransport;
-import io.modelcontextprotocol.server.McpSyncServer;
 import io.modelcontextprotocol.spec.ClientMcpTransport;
+import io.modelcontextprotocol.spec.McpSchema.CallToolRequest;
+import io.modelcontextprotocol.spec.McpSchema.CallToolResult;
 import jakarta.annotation.PostConstruct;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 
 
+/**
+ * Registry of the MCP servers, the built-in ones as well as the user-defined
+ * ones.
+ * <p>
+ * The built-in servers live in this process and are not accessed through the
+ * MCP protocol: their tools are listed from the annotations and called
+ * directly with {@link #callTool(String, CallToolRequest)}, in the calling
+ * thread. The user-defined servers are accessed through MCP clients.
+ * <p>
+ * All clients are started concurrently in the background, so {@link #init()}
+ * returns immediately. A client is published to {@link #listClients()} and
+ * to the tool catalogue as soon as it is initialized, and requests proceed with
+ * the tools of the clients that are ready. A client that fails to start, or
+ * is reported broken by {@link #reportFailure(String, Throwable)}, is
+ * restarted with an exponential backoff; the restart is attempted lazily, the
+ * next time the clients or the tools are looked up after the backoff.
+ */
 @Creatable
 @Singleton
 public class McpClientRetistry
 {
+    /** Startup state of a client */
+    public enum State
+    {
+        STARTING, READY, FAILED
+    }
+
+    /**
+     * Startup statistics of a client.
+     *
+     * @param startupMillis
+     *            duration of the last successful start, or -1 if it never
+     *            started
+     * @param attempts
+     *            start attempts since the last successful start
+     * @param lastError
+     *            the error of the last failed attempt, or {@code null}
+     */
+    public record ClientStatus( String name, State state, long startupMillis, int attempts, String lastError ) {}
+
+    private static final long          INITIALIZE_TIMEOUT_SECONDS = 30;
+
+    private static final Duration      MIN_RETRY_DELAY            = Duration.ofSeconds( 2 );
+
+    private static final Duration      MAX_RETRY_DELAY            = Duration.ofMinutes( 5 );
+
+    private static final ExecutorService STARTUP_EXECUTOR         = Executors.newCachedThreadPool( runnable -> {
+        Thread thread = new Thread( runnable, "AssistAI MCP startup" );
+        thread.setDaemon( true );
+        return thread;
+    } );
 
     private IPreferenceStore           preferenceStore;
 
-    private Map<String, McpSyncClient> clients = new HashMap<>();
+    /** The clients that are ready */
+    private final Map<String, McpSyncClient> clients = new ConcurrentHashMap<>();
 
-    private List<McpSyncServer>        servers = new ArrayList<>();
+    private final Map<String, ManagedClient> managedClients = new ConcurrentHashMap<>();
+
+    /** The built-in servers, called directly */
+    private final Map<String, DirectServer> builtInServers = new ConcurrentHashMap<>();
 
     @Inject
     private ILog                       logger;
@@ -56,24 +115,88 @@ public class McpClientRetistry
     @Inject
     private IEclipseContext            eclipseContext;
 
+    private final AtomicLong           toolCatalogVersion = new AtomicLong();
+
+    private volatile McpToolCatalog    toolCatalog;
+
+    /** Incremented on shutdown, so that clients still starting are discarded */
+    private final AtomicLong           generation = new AtomicLong();
+
+    private final IPropertyChangeListener serversChangeListener = event -> {
+        if ( PreferenceConstants.ASSISTAI_DEFINED_MCP_SERVERS.equals( event.getProperty() ) )
+        {
+            invalidateToolCatalog();
+        }
+    };
+
+    public McpClientRetistry()
+    {
+    }
+
+    /**
+     * Creates a registry without preferences and workbench, to which servers
+     * are added explicitly, e.g. by benchmarks.
+     */
+    McpClientRetistry( McpClientServerFactory factory )
+    {
+        this.factory = factory;
+    }
+
+    /**
+     * A client together with the means to (re)connect it.
+     */
+    private static class ManagedClient
+    {
+        final String                  name;
+        final Supplier<McpSyncClient> connector;
+        final long                    generation;
+
+        // guarded by this
+        State                         state = State.STARTING;
+        McpSyncClient                 client;
+        long                          startupMillis = -1;
+        int                           attempts;
+        String                        lastError;
+        long                          retryAtNanos;
+
+        ManagedClient( String name, Supplier<McpSyncClient> connector, long generation )
+        {
+            this.name = name;
+            this.connector = connector;
+            this.generation = generation;
+        }
+
+        synchronized ClientStatus status()
+        {
+            return new ClientStatus( name, state, startupMillis, attempts, lastError );
+        }
+    }
+
     /**
      * Handles the shutdown process by closing all MCP clients gracefully.
      */
     @PostWorkbenchClose
     public void handleShutdown()
     {
+        if ( Objects.nonNull( preferenceStore ) )
+        {
+            preferenceStore.removePropertyChangeListener( serversChangeListener );
+        }
+        generation.incrementAndGet();
+        managedClients.clear();
+        builtInServers.clear();
         clients.values().forEach( McpSyncClient::closeGracefully );
-        servers.forEach( McpSyncServer::closeGracefully );
     }
 
     /**
-     * Initializes the MCP clients and servers. This method is called after the
-     * construction of the object.
+     * Registers the MCP clients and servers and starts them in the
+     * background. This method is called after the construction of the object.
      */
     @PostConstruct
     public void init()
     {
         preferenceStore = Activator.getDefault().getPreferenceStore();
+        preferenceStore.addPropertyChangeListener( serversChangeListener );
 
         var stored = getStoredServers();
         var builtin = McpServerBuiltins.listBuiltInImplementations();
@@ -81,26 +204,175 @@ public class McpClientRetistry
         initializeBuiltInServers( stored, builtin );
         initializeUserDefinedServers( stored );
 
-        clients.entrySet().stream().forEach( this::gracefullyInitialize );
+        managedClients.values().forEach( this::start );
     }
-    
-    private void gracefullyInitialize( Map.Entry<String, McpSyncClient> client )
+
+    private void register( String name, Supplier<McpSyncClient> connector )
+    {
+        managedClients.put( name, new ManagedClient( name, connector, generation.get() ) );
+    }
+
+    /**
+     * Connects and initializes a client in the background, and publishes it
+     * once it is ready.
+     */
+    private void start( ManagedClient managed )
     {
-        try
+        synchronized ( managed )
         {
-            logger.info( "Initializing MCP client: " + client.getKey()  );
-            CompletableFuture.supplyAsync( () -> client.getValue().initialize() )
-                             .get( 3, TimeUnit.SECONDS );
-            logger.info( "Sucessfully initialized MCP client: " + client.getKey()  );
+            managed.state = State.STARTING;
+            managed.attempts++;
+        }
+        STARTUP_EXECUTOR.execute( () -> {
+            long start = System.nanoTime();
+            McpSyncClient client = null;
+            try
+            {
+                logger.info( "Initializing MCP client: " + managed.name );
+                client = managed.connector.get();
+                CompletableFuture.runAsync( client::initialize, STARTUP_EXECUTOR )
+                                 .get( INITIALIZE_TIMEOUT_SECONDS, TimeUnit.SECONDS );
+                long startupMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+                if ( managed.generation != generation.get() )
+                {
+                    // the registry has been shut down meanwhile
+                    client.closeGracefully();
+                    return;
+                }
+                synchronized ( managed )
+                {
+                    managed.state = State.READY;
+                    managed.client = client;
+                    managed.startupMillis = startupMillis;
+                    managed.attempts = 0;
+                    managed.lastError = null;
+                }
+                clients.put( managed.name, client );
+                invalidateToolCatalog();
+                logger.info( "Sucessfully initialized MCP client: " + managed.name + " in " + startupMillis + " ms" );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                fail( managed, client, e );
+            }
+            catch ( Exception e )
+            {
+                fail( managed, client, e instanceof ExecutionException ? e.getCause() : e );
+            }
+        } );
+    }
+
+    private void fail( ManagedClient managed, McpSyncClient client, Throwable error )
+    {
+        Duration delay;
+        synchronized ( managed )
+        {
+            if ( managed.state == State.FAILED )
+            {
+                return;
+            }
+            managed.state = State.FAILED;
+            managed.client = null;
+            managed.lastError = error instanceof TimeoutException
+                    ? "Timeout after " + INITIALIZE_TIMEOUT_SECONDS + " s"
+                    : String.valueOf( error.getMessage() );
+            int exponent = Math.min( Math.max( managed.attempts - 1, 0 ), 16 );
+            delay = MIN_RETRY_DELAY.multipliedBy( 1L << exponent );
+            if ( delay.compareTo( MAX_RETRY_DELAY ) > 0 )
+            {
+                delay = MAX_RETRY_DELAY;
+            }
+            managed.retryAtNanos = System.nanoTime() + delay.toNanos();
         }
-        catch ( InterruptedException | ExecutionException | TimeoutException e )
+        if ( Objects.nonNull( client ) )
         {
-            logger.error( "Failed to initialize MCP client: " + client.getKey()  );
+            if ( clients.remove( managed.name, client ) )
+            {
+                invalidateToolCatalog();
+            }
+            try
+            {
+                client.close();
+            }
+            catch ( Exception e )
+            {
+                // the client is broken anyway
+            }
         }
+        logger.error( "Failed to initialize MCP client: " + managed.name + " (" + managed.lastError + "), retrying in "
+                + delay.toSeconds() + " s" );
     }
-    
+
     /**
-     * Initializes built-in MCP servers.
+     * Restarts the failed clients whose backoff has elapsed.
+     */
+    private void retryFailedClients()
+    {
+        long now = System.nanoTime();
+        for ( ManagedClient managed : managedClients.values() )
+        {
+            boolean due;
+            synchronized ( managed )
+            {
+                due = managed.state == State.FAILED && now - managed.retryAtNanos >= 0;
+                if ( due )
+                {
+                    // claim the retry before releasing the lock
+                    managed.state = State.STARTING;
+                }
+            }
+            if ( due )
+            {
+                start( managed );
+            }
+        }
+    }
+
+    /**
+     * Reports that a ready client is broken, e.g. because its server process
+     * died. The client is closed and reconnected after a backoff.
+     *
+     * @param clientName
+     *            The name of the client.
+     * @param error
+     *            The error observed when using the client.
+     */
+    public void reportFailure( String clientName, Throwable error )
+    {
+        ManagedClient managed = managedClients.get( clientName );
+        if ( Objects.isNull( managed ) )
+        {
+            return;
+        }
+        McpSyncClient client;
+        synchronized ( managed )
+        {
+            client = managed.client;
+            if ( managed.state != State.READY )
+            {
+                return;
+            }
+            managed.attempts = 1;
+        }
+        fail( managed, client, error );
+    }
+
+    /**
+     * @return the startup state and latency of every client, by name
+     */
+    public List<ClientStatus> getClientStatus()
+    {
+        return managedClients.values()
+                             .stream()
+                             .map( ManagedClient::status )
+                             .sorted( Comparator.comparing( ClientStatus::name ) )
+                             .toList();
+    }
+
+    /**
+     * Initializes built-in MCP servers. They are ready immediately, no client
+     * has to be started.
      *
      * @param stored
      *            List of stored server descriptors.
@@ -122,9 +394,7 @@ public class McpClientRetistry
                 var implementation = ContextInjectionFactory.make( clazz, eclipseContext );
                 Objects.requireNonNull( implementation, "No actual object of class " + clazz + " found!" );
 
-                InMemorySyncClientServer  clientServerPair = factory.creteInMemorySyncClientServer( implementation );
-                addClient( updated.name(), clientServerPair.client() );
-                servers.add( clientServerPair.server() );
+                builtInServers.put( updated.name(), factory.createDirectServer( implementation ) );
             }
         }
     }
@@ -144,32 +414,39 @@ public class McpClientRetistry
     
         for (var userMcp : userDefined)
         {
-            // Replace variables in the command string
-            String resolvedCommand = EclipseVariableUtilities.resolveEclipseVariables(userMcp.command());
-            
-            var commandParts = parseCommand(resolvedCommand);
-    
-            String executable = commandParts.get(0);
-            String[] args = commandParts.subList(1, commandParts.size()).toArray(new String[0]);
-    
-            // Also resolve variables in environment variables
-            Map<String, String> resolvedEnvVars = userMcp.environmentVariables().stream()
-                    .collect(Collectors.toMap(
-                        McpServerDescriptor.EnvironmentVariable::name,
-                        ev -> EclipseVariableUtilities.resolveEclipseVariables(ev.value())
-                    ));
-    
-            ServerParameters stdioParameters = ServerParameters.builder(executable)
-                    .args(args)
-                    .env(resolvedEnvVars)
-                    .build();
-    
-            ClientMcpTransport mcpTransport = new StdioClientTransport(stdioParameters);
-            McpSyncClient client = McpClient.sync(mcpTransport).build();
-            addClient(userMcp.name(), client);
+            // the server process is spawned when the client connects, in the background
+            register(userMcp.name(), () -> connectStdio(userMcp));
         }
     }
 
+    private McpSyncClient connectStdio(McpServerDescriptor userMcp)
+    {
+        // Replace variables in the command string
+        String resolvedCommand = EclipseVariableUtilities.resolveEclipseVariables(userMcp.command());
+        
+        var commandParts = parseCommand(resolvedCommand);
+
+        String executable = commandParts.get(0);
+        String[] args = commandParts.subList(1, commandParts.size()).toArray(new String[0]);
+
+        // Also resolve variables in environment variables
+        Map<String, String> resolvedEnvVars = userMcp.environmentVariables().stream()
+                .collect(Collectors.toMap(
+                    McpServerDescriptor.EnvironmentVariable::name,
+                    ev -> EclipseVariableUtilities.resolveEclipseVariables(ev.value())
+                ));
+
+        ServerParameters stdioParameters = ServerParameters.builder(executable)
+                .args(args)
+                .env(resolvedEnvVars)
+                .build();
+
+        ClientMcpTransport mcpTransport = new StdioClientTransport(stdioParameters);
+        return McpClient.sync(mcpTransport)
+                        .toolsChangeConsumer(tools -> invalidateToolCatalog())
+                        .build();
+    }
+
     
 
     /**
@@ -215,12 +492,13 @@ public class McpClientRetistry
     }
 
     /**
-     * Lists all registered MCP clients.
+     * Lists the MCP clients that are ready.
      *
      * @return A map of client names to MCP sync clients.
      */
     public Map<String, McpSyncClient> listClients()
     {
+        retryFailedClients();
         return clients;
     }
     
@@ -244,14 +522,124 @@ public class McpClientRetistry
      */
     public Optional<McpSyncClient> findClient( String clientName )
     {
+        retryFailedClients();
         return Optional.ofNullable( clients.get( clientName ) );
     }
 
+    /**
+     * Adds a built-in server, called directly.
+     *
+     * @param name
+     *            The name of the server.
+     * @param implementation
+     *            The object whose annotated methods are the tools.
+     */
+    void addBuiltInServer( String name, Object implementation )
+    {
+        builtInServers.put( name, factory.createDirectServer( implementation ) );
+    }
+
+    /**
+     * @param name
+     *            The name of the server.
+     * @return {@code true} if the server is a built-in server that is running
+     */
+    public boolean hasBuiltInServer( String name )
+    {
+        return builtInServers.containsKey( name );
+    }
+
+    /**
+     * Calls a tool. Tools of the built-in servers are invoked directly in the
+     * calling thread, the tools of the other servers through their MCP client.
+     *
+     * @param clientName
+     *            The name of the server.
+     * @param request
+     *            The tool call.
+     * @return the result of the call, or an empty optional if no such server is
+     *         ready
+     */
+    public Optional<CallToolResult> callTool( String clientName, CallToolRequest request )
+    {
+        DirectServer builtIn = builtInServers.get( clientName );
+        if ( Objects.nonNull( builtIn ) )
+        {
+            return Optional.of( factory.callTool( builtIn, request.name(), request.arguments() ) );
+        }
+        return findClient( clientName ).map( client -> client.callTool( request ) );
+    }
+
+    /**
+     * Returns the tools of all enabled servers that are ready. The catalogue is
+     * built on first use and kept until the servers are restarted, a client
+     * becomes ready or fails, the server definitions change, or a server
+     * reports that its tools changed.
+     *
+     * @return the current tool catalogue
+     */
+    public McpToolCatalog getToolCatalog()
+    {
+        retryFailedClients();
+        McpToolCatalog catalog = toolCatalog;
+        long version = toolCatalogVersion.get();
+        if ( Objects.nonNull( catalog ) && catalog.getVersion() == version )
+        {
+            return catalog;
+        }
+        synchronized ( this )
+        {
+            version = toolCatalogVersion.get();
+            catalog = toolCatalog;
+            if ( Objects.nonNull( catalog ) && catalog.getVersion() == version )
+            {
+                return catalog;
+            }
+            var entries = new ArrayList<McpToolCatalog.Entry>();
+            boolean complete = true;
+            // built-in and external servers, ordered by name
+            var servers = new TreeMap<String, Object>( listEnabledveClients() );
+            builtInServers.forEach( servers::put );
+            for ( var server : servers.entrySet() )
+            {
+                try
+                {
+                    var tools = server.getValue() instanceof DirectServer builtIn
+                            ? builtIn.tools()
+                            : ( (McpSyncClient) server.getValue() ).listTools().tools();
+                    tools.forEach( tool -> entries.add( new McpToolCatalog.Entry( server.getKey(), tool ) ) );
+                }
+                catch ( Exception e )
+                {
+                    complete = false;
+                    logger.error( "Failed to list tools of MCP client: " + server.getKey(), e );
+                }
+            }
+            catalog = new McpToolCatalog( version, entries );
+            // do not keep a partial catalogue, the failing client may recover
+            if ( complete && version == toolCatalogVersion.get() )
+            {
+                toolCatalog = catalog;
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * Discards the cached tool catalogue. The next call to
+     * {@link #getToolCatalog()} lists the tools again.
+     */
+    public void invalidateToolCatalog()
+    {
+        toolCatalogVersion.incrementAndGet();
+        toolCatalog = null;
+    }
+
     public void restart()
     {
+        invalidateToolCatalog();
         handleShutdown();
         clients.clear();
-        servers.clear();
         init();
     }
 
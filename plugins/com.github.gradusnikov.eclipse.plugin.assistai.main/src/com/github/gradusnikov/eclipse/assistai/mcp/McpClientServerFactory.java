@@ -13,6 +13,8 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.gradusnikov.eclipse.assistai.mcp.InMemoryTransport.TransportPair;
 
@@ -48,12 +50,21 @@ public class McpClientServerFactory
     /** Jackson object mapper for JSON serialization and deserialization */
     ObjectMapper objectMapper = new ObjectMapper();
     
+    /** Jackson object mapper for the element schemas of array parameters */
+    private static final ObjectMapper SCHEMA_MAPPER = new ObjectMapper();
+    
     /**
      * Record representing a synchronized MCP client-server pair that communicate
      * through an in-memory transport.
      */
     public record InMemorySyncClientServer( McpSyncClient client, McpSyncServer server ) {};
     
+    /**
+     * Record representing a built-in server whose tools are invoked directly,
+     * without an MCP transport in between.
+     */
+    public record DirectServer( McpSchema.Implementation info, ToolExecutor executor, List<McpSchema.Tool> tools ) {};
+    
     /**
      * Creates a synchronized MCP client-server pair that communicate through an
      * in-memory transport. The server implementation must be annotated with
@@ -90,6 +101,52 @@ public class McpClientServerFactory
         
     }
 
+    /**
+     * Creates a built-in server that is called in-process. Tool calls are
+     * dispatched straight to the annotated methods in the calling thread: no
+     * JSON-RPC messages, transport threads or thread handoffs are involved.
+     * 
+     * @param serverImplementation An object whose class is annotated with {@link com.github.gradusnikov.eclipse.assistai.mcp.McpServer}
+     *                            and contains methods annotated with {@link com.github.gradusnikov.eclipse.assistai.mcp.Tool}
+     * @return the server, see {@link #callTool(DirectServer, String, Map)}
+     * @throws IllegalArgumentException If the serverImplementation is not annotated with {@link com.github.gradusnikov.eclipse.assistai.mcp.McpServer}
+     */
+    public DirectServer createDirectServer( Object serverImplementation )
+    {
+        McpSchema.Implementation info = createImplementationInfo( serverImplementation );
+        ToolExecutor executor = new ToolExecutor( serverImplementation );
+        List<McpSchema.Tool> tools = extractAnnotatedTools( executor.getFunctions() );
+        
+        if ( tools.isEmpty() )
+        {
+            logger.warn( "No tools found in " + serverImplementation.getClass() );
+        }
+        return new DirectServer( info, executor, List.copyOf( tools ) );
+    }
+    
+    /**
+     * Calls a tool of a built-in server in the calling thread. The result is
+     * the same as the one of a call through the MCP transport.
+     * 
+     * @param server the server
+     * @param toolName the name of the tool
+     * @param args the arguments of the call
+     * @return the result of the call
+     */
+    public CallToolResult callTool( DirectServer server, String toolName, Map<String, Object> args )
+    {
+        try
+        {
+            var result = server.executor().invoke( toolName, Optional.ofNullable( args ).orElse( Map.of() ) );
+            return createTextCallToolResult( result );
+        }
+        catch ( Exception e )
+        {
+            logger.error( e.getMessage(), e );
+            return createErrorResult( e );
+        }
+    }
+
     private McpSchema.Implementation createImplementationInfo( Object serverImplementation )
     {
         var mcpServerAnnotation = Optional.ofNullable( serverImplementation.getClass().getAnnotation( com.github.gradusnikov.eclipse.assistai.mcp.McpServer.class ) )
@@ -232,10 +289,14 @@ public class McpClientServerFactory
                     if ( toolParamAnnotation != null )
                     {
                         String name = ToolExecutor.toParamName( param ); 
-                        properties.put( name, 
-                                        Map.of("type",        toolParamAnnotation.type(),
-                                               "description", toolParamAnnotation.description() ) 
-                                        );
+                        var property = new LinkedHashMap<String, Object>();
+                        property.put( "type",        toolParamAnnotation.type() );
+                        property.put( "description", toolParamAnnotation.description() );
+                        if ( !toolParamAnnotation.items().isBlank() )
+                        {
+                            property.put( "items", parseSchema( toolParamAnnotation.items() ) );
+                        }
+                        properties.put( name, property );
                         if ( toolParamAnnotation.required() )
                         {
                             required.add( name );
@@ -249,4 +310,16 @@ public class McpClientServerFactory
         }
         return tools;
     }
+
+    private static Map<String, Object> parseSchema( String json )
+    {
+        try
+        {
+            return SCHEMA_MAPPER.readValue( json, new TypeReference<Map<String, Object>>() {} );
+        }
+        catch ( JsonProcessingException e )
+        {
+            throw new IllegalArgumentException( "Invalid JSON schema: " + json, e );
+        }
+    }
 }
@@ -12,7 +12,7 @@ public record McpServerDescriptor( String uid,
                                    boolean enabled, 
                                    boolean builtIn )
 {
-    public enum Status {NOT_CONNECTED, RUNNING, FAILED};
+    public enum Status {NOT_CONNECTED, STARTING, RUNNING, FAILED};
     public record EnvironmentVariable( String name, String value ) {};
     
     public record McpServerDescriptorWithStatus ( McpServerDescriptor descriptor, Status status ) {}; 
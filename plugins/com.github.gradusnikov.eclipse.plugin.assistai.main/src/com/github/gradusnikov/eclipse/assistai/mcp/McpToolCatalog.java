@@ -0,0 +1,116 @@
+package com.github.gradusnikov.eclipse.assistai.mcp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+/**
+ * Immutable snapshot of the tools offered by the enabled MCP clients.
+ * <p>
+ * The catalogue is built once by the {@link McpClientRetistry} and replaced
+ * when the set of servers or their tools change. Every API family converts
+ * the tools into its own schema exactly once per catalogue: the converted
+ * JSON array is kept as a {@link RawValue}, which Jackson writes verbatim
+ * when the request body is serialized.
+ */
+public final class McpToolCatalog
+{
+    /** Separator between the client name and the tool name in the qualified tool name */
+    public static final String NAME_SEPARATOR = "__";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * A tool together with the name of the MCP client that provides it.
+     */
+    public record Entry( String clientName, McpSchema.Tool tool )
+    {
+        /**
+         * @return the tool name prefixed with the client name, as exposed to the model
+         */
+        public String qualifiedName()
+        {
+            return clientName + NAME_SEPARATOR + tool.name();
+        }
+    }
+
+    private final long version;
+
+    private final List<Entry> entries;
+
+    private final Map<String, RawValue> fragments = new ConcurrentHashMap<>();
+
+    McpToolCatalog( long version, List<Entry> entries )
+    {
+        this.version = version;
+        this.entries = List.copyOf( entries );
+    }
+
+    /**
+     * @return the version of the registry state this catalogue was built from
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return the tools, ordered by client name
+     */
+    public List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+    public boolean isEmpty()
+    {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Returns the tools converted to the schema of an API family as a
+     * pre-serialized JSON array. The conversion runs only on the first call
+     * for a given dialect.
+     *
+     * @param dialect
+     *            a key identifying the target schema, e.g. {@code "anthropic"}
+     * @param converter
+     *            converts a single tool to a JSON-serializable object; tools for
+     *            which it returns {@code null} are omitted
+     * @return the JSON array of the converted tools
+     */
+    public RawValue fragment( String dialect, Function<Entry, ?> converter )
+    {
+        return fragments.computeIfAbsent( dialect, key -> serialize( converter ) );
+    }
+
+    private RawValue serialize( Function<Entry, ?> converter )
+    {
+        var converted = new ArrayList<Object>( entries.size() );
+        for ( Entry entry : entries )
+        {
+            Object value = converter.apply( entry );
+            if ( Objects.nonNull( value ) )
+            {
+                converted.add( value );
+            }
+        }
+        try
+        {
+            return new RawValue( OBJECT_MAPPER.writeValueAsString( converted ) );
+        }
+        catch ( JsonProcessingException e )
+        {
+            throw new IllegalStateException( "Cannot serialize MCP tool catalogue", e );
+        }
+    }
+}
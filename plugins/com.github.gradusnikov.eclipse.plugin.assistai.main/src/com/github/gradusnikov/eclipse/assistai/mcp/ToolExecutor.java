@@ -1,85 +1,286 @@
 package com.github.gradusnikov.eclipse.assistai.mcp;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
+import com.github.gradusnikov.eclipse.assistai.tools.JsonUtils;
+
+/**
+ * Invokes the {@link Tool} annotated methods of an object by tool name.
+ * <p>
+ * The annotations are read once, when the executor is created: every tool is
+ * compiled into an invoker made of a {@link MethodHandle} and one binder per
+ * parameter, so a call is a map lookup, the binding of the arguments and a
+ * direct invocation of the handle. The binders convert the JSON values of the
+ * arguments to the declared parameter types, e.g. a JSON number to an
+ * {@code Integer} or a string {@code "true"} to a {@code Boolean}.
+ */
 public class ToolExecutor
 {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType( Object.class, Object[].class );
+
     Object functions;
-    
+
+    private final Method[] methods;
+
+    private final Map<String, Invoker> invokers;
+
+    /**
+     * A precompiled tool: the handle is bound to the target object and takes
+     * the arguments as an array.
+     */
+    private record Invoker( Method method, MethodHandle handle, String[] parameterNames, Binder[] binders )
+    {
+        Object[] bind( Map<String, Object> args )
+        {
+            var values = new Object[binders.length];
+            for ( int i = 0; i < binders.length; i++ )
+            {
+                values[i] = binders[i].apply( args.get( parameterNames[i] ) );
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Converts the JSON value of an argument to the type of its parameter.
+     */
+    private interface Binder extends Function<Object, Object>
+    {
+    }
+
     public ToolExecutor( Object functions )
     {
         this.functions = functions;
+        this.methods = Arrays.stream( functions.getClass().getDeclaredMethods() )
+                .filter( method -> Objects.nonNull( method.getAnnotation( com.github.gradusnikov.eclipse.assistai.mcp.Tool.class ) ) )
+                .toArray( Method[]::new );
+        var table = new LinkedHashMap<String, Invoker>();
+        for ( Method method : methods )
+        {
+            table.putIfAbsent( toFunctionName( method ), compile( method ) );
+        }
+        this.invokers = Map.copyOf( table );
     }
-    
+
     /**
      * Retrieves an array of {@link Method}s that are declared as a function_call
      * callback with the {@link Tool} annotation.
-     * 
+     *
      * @return
      */
     public Method[] getFunctions()
     {
-        return Arrays.stream( functions.getClass().getDeclaredMethods() )
-                .filter( method -> Objects.nonNull( method.getAnnotation( com.github.gradusnikov.eclipse.assistai.mcp.Tool.class ) ) )
-                .toArray( Method[]::new );
+        return methods.clone();
     }
-    
-    
+
+
 
     public CompletableFuture<Object> call( String name, Map<String, Object> args )
     {
-        Method method = getFunctionCallbackByName( name ).orElseThrow( () -> new RuntimeException("Tool " + name + " not found!" ) ); 
-        method.getAnnotationsByType( com.github.gradusnikov.eclipse.assistai.mcp.ToolParam.class );
-        Object[] argValues = mapArguments( method, args );
-        CompletableFuture<Object> future = CompletableFuture.supplyAsync( () -> invokeMethod( method, argValues ) );
+        Invoker invoker = findInvoker( name );
+        Object[] argValues = invoker.bind( args );
+        CompletableFuture<Object> future = CompletableFuture.supplyAsync( () -> invokeMethod( invoker, argValues ) );
         return future;
     }
-    private Object invokeMethod( Method method, Object[] args )
+
+    /**
+     * Invokes a tool in the calling thread.
+     *
+     * @param name the name of the tool
+     * @param args the arguments by parameter name
+     * @return the value returned by the tool
+     */
+    public Object invoke( String name, Map<String, Object> args )
+    {
+        Invoker invoker = findInvoker( name );
+        return invokeMethod( invoker, invoker.bind( args ) );
+    }
+
+    private Invoker findInvoker( String name )
+    {
+        Invoker invoker = invokers.get( name );
+        if ( Objects.isNull( invoker ) )
+        {
+            throw new RuntimeException("Tool " + name + " not found!" );
+        }
+        return invoker;
+    }
+
+    private Object invokeMethod( Invoker invoker, Object[] args )
     {
         try
         {
-            return method.invoke( functions, args );
+            return (Object) invoker.handle().invokeExact( args );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            throw e;
         }
-        catch ( IllegalAccessException | IllegalArgumentException | InvocationTargetException e )
+        catch ( Throwable e )
         {
             throw new RuntimeException( e );
         }
-        
     }
-    
+
     public CompletableFuture<Object> call( String name, String[] args )
     {
         return call( name, toMap(args) );
     }
-    
+
     /**
      * Creates an array of parameter values as declared by the callback {@link Method}
-     * 
+     *
      * @param method
      * @param argMap
      * @return
      */
     public Object[] mapArguments( Method method, Map<String, Object> argMap )
     {
+        Invoker invoker = invokers.get( toFunctionName( method ) );
+        if ( Objects.nonNull( invoker ) && invoker.method().equals( method ) )
+        {
+            return invoker.bind( argMap );
+        }
         return Arrays.stream( method.getParameters() )
                     .map( ToolExecutor::toParamName )
                     .map( argMap::get )
                     .toArray();
-        
+    }
+
+    /**
+     * Compiles a tool method into an invoker.
+     */
+    private Invoker compile( Method method )
+    {
+        Parameter[] parameters = method.getParameters();
+        var names = new String[parameters.length];
+        var binders = new Binder[parameters.length];
+        for ( int i = 0; i < parameters.length; i++ )
+        {
+            names[i] = toParamName( parameters[i] );
+            binders[i] = binderFor( names[i], parameters[i].getType() );
+        }
+        try
+        {
+            method.trySetAccessible();
+            MethodHandle handle = MethodHandles.lookup()
+                                               .unreflect( method )
+                                               .bindTo( functions )
+                                               .asSpreader( Object[].class, parameters.length )
+                                               .asType( INVOKER_TYPE );
+            return new Invoker( method, handle, names, binders );
+        }
+        catch ( IllegalAccessException e )
+        {
+            throw new IllegalArgumentException( "Tool method " + method + " is not accessible", e );
+        }
+    }
+
+    /**
+     * Creates the function converting a JSON value of an argument to the type
+     * of the parameter. Missing arguments of primitive parameters are bound to
+     * their default value.
+     */
+    private static Binder binderFor( String name, Class<?> type )
+    {
+        if ( type == String.class )
+        {
+            return value -> value == null || value instanceof String ? value
+                    : value instanceof Number || value instanceof Boolean ? String.valueOf( value ) : JsonUtils.toJsonString( value );
+        }
+        if ( type == Integer.class || type == int.class )
+        {
+            return numberBinder( name, type, Number::intValue, Integer::valueOf, 0 );
+        }
+        if ( type == Long.class || type == long.class )
+        {
+            return numberBinder( name, type, Number::longValue, Long::valueOf, 0L );
+        }
+        if ( type == Double.class || type == double.class )
+        {
+            return numberBinder( name, type, Number::doubleValue, Double::valueOf, 0.0 );
+        }
+        if ( type == Boolean.class || type == boolean.class )
+        {
+            Object missing = type.isPrimitive() ? Boolean.FALSE : null;
+            return value -> {
+                if ( value == null || value instanceof String text && text.isBlank() )
+                {
+                    return missing;
+                }
+                if ( value instanceof Boolean )
+                {
+                    return value;
+                }
+                if ( value instanceof String text && ( "true".equalsIgnoreCase( text.trim() ) || "false".equalsIgnoreCase( text.trim() ) ) )
+                {
+                    return Boolean.valueOf( text.trim() );
+                }
+                throw illegalArgument( name, type, value );
+            };
+        }
+        return value -> {
+            if ( value == null || type.isInstance( value ) )
+            {
+                return value;
+            }
+            throw illegalArgument( name, type, value );
+        };
+    }
+
+    private static Binder numberBinder( String name, Class<?> type, Function<Number, Object> fromNumber,
+                                        Function<String, Object> parser, Object defaultValue )
+    {
+        Object missing = type.isPrimitive() ? defaultValue : null;
+        return value -> {
+            if ( value == null )
+            {
+                return missing;
+            }
+            if ( value instanceof Number number )
+            {
+                return fromNumber.apply( number );
+            }
+            if ( value instanceof String text )
+            {
+                if ( text.isBlank() )
+                {
+                    return missing;
+                }
+                try
+                {
+                    return parser.apply( text.trim() );
+                }
+                catch ( NumberFormatException e )
+                {
+                    throw illegalArgument( name, type, value );
+                }
+            }
+            throw illegalArgument( name, type, value );
+        };
+    }
+
+    private static IllegalArgumentException illegalArgument( String name, Class<?> type, Object value )
+    {
+        return new IllegalArgumentException( "Parameter " + name + " expects " + type.getSimpleName() + " but got: " + value );
     }
 
     /**
      * Converts a String array of key-value pairs into a Map.
-     * 
+     *
      * @param keyVal the String array of key-value pairs
      * @return the Map representation of the key-value pairs
      * @throws IllegalArgumentException if the input array is not a key-value array
@@ -91,7 +292,7 @@ public class ToolExecutor
             throw new IllegalArgumentException("Not a key-val array");
         }
         var map = new HashMap<String, Object>();
-        for (int i = 0; i < keyVal.length; i += 2) 
+        for (int i = 0; i < keyVal.length; i += 2)
         {
             map.put(keyVal[i], keyVal[i + 1]);
         }
@@ -106,9 +307,7 @@ public class ToolExecutor
      */
     public Optional<Method> getFunctionCallbackByName( String name )
     {
-        return Arrays.stream( getFunctions() )
-                     .filter( method -> toFunctionName( method ).equals( name ) )
-                     .findFirst();
+        return Optional.ofNullable( invokers.get( name ) ).map( Invoker::method );
     }
     /**
      * Converts a Parameter object to its corresponding parameter name.
@@ -136,5 +335,5 @@ public class ToolExecutor
                 .filter( Predicate.not(String::isBlank))
                 .orElse( method.getName() );
     }
-    
+
 }
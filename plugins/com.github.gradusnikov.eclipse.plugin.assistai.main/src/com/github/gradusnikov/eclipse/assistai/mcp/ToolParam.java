@@ -14,5 +14,7 @@ public @interface ToolParam
     public String description();
     public boolean required() default true;
     public String type() default "string";
+    /** JSON schema of the elements of an {@code array} parameter */
+    public String items() default "";
 
 }
@@ -0,0 +1,675 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IMember;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.ISourceRange;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.index.SymbolTable.Kind;
+import com.github.gradusnikov.eclipse.assistai.mcp.index.SymbolTable.Symbol;
+import com.github.gradusnikov.eclipse.assistai.mcp.services.ProjectLayoutCache;
+import com.github.gradusnikov.eclipse.assistai.tools.GlobPattern;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Searchable in-memory index of the text files and Java symbols in the
+ * workspace.
+ * <p>
+ * The whole workspace is indexed by a background job when the index is
+ * created; afterwards a resource change listener queues the changed files and
+ * the same job re-indexes only those. Text is searched with a
+ * {@link TrigramIndex} that narrows a regular expression down to the files
+ * that contain its literal parts, so only those are read and matched; the
+ * index keeps the trigrams of the files, not their text. Types, methods and
+ * fields of the Java sources on a build path go to a {@link SymbolTable}.
+ * Derived resources, hidden folders, the
+ * {@link ProjectLayoutCache#SKIPPED_FOLDERS dependency and build output
+ * folders} at the top of a project, binary files and files larger than {@value #MAX_FILE_SIZE} bytes
+ * are not indexed.
+ */
+@Creatable
+@Singleton
+public class CodeIndex
+{
+    private static final int         MAX_FILE_SIZE      = 1024 * 1024;
+
+    private static final int         MAX_SNIPPET_LENGTH = 200;
+
+    private static final long        INDEX_DELAY_MS     = 500;
+
+    /** How long the matching of a search may take, a pattern may backtrack catastrophically */
+    private static final long        SEARCH_TIMEOUT_MS  = 5_000;
+
+    private static final Set<String> BINARY_EXTENSIONS  = Set.of( "class", "jar", "zip", "war", "ear", "gz", "tgz", "7z", "rar",
+            "png", "jpg", "jpeg", "gif", "bmp", "ico", "webp", "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx",
+            "exe", "dll", "so", "dylib", "bin", "dat", "db", "mp3", "mp4", "avi", "mov", "wav", "ttf", "otf", "woff", "woff2" );
+
+    @Inject
+    private ILog                     logger;
+
+    private final TrigramIndex       text               = new TrigramIndex();
+
+    private final SymbolTable        symbols            = new SymbolTable();
+
+    private final Set<IPath>         pending            = ConcurrentHashMap.newKeySet();
+
+    private final IndexJob           job                = new IndexJob();
+
+    private final IResourceChangeListener listener      = this::resourceChanged;
+
+    private volatile boolean         ready;
+
+    @PostConstruct
+    public void init()
+    {
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        workspace.addResourceChangeListener( listener, IResourceChangeEvent.POST_CHANGE );
+        pending.add( workspace.getRoot().getFullPath() );
+        job.schedule();
+    }
+
+    @PreDestroy
+    public void dispose()
+    {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener( listener );
+        job.cancel();
+    }
+
+    /**
+     * @return {@code true} once the initial scan of the workspace is complete
+     */
+    public boolean isReady()
+    {
+        return ready;
+    }
+
+    /**
+     * Searches the indexed files for a regular expression.
+     *
+     * @param regex
+     *            a {@link Pattern} expression, matched against each line on its
+     *            own
+     * @param pathGlob
+     *            an optional glob the workspace path must match, e.g.
+     *            {@code **}{@code /*.java}; a glob without a slash matches the
+     *            file name only
+     * @param maxHits
+     *            the maximum number of matching lines returned
+     * @return the matching lines as {@code path:line: snippet}; the search
+     *         stops with the hits found so far once it takes longer than
+     *         {@value #SEARCH_TIMEOUT_MS} ms or its thread is interrupted
+     */
+    public String searchCode( String regex, String pathGlob, int maxHits )
+    {
+        long start = System.nanoTime();
+        long deadline = start + SEARCH_TIMEOUT_MS * 1_000_000;
+        Pattern pattern;
+        try
+        {
+            pattern = Pattern.compile( regex );
+        }
+        catch ( PatternSyntaxException e )
+        {
+            return "Invalid pattern: " + e.getDescription();
+        }
+        Predicate<String> glob = Objects.isNull( pathGlob ) || pathGlob.isBlank() ? null : GlobPattern.compile( pathGlob );
+
+        List<String> candidates = text.candidates( TrigramIndex.requiredLiterals( regex ) );
+        var hits = new ArrayList<String>();
+        int searchedFiles = 0;
+        int matchedFiles = 0;
+        boolean truncated = false;
+        boolean aborted = false;
+        for ( String path : candidates )
+        {
+            if ( Objects.nonNull( glob ) && !glob.test( path.substring( 1 ) ) )
+            {
+                continue;
+            }
+            if ( System.nanoTime() - deadline > 0 || Thread.currentThread().isInterrupted() )
+            {
+                // also when the files are too small for the matcher to check
+                aborted = true;
+                break;
+            }
+            // read again from the workspace, the file may have changed since it was indexed
+            IFile file = ResourcesPlugin.getWorkspace().getRoot().getFile( IPath.fromPortableString( path ) );
+            String content = read( file );
+            if ( Objects.isNull( content ) )
+            {
+                continue;
+            }
+            searchedFiles++;
+            int before = hits.size();
+            try
+            {
+                truncated = addHits( path, content, pattern.matcher( new DeadlineCharSequence( content, deadline ) ), hits, maxHits );
+            }
+            catch ( SearchAbortedException e )
+            {
+                aborted = true;
+            }
+            if ( hits.size() > before )
+            {
+                matchedFiles++;
+            }
+            if ( truncated || aborted )
+            {
+                break;
+            }
+        }
+        long elapsed = ( System.nanoTime() - start ) / 1_000_000;
+
+        var result = new StringBuilder();
+        result.append( "Found " ).append( hits.size() ).append( " matching lines in " ).append( matchedFiles )
+              .append( " files (searched " ).append( searchedFiles ).append( " of " ).append( text.size() )
+              .append( " indexed files in " ).append( elapsed ).append( " ms)\n" );
+        appendNotes( result, truncated, "narrow the pattern or the path glob to see more" );
+        if ( aborted )
+        {
+            result.append( "Note: the search was aborted after " ).append( elapsed )
+                  .append( " ms, simplify the pattern or narrow the path glob.\n" );
+        }
+        hits.forEach( hit -> result.append( hit ).append( '\n' ) );
+        return result.toString();
+    }
+
+    /**
+     * Finds Java types and members by name.
+     *
+     * @param name
+     *            a simple name, a part of it, or a qualified name such as
+     *            {@code Type.member}
+     * @param maxHits
+     *            the maximum number of symbols returned
+     * @return the matching declarations as {@code path:line: kind name}
+     */
+    public String findSymbol( String name, int maxHits )
+    {
+        long start = System.nanoTime();
+        List<Symbol> found = symbols.find( name, maxHits + 1 );
+        boolean truncated = found.size() > maxHits;
+        if ( truncated )
+        {
+            found = found.subList( 0, maxHits );
+        }
+        long elapsed = ( System.nanoTime() - start ) / 1_000_000;
+
+        var result = new StringBuilder();
+        result.append( "Found " ).append( found.size() ).append( " symbols matching \"" ).append( name ).append( "\" in " )
+              .append( elapsed ).append( " ms\n" );
+        appendNotes( result, truncated, "use a more specific name to see more" );
+        for ( Symbol symbol : found )
+        {
+            result.append( symbol.path() ).append( ':' ).append( symbol.line() ).append( ": " )
+                  .append( symbol.kind().name().toLowerCase( Locale.ROOT ) ).append( ' ' )
+                  .append( symbol.qualifiedName() ).append( '\n' );
+        }
+        return result.toString();
+    }
+
+    private void appendNotes( StringBuilder result, boolean truncated, String hint )
+    {
+        if ( !ready )
+        {
+            result.append( "Note: the workspace is still being indexed, the results may be incomplete.\n" );
+        }
+        if ( truncated )
+        {
+            result.append( "Note: the results were truncated, " ).append( hint ).append( ".\n" );
+        }
+    }
+
+    /**
+     * Adds one hit per matching line, up to {@code maxHits} in total. The
+     * matcher is limited to one line at a time, so that a match cannot span
+     * lines.
+     *
+     * @return {@code true} if more hits were found than could be added
+     */
+    static boolean addHits( String path, String content, Matcher matcher, List<String> hits, int maxHits )
+    {
+        int line = 1;
+        for ( int lineStart = 0; lineStart < content.length(); line++ )
+        {
+            int next = content.indexOf( '\n', lineStart );
+            int lineEnd = next < 0 ? content.length() : next;
+            int textEnd = lineEnd > lineStart && content.charAt( lineEnd - 1 ) == '\r' ? lineEnd - 1 : lineEnd;
+            if ( matcher.region( lineStart, textEnd ).find() )
+            {
+                if ( hits.size() >= maxHits )
+                {
+                    return true;
+                }
+                String snippet = content.substring( lineStart, textEnd ).strip();
+                if ( snippet.length() > MAX_SNIPPET_LENGTH )
+                {
+                    snippet = snippet.substring( 0, MAX_SNIPPET_LENGTH ) + "...";
+                }
+                hits.add( path + ":" + line + ": " + snippet );
+            }
+            if ( next < 0 )
+            {
+                break;
+            }
+            lineStart = next + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Thrown by a {@link DeadlineCharSequence} to abort the matching.
+     */
+    private static final class SearchAbortedException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        SearchAbortedException()
+        {
+            super( null, null, false, false );
+        }
+    }
+
+    /**
+     * The text of a file that aborts the matching once the deadline passed or
+     * the thread was interrupted. A {@link Matcher} cannot be stopped
+     * otherwise, it reads the text through {@link #charAt(int)} only.
+     */
+    static final class DeadlineCharSequence implements CharSequence
+    {
+        /** How many characters are read between checks of the deadline */
+        private static final int CHECK_INTERVAL = 4096;
+
+        private final CharSequence text;
+
+        private final long         deadline;
+
+        private int                reads;
+
+        DeadlineCharSequence( CharSequence text, long deadline )
+        {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt( int index )
+        {
+            if ( ++reads >= CHECK_INTERVAL )
+            {
+                reads = 0;
+                if ( System.nanoTime() - deadline > 0 || Thread.currentThread().isInterrupted() )
+                {
+                    throw new SearchAbortedException();
+                }
+            }
+            return text.charAt( index );
+        }
+
+        @Override
+        public int length()
+        {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence( int start, int end )
+        {
+            return new DeadlineCharSequence( text.subSequence( start, end ), deadline );
+        }
+
+        @Override
+        public String toString()
+        {
+            return text.toString();
+        }
+    }
+
+    private void resourceChanged( IResourceChangeEvent event )
+    {
+        IResourceDelta delta = event.getDelta();
+        if ( Objects.isNull( delta ) )
+        {
+            return;
+        }
+        try
+        {
+            delta.accept( this::queue );
+        }
+        catch ( CoreException e )
+        {
+            logger.error( e.getMessage(), e );
+        }
+        if ( !pending.isEmpty() )
+        {
+            job.schedule( INDEX_DELAY_MS );
+        }
+    }
+
+    /**
+     * Queues the resources of a change delta for re-indexing.
+     *
+     * @return {@code true} if the children of the delta need to be visited
+     */
+    private boolean queue( IResourceDelta delta )
+    {
+        IResource resource = delta.getResource();
+        switch ( resource.getType() )
+        {
+            case IResource.FILE:
+                if ( delta.getKind() != IResourceDelta.CHANGED || ( delta.getFlags() & IResourceDelta.CONTENT ) != 0 )
+                {
+                    pending.add( resource.getFullPath() );
+                }
+                return false;
+            case IResource.PROJECT:
+                if ( delta.getKind() != IResourceDelta.CHANGED || ( delta.getFlags() & IResourceDelta.OPEN ) != 0 )
+                {
+                    // opened, closed, added or removed as a whole
+                    pending.add( resource.getFullPath() );
+                    return false;
+                }
+                return true;
+            case IResource.FOLDER:
+                if ( delta.getKind() == IResourceDelta.REMOVED )
+                {
+                    pending.add( resource.getFullPath() );
+                    return false;
+                }
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Background job indexing the queued resources.
+     */
+    private class IndexJob extends Job
+    {
+        IndexJob()
+        {
+            super( "Indexing workspace for code search" );
+            setSystem( true );
+            setPriority( Job.DECORATE );
+        }
+
+        @Override
+        protected IStatus run( IProgressMonitor monitor )
+        {
+            long start = System.currentTimeMillis();
+            var iterator = pending.iterator();
+            while ( iterator.hasNext() )
+            {
+                if ( monitor.isCanceled() )
+                {
+                    return Status.CANCEL_STATUS;
+                }
+                IPath path = iterator.next();
+                iterator.remove();
+                update( path );
+            }
+            if ( !ready )
+            {
+                ready = true;
+                logger.info( "Indexed " + text.size() + " files and " + symbols.size() + " symbols in "
+                        + ( System.currentTimeMillis() - start ) + " ms" );
+            }
+            return Status.OK_STATUS;
+        }
+    }
+
+    /**
+     * Re-indexes a resource and everything below it.
+     */
+    private void update( IPath path )
+    {
+        IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember( path );
+        String key = path.toString();
+        if ( Objects.isNull( resource ) || !resource.isAccessible() )
+        {
+            remove( key );
+            removeAll( key.endsWith( "/" ) ? key : key + "/" );
+            return;
+        }
+        if ( resource instanceof IFile file )
+        {
+            index( file );
+            return;
+        }
+        removeAll( resource.getType() == IResource.ROOT ? "/" : key + "/" );
+        try
+        {
+            resource.accept( member -> {
+                if ( member instanceof IFile file )
+                {
+                    index( file );
+                    return false;
+                }
+                return !isExcluded( member );
+            } );
+        }
+        catch ( CoreException e )
+        {
+            logger.error( e.getMessage(), e );
+        }
+    }
+
+    private void index( IFile file )
+    {
+        String path = file.getFullPath().toString();
+        String content = isExcluded( file ) ? null : read( file );
+        if ( Objects.isNull( content ) )
+        {
+            remove( path );
+            return;
+        }
+        text.put( path, content );
+        if ( "java".equals( file.getFileExtension() ) )
+        {
+            symbols.put( path, symbols( file, path, content ) );
+        }
+    }
+
+    private void remove( String path )
+    {
+        text.remove( path );
+        symbols.remove( path );
+    }
+
+    private void removeAll( String prefix )
+    {
+        text.removeAll( prefix );
+        symbols.removeAll( prefix );
+    }
+
+    static boolean isExcluded( IResource resource )
+    {
+        if ( resource.isDerived() || resource.isTeamPrivateMember() )
+        {
+            return true;
+        }
+        if ( resource instanceof IFile file )
+        {
+            String extension = file.getFileExtension();
+            if ( Objects.nonNull( extension ) && BINARY_EXTENSIONS.contains( extension.toLowerCase( Locale.ROOT ) ) )
+            {
+                return true;
+            }
+            // a changed file is indexed on its own, without walking its folders
+            for ( IResource folder = file.getParent(); folder.getType() == IResource.FOLDER; folder = folder.getParent() )
+            {
+                if ( isExcluded( folder ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return resource.getType() == IResource.FOLDER
+                && ( resource.getName().startsWith( "." ) || ProjectLayoutCache.isSkippedFolder( resource ) );
+    }
+
+    /**
+     * @return the text of a file, or {@code null} if it is too large, binary
+     *         or cannot be read
+     */
+    private String read( IFile file )
+    {
+        try ( InputStream input = file.getContents( true ) )
+        {
+            byte[] bytes = input.readNBytes( MAX_FILE_SIZE + 1 );
+            if ( bytes.length > MAX_FILE_SIZE )
+            {
+                return null;
+            }
+            for ( byte b : bytes )
+            {
+                if ( b == 0 )
+                {
+                    return null;
+                }
+            }
+            return new String( bytes, Charset.forName( file.getCharset() ) );
+        }
+        catch ( CoreException | IOException | IllegalArgumentException e )
+        {
+            // e.g. deleted in the meantime, or an unsupported charset
+            return null;
+        }
+    }
+
+    /**
+     * Collects the types and members declared in a Java source on a build
+     * path.
+     */
+    private List<Symbol> symbols( IFile file, String path, String content )
+    {
+        var declared = new ArrayList<Symbol>();
+        ICompilationUnit unit = JavaCore.createCompilationUnitFrom( file );
+        if ( Objects.isNull( unit ) || !unit.exists() )
+        {
+            return declared;
+        }
+        int[] lineStarts = lineStarts( content );
+        try
+        {
+            for ( IType type : unit.getAllTypes() )
+            {
+                IType declaring = type.getDeclaringType();
+                String container = Objects.nonNull( declaring ) ? declaring.getFullyQualifiedName( '.' )
+                                                                : type.getPackageFragment().getElementName();
+                declared.add( new Symbol( type.getElementName(), kindOf( type ), container, path, line( type, lineStarts ) ) );
+                String typeName = type.getFullyQualifiedName( '.' );
+                for ( IMethod method : type.getMethods() )
+                {
+                    declared.add( new Symbol( method.getElementName(), Kind.METHOD, typeName, path, line( method, lineStarts ) ) );
+                }
+                for ( IField field : type.getFields() )
+                {
+                    declared.add( new Symbol( field.getElementName(), Kind.FIELD, typeName, path, line( field, lineStarts ) ) );
+                }
+            }
+        }
+        catch ( JavaModelException e )
+        {
+            // not parseable, the text is still indexed
+        }
+        return declared;
+    }
+
+    private static Kind kindOf( IType type ) throws JavaModelException
+    {
+        if ( type.isAnnotation() )
+        {
+            return Kind.ANNOTATION;
+        }
+        if ( type.isInterface() )
+        {
+            return Kind.INTERFACE;
+        }
+        if ( type.isEnum() )
+        {
+            return Kind.ENUM;
+        }
+        if ( type.isRecord() )
+        {
+            return Kind.RECORD;
+        }
+        return Kind.CLASS;
+    }
+
+    private static int line( IMember member, int[] lineStarts ) throws JavaModelException
+    {
+        ISourceRange range = member.getNameRange();
+        if ( Objects.isNull( range ) || range.getOffset() < 0 )
+        {
+            return 1;
+        }
+        int index = Arrays.binarySearch( lineStarts, range.getOffset() );
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * @return the offsets at which the lines of a text start
+     */
+    static int[] lineStarts( String content )
+    {
+        int count = 1;
+        for ( int i = 0; i < content.length(); i++ )
+        {
+            if ( content.charAt( i ) == '\n' )
+            {
+                count++;
+            }
+        }
+        int[] starts = new int[count];
+        int line = 1;
+        for ( int i = 0; i < content.length(); i++ )
+        {
+            if ( content.charAt( i ) == '\n' )
+            {
+                starts[line++] = i + 1;
+            }
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.index;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory table of the types and members declared in the workspace sources,
+ * keyed by file so that a changed file replaces its symbols in one step.
+ */
+public final class SymbolTable
+{
+    public enum Kind
+    {
+        CLASS, INTERFACE, ENUM, RECORD, ANNOTATION, METHOD, FIELD;
+
+        public boolean isType()
+        {
+            return this != METHOD && this != FIELD;
+        }
+    }
+
+    /**
+     * A declared symbol.
+     *
+     * @param name
+     *            the simple name
+     * @param kind
+     *            the kind of declaration
+     * @param container
+     *            the fully qualified name of the declaring type, or the package
+     *            name for a top-level type
+     * @param path
+     *            the workspace path of the declaring file
+     * @param line
+     *            the 1-based line of the declaration
+     */
+    public record Symbol( String name, Kind kind, String container, String path, int line )
+    {
+        public String qualifiedName()
+        {
+            return container.isEmpty() ? name : container + "." + name;
+        }
+    }
+
+    private static final Comparator<Symbol>   ORDER   = Comparator.comparing( ( Symbol symbol ) -> !symbol.kind().isType() )
+                                                                  .thenComparing( Symbol::path )
+                                                                  .thenComparingInt( Symbol::line );
+
+    private final Map<String, List<Symbol>> symbols = new ConcurrentHashMap<>();
+
+    /**
+     * Replaces the symbols declared in a file.
+     */
+    public void put( String path, List<Symbol> declared )
+    {
+        if ( declared.isEmpty() )
+        {
+            symbols.remove( path );
+        }
+        else
+        {
+            symbols.put( path, List.copyOf( declared ) );
+        }
+    }
+
+    /**
+     * Removes the symbols declared in a file.
+     */
+    public void remove( String path )
+    {
+        symbols.remove( path );
+    }
+
+    /**
+     * Removes the symbols of all files whose path starts with the given
+     * prefix.
+     */
+    public void removeAll( String prefix )
+    {
+        symbols.keySet().removeIf( path -> path.startsWith( prefix ) );
+    }
+
+    /**
+     * @return the number of declared symbols
+     */
+    public int size()
+    {
+        return symbols.values().stream().mapToInt( List::size ).sum();
+    }
+
+    /**
+     * Finds symbols by name. Exact matches rank before case-insensitive ones,
+     * which rank before prefix and then substring matches; within a rank
+     * types come before members. A qualified query such as
+     * {@code Type.member} or {@code pkg.Type} also requires the container to
+     * end with the qualifier.
+     *
+     * @param query
+     *            a simple or qualified name
+     * @param maxHits
+     *            the maximum number of symbols returned
+     * @return the matching symbols, best first
+     */
+    public List<Symbol> find( String query, int maxHits )
+    {
+        String name = query.trim();
+        String qualifier = null;
+        int dot = name.lastIndexOf( '.' );
+        if ( dot >= 0 )
+        {
+            qualifier = name.substring( 0, dot );
+            name = name.substring( dot + 1 );
+        }
+        if ( name.isEmpty() )
+        {
+            return List.of();
+        }
+        String lowerName = name.toLowerCase( Locale.ROOT );
+        String exactName = name;
+        String containerSuffix = qualifier;
+        return symbols.values()
+                      .stream()
+                      .flatMap( List::stream )
+                      .filter( symbol -> Objects.isNull( containerSuffix ) || matchesContainer( symbol.container(), containerSuffix ) )
+                      .map( symbol -> new Ranked( symbol, rank( symbol.name(), exactName, lowerName ) ) )
+                      .filter( ranked -> ranked.rank() >= 0 )
+                      .sorted( Comparator.comparingInt( Ranked::rank ).thenComparing( Ranked::symbol, ORDER ) )
+                      .limit( maxHits )
+                      .map( Ranked::symbol )
+                      .toList();
+    }
+
+    private record Ranked( Symbol symbol, int rank )
+    {
+    }
+
+    private static boolean matchesContainer( String container, String suffix )
+    {
+        return container.equals( suffix ) || container.endsWith( "." + suffix );
+    }
+
+    /**
+     * @return the rank of a match, lower is better, or -1 if the name does not
+     *         match
+     */
+    private static int rank( String name, String query, String lowerQuery )
+    {
+        if ( name.equals( query ) )
+        {
+            return 0;
+        }
+        if ( name.equalsIgnoreCase( query ) )
+        {
+            return 1;
+        }
+        String lowerName = name.toLowerCase( Locale.ROOT );
+        if ( lowerName.startsWith( lowerQuery ) )
+        {
+            return 2;
+        }
+        if ( lowerName.contains( lowerQuery ) )
+        {
+            return 3;
+        }
+        return -1;
+    }
+}
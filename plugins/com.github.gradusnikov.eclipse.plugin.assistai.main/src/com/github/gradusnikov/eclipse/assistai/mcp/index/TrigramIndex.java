@@ -0,0 +1,516 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index of text documents, used to narrow a text search down
+ * to the documents that can possibly match.
+ * <p>
+ * Every document gets a new id when it is added, so the posting list of a
+ * trigram, i.e. the ids of the documents that contain it, is sorted by
+ * construction. Removed documents are only marked dead; their ids are purged
+ * from the posting lists once they make up half of the index. Trigrams are
+ * case-insensitive and packed into an {@code int}, which for non-ASCII text
+ * may merge distinct trigrams: a query may yield false positives but never
+ * misses a document, so candidates must be verified against the content.
+ * <p>
+ * The index is thread-safe; queries run concurrently with each other.
+ */
+public final class TrigramIndex
+{
+    private static final int            MIN_PURGED_DOCUMENTS = 1024;
+
+    private final ReadWriteLock         lock      = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final Map<String, Integer>  ids       = new HashMap<>();
+    private final List<String>          documents = new ArrayList<>();
+    private final Map<Integer, IntList> postings  = new HashMap<>();
+    private int                         deadDocuments;
+
+    /**
+     * Growable sorted array of document ids.
+     */
+    private static final class IntList
+    {
+        int[] values = new int[4];
+        int   size;
+
+        void add( int value )
+        {
+            if ( size == values.length )
+            {
+                values = Arrays.copyOf( values, size * 2 );
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Adds or replaces a document.
+     *
+     * @param path
+     *            the unique name of the document
+     * @param content
+     *            the text of the document
+     */
+    public void put( String path, CharSequence content )
+    {
+        // computed before taking the lock
+        int[] trigrams = trigrams( content );
+        lock.writeLock().lock();
+        try
+        {
+            removeDocument( path );
+            int id = documents.size();
+            documents.add( path );
+            ids.put( path, id );
+            for ( int trigram : trigrams )
+            {
+                postings.computeIfAbsent( trigram, key -> new IntList() ).add( id );
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a document, if indexed.
+     */
+    public void remove( String path )
+    {
+        lock.writeLock().lock();
+        try
+        {
+            removeDocument( path );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all documents whose name starts with the given prefix, e.g. all
+     * files of a project.
+     */
+    public void removeAll( String prefix )
+    {
+        lock.writeLock().lock();
+        try
+        {
+            ids.keySet()
+               .stream()
+               .filter( path -> path.startsWith( prefix ) )
+               .toList()
+               .forEach( this::removeDocument );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed documents
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return ids.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the names of all indexed documents, sorted
+     */
+    public List<String> paths()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return ids.keySet().stream().sorted().toList();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the documents that may contain all the given literals.
+     *
+     * @param literals
+     *            texts that a matching document must contain; literals shorter
+     *            than three characters do not narrow the search
+     * @return the names of the candidate documents, sorted
+     */
+    public List<String> candidates( Collection<String> literals )
+    {
+        int[] required = literals.stream()
+                                 .flatMapToInt( literal -> Arrays.stream( trigrams( literal ) ) )
+                                 .distinct()
+                                 .toArray();
+        if ( required.length == 0 )
+        {
+            return paths();
+        }
+        lock.readLock().lock();
+        try
+        {
+            var lists = new ArrayList<IntList>( required.length );
+            for ( int trigram : required )
+            {
+                IntList list = postings.get( trigram );
+                if ( Objects.isNull( list ) )
+                {
+                    return List.of();
+                }
+                lists.add( list );
+            }
+            lists.sort( Comparator.comparingInt( list -> list.size ) );
+            int[] result = Arrays.copyOf( lists.get( 0 ).values, lists.get( 0 ).size );
+            int size = result.length;
+            for ( int i = 1; i < lists.size() && size > 0; i++ )
+            {
+                size = intersect( result, size, lists.get( i ) );
+            }
+            var paths = new ArrayList<String>( size );
+            for ( int i = 0; i < size; i++ )
+            {
+                String path = documents.get( result[i] );
+                if ( Objects.nonNull( path ) )
+                {
+                    paths.add( path );
+                }
+            }
+            paths.sort( null );
+            return paths;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Extracts the literal texts that every match of a regular expression
+     * must contain. The analysis is conservative: parts it does not
+     * understand, e.g. groups and character classes, are skipped, and an
+     * expression with a top-level alternation yields no literals at all.
+     *
+     * @param regex
+     *            a {@link java.util.regex.Pattern} expression
+     * @return the required literals
+     */
+    public static List<String> requiredLiterals( String regex )
+    {
+        var literals = new ArrayList<String>();
+        if ( hasTopLevelAlternation( regex ) )
+        {
+            return literals;
+        }
+        var run = new StringBuilder();
+        int i = 0;
+        while ( i < regex.length() )
+        {
+            char c = regex.charAt( i );
+            switch ( c )
+            {
+                case '\\' ->
+                {
+                    if ( i + 1 >= regex.length() )
+                    {
+                        i++;
+                    }
+                    else if ( regex.charAt( i + 1 ) == 'Q' )
+                    {
+                        int end = regex.indexOf( "\\E", i + 2 );
+                        run.append( regex, i + 2, end < 0 ? regex.length() : end );
+                        i = end < 0 ? regex.length() : end + 2;
+                    }
+                    else if ( Character.isLetterOrDigit( regex.charAt( i + 1 ) ) )
+                    {
+                        // a character class, anchor or back reference
+                        flush( run, literals );
+                        i += 2;
+                    }
+                    else
+                    {
+                        run.append( regex.charAt( i + 1 ) );
+                        i += 2;
+                    }
+                }
+                case '[' ->
+                {
+                    flush( run, literals );
+                    i = skipClass( regex, i );
+                }
+                case '(' ->
+                {
+                    flush( run, literals );
+                    i = skipGroup( regex, i );
+                }
+                case '*', '?' ->
+                {
+                    // the preceding character is optional
+                    dropLast( run );
+                    flush( run, literals );
+                    i++;
+                }
+                case '{' ->
+                {
+                    int end = regex.indexOf( '}', i );
+                    if ( regex.startsWith( "0", i + 1 ) )
+                    {
+                        dropLast( run );
+                    }
+                    flush( run, literals );
+                    i = end < 0 ? regex.length() : end + 1;
+                }
+                case '+', '.', '^', '$' ->
+                {
+                    flush( run, literals );
+                    i++;
+                }
+                default ->
+                {
+                    run.append( c );
+                    i++;
+                }
+            }
+        }
+        flush( run, literals );
+        return literals;
+    }
+
+    /**
+     * Computes the distinct trigrams of a text, sorted.
+     */
+    static int[] trigrams( CharSequence text )
+    {
+        int length = text.length();
+        if ( length < 3 )
+        {
+            return new int[0];
+        }
+        int[] trigrams = new int[length - 2];
+        int c1 = Character.toLowerCase( text.charAt( 0 ) );
+        int c2 = Character.toLowerCase( text.charAt( 1 ) );
+        for ( int i = 2; i < length; i++ )
+        {
+            int c3 = Character.toLowerCase( text.charAt( i ) );
+            trigrams[i - 2] = ( c1 & 0x3FF ) << 20 | ( c2 & 0x3FF ) << 10 | ( c3 & 0x3FF );
+            c1 = c2;
+            c2 = c3;
+        }
+        return Arrays.stream( trigrams ).sorted().distinct().toArray();
+    }
+
+    private void removeDocument( String path )
+    {
+        Integer id = ids.remove( path );
+        if ( Objects.isNull( id ) )
+        {
+            return;
+        }
+        documents.set( id, null );
+        deadDocuments++;
+        if ( deadDocuments >= MIN_PURGED_DOCUMENTS && deadDocuments > ids.size() )
+        {
+            purge();
+        }
+    }
+
+    /**
+     * Drops the ids of removed documents from the posting lists.
+     */
+    private void purge()
+    {
+        var iterator = postings.values().iterator();
+        while ( iterator.hasNext() )
+        {
+            IntList list = iterator.next();
+            int size = 0;
+            for ( int i = 0; i < list.size; i++ )
+            {
+                if ( Objects.nonNull( documents.get( list.values[i] ) ) )
+                {
+                    list.values[size++] = list.values[i];
+                }
+            }
+            list.size = size;
+            if ( size == 0 )
+            {
+                iterator.remove();
+            }
+            else if ( size < list.values.length / 4 )
+            {
+                list.values = Arrays.copyOf( list.values, Math.max( 4, size ) );
+            }
+        }
+        deadDocuments = 0;
+    }
+
+    /**
+     * Intersects the first {@code size} values of {@code result} with a
+     * posting list, in place.
+     *
+     * @return the size of the intersection
+     */
+    private static int intersect( int[] result, int size, IntList list )
+    {
+        int count = 0;
+        int j = 0;
+        for ( int i = 0; i < size && j < list.size; )
+        {
+            if ( result[i] == list.values[j] )
+            {
+                result[count++] = result[i];
+                i++;
+                j++;
+            }
+            else if ( result[i] < list.values[j] )
+            {
+                i++;
+            }
+            else
+            {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean hasTopLevelAlternation( String regex )
+    {
+        int depth = 0;
+        for ( int i = 0; i < regex.length(); i++ )
+        {
+            char c = regex.charAt( i );
+            if ( c == '\\' )
+            {
+                i++;
+            }
+            else if ( c == '[' )
+            {
+                i = skipClass( regex, i ) - 1;
+            }
+            else if ( c == '(' )
+            {
+                depth++;
+            }
+            else if ( c == ')' )
+            {
+                depth--;
+            }
+            else if ( c == '|' && depth <= 0 )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index after the character class starting at {@code start}
+     */
+    private static int skipClass( String regex, int start )
+    {
+        int i = start + 1;
+        if ( i < regex.length() && regex.charAt( i ) == '^' )
+        {
+            i++;
+        }
+        if ( i < regex.length() && regex.charAt( i ) == ']' )
+        {
+            i++;
+        }
+        int depth = 1;
+        while ( i < regex.length() && depth > 0 )
+        {
+            char c = regex.charAt( i );
+            if ( c == '\\' )
+            {
+                i++;
+            }
+            else if ( c == '[' )
+            {
+                depth++;
+            }
+            else if ( c == ']' )
+            {
+                depth--;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index after the group starting at {@code start}
+     */
+    private static int skipGroup( String regex, int start )
+    {
+        int depth = 0;
+        int i = start;
+        while ( i < regex.length() )
+        {
+            char c = regex.charAt( i );
+            if ( c == '\\' )
+            {
+                i += 2;
+                continue;
+            }
+            if ( c == '[' )
+            {
+                i = skipClass( regex, i );
+                continue;
+            }
+            if ( c == '(' )
+            {
+                depth++;
+            }
+            else if ( c == ')' && --depth == 0 )
+            {
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static void dropLast( StringBuilder run )
+    {
+        if ( run.length() > 0 )
+        {
+            run.setLength( run.length() - 1 );
+        }
+    }
+
+    private static void flush( StringBuilder run, List<String> literals )
+    {
+        if ( run.length() >= 3 )
+        {
+            literals.add( run.toString() );
+        }
+        run.setLength( 0 );
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.servers;
+
+import java.util.Objects;
+
+import org.eclipse.e4.core.di.annotations.Creatable;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.McpServer;
+import com.github.gradusnikov.eclipse.assistai.mcp.Tool;
+import com.github.gradusnikov.eclipse.assistai.mcp.ToolParam;
+import com.github.gradusnikov.eclipse.assistai.mcp.index.CodeIndex;
+
+import jakarta.inject.Inject;
+
+@Creatable
+@McpServer(name = "code-search")
+public class CodeSearchMcpServer
+{
+    private static final int DEFAULT_MAX_HITS = 50;
+
+    private static final int MAX_HITS         = 500;
+
+    @Inject
+    private CodeIndex codeIndex;
+
+    @Tool(name="searchCode", description="Searches the text of all workspace files for a regular expression and returns the matching lines as 'path:line: snippet'. Use it to locate code instead of reading whole files.", type="object")
+    public String searchCode(
+            @ToolParam(name="pattern", description="A Java regular expression matched against single lines, e.g. 'new\\s+HttpClient' or '(?i)todo'", required=true) String pattern,
+            @ToolParam(name="pathGlob", description="An optional glob the workspace path must match, e.g. '**/src/**/*.java' or '*.xml'; a glob without '/' matches file names only", required=false) String pathGlob,
+            @ToolParam(name="maxHits", description="The maximum number of matching lines to return, 50 by default", required=false, type="integer") Integer maxHits)
+    {
+        return codeIndex.searchCode( pattern, pathGlob, limit( maxHits ) );
+    }
+
+    @Tool(name="findSymbol", description="Finds Java classes, interfaces, enums, records, methods and fields by name in the workspace projects and returns their declarations as 'path:line: kind qualified.Name'. Exact matches are listed first, then prefix and substring matches.", type="object")
+    public String findSymbol(
+            @ToolParam(name="name", description="A simple name or a part of it, or a qualified name such as 'Type.method' or 'com.example.Type'", required=true) String name,
+            @ToolParam(name="maxHits", description="The maximum number of symbols to return, 50 by default", required=false, type="integer") Integer maxHits)
+    {
+        return codeIndex.findSymbol( name, limit( maxHits ) );
+    }
+
+    private static int limit( Integer maxHits )
+    {
+        if ( Objects.isNull( maxHits ) || maxHits <= 0 )
+        {
+            return DEFAULT_MAX_HITS;
+        }
+        return Math.min( maxHits, MAX_HITS );
+    }
+}
@@ -3,6 +3,7 @@ package com.github.gradusnikov.eclipse.assistai.mcp.servers;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.time.Instant;
 
 import jakarta.inject.Inject;
 
@@ -19,6 +20,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpServer;
 import com.github.gradusnikov.eclipse.assistai.mcp.Tool;
 import com.github.gradusnikov.eclipse.assistai.mcp.ToolParam;
+import com.github.gradusnikov.eclipse.assistai.mcp.services.WebContentCache;
 
 @Creatable
 @McpServer(name="duck-duck-search")
@@ -27,10 +29,20 @@ public class DuckDuckSearchMcpServer
     @Inject
     ILog logger;
 
+    @Inject
+    WebContentCache cache;
+
     @Tool(name="webSearch", description="Performs a search using a Duck Duck Go search engine and returns the search result json.", type="object")
     public String webSearch(
             @ToolParam(name="query", description="A search query", required=true) String query)
     {
+        String key = WebContentCache.searchKey( query );
+        var cached = cache.get( key ).filter( entry -> entry.isFresh( Instant.now() ) );
+        if ( cached.isPresent() )
+        {
+            logger.info( "Search results for query \"" + query + "\" served from the cache" );
+            return WebContentCache.withCacheInfo( cached.get().content(), WebContentCache.Status.HIT, cached.get().fetchedAt() );
+        }
         try
         {
             ObjectMapper mapper = new ObjectMapper();
@@ -69,6 +81,11 @@ public class DuckDuckSearchMcpServer
 
             String jsonResults = mapper.writerWithDefaultPrettyPrinter().writeValueAsString( resultsArray );
             logger.info( "Search results for query \"" + query + "\":\n" + jsonResults );
+            if ( !resultsArray.isEmpty() )
+            {
+                Instant now = Instant.now();
+                cache.put( new WebContentCache.Entry( key, jsonResults, now, cache.expiresAt( now ), null, null ) );
+            }
             return jsonResults;
         }
         catch ( IOException e )
@@ -9,6 +9,7 @@ import com.github.gradusnikov.eclipse.assistai.mcp.McpServer;
 import com.github.gradusnikov.eclipse.assistai.mcp.Tool;
 import com.github.gradusnikov.eclipse.assistai.mcp.ToolParam;
 import com.github.gradusnikov.eclipse.assistai.mcp.services.CodeEditingService;
+import com.github.gradusnikov.eclipse.assistai.mcp.services.EditOperation;
 
 import jakarta.inject.Inject;
 
@@ -113,6 +114,14 @@ public class EclipseCodeEditingMcpServer
         return codeEditingService.undoEdit(projectName, filePath);
     }
 
+    @Tool(name="applyEdits", description="Apply several replace, insert and delete operations to one or more files of a project at once. The operations are applied in the given order, line numbers refer to the file as changed by the operations before. Either all operations are applied or, if one fails, none. Returns a single diff of all changes. Prefer this over multiple replaceString or insertIntoFile calls.", type="object")
+    public String applyEdits(
+        @ToolParam(name="projectName", description="The name of the project containing the files", required=true) String projectName,
+        @ToolParam(name="edits", description="The edit operations, in the order to apply them. File paths are relative to the project root. Do not include project name!", required=true, type="array", items=EditOperation.SCHEMA) String edits)
+    {
+        return codeEditingService.applyEdits(projectName, EditOperation.parseAll(edits));
+    }
+
     @Tool(name="createDirectories", description="Creates a directory structure (recursively) in the specified project.", type="object")
     public String createDirectories(
         @ToolParam(name="projectName", description="The name of the project where directories should be created", required=true) String projectName,
@@ -81,11 +81,15 @@ public class EclipseIntegrationsMcpServer
         return projectService.getProjectProperties( projectName );
     }
     
-    @Tool(name="getProjectLayout", description="Get the file and folder structure of a specified project in a hierarchical format suitable for LLM processing.", type="object")
+    @Tool(name="getProjectLayout", description="Get the file and folder structure of a specified project as a compact indented tree, one entry per line. Folders ignored by git and build output are not expanded. Large projects are returned in pages.", type="object")
     public String getProjectLayout(
-            @ToolParam(name="projectName", description="The name of the project to analyze", required=true) String projectName)
+            @ToolParam(name="projectName", description="The name of the project to analyze", required=true) String projectName,
+            @ToolParam(name="maxDepth", description="The number of folder levels to list; deeper folders show their file count only. All levels by default", required=false, type="integer") Integer maxDepth,
+            @ToolParam(name="include", description="Comma separated globs of the files to list, e.g. '*.java, **/resources/**'; a glob without '/' matches file names", required=false) String include,
+            @ToolParam(name="exclude", description="Comma separated globs of the files and folders to leave out, e.g. 'test, *.png'", required=false) String exclude,
+            @ToolParam(name="pageToken", description="The page token returned with the previous page, to list the next one", required=false) String pageToken)
     {
-        return projectService.getProjectLayout( projectName );
+        return projectService.getProjectLayout( projectName, maxDepth, include, exclude, pageToken );
     }
     @Tool(name="getMethodCallHierarchy", description="Retrieves the call hierarchy (callers) for a specified method to understand how it's used in the codebase.", type="object")
     public String getMethodCallHierarchy(
@@ -105,12 +109,15 @@ public class EclipseIntegrationsMcpServer
         return codeAnalysisService.getCompilationErrors( projectName, severity, Optional.ofNullable( maxResults ).map( Integer::parseInt ).orElse( 0 ) );
     }
 	
-    @Tool(name="readProjectResource", description="Read the content of a text resource from a specified project.", type="object")
+    @Tool(name="readProjectResource", description="Read the content of a text resource from a specified project. Large files can be read in ranges of lines.", type="object")
     public String readProjectResource(
             @ToolParam(name="projectName", description="The name of the project containing the resource", required=true) String projectName,
-            @ToolParam(name="resourcePath", description="The path to the resource relative to the project root", required=true) String resourcePath) 
+            @ToolParam(name="resourcePath", description="The path to the resource relative to the project root", required=true) String resourcePath,
+            @ToolParam(name="startLine", description="The 1-based line to start reading at (optional, default: 1)", required=false, type="integer") Integer startLine,
+            @ToolParam(name="endLine", description="The last line to read, inclusive (optional, default: the end of the file)", required=false, type="integer") Integer endLine,
+            @ToolParam(name="maxBytes", description="The maximum number of bytes to return (optional, default: 262144); longer ranges end at the last whole line", required=false, type="integer") Integer maxBytes) 
     {
-        return resourceService.readProjectResource( projectName, resourcePath );
+        return resourceService.readProjectResource( projectName, resourcePath, startLine, endLine, maxBytes );
     }
 
     @Tool(name="listProjects", description="List all available projects in the workspace with their detected natures (Java, C/C++, Python, etc.).", type="object")
@@ -131,10 +138,10 @@ public class EclipseIntegrationsMcpServer
     @Tool(name="getConsoleOutput", description="Retrieves the recent output from Eclipse console(s).", type="object")
     public String getConsoleOutput(
             @ToolParam(name="consoleName", description="Name of the specific console to retrieve (optional, leave empty for all or most recent console)", required=false) String consoleName,
-            @ToolParam(name="maxLines", description="Maximum number of lines to retrieve (default: 100)", required=false) String  maxLines,
-            @ToolParam(name="includeAllConsoles", description="Whether to include output from all available consoles (default: false)", required=false) Boolean includeAllConsoles) 
+            @ToolParam(name="maxLines", description="Maximum number of lines to retrieve (default: 100)", required=false, type="integer") Integer maxLines,
+            @ToolParam(name="includeAllConsoles", description="Whether to include output from all available consoles (default: false)", required=false, type="boolean") Boolean includeAllConsoles) 
     {
-        return consoleService.getConsoleOutput( consoleName, Optional.ofNullable( maxLines ).map( Integer::parseInt ).orElse( 0 ), includeAllConsoles );
+        return consoleService.getConsoleOutput( consoleName, Optional.ofNullable( maxLines ).orElse( 0 ), includeAllConsoles );
     }
     
     // Unit Test Service Tools
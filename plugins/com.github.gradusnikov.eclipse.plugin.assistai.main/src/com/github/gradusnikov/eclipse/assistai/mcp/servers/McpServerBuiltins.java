@@ -18,7 +18,8 @@ public class McpServerBuiltins
             TimeMcpServer.class,
             ReadWebPageMcpServer.class,
             MemoryMcpServer.class,
-            EclipseCodeEditingMcpServer.class
+            EclipseCodeEditingMcpServer.class,
+            CodeSearchMcpServer.class
     };
     
     public static List<McpServerDescriptor> listBuiltInImplementations()
@@ -1,19 +1,15 @@
 package com.github.gradusnikov.eclipse.assistai.mcp.servers;
 
-import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import jakarta.inject.Inject;
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
 
 import com.github.gradusnikov.eclipse.assistai.mcp.McpServer;
 import com.github.gradusnikov.eclipse.assistai.mcp.Tool;
 import com.github.gradusnikov.eclipse.assistai.mcp.ToolParam;
-import com.vladsch.flexmark.html2md.converter.FlexmarkHtmlConverter;
+import com.github.gradusnikov.eclipse.assistai.mcp.services.WebContentCache;
+import com.github.gradusnikov.eclipse.assistai.mcp.services.WebPageService;
+
+import jakarta.inject.Inject;
 
 @Creatable
 @McpServer(name = "webpage-reader")
@@ -22,52 +18,17 @@ public class ReadWebPageMcpServer
     @Inject
     private ILog logger;
 
+    @Inject
+    private WebPageService webPageService;
+
     @Tool(name="readWebPage", description="Reads the content of the given web site and returns its content as a markdown text.", type="object")
     public String readWebPage(
             @ToolParam(name="url", description="A web site URL", required=true) String url)
     {
-        String content = "";
-        WebDriver driver = null;
-        try
-        {
-            ChromeOptions options = new ChromeOptions();
-            options.addArguments( "--headless" ); // Run Chrome in headless mode
-            options.addArguments( "--disable-gpu" );
-            options.addArguments( "--window-size=1920,1200" );
-            options.addArguments( "--ignore-certificate-errors" );
-            options.addArguments( "--silent" );
-
-            driver = new ChromeDriver( options );
-            logger.info( "Fetching web page: " + url );
-
-            driver.get( url );
-            // You may need to wait for the page to load or for JavaScript to
-            // execute
-
-            String pageSource = driver.getPageSource();
-
-            Document document = Jsoup.parse( pageSource );
-
-            for ( Element body : document.getElementsByTag( "body" ) )
-            {
-                String bodyHTML = body.toString();
-                var converter = FlexmarkHtmlConverter.builder().build();
-                content += converter.convert( bodyHTML );
-            }
-            logger.info( "Web page content " + url + "\n\n" + content );
-        }
-        catch ( Exception e )
-        {
-            throw new RuntimeException( e );
-        }
-        finally
-        {
-            if ( driver != null )
-            {
-                driver.quit(); // Close the browser
-            }
-        }
+        logger.info( "Fetching web page: " + url );
+        var page = webPageService.read( url );
+        logger.info( "Web page content " + url + " (" + page.status() + ")\n\n" + page.content() );
 
-        return content;
+        return WebContentCache.withCacheInfo( page.content(), page.status(), page.fetchedAt() );
     }
 }
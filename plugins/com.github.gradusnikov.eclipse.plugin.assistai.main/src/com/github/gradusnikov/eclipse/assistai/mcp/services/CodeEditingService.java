@@ -1,16 +1,18 @@
 package com.github.gradusnikov.eclipse.assistai.mcp.services;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.eclipse.core.resources.IContainer;
@@ -19,11 +21,15 @@ import org.eclipse.core.resources.IFileState;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
 import org.eclipse.e4.core.di.annotations.Creatable;
 import org.eclipse.e4.ui.di.UISynchronize;
 import org.eclipse.jdt.core.IJavaProject;
@@ -33,11 +39,6 @@ import org.eclipse.jdt.core.formatter.CodeFormatter;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
-import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.diff.EditList;
-import org.eclipse.jgit.diff.HistogramDiff;
-import org.eclipse.jgit.diff.RawText;
-import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.text.edits.MalformedTreeException;
 import org.eclipse.text.edits.TextEdit;
 import org.eclipse.ui.IEditorInput;
@@ -50,6 +51,7 @@ import org.eclipse.ui.ide.IDE;
 import org.eclipse.ui.texteditor.ITextEditor;
 
 import com.github.gradusnikov.eclipse.assistai.tools.ResourceUtilities;
+import com.github.gradusnikov.eclipse.assistai.tools.TextDiff;
 
 import jakarta.inject.Inject;
 
@@ -392,6 +394,121 @@ public class CodeEditingService
 
     
     
+	/**
+	 * Applies an ordered batch of edit operations to one or more files of a project.
+	 * <p>
+	 * The operations of each file are applied to an in-memory document, starting from the
+	 * content of a dirty editor if the file is open, otherwise from the file on disk. Nothing
+	 * is written unless all operations apply; the files are then written in a single workspace
+	 * operation, with one local history entry per file, and every editor is refreshed once.
+	 * 
+	 * @param projectName The name of the project containing the files
+	 * @param edits The operations, applied in the order given
+	 * @return A status message with the combined diff of all files
+	 */
+	public String applyEdits(String projectName, List<EditOperation> edits) 
+	{
+	    Objects.requireNonNull(projectName);
+	    Objects.requireNonNull(edits);
+	    
+	    if (projectName.isEmpty()) 
+	    {
+	        throw new IllegalArgumentException("Error: Project name cannot be empty.");
+	    }
+	    
+	    IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+	    if (!project.exists()) 
+	    {
+	        throw new RuntimeException("Error: Project '" + projectName + "' does not exist.");
+	    }
+	    if (!project.isOpen()) 
+	    {
+	    	throw new RuntimeException("Error: Project '" + projectName + "' is closed.");
+	    }
+	    
+	    // Group the operations by file, keeping the order of first appearance
+	    Map<IFile, List<Integer>> editsByFile = new LinkedHashMap<>();
+	    for (int i = 0; i < edits.size(); i++) 
+	    {
+	        EditOperation edit = edits.get(i);
+	        IFile file = project.getFile(IPath.fromPath(Path.of(edit.filePath())));
+	        if (!file.exists()) 
+	        {
+	            throw new RuntimeException("Error: File '" + edit.filePath() + "' does not exist in project '" + projectName + "'.");
+	        }
+	        editsByFile.computeIfAbsent(file, key -> new ArrayList<>()).add(i);
+	    }
+	    
+	    // One UI round trip for the content of all dirty editors
+	    Map<IFile, String> editorContents = new HashMap<>();
+	    sync.syncExec(() -> editsByFile.keySet().forEach(file -> 
+	    		findDirtyDocument(file).ifPresent(document -> editorContents.put(file, document.get()))));
+	    
+	    try 
+	    {
+	        Map<IFile, String> modifiedContents = new LinkedHashMap<>();
+	        StringBuilder diff = new StringBuilder();
+	        for (var entry : editsByFile.entrySet()) 
+	        {
+	            IFile file = entry.getKey();
+	            String original = editorContents.containsKey(file) 
+	            		? editorContents.get(file) 
+	            		: ResourceUtilities.readFileContent(file);
+	            IDocument document = new Document(original);
+	            for (int index : entry.getValue()) 
+	            {
+	                try 
+	                {
+	                    edits.get(index).apply(document);
+	                }
+	                catch (IllegalStateException e) 
+	                {
+	                    throw new RuntimeException("Error: edit #" + (index + 1) + " failed, no file was changed. " + e.getMessage());
+	                }
+	            }
+	            String modified = document.get();
+	            if (!modified.equals(original)) 
+	            {
+	                modifiedContents.put(file, modified);
+	                diff.append(TextDiff.diff(file.getProjectRelativePath().toString(), original, modified, 3).unifiedDiff());
+	            }
+	        }
+	        
+	        if (modifiedContents.isEmpty()) 
+	        {
+	            return "Success: the edits left all files unchanged.";
+	        }
+	        
+	        // Write all files at once, so that builders and listeners run a single time
+	        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+	        ISchedulingRule rule = MultiRule.combine(modifiedContents.keySet().stream()
+	        		.map(file -> workspace.getRuleFactory().modifyRule(file))
+	        		.toArray(ISchedulingRule[]::new));
+	        IWorkspaceRunnable write = monitor -> {
+	            for (var entry : modifiedContents.entrySet()) 
+	            {
+	                IFile file = entry.getKey();
+	                byte[] bytes = entry.getValue().getBytes(Charset.forName(file.getCharset()));
+	                file.setContents(new ByteArrayInputStream(bytes), IResource.FORCE | IResource.KEEP_HISTORY, monitor);
+	            }
+	        };
+	        workspace.run(write, rule, IWorkspace.AVOID_UPDATE, null);
+	        
+	        sync.asyncExec(() -> modifiedContents.keySet().forEach(file -> {
+	            safeOpenEditor(file);
+	            refreshEditor(file);
+	        }));
+	        
+	        return "Success: applied " + edits.size() + " edits to " + modifiedContents.size() 
+	               + " file(s) in project '" + projectName + "'.\n" 
+	               + "Changes:\n```diff\n" + diff + "\n```";
+	    } 
+	    catch (CoreException | IOException e) 
+	    {
+	        throw new RuntimeException(e);
+	    }
+	}
+
 	/**
 	 * Inserts content after a specific line in an existing file.
 	 * 
@@ -569,6 +686,22 @@ public class CodeEditingService
 	 * @return A formatted string containing the diff and a summary of changes
 	 */
     public String generateCodeDiff(String projectName, String filePath, String proposedCode, Integer contextLines)
+    {
+        return computeCodeDiff(projectName, filePath, proposedCode, contextLines).unifiedDiff();
+    }
+
+	/**
+	 * Computes the difference between proposed code and an existing file in the project.
+	 * If the file is open in an editor with unsaved changes, the proposed code is compared 
+	 * with the editor content, otherwise with the file on disk.
+	 * 
+	 * @param projectName The name of the project containing the file 
+	 * @param filePath The path to the file relative to the project root 
+	 * @param proposedCode The new/updated code being proposed 
+	 * @param contextLines Number of context lines to include in the diff 
+	 * @return The unified diff together with its hunks; empty if there are no changes
+	 */
+    public TextDiff.Result computeCodeDiff(String projectName, String filePath, String proposedCode, Integer contextLines)
     {
 		Objects.requireNonNull(projectName);
 		Objects.requireNonNull(filePath);
@@ -616,63 +749,21 @@ public class CodeEditingService
             
             IFile file = (IFile) resource;
             
-	        // Try to refresh the editor if the file is open
+	        // Use the content of a dirty editor, otherwise refresh the editor if the file is open
+	        AtomicReference<String> editorContent = new AtomicReference<>();
 	        sync.syncExec(() -> 
 	        {
 	            safeOpenEditor(file);
-	            refreshEditor(file);
+	            findDirtyDocument(file).ifPresentOrElse(
+	            		document -> editorContent.set(document.get()), 
+	            		() -> refreshEditor(file));
 	        });
 
-            // Read the original file content
-            String originalContent = ResourceUtilities.readFileContent(file);
-            
-            // Create temporary files for diff
-            Path originalFile = Files.createTempFile("original-", ".tmp");
-            Path proposedFile = Files.createTempFile("proposed-", ".tmp");
+            String originalContent = editorContent.get() != null 
+            		? editorContent.get() 
+            		: ResourceUtilities.readFileContent(file);
             
-            try 
-            {
-                // Write contents to temp files
-                Files.writeString(originalFile, originalContent);
-                Files.writeString(proposedFile, proposedCode);
-                
-                // Generate diff using JGit
-                ByteArrayOutputStream diffOutput = new ByteArrayOutputStream();
-                DiffFormatter formatter = new DiffFormatter(diffOutput);
-                formatter.setContext(contextLines);
-                formatter.setDiffComparator(RawTextComparator.DEFAULT);
-                
-                RawText rawOriginal = new RawText(originalFile.toFile());
-                RawText rawProposed = new RawText(proposedFile.toFile());
-                
-                // Write a diff header
-                diffOutput.write(("--- /" + filePath + "\n").getBytes());
-                diffOutput.write(("+++ /" + filePath + "\n").getBytes());
-                
-                // Generate edit list
-                EditList edits = new HistogramDiff().diff(RawTextComparator.DEFAULT, rawOriginal, rawProposed);
-                
-                // Format the edits with proper context
-                formatter.format(edits, rawOriginal, rawProposed);
-                
-                String diffResult = diffOutput.toString();
-                formatter.close();
-                
-                // If there are no changes, inform the user
-                if (diffResult.trim().isEmpty() || !diffResult.contains("@@")) 
-                {
-                    // No changes detected. The proposed code is identical to the existing file.
-                    return "";
-                }
-                
-                return diffResult;
-            } 
-            finally 
-            {
-                // Clean up temporary files
-                Files.deleteIfExists(originalFile);
-                Files.deleteIfExists(proposedFile);
-            }
+            return TextDiff.diff(filePath, originalContent, proposedCode, contextLines);
         } 
         catch (Exception e) 
         {
@@ -681,6 +772,29 @@ public class CodeEditingService
         }
     }
 
+	/**
+	 * Finds the document of an open text editor of the file, if the editor has unsaved changes.
+	 * Must be called from the UI thread.
+	 */
+	private Optional<IDocument> findDirtyDocument(IFile file)
+	{
+	    return Optional.ofNullable(PlatformUI.getWorkbench())
+	            .map(IWorkbench::getActiveWorkbenchWindow)
+	            .map(IWorkbenchWindow::getActivePage)
+	            .flatMap(page -> Arrays.stream(page.getEditorReferences())
+	                    .map(ref -> ref.getEditor(false))
+	                    .filter(ITextEditor.class::isInstance)
+	                    .map(ITextEditor.class::cast)
+	                    .filter(ITextEditor::isDirty)
+	                    .filter(editor -> {
+	                        IEditorInput input = editor.getEditorInput();
+	                        return input instanceof IFileEditorInput && 
+	                               file.equals(((IFileEditorInput) input).getFile());
+	                    })
+	                    .findFirst())
+	            .map(editor -> editor.getDocumentProvider().getDocument(editor.getEditorInput()));
+	}
+
     /**
      * Formats the given code string according to the current Eclipse formatter settings.
      * This is equivalent to pressing Ctrl+Shift+F in the Eclipse editor.
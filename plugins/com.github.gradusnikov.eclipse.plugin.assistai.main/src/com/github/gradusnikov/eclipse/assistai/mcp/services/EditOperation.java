@@ -0,0 +1,251 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A single operation of a batch edit, applied to an in-memory document.
+ * <p>
+ * Line numbers are 1-based and refer to the document as changed by the
+ * operations before. Text given with {@code \n} line breaks is converted to
+ * the line delimiter of the document, so that a file keeps its line endings.
+ *
+ * @param filePath
+ *            the path of the file relative to the project root
+ * @param operation
+ *            {@code replace}, {@code insert} or {@code delete}
+ * @param oldString
+ *            replace and delete: the exact text to replace or delete, all
+ *            occurrences within the line range
+ * @param newString
+ *            replace: the replacement text; insert: the text to insert
+ * @param line
+ *            insert: the line before which to insert, one past the last line
+ *            to append
+ * @param startLine
+ *            replace and delete: the first line of the range, optional
+ * @param endLine
+ *            replace and delete: the last line of the range, inclusive,
+ *            optional; delete without {@code oldString} deletes the lines of
+ *            the range
+ */
+@JsonIgnoreProperties( ignoreUnknown = true )
+public record EditOperation( String filePath, String operation, String oldString, String newString, Integer line, Integer startLine,
+        Integer endLine )
+{
+    /** JSON schema of an operation, for the tool definition */
+    public static final String SCHEMA = """
+            {"type": "object",
+             "properties": {
+               "filePath": {"type": "string", "description": "The path to the file relative to the project root"},
+               "operation": {"type": "string", "enum": ["replace", "insert", "delete"]},
+               "oldString": {"type": "string", "description": "replace/delete: the exact text to replace or delete, including whitespace"},
+               "newString": {"type": "string", "description": "replace: the replacement text; insert: the text to insert"},
+               "line": {"type": "integer", "description": "insert: the 1-based line before which to insert"},
+               "startLine": {"type": "integer", "description": "replace/delete: optional first line of the range to edit"},
+               "endLine": {"type": "integer", "description": "replace/delete: optional last line of the range to edit; delete without oldString deletes these lines"}
+             },
+             "required": ["filePath", "operation"]}""";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Parses a JSON array of operations.
+     *
+     * @throws IllegalArgumentException
+     *             if the JSON is malformed, or an operation is incomplete
+     */
+    public static List<EditOperation> parseAll( String json )
+    {
+        List<EditOperation> operations;
+        try
+        {
+            operations = MAPPER.readValue( json, new TypeReference<List<EditOperation>>() {} );
+        }
+        catch ( JsonProcessingException e )
+        {
+            throw new IllegalArgumentException( "Error: edits must be a JSON array of edit operations. " + e.getOriginalMessage() );
+        }
+        if ( Objects.isNull( operations ) || operations.isEmpty() )
+        {
+            throw new IllegalArgumentException( "Error: no edits given." );
+        }
+        for ( int i = 0; i < operations.size(); i++ )
+        {
+            operations.get( i ).validate( i + 1 );
+        }
+        return operations;
+    }
+
+    private void validate( int number )
+    {
+        if ( Objects.isNull( filePath ) || filePath.isBlank() )
+        {
+            throw new IllegalArgumentException( "Error: edit #" + number + " has no filePath." );
+        }
+        switch ( kind() )
+        {
+            case "replace" -> requireOldString( number );
+            case "insert" ->
+            {
+                if ( Objects.isNull( newString ) || Objects.isNull( line ) )
+                {
+                    throw new IllegalArgumentException( "Error: insert edit #" + number + " needs newString and line." );
+                }
+            }
+            case "delete" ->
+            {
+                if ( Objects.isNull( oldString ) && ( Objects.isNull( startLine ) || Objects.isNull( endLine ) ) )
+                {
+                    throw new IllegalArgumentException( "Error: delete edit #" + number + " needs oldString, or startLine and endLine." );
+                }
+            }
+            default -> throw new IllegalArgumentException(
+                    "Error: edit #" + number + " has unknown operation '" + operation + "', expected replace, insert or delete." );
+        }
+    }
+
+    private void requireOldString( int number )
+    {
+        if ( Objects.isNull( oldString ) || oldString.isEmpty() )
+        {
+            throw new IllegalArgumentException( "Error: " + kind() + " edit #" + number + " needs a non-empty oldString." );
+        }
+    }
+
+    private String kind()
+    {
+        return Objects.requireNonNullElse( operation, "" ).trim().toLowerCase( Locale.ROOT );
+    }
+
+    /**
+     * Applies the operation to a document.
+     *
+     * @throws IllegalStateException
+     *             if the text or the lines to edit are not found
+     */
+    public void apply( IDocument document )
+    {
+        String delimiter = TextUtilities.getDefaultLineDelimiter( document );
+        try
+        {
+            switch ( kind() )
+            {
+                case "insert" -> insert( document, delimiter );
+                case "replace" -> replaceAll( document, toDelimiter( oldString, delimiter ), toDelimiter( Objects.requireNonNullElse( newString, "" ), delimiter ) );
+                case "delete" ->
+                {
+                    if ( Objects.isNull( oldString ) )
+                    {
+                        IRegion range = lineRange( document, true );
+                        document.replace( range.getOffset(), range.getLength(), "" );
+                    }
+                    else
+                    {
+                        replaceAll( document, toDelimiter( oldString, delimiter ), "" );
+                    }
+                }
+                default -> throw new IllegalStateException( "Unknown operation " + operation );
+            }
+        }
+        catch ( BadLocationException e )
+        {
+            throw new IllegalStateException( "Invalid position in " + filePath + ": " + e.getMessage(), e );
+        }
+    }
+
+    private void insert( IDocument document, String delimiter ) throws BadLocationException
+    {
+        int lines = document.getNumberOfLines();
+        boolean endsWithDelimiter = document.getLength() > 0 && document.getLineLength( lines - 1 ) == 0;
+        // a trailing line break does not start a line of its own
+        int lastLine = endsWithDelimiter ? lines - 1 : lines;
+        if ( line < 1 || line > lastLine + 1 )
+        {
+            throw new IllegalStateException( "Line " + line + " is out of range, " + filePath + " has " + lastLine + " lines." );
+        }
+        String text = toDelimiter( newString, delimiter );
+        int offset;
+        if ( line <= lastLine )
+        {
+            offset = document.getLineOffset( line - 1 );
+            text = text.endsWith( delimiter ) ? text : text + delimiter;
+        }
+        else
+        {
+            // appended text keeps the trailing line break of the document, if any
+            offset = document.getLength();
+            if ( endsWithDelimiter && !text.endsWith( delimiter ) )
+            {
+                text = text + delimiter;
+            }
+            else if ( lastLine > 0 && !endsWithDelimiter )
+            {
+                text = delimiter + text;
+            }
+        }
+        document.replace( offset, 0, text );
+    }
+
+    private void replaceAll( IDocument document, String target, String replacement ) throws BadLocationException
+    {
+        IRegion range = lineRange( document, false );
+        String text = document.get( range.getOffset(), range.getLength() );
+        int found = text.indexOf( target );
+        if ( found < 0 )
+        {
+            boolean ranged = Objects.nonNull( startLine ) || Objects.nonNull( endLine );
+            throw new IllegalStateException( "The text to " + kind() + " was not found in " + filePath
+                    + ( ranged ? " within lines " + Objects.requireNonNullElse( startLine, 1 ) + "-"
+                            + Objects.requireNonNullElse( endLine, document.getNumberOfLines() ) : "" ) + "." );
+        }
+        var result = new StringBuilder( text.length() );
+        int from = 0;
+        for ( ; found >= 0; found = text.indexOf( target, from ) )
+        {
+            result.append( text, from, found ).append( replacement );
+            from = found + target.length();
+        }
+        result.append( text, from, text.length() );
+        document.replace( range.getOffset(), range.getLength(), result.toString() );
+    }
+
+    /**
+     * @param withDelimiter
+     *            {@code true} to include the line break after the range
+     * @return the region of the line range, or the whole document if no range
+     *         is set
+     */
+    private IRegion lineRange( IDocument document, boolean withDelimiter ) throws BadLocationException
+    {
+        int lines = document.getNumberOfLines();
+        int first = Objects.requireNonNullElse( startLine, 1 );
+        int last = Math.min( Objects.requireNonNullElse( endLine, lines ), lines );
+        if ( first < 1 || first > lines || first > last )
+        {
+            throw new IllegalStateException( "Lines " + first + "-" + last + " are out of range, " + filePath + " has " + lines + " lines." );
+        }
+        int offset = document.getLineOffset( first - 1 );
+        int end = withDelimiter ? document.getLineOffset( last - 1 ) + document.getLineLength( last - 1 )
+                                : document.getLineInformation( last - 1 ).getOffset() + document.getLineInformation( last - 1 ).getLength();
+        return new Region( offset, end - offset );
+    }
+
+    private static String toDelimiter( String text, String delimiter )
+    {
+        String normalized = text.replace( "\r\n", "\n" );
+        return "\n".equals( delimiter ) ? normalized : normalized.replace( "\n", delimiter );
+    }
+}
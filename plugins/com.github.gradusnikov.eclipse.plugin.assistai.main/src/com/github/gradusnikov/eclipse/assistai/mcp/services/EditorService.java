@@ -53,24 +53,33 @@ public class EditorService
      */
     public String getCurrentlyOpenedFileContent()
     {
-        return uiSync.syncCall( () -> {
-	        final StringBuilder result = new StringBuilder();
-	        try 
-	        {
-	            IFile file = getCurrentlyOpenedFile().orElseThrow( () ->  new RuntimeException("No active editor found or editor input not available.") );
-	            // Get file information
-	            result.append("# Currently Opened File:\n\n");
-	            // Get the file path
-                ResourceFormatter resourceFormatter = new ResourceFormatter(file);
-                result.append(resourceFormatter.formatFile());
-	        } 
-	        catch (Exception e)
-	        {
-	        	throw new RuntimeException(e);
-	        }
-	        
-	        return result.toString();
-        });
+        IFile file = uiSync.syncCall( () -> getCurrentlyOpenedFile().orElseThrow( () ->  new RuntimeException("No active editor found or editor input not available.") ) );
+        return getFileContent( file );
+    }
+
+    /**
+     * Formats the content of a file like {@link #getCurrentlyOpenedFileContent()}.
+     * The file is read in the calling thread, which does not need to be the UI thread.
+     * 
+     * @param file the file to format
+     * @return A formatted string containing file information and content
+     */
+    public String getFileContent( IFile file )
+    {
+        final StringBuilder result = new StringBuilder();
+        try 
+        {
+            // Get file information
+            result.append("# Currently Opened File:\n\n");
+            // Get the file path
+            ResourceFormatter resourceFormatter = new ResourceFormatter(file);
+            result.append(resourceFormatter.formatFile());
+        } 
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+        return result.toString();
     }
 
     /**
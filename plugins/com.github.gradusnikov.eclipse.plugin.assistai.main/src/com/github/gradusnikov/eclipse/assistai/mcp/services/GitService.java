@@ -39,41 +39,56 @@ public class GitService
     
     public String getCurrentDiff()
     {
-        return uiSync.syncCall( () -> {
-            // Get the active editor
-            var activeResource = editorService.getActiveEditor()
-                    .map( IEditorPart::getEditorInput )
-                    .map( editorInput -> editorInput.getAdapter( IResource.class ) )
-                    .orElseThrow( () -> new RuntimeException( "No active resource available." ) );
-            // Obtain the repository from the active editor's project
-            var mapping = RepositoryMapping.getMapping( activeResource );
-            var repository = mapping.getRepository();
-            // Obtain the Git object for the repository
-            try ( var git = new Git( repository ) )
+        // Get the active editor
+        var activeResource = uiSync.syncCall( () -> editorService.getActiveEditor()
+                .map( IEditorPart::getEditorInput )
+                .map( editorInput -> editorInput.getAdapter( IResource.class ) )
+                .orElseThrow( () -> new RuntimeException( "No active resource available." ) ) );
+        return getStagedDiff( activeResource );
+    }
+
+    /**
+     * Returns the staged changes of the repository a resource belongs to. The
+     * diff is computed in the calling thread, which does not need to be the UI
+     * thread.
+     * 
+     * @param resource any resource of the repository
+     * @return the staged changes as a patch
+     */
+    public String getStagedDiff( IResource resource )
+    {
+        // Obtain the repository from the resource's project
+        var mapping = RepositoryMapping.getMapping( resource );
+        if ( Objects.isNull( mapping ) )
+        {
+            throw new RuntimeException( "Resource is not in a Git repository: " + resource.getFullPath() );
+        }
+        var repository = mapping.getRepository();
+        // Obtain the Git object for the repository
+        try ( var git = new Git( repository ) )
+        {
+            // Get the staged changes
+            var head = repository.resolve( "HEAD" );
+            if ( Objects.isNull( head ) )
             {
-                // Get the staged changes
-                var head = repository.resolve( "HEAD" );
-                if ( Objects.isNull( head ) )
-                {
-                    logger.info( "Initial commit: No previous commits found." );
-                    return "Initial commit: No previous commits found.";
-                }
-                else
-                {
-                    var headTree  = prepareTreeParser( repository, head );
-                    var indexTree = prepareIndexTreeParser( repository );
-                    var stagedChanges = git.diff().setOldTree( headTree ).setNewTree( indexTree ).call();
-                    
-                    var patch = printChanges( git.getRepository(), stagedChanges );
-                    
-                    return patch;
-                }
+                logger.info( "Initial commit: No previous commits found." );
+                return "Initial commit: No previous commits found.";
             }
-            catch ( Exception e )
+            else
             {
-                throw new RuntimeException( e );
+                var headTree  = prepareTreeParser( repository, head );
+                var indexTree = prepareIndexTreeParser( repository );
+                var stagedChanges = git.diff().setOldTree( headTree ).setNewTree( indexTree ).call();
+                
+                var patch = printChanges( git.getRepository(), stagedChanges );
+                
+                return patch;
             }
-        } );
+        }
+        catch ( Exception e )
+        {
+            throw new RuntimeException( e );
+        }
     }
 
     // Helper method to prepare the tree parser
@@ -15,6 +15,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.e4.core.di.annotations.Creatable;
 import org.eclipse.e4.ui.di.UISynchronize;
@@ -26,6 +27,8 @@ import org.eclipse.m2e.core.internal.IMavenConstants;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.IMavenProjectRegistry;
 
+import com.github.gradusnikov.eclipse.assistai.tools.InterruptibleProgressMonitor;
+
 import jakarta.inject.Inject;
 
 @SuppressWarnings( "restriction" ) // For using M2E internal classes
@@ -139,7 +142,17 @@ public class MavenService
             };
 
             job.schedule();
-            job.join( TimeUnit.MINUTES.toMillis( timeout ), new NullProgressMonitor() );
+            try
+            {
+                job.join( TimeUnit.MINUTES.toMillis( timeout ), new InterruptibleProgressMonitor() );
+            }
+            catch ( InterruptedException | OperationCanceledException e )
+            {
+                // the tool call was cancelled, the build stops at its next mojo
+                job.cancel();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException( "Maven build cancelled on project '" + projectName + "'", e );
+            }
 
             // If timeout is specified, wait for completion
             String timeoutMessage = "";
@@ -152,7 +165,7 @@ public class MavenService
                     + "\nExample: getConsoleOutput(consoleName=\"Maven Console\", maxLines=200)";
 
         }
-        catch ( CoreException | InterruptedException e )
+        catch ( CoreException e )
         {
             throw new RuntimeException( "Error starting Maven build: " + e.getMessage(), e );
         }
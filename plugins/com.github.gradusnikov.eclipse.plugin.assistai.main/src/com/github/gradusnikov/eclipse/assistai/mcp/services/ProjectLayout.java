@@ -0,0 +1,310 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Immutable snapshot of the file and folder tree of a project, rendered into
+ * a compact, pageable text form.
+ * <p>
+ * The entries are kept in a flat list in depth-first order, where every
+ * folder knows the index after its last descendant, so that a subtree can be
+ * skipped in one step. Folders that are not worth listing, e.g. ignored by
+ * git or derived, are kept as leaves without children.
+ */
+public final class ProjectLayout
+{
+    /** Why the content of a folder is not listed */
+    public enum Mark
+    {
+        NONE, IGNORED, DERIVED
+    }
+
+    /**
+     * Rendering options.
+     *
+     * @param maxDepth
+     *            the number of folder levels to list, {@code 0} for all
+     * @param include
+     *            the files to list, or {@code null} for all
+     * @param exclude
+     *            the files and folders to leave out, or {@code null}
+     * @param offset
+     *            the number of lines to skip
+     * @param pageSize
+     *            the maximum number of lines to render
+     */
+    public record Options( int maxDepth, Predicate<String> include, Predicate<String> exclude, int offset, int pageSize )
+    {
+    }
+
+    /**
+     * A page of the rendered layout.
+     *
+     * @param text
+     *            the rendered lines
+     * @param totalLines
+     *            the number of lines of the whole layout
+     * @param nextOffset
+     *            the offset of the next page, or {@code -1} for the last page
+     */
+    public record Page( String text, int totalLines, int nextOffset )
+    {
+    }
+
+    private record Entry( String path, String name, int depth, boolean folder, Mark mark, int end )
+    {
+    }
+
+    private final List<Entry> entries;
+
+    private final int         files;
+
+    private final int         folders;
+
+    private final long        version;
+
+    private ProjectLayout( List<Entry> entries, long version )
+    {
+        this.entries = entries;
+        this.files = (int) entries.stream().filter( entry -> !entry.folder() ).count();
+        this.folders = entries.size() - files;
+        this.version = version;
+    }
+
+    /**
+     * @return the number of listed files
+     */
+    public int getFiles()
+    {
+        return files;
+    }
+
+    /**
+     * @return the number of listed folders
+     */
+    public int getFolders()
+    {
+        return folders;
+    }
+
+    /**
+     * @return the version of the project tree this snapshot was taken from
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Renders the layout as an indented list, one entry per line. Folder
+     * names end with a slash, chains of folders with a single listed child
+     * are joined into one line, and folders whose content is not listed show
+     * either their mark or, below the depth limit, the number of files.
+     */
+    public Page render( Options options )
+    {
+        int[] shownFiles = new int[entries.size()];
+        boolean[] visible = new boolean[entries.size()];
+        computeVisibility( 0, entries.size(), options, shownFiles, visible );
+
+        var lines = new ArrayList<String>();
+        renderRange( 0, entries.size(), 0, options, shownFiles, visible, lines );
+
+        int from = Math.min( options.offset(), lines.size() );
+        int to = Math.min( from + options.pageSize(), lines.size() );
+        var text = new StringBuilder();
+        for ( String line : lines.subList( from, to ) )
+        {
+            text.append( line ).append( '\n' );
+        }
+        return new Page( text.toString(), lines.size(), to < lines.size() ? to : -1 );
+    }
+
+    /**
+     * Marks the visible entries in a range and counts the files listed in
+     * every folder.
+     *
+     * @return the number of listed files in the range
+     */
+    private int computeVisibility( int from, int to, Options options, int[] shownFiles, boolean[] visible )
+    {
+        int count = 0;
+        int i = from;
+        while ( i < to )
+        {
+            Entry entry = entries.get( i );
+            // a folder also matches the globs of its content, e.g. "target/**"
+            boolean excluded = Objects.nonNull( options.exclude() )
+                    && ( options.exclude().test( entry.path() ) || entry.folder() && options.exclude().test( entry.path() + "/" ) );
+            if ( !entry.folder() )
+            {
+                visible[i] = !excluded && ( Objects.isNull( options.include() ) || options.include().test( entry.path() ) );
+                shownFiles[i] = visible[i] ? 1 : 0;
+            }
+            else if ( entry.mark() != Mark.NONE )
+            {
+                visible[i] = !excluded && Objects.isNull( options.include() );
+            }
+            else if ( !excluded )
+            {
+                shownFiles[i] = computeVisibility( i + 1, entry.end(), options, shownFiles, visible );
+                visible[i] = shownFiles[i] > 0 || Objects.isNull( options.include() );
+            }
+            count += shownFiles[i];
+            i = entry.end();
+        }
+        return count;
+    }
+
+    private void renderRange( int from, int to, int indent, Options options, int[] shownFiles, boolean[] visible, List<String> lines )
+    {
+        int i = from;
+        while ( i < to )
+        {
+            Entry entry = entries.get( i );
+            if ( visible[i] )
+            {
+                renderEntry( i, indent, options, shownFiles, visible, lines );
+            }
+            i = entry.end();
+        }
+    }
+
+    private void renderEntry( int index, int indent, Options options, int[] shownFiles, boolean[] visible, List<String> lines )
+    {
+        var line = new StringBuilder();
+        line.append( "  ".repeat( indent ) );
+        Entry entry = entries.get( index );
+        line.append( entry.name() );
+        if ( !entry.folder() )
+        {
+            lines.add( line.toString() );
+            return;
+        }
+        line.append( '/' );
+        int current = index;
+        while ( entry.mark() == Mark.NONE && isExpanded( entry, options ) )
+        {
+            int child = singleVisibleChild( current, visible );
+            if ( child < 0 || !entries.get( child ).folder() || entries.get( child ).mark() != Mark.NONE )
+            {
+                break;
+            }
+            current = child;
+            entry = entries.get( current );
+            line.append( entry.name() ).append( '/' );
+        }
+        if ( entry.mark() != Mark.NONE )
+        {
+            line.append( " [" ).append( entry.mark().name().toLowerCase( Locale.ROOT ) ).append( ']' );
+            lines.add( line.toString() );
+        }
+        else if ( !isExpanded( entry, options ) )
+        {
+            line.append( " (" ).append( shownFiles[current] ).append( shownFiles[current] == 1 ? " file)" : " files)" );
+            lines.add( line.toString() );
+        }
+        else
+        {
+            lines.add( line.toString() );
+            renderRange( current + 1, entry.end(), indent + 1, options, shownFiles, visible, lines );
+        }
+    }
+
+    private static boolean isExpanded( Entry folder, Options options )
+    {
+        return options.maxDepth() <= 0 || folder.depth() + 1 < options.maxDepth();
+    }
+
+    /**
+     * @return the index of the only visible child of a folder, or {@code -1}
+     */
+    private int singleVisibleChild( int folder, boolean[] visible )
+    {
+        int found = -1;
+        int i = folder + 1;
+        while ( i < entries.get( folder ).end() )
+        {
+            if ( visible[i] )
+            {
+                if ( found >= 0 )
+                {
+                    return -1;
+                }
+                found = i;
+            }
+            i = entries.get( i ).end();
+        }
+        return found;
+    }
+
+    /**
+     * Collects the entries of a tree in depth-first order.
+     */
+    public static final class Builder
+    {
+        private final List<Entry>    entries = new ArrayList<>();
+
+        private final Deque<Integer> open    = new ArrayDeque<>();
+
+        /**
+         * Adds a folder and makes it the parent of the following entries,
+         * until {@link #leave()}.
+         */
+        public Builder enter( String name )
+        {
+            add( name, true, Mark.NONE );
+            open.push( entries.size() - 1 );
+            return this;
+        }
+
+        /**
+         * Closes the folder opened last.
+         */
+        public Builder leave()
+        {
+            int index = open.pop();
+            Entry folder = entries.get( index );
+            entries.set( index, new Entry( folder.path(), folder.name(), folder.depth(), true, folder.mark(), entries.size() ) );
+            return this;
+        }
+
+        /**
+         * Adds a folder whose content is not listed.
+         */
+        public Builder folder( String name, Mark mark )
+        {
+            return add( name, true, mark );
+        }
+
+        /**
+         * Adds a file.
+         */
+        public Builder file( String name )
+        {
+            return add( name, false, Mark.NONE );
+        }
+
+        public ProjectLayout build( long version )
+        {
+            if ( !open.isEmpty() )
+            {
+                throw new IllegalStateException( "Folder not closed: " + entries.get( open.peek() ).path() );
+            }
+            return new ProjectLayout( List.copyOf( entries ), version );
+        }
+
+        private Builder add( String name, boolean folder, Mark mark )
+        {
+            String path = open.isEmpty() ? name : entries.get( open.peek() ).path() + "/" + name;
+            entries.add( new Entry( path, name, open.size(), folder, mark, entries.size() + 1 ) );
+            return this;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.jgit.ignore.IgnoreNode;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.services.ProjectLayout.Mark;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Caches a {@link ProjectLayout} snapshot per project, so that repeated and
+ * paged layout requests do not walk the project tree again.
+ * <p>
+ * A snapshot is dropped when a resource of its project is added, removed or
+ * moved, when the derived flag of a resource or a {@code .gitignore} file
+ * changes, and when the project is opened or closed; changes to file contents
+ * keep it. Folders ignored by git, derived folders (e.g. build output) and
+ * {@link #SKIPPED_FOLDERS} at the top of the project are listed without their
+ * content; ignored and derived files are not listed at all.
+ */
+@Creatable
+@Singleton
+public class ProjectLayoutCache
+{
+    private static final String             GITIGNORE       = ".gitignore";
+
+    /**
+     * Version control metadata, dependencies and build output, also when not
+     * marked derived; only folders at the top of a project are skipped, deeper
+     * folders of these names may well be source packages.
+     */
+    public static final Set<String>         SKIPPED_FOLDERS = Set.of( ".git", ".svn", ".hg", "node_modules", "target", "build",
+            "dist", "out", "bin" );
+
+    @Inject
+    private ILog                            logger;
+
+    private final Map<String, ProjectLayout> layouts        = new ConcurrentHashMap<>();
+
+    private final Map<String, Long>         versions        = new ConcurrentHashMap<>();
+
+    private final IResourceChangeListener   listener        = this::resourceChanged;
+
+    /**
+     * Ignore rules of a {@code .gitignore} file.
+     *
+     * @param node
+     *            the parsed rules
+     * @param folder
+     *            the project relative path of the folder holding the file,
+     *            with a trailing slash, or an empty string for the project
+     *            root and the folders above it
+     * @param prefix
+     *            the path of the project relative to a folder above it, with
+     *            a trailing slash, or an empty string
+     */
+    private record IgnoreRules( IgnoreNode node, String folder, String prefix )
+    {
+        Boolean isIgnored( String path, boolean isFolder )
+        {
+            return node.checkIgnored( prefix + path.substring( folder.length() ), isFolder );
+        }
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener( listener, IResourceChangeEvent.POST_CHANGE );
+    }
+
+    @PreDestroy
+    public void dispose()
+    {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener( listener );
+        layouts.clear();
+    }
+
+    /**
+     * Returns the layout of a project, walking the project tree only if it
+     * changed since the last call.
+     *
+     * @param project
+     *            an open project
+     * @throws CoreException
+     *             if the project tree cannot be read
+     */
+    public ProjectLayout get( IProject project ) throws CoreException
+    {
+        String name = project.getName();
+        ProjectLayout layout = layouts.get( name );
+        if ( Objects.nonNull( layout ) )
+        {
+            return layout;
+        }
+        long version = versions.getOrDefault( name, 0L );
+        var builder = new ProjectLayout.Builder();
+        walk( project, "", builder, outerIgnoreRules( project ) );
+        layout = builder.build( version );
+        // not cached if the project changed while it was walked
+        if ( version == versions.getOrDefault( name, 0L ) )
+        {
+            layouts.put( name, layout );
+        }
+        return layout;
+    }
+
+    /**
+     * @return the current version of the project tree
+     */
+    public long getVersion( IProject project )
+    {
+        return versions.getOrDefault( project.getName(), 0L );
+    }
+
+    private void walk( IContainer container, String path, ProjectLayout.Builder builder, List<IgnoreRules> rules ) throws CoreException
+    {
+        IFile gitignore = container.getFile( IPath.fromOSString( GITIGNORE ) );
+        boolean hasRules = gitignore.exists();
+        if ( hasRules )
+        {
+            rules.add( new IgnoreRules( parse( gitignore ), path.isEmpty() ? "" : path + "/", "" ) );
+        }
+        for ( IResource member : container.members() )
+        {
+            if ( member.isTeamPrivateMember() )
+            {
+                continue;
+            }
+            String memberPath = path.isEmpty() ? member.getName() : path + "/" + member.getName();
+            boolean isFolder = member instanceof IContainer;
+            Mark mark = isIgnored( memberPath, isFolder, rules ) ? Mark.IGNORED
+                      : member.isDerived() ? Mark.DERIVED
+                      : isFolder && isSkippedFolder( member ) ? Mark.IGNORED
+                      : Mark.NONE;
+            if ( !isFolder )
+            {
+                if ( mark == Mark.NONE )
+                {
+                    builder.file( member.getName() );
+                }
+            }
+            else if ( mark != Mark.NONE )
+            {
+                builder.folder( member.getName(), mark );
+            }
+            else
+            {
+                builder.enter( member.getName() );
+                walk( (IContainer) member, memberPath, builder, rules );
+                builder.leave();
+            }
+        }
+        if ( hasRules )
+        {
+            rules.remove( rules.size() - 1 );
+        }
+    }
+
+    /**
+     * @return whether the resource is one of the {@link #SKIPPED_FOLDERS} at
+     *         the top of its project
+     */
+    public static boolean isSkippedFolder( IResource resource )
+    {
+        return resource.getType() == IResource.FOLDER && resource.getParent().getType() == IResource.PROJECT
+                && SKIPPED_FOLDERS.contains( resource.getName() );
+    }
+
+    /**
+     * Checks the rules from the innermost {@code .gitignore} outwards; the
+     * first one with a matching pattern decides.
+     */
+    private static boolean isIgnored( String path, boolean isFolder, List<IgnoreRules> rules )
+    {
+        for ( int i = rules.size() - 1; i >= 0; i-- )
+        {
+            Boolean ignored = rules.get( i ).isIgnored( path, isFolder );
+            if ( Objects.nonNull( ignored ) )
+            {
+                return ignored;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the {@code .gitignore} files in the folders between the project
+     * and the root of the git repository containing it, outermost first.
+     */
+    private List<IgnoreRules> outerIgnoreRules( IProject project )
+    {
+        var rules = new ArrayList<IgnoreRules>();
+        IPath location = project.getLocation();
+        if ( Objects.isNull( location ) )
+        {
+            return rules;
+        }
+        Path projectFolder = location.toPath();
+        if ( Files.exists( projectFolder.resolve( ".git" ) ) )
+        {
+            return rules;
+        }
+        var folders = new ArrayList<Path>();
+        for ( Path folder = projectFolder.getParent(); Objects.nonNull( folder ); folder = folder.getParent() )
+        {
+            folders.add( 0, folder );
+            if ( Files.exists( folder.resolve( ".git" ) ) )
+            {
+                for ( Path outer : folders )
+                {
+                    Path file = outer.resolve( GITIGNORE );
+                    if ( Files.isRegularFile( file ) )
+                    {
+                        String prefix = outer.relativize( projectFolder ).toString().replace( '\\', '/' ) + "/";
+                        try ( InputStream input = Files.newInputStream( file ) )
+                        {
+                            rules.add( new IgnoreRules( parse( input ), "", prefix ) );
+                        }
+                        catch ( IOException e )
+                        {
+                            logger.error( e.getMessage(), e );
+                        }
+                    }
+                }
+                return rules;
+            }
+        }
+        // not in a git repository
+        return rules;
+    }
+
+    private IgnoreNode parse( IFile gitignore )
+    {
+        try ( InputStream input = gitignore.getContents( true ) )
+        {
+            return parse( input );
+        }
+        catch ( CoreException | IOException e )
+        {
+            logger.error( e.getMessage(), e );
+            return new IgnoreNode();
+        }
+    }
+
+    private static IgnoreNode parse( InputStream input ) throws IOException
+    {
+        var node = new IgnoreNode();
+        node.parse( input );
+        return node;
+    }
+
+    private void resourceChanged( IResourceChangeEvent event )
+    {
+        IResourceDelta delta = event.getDelta();
+        if ( Objects.isNull( delta ) )
+        {
+            return;
+        }
+        for ( IResourceDelta projectDelta : delta.getAffectedChildren() )
+        {
+            if ( changesLayout( projectDelta ) )
+            {
+                String name = projectDelta.getResource().getName();
+                versions.merge( name, 1L, Long::sum );
+                layouts.remove( name );
+            }
+        }
+    }
+
+    private static boolean changesLayout( IResourceDelta delta )
+    {
+        if ( delta.getKind() != IResourceDelta.CHANGED )
+        {
+            return true;
+        }
+        if ( ( delta.getFlags() & ( IResourceDelta.OPEN | IResourceDelta.MOVED_FROM | IResourceDelta.MOVED_TO
+                | IResourceDelta.DERIVED_CHANGED | IResourceDelta.TYPE ) ) != 0 )
+        {
+            return true;
+        }
+        if ( GITIGNORE.equals( delta.getResource().getName() ) && ( delta.getFlags() & IResourceDelta.CONTENT ) != 0 )
+        {
+            return true;
+        }
+        for ( IResourceDelta child : delta.getAffectedChildren() )
+        {
+            if ( changesLayout( child ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
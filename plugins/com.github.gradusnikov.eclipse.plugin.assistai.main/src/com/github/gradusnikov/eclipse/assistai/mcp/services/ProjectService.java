@@ -26,6 +26,8 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 
+import com.github.gradusnikov.eclipse.assistai.tools.GlobPattern;
+
 import jakarta.inject.Inject;
 
 /**
@@ -35,9 +37,14 @@ import jakarta.inject.Inject;
 @Creatable
 public class ProjectService {
     
+    private static final int LAYOUT_PAGE_SIZE = 400;
+    
     @Inject
     ILog logger;
     
+    @Inject
+    ProjectLayoutCache projectLayoutCache;
+    
     /**
      * Lists all available projects in the workspace with their detected natures.
      * 
@@ -151,32 +158,81 @@ public class ProjectService {
     }
     
     /**
-     * Gets the file and folder structure of a specified project.
+     * Gets the file and folder structure of a specified project, one page at a time.
+     * The tree is read from a snapshot that is kept until the project structure changes.
      * 
      * @param projectName The name of the project to analyze
+     * @param maxDepth The number of folder levels to list, 0 or null for all
+     * @param include Comma separated globs of the files to list, or null for all
+     * @param exclude Comma separated globs of the files and folders to leave out, or null
+     * @param pageToken The token returned with the previous page, or null for the first page
      * @return A hierarchical representation of the project structure
      */
-    public String getProjectLayout(String projectName) 
+    public String getProjectLayout(String projectName, Integer maxDepth, String include, String exclude, String pageToken) 
     {
         IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
         if (project == null || !project.exists()) 
         {
             return "Project '" + projectName + "' not found.";
         }
+        if (!project.isOpen()) 
+        {
+            return "Project '" + projectName + "' is closed.";
+        }
+        
+        int offset = 0;
+        long tokenVersion = -1;
+        if (pageToken != null && !pageToken.isBlank()) 
+        {
+            try 
+            {
+                String[] parts = pageToken.trim().split("@");
+                offset = Integer.parseInt(parts[0]);
+                tokenVersion = parts.length > 1 ? Long.parseLong(parts[1]) : -1;
+            } 
+            catch (NumberFormatException e) 
+            {
+                return "Invalid page token: " + pageToken;
+            }
+        }
         
-        StringBuilder result = new StringBuilder();
         try 
         {
-            result.append("# Project Structure: ").append(projectName).append("\n\n");
-            collectResourcesForLLM(project, 0, result); // Start with the project root
+            ProjectLayout layout = projectLayoutCache.get(project);
+            var options = new ProjectLayout.Options(maxDepth == null ? 0 : maxDepth,
+                    GlobPattern.compileAny(include),
+                    GlobPattern.compileAny(exclude),
+                    offset,
+                    LAYOUT_PAGE_SIZE);
+            ProjectLayout.Page page = layout.render(options);
+            
+            StringBuilder result = new StringBuilder();
+            result.append("# Project Structure: ").append(projectName).append("\n");
+            result.append(layout.getFiles()).append(" files in ").append(layout.getFolders())
+                  .append(" folders; folders end with '/', [ignored] and [derived] folders are not expanded.\n");
+            if (tokenVersion >= 0 && tokenVersion != layout.getVersion()) 
+            {
+                result.append("Note: the project structure changed since the previous page was listed.\n");
+            }
+            if (page.nextOffset() >= 0 || offset > 0) 
+            {
+                result.append("Lines ").append(Math.min(offset + 1, page.totalLines())).append("-")
+                      .append(page.nextOffset() >= 0 ? page.nextOffset() : page.totalLines())
+                      .append(" of ").append(page.totalLines()).append("\n");
+            }
+            result.append("\n").append(page.text());
+            if (page.nextOffset() >= 0) 
+            {
+                result.append("\nMore entries follow; call getProjectLayout again with pageToken \"")
+                      .append(page.nextOffset()).append("@").append(layout.getVersion()).append("\".\n");
+            }
+            return result.toString();
         } 
         catch (CoreException e)
         {
             logger.error(e.getMessage(), e);
             return "Error retrieving project layout: " + e.getMessage();
         }
-        
-        return result.toString();
     }
     
     /**
@@ -242,49 +298,6 @@ public class ProjectService {
         }
     }
     
-    /**
-     * Collects resources in a hierarchical structure for display.
-     * 
-     * @param resource The starting resource
-     * @param depth The current depth in the hierarchy
-     * @param result The StringBuilder to append results to
-     * @throws CoreException if an error occurs
-     */
-    private void collectResourcesForLLM(IResource resource, int depth, StringBuilder result) throws CoreException {
-        // Use proper indentation with markdown list formatting
-        String indent = "";
-        for (int i = 0; i < depth; i++) 
-        {
-            indent += "  ";
-        }
-        
-        // Append the current resource with markdown list item
-        String prefix = depth > 0 ? indent + "- " : "- ";
-        result.append(prefix).append(resource.getName());
-        
-        // Add type indicator for better context
-        String type = switch ( resource.getType() ) {
-            case IResource.FOLDER -> "(Directory)";
-            case IResource.FILE -> "(File)";
-            case IResource.PROJECT -> "(Project)";
-            default -> "";
-        };
-        result.append( " ");
-        result.append( type );
-        result.append("\n");
-    
-        // If the resource is a container, list its children
-        if (resource instanceof IContainer) 
-        {
-            IContainer container = (IContainer) resource;
-            IResource[] members = container.members();
-            for (IResource member : members) 
-            {
-                collectResourcesForLLM(member, depth + 1, result);
-            }
-        }
-    }
-
     /**
      * Appends Java project specific properties to the result.
      * 
@@ -13,6 +13,7 @@ import org.eclipse.core.runtime.ILog;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.e4.core.di.annotations.Creatable;
 
+import com.github.gradusnikov.eclipse.assistai.tools.LineRangeReader;
 import com.github.gradusnikov.eclipse.assistai.tools.ResourceUtilities;
 
 import jakarta.inject.Inject;
@@ -25,17 +26,25 @@ import jakarta.inject.Singleton;
 @Creatable
 public class ResourceService {
     
+    /** The default limit of a read, about 64k tokens */
+    public static final int DEFAULT_MAX_BYTES = 256 * 1024;
+    
     @Inject
     ILog logger;
     
     /**
-     * Reads the content of a text resource from a specified project.
+     * Reads the content of a text resource from a specified project, or a range of its lines.
+     * Reads that exceed {@code maxBytes} end at the last whole line within the limit,
+     * and the response tells where to continue.
      * 
      * @param projectName The name of the project containing the resource
      * @param filePath The path to the resource file relative to the project root
+     * @param startLine The 1-based first line to read, or null to start at the beginning
+     * @param endLine The last line to read, inclusive, or null to read to the end
+     * @param maxBytes The maximum number of bytes to read, or null for {@link #DEFAULT_MAX_BYTES}
      * @return The content of the resource as a formatted string
      */
-    public String readProjectResource(String projectName, String filePath)
+    public String readProjectResource(String projectName, String filePath, Integer startLine, Integer endLine, Integer maxBytes)
     {
             // Get the project
             IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
@@ -60,13 +69,34 @@ public class ResourceService {
             try
             {
                 String lang = ResourceUtilities.getResourceFileType( file );
+                long limit = maxBytes == null || maxBytes <= 0 ? DEFAULT_MAX_BYTES : maxBytes;
+                LineRangeReader.Slice slice = LineRangeReader.read( file, startLine, endLine, limit );
+                if ( slice.startLine() > slice.totalLines() )
+                {
+                    return "Error: File '" + filePath + "' has only " + slice.totalLines() + " lines.";
+                }
                 // Prepare the response
                 StringBuilder response = new StringBuilder();
                 response.append("# Content of ").append(filePath).append(" in project ").append(projectName).append("\n\n");
+                if ( !slice.isComplete() )
+                {
+                    response.append("Lines ").append(slice.startLine()).append("-").append(slice.endLine())
+                            .append(" of ").append(slice.totalLines()).append(".\n\n");
+                }
                 response.append("```");
-                response.append( lang);
-                response.append( ResourceUtilities.readFileContent( file ) );
+                response.append( lang).append("\n");
+                response.append( slice.text() );
                 response.append("\n```\n");
+                if ( slice.truncated() )
+                {
+                    response.append("\nThe requested lines exceed ").append(limit).append(" bytes");
+                    response.append( slice.startLine() == slice.endLine() ? ", line " + slice.endLine() + " was cut." : "." );
+                }
+                if ( slice.endLine() < slice.totalLines() && ( slice.truncated() || endLine == null ) )
+                {
+                    response.append("\nCall readProjectResource with startLine=").append(slice.endLine() + 1)
+                            .append(" to read further.\n");
+                }
                 return response.toString();
             	
             }
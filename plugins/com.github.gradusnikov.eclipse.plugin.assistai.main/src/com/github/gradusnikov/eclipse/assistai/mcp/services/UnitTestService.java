@@ -5,13 +5,16 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.ILog;
-import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
 import org.eclipse.debug.core.ILaunchConfigurationType;
 import org.eclipse.debug.core.ILaunchConfigurationWorkingCopy;
@@ -35,6 +38,8 @@ import org.eclipse.jdt.junit.model.ITestElement.Result;
 import org.eclipse.jdt.junit.model.ITestRunSession;
 import org.eclipse.jdt.launching.IJavaLaunchConfigurationConstants;
 
+import com.github.gradusnikov.eclipse.assistai.tools.InterruptibleProgressMonitor;
+
 import jakarta.inject.Inject;
 
 @Creatable
@@ -341,6 +346,9 @@ public class UnitTestService {
                                    IType testClass, int timeout, String methodName) {
         final CountDownLatch latch = new CountDownLatch(1);
         final TestRunResult[] testRunResults = new TestRunResult[1];
+        final AtomicReference<ILaunch> launch = new AtomicReference<>();
+        // canceled when the tool call is cancelled, i.e. this thread is interrupted
+        final IProgressMonitor monitor = new InterruptibleProgressMonitor();
         
         try {
             // Register a test run listener to collect results
@@ -416,16 +424,25 @@ public class UnitTestService {
                 // Launch the tests
                 sync.syncExec(() -> {
                     try {
-                        configuration.launch(ILaunchManager.RUN_MODE, new NullProgressMonitor());
+                        launch.set(configuration.launch(ILaunchManager.RUN_MODE, monitor));
                     } catch (CoreException e) {
                         logger.error("Error launching tests", e);
                     }
                 });
                 
                 // Wait for completion
-                boolean completed = latch.await(timeout, TimeUnit.SECONDS);
+                boolean completed;
+                try {
+                    completed = latch.await(timeout, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // the tool call was cancelled, stop the test JVM
+                    terminate(launch.get());
+                    Thread.currentThread().interrupt();
+                    return "Error: Test execution cancelled.";
+                }
                 
                 if (!completed) {
+                    terminate(launch.get());
                     return "Error: Test execution timed out after " + timeout + " seconds.";
                 }
                 
@@ -445,6 +462,20 @@ public class UnitTestService {
         }
     }
     
+    /**
+     * Terminates a test launch that is still running.
+     */
+    private void terminate(ILaunch launch) {
+        if (launch == null || launch.isTerminated()) {
+            return;
+        }
+        try {
+            launch.terminate();
+        } catch (DebugException e) {
+            logger.error("Error terminating test launch", e);
+        }
+    }
+    
     /**
      * Finds all test classes in a project.
      * 
@@ -0,0 +1,507 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.jface.preference.IPreferenceStore;
+
+import com.github.gradusnikov.eclipse.assistai.Activator;
+import com.github.gradusnikov.eclipse.assistai.preferences.PreferenceConstants;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Disk-backed cache of the web content read by the tools, e.g. the markdown
+ * of web pages and the results of web searches.
+ * <p>
+ * Entries are keyed by a normalized URL or query and stored gzip-compressed
+ * in the plugin state location, so they survive restarts. An entry is fresh
+ * for the time allowed by the HTTP caching headers of the response, but at
+ * most for the TTL set in
+ * {@link PreferenceConstants#ASSISTAI_WEB_CACHE_TTL_MINUTES}; stale entries
+ * that carry an ETag or a Last-Modified date are revalidated with a
+ * conditional request. The total size of the cache is bounded by
+ * {@link PreferenceConstants#ASSISTAI_WEB_CACHE_MAX_MEGABYTES}, the least
+ * recently used entries are evicted first.
+ */
+@Creatable
+@Singleton
+public class WebContentCache
+{
+    private static final int    FORMAT_VERSION = 1;
+
+    private static final String FILE_SUFFIX    = ".gz";
+
+    /** How the content returned by a tool was obtained */
+    public enum Status
+    {
+        MISS, HIT, REVALIDATED
+    }
+
+    /**
+     * A cached content.
+     *
+     * @param fetchedAt
+     *            when the content was fetched or last revalidated
+     * @param expiresAt
+     *            when the content becomes stale
+     * @param etag
+     *            the ETag of the response, or {@code null}
+     * @param lastModified
+     *            the Last-Modified header of the response, or {@code null}
+     */
+    public record Entry( String key, String content, Instant fetchedAt, Instant expiresAt, String etag, String lastModified )
+    {
+        public boolean isFresh( Instant now )
+        {
+            return now.isBefore( expiresAt );
+        }
+
+        public boolean canRevalidate()
+        {
+            return Objects.nonNull( etag ) || Objects.nonNull( lastModified );
+        }
+
+        public Entry revalidated( Instant now, Instant newExpiresAt )
+        {
+            return new Entry( key, content, now, newExpiresAt, etag, lastModified );
+        }
+    }
+
+    @Inject
+    private ILog             logger;
+
+    private IPreferenceStore preferenceStore;
+
+    private Path             directory;
+
+    private Duration         ttl;
+
+    private long             maxBytes;
+
+    // file name to file size in access order, guarded by this
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>( 64, 0.75f, true );
+    private long             totalBytes;
+    private boolean          loaded;
+
+    public WebContentCache()
+    {
+    }
+
+    WebContentCache( ILog logger, Path directory, Duration ttl, long maxBytes )
+    {
+        this.logger = logger;
+        this.directory = directory;
+        this.ttl = ttl;
+        this.maxBytes = maxBytes;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        preferenceStore = Activator.getDefault().getPreferenceStore();
+        directory = Activator.getDefault().getStateLocation().append( "web-cache" ).toPath();
+    }
+
+    /**
+     * Looks up a cached content, fresh or stale.
+     *
+     * @param key
+     *            the normalized URL or query, see {@link #urlKey(String)} and
+     *            {@link #searchKey(String)}
+     */
+    public Optional<Entry> get( String key )
+    {
+        String fileName = fileName( key );
+        synchronized ( this )
+        {
+            load();
+            // also marks the entry as the most recently used
+            if ( Objects.isNull( index.get( fileName ) ) )
+            {
+                return Optional.empty();
+            }
+        }
+        Path file = directory.resolve( fileName );
+        try
+        {
+            Entry entry = read( file );
+            if ( !entry.key().equals( key ) )
+            {
+                return Optional.empty();
+            }
+            // keeps the recency of use across restarts
+            Files.setLastModifiedTime( file, FileTime.from( Instant.now() ) );
+            return Optional.of( entry );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Discarding unreadable web cache entry " + file + ": " + e.getMessage() );
+            remove( fileName );
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a content, replacing the previous one with the same key, and
+     * evicts the least recently used entries if the cache grows too large.
+     */
+    public void put( Entry entry )
+    {
+        String fileName = fileName( entry.key() );
+        synchronized ( this )
+        {
+            // before any temporary file is created
+            load();
+        }
+        try
+        {
+            Files.createDirectories( directory );
+            Path temporary = Files.createTempFile( directory, "entry", ".tmp" );
+            try
+            {
+                write( entry, temporary );
+                Files.move( temporary, directory.resolve( fileName ), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            }
+            finally
+            {
+                Files.deleteIfExists( temporary );
+            }
+            long size = Files.size( directory.resolve( fileName ) );
+            List<String> evicted = new ArrayList<>();
+            synchronized ( this )
+            {
+                Long previous = index.put( fileName, size );
+                totalBytes += size - ( previous == null ? 0 : previous );
+                long limit = getMaxBytes();
+                Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+                while ( totalBytes > limit && eldest.hasNext() )
+                {
+                    var candidate = eldest.next();
+                    if ( !candidate.getKey().equals( fileName ) )
+                    {
+                        totalBytes -= candidate.getValue();
+                        evicted.add( candidate.getKey() );
+                        eldest.remove();
+                    }
+                }
+            }
+            for ( String name : evicted )
+            {
+                Files.deleteIfExists( directory.resolve( name ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to store web cache entry for " + entry.key() + ": " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Computes until when a response may be served from the cache.
+     *
+     * @param headers
+     *            the headers of the response
+     * @param now
+     *            the time the response was received
+     * @return the expiry, or {@code null} if the response must not be stored
+     */
+    public Instant expiresAt( HttpHeaders headers, Instant now )
+    {
+        Instant limit = now.plus( getTtl() );
+        Map<String, String> cacheControl = headers.allValues( "Cache-Control" )
+                .stream()
+                .flatMap( value -> Arrays.stream( value.split( "," ) ) )
+                .map( String::trim )
+                .filter( directive -> !directive.isEmpty() )
+                .map( directive -> directive.split( "=", 2 ) )
+                .collect( Collectors.toMap( parts -> parts[0].toLowerCase( Locale.ROOT ),
+                                            parts -> parts.length > 1 ? parts[1].replace( "\"", "" ) : "",
+                                            ( first, second ) -> first ) );
+        if ( cacheControl.containsKey( "no-store" ) )
+        {
+            return null;
+        }
+        if ( cacheControl.containsKey( "no-cache" ) )
+        {
+            return now;
+        }
+        OptionalLong maxAge = parseSeconds( cacheControl.getOrDefault( "s-maxage", cacheControl.get( "max-age" ) ) );
+        if ( maxAge.isPresent() )
+        {
+            return min( now.plusSeconds( maxAge.getAsLong() ), limit );
+        }
+        Optional<String> expires = headers.firstValue( "Expires" );
+        if ( expires.isPresent() )
+        {
+            try
+            {
+                return min( ZonedDateTime.parse( expires.get(), DateTimeFormatter.RFC_1123_DATE_TIME ).toInstant(), limit );
+            }
+            catch ( DateTimeParseException e )
+            {
+                // an invalid date means already expired
+                return now;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return the expiry of content without caching headers, e.g. search
+     *         results
+     */
+    public Instant expiresAt( Instant now )
+    {
+        return now.plus( getTtl() );
+    }
+
+    /**
+     * Prefixes a content returned by a tool with a line telling whether it
+     * comes from the cache.
+     */
+    public static String withCacheInfo( String content, Status status, Instant fetchedAt )
+    {
+        return switch ( status )
+        {
+            case MISS -> content;
+            case HIT -> "[cache hit, fetched " + fetchedAt + "]\n\n" + content;
+            case REVALIDATED -> "[cache hit, revalidated " + fetchedAt + "]\n\n" + content;
+        };
+    }
+
+    /**
+     * Normalizes a URL into a cache key: the scheme and host are lower-cased,
+     * default ports and the fragment are dropped and the query parameters are
+     * sorted by name.
+     */
+    public static String urlKey( String url )
+    {
+        URI uri = URI.create( url.trim() ).normalize();
+        String scheme = Optional.ofNullable( uri.getScheme() ).orElse( "https" ).toLowerCase( Locale.ROOT );
+        var key = new StringBuilder( "page:" ).append( scheme ).append( "://" );
+        if ( Objects.nonNull( uri.getRawAuthority() ) && Objects.isNull( uri.getHost() ) )
+        {
+            key.append( uri.getRawAuthority().toLowerCase( Locale.ROOT ) );
+        }
+        else if ( Objects.nonNull( uri.getHost() ) )
+        {
+            key.append( uri.getHost().toLowerCase( Locale.ROOT ) );
+            int port = uri.getPort();
+            if ( port >= 0 && !( "http".equals( scheme ) && port == 80 ) && !( "https".equals( scheme ) && port == 443 ) )
+            {
+                key.append( ':' ).append( port );
+            }
+        }
+        String path = uri.getRawPath();
+        key.append( Objects.isNull( path ) || path.isEmpty() ? "/" : path );
+        String query = uri.getRawQuery();
+        if ( Objects.nonNull( query ) && !query.isEmpty() )
+        {
+            key.append( '?' ).append( Arrays.stream( query.split( "&" ) )
+                                            .filter( parameter -> !parameter.isEmpty() )
+                                            .sorted( Comparator.comparing( parameter -> parameter.split( "=", 2 )[0] ) )
+                                            .collect( Collectors.joining( "&" ) ) );
+        }
+        return key.toString();
+    }
+
+    /**
+     * Normalizes a search query into a cache key: the query is lower-cased and
+     * its whitespace collapsed.
+     */
+    public static String searchKey( String query )
+    {
+        return "search:" + query.trim().replaceAll( "\\s+", " " ).toLowerCase( Locale.ROOT );
+    }
+
+    private Duration getTtl()
+    {
+        if ( Objects.isNull( preferenceStore ) )
+        {
+            return ttl;
+        }
+        return Duration.ofMinutes( Math.max( 0, preferenceStore.getInt( PreferenceConstants.ASSISTAI_WEB_CACHE_TTL_MINUTES ) ) );
+    }
+
+    private long getMaxBytes()
+    {
+        if ( Objects.isNull( preferenceStore ) )
+        {
+            return maxBytes;
+        }
+        return Math.max( 0, preferenceStore.getInt( PreferenceConstants.ASSISTAI_WEB_CACHE_MAX_MEGABYTES ) ) * 1024L * 1024L;
+    }
+
+    /**
+     * Builds the index from the entries stored by the previous sessions, the
+     * most recently used last.
+     */
+    private void load()
+    {
+        if ( loaded )
+        {
+            return;
+        }
+        loaded = true;
+        if ( !Files.isDirectory( directory ) )
+        {
+            return;
+        }
+        record StoredFile( String name, long size, FileTime lastUsed ) {}
+        var stored = new ArrayList<StoredFile>();
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory ) )
+        {
+            for ( Path file : files )
+            {
+                String name = file.getFileName().toString();
+                if ( name.endsWith( FILE_SUFFIX ) )
+                {
+                    stored.add( new StoredFile( name, Files.size( file ), Files.getLastModifiedTime( file ) ) );
+                }
+                else
+                {
+                    // a leftover of an interrupted write
+                    Files.deleteIfExists( file );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to read the web cache in " + directory + ": " + e.getMessage() );
+        }
+        stored.sort( Comparator.comparing( StoredFile::lastUsed ) );
+        for ( StoredFile file : stored )
+        {
+            index.put( file.name(), file.size() );
+            totalBytes += file.size();
+        }
+    }
+
+    private void remove( String fileName )
+    {
+        synchronized ( this )
+        {
+            Long size = index.remove( fileName );
+            if ( Objects.nonNull( size ) )
+            {
+                totalBytes -= size;
+            }
+        }
+        try
+        {
+            Files.deleteIfExists( directory.resolve( fileName ) );
+        }
+        catch ( IOException e )
+        {
+            // removed from the index anyway
+        }
+    }
+
+    private static void write( Entry entry, Path file ) throws IOException
+    {
+        try ( var output = new DataOutputStream( new BufferedOutputStream( new GZIPOutputStream( Files.newOutputStream( file ) ) ) ) )
+        {
+            output.writeInt( FORMAT_VERSION );
+            output.writeUTF( entry.key() );
+            output.writeLong( entry.fetchedAt().toEpochMilli() );
+            output.writeLong( entry.expiresAt().toEpochMilli() );
+            output.writeUTF( Objects.toString( entry.etag(), "" ) );
+            output.writeUTF( Objects.toString( entry.lastModified(), "" ) );
+            byte[] content = entry.content().getBytes( StandardCharsets.UTF_8 );
+            output.writeInt( content.length );
+            output.write( content );
+        }
+    }
+
+    private static Entry read( Path file ) throws IOException
+    {
+        try ( var input = new DataInputStream( new BufferedInputStream( new GZIPInputStream( Files.newInputStream( file ) ) ) ) )
+        {
+            if ( input.readInt() != FORMAT_VERSION )
+            {
+                throw new IOException( "Unsupported format" );
+            }
+            String key = input.readUTF();
+            Instant fetchedAt = Instant.ofEpochMilli( input.readLong() );
+            Instant expiresAt = Instant.ofEpochMilli( input.readLong() );
+            String etag = input.readUTF();
+            String lastModified = input.readUTF();
+            byte[] content = new byte[input.readInt()];
+            input.readFully( content );
+            return new Entry( key, new String( content, StandardCharsets.UTF_8 ), fetchedAt, expiresAt,
+                              etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified );
+        }
+    }
+
+    private static String fileName( String key )
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( key.getBytes( StandardCharsets.UTF_8 ) );
+            return HexFormat.of().formatHex( digest, 0, 16 ) + FILE_SUFFIX;
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static OptionalLong parseSeconds( String value )
+    {
+        if ( Objects.isNull( value ) )
+        {
+            return OptionalLong.empty();
+        }
+        try
+        {
+            return OptionalLong.of( Math.max( 0, Long.parseLong( value.trim() ) ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return OptionalLong.empty();
+        }
+    }
+
+    private static Instant min( Instant first, Instant second )
+    {
+        return first.isBefore( second ) ? first : second;
+    }
+}
@@ -0,0 +1,517 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.services.WebContentCache.Entry;
+import com.github.gradusnikov.eclipse.assistai.mcp.services.WebContentCache.Status;
+import com.vladsch.flexmark.html2md.converter.FlexmarkHtmlConverter;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Fetches web pages and converts their main content to markdown.
+ * <p>
+ * A page is first fetched with a plain HTTP GET and parsed with Jsoup. Only
+ * when the page cannot be read that way, i.e. the request fails or the page
+ * renders its content with JavaScript, it is loaded in a headless Chrome. The
+ * browsers are pooled and reused across fetches; idle browsers are closed
+ * after {@link #BROWSER_IDLE_TIMEOUT}. The number of concurrent fetches is
+ * bounded, and a single markdown converter is shared by all fetches.
+ * <p>
+ * The markdown is kept in the {@link WebContentCache}: fresh pages are served
+ * from the cache, stale pages with validators are revalidated with a
+ * conditional request.
+ */
+@Creatable
+@Singleton
+public class WebPageService
+{
+    /** Maximum number of pages fetched at the same time */
+    static final int                          MAX_CONCURRENT_FETCHES = 4;
+
+    /** Maximum number of headless browsers running at the same time */
+    static final int                          MAX_BROWSERS           = 2;
+
+    /** Pages with less visible text than this may need JavaScript to render */
+    static final int                          MIN_TEXT_LENGTH        = 200;
+
+    private static final Duration             CONNECT_TIMEOUT        = Duration.ofSeconds( 10 );
+
+    private static final Duration             REQUEST_TIMEOUT        = Duration.ofSeconds( 30 );
+
+    private static final Duration             FETCH_WAIT_TIMEOUT     = Duration.ofSeconds( 60 );
+
+    private static final Duration             BROWSER_IDLE_TIMEOUT   = Duration.ofMinutes( 2 );
+
+    private static final String               USER_AGENT             = "Mozilla/5.0 (compatible; AssistAI Eclipse plugin)";
+
+    /** Elements that never carry the content of a page */
+    private static final String               BOILERPLATE            = "script, style, noscript, template, svg, iframe, form, nav, header, footer, aside, [hidden], [aria-hidden=true]";
+
+    private static final FlexmarkHtmlConverter CONVERTER             = FlexmarkHtmlConverter.builder().build();
+
+    @Inject
+    private ILog                              logger;
+
+    @Inject
+    private WebContentCache                   cache;
+
+    private final HttpClient                  httpClient;
+
+    private final Semaphore                   fetchPermits           = new Semaphore( MAX_CONCURRENT_FETCHES, true );
+
+    private final BrowserPool                 browsers               = new BrowserPool();
+
+    private final LongAdder                   httpPages              = new LongAdder();
+
+    private final LongAdder                   browserPages           = new LongAdder();
+
+    private final LongAdder                   cachedPages            = new LongAdder();
+
+    private final LongAdder                   revalidatedPages       = new LongAdder();
+
+    /**
+     * Fetch statistics.
+     *
+     * @param httpPages
+     *            pages read with a plain HTTP request
+     * @param browserPages
+     *            pages read with a headless browser
+     * @param cachedPages
+     *            pages served from the cache without a request
+     * @param revalidatedPages
+     *            pages served from the cache after a conditional request
+     * @param browsers
+     *            headless browsers currently running
+     */
+    public record Metrics( long httpPages, long browserPages, long cachedPages, long revalidatedPages, int browsers ) {}
+
+    /**
+     * The content of a web page.
+     *
+     * @param content
+     *            the main content as markdown
+     * @param status
+     *            whether the content comes from the cache
+     * @param fetchedAt
+     *            when the content was fetched or last revalidated
+     */
+    public record Page( String content, Status status, Instant fetchedAt ) {}
+
+    /**
+     * Result of a plain HTTP request.
+     *
+     * @param expiresAt
+     *            until when the content may be cached, or {@code null}
+     * @param notModified
+     *            {@code true} if the cached content is still valid
+     */
+    private record Response( String content, Instant expiresAt, String etag, String lastModified, boolean notModified ) {}
+
+    /** Reads the body of a text response only; other bodies are discarded unread */
+    private static final HttpResponse.BodyHandler<String> TEXT_BODY = info -> isText( contentType( info.headers() ) )
+            ? HttpResponse.BodyHandlers.ofString().apply( info )
+            : HttpResponse.BodySubscribers.replacing( null );
+
+    public WebPageService()
+    {
+        httpClient = HttpClient.newBuilder()
+                               .followRedirects( HttpClient.Redirect.NORMAL )
+                               .connectTimeout( CONNECT_TIMEOUT )
+                               .build();
+    }
+
+    /**
+     * Reads a web page and returns its main content as markdown.
+     *
+     * @param url
+     *            the URL of the page
+     * @return the content of the page
+     */
+    public Page read( String url )
+    {
+        URI uri = URI.create( url );
+        String key = WebContentCache.urlKey( url );
+        Optional<Entry> cached = cache.get( key );
+        if ( cached.isPresent() && cached.get().isFresh( Instant.now() ) )
+        {
+            cachedPages.increment();
+            return new Page( cached.get().content(), Status.HIT, cached.get().fetchedAt() );
+        }
+        Optional<Entry> stale = cached.filter( Entry::canRevalidate );
+        acquireFetchPermit();
+        try
+        {
+            Optional<Response> response = fetchWithHttp( uri, stale );
+            Instant now = Instant.now();
+            if ( response.isPresent() && response.get().notModified() )
+            {
+                revalidatedPages.increment();
+                Entry entry = stale.get().revalidated( now, Objects.requireNonNullElse( response.get().expiresAt(), now ) );
+                cache.put( entry );
+                return new Page( entry.content(), Status.REVALIDATED, now );
+            }
+            if ( response.isPresent() )
+            {
+                httpPages.increment();
+                if ( Objects.nonNull( response.get().expiresAt() ) )
+                {
+                    cache.put( new Entry( key, response.get().content(), now, response.get().expiresAt(), response.get().etag(),
+                                          response.get().lastModified() ) );
+                }
+                return new Page( response.get().content(), Status.MISS, now );
+            }
+            logger.info( "Reading web page with a headless browser: " + url );
+            String markdown = fetchWithBrowser( uri );
+            browserPages.increment();
+            cache.put( new Entry( key, markdown, now, cache.expiresAt( now ), null, null ) );
+            return new Page( markdown, Status.MISS, now );
+        }
+        finally
+        {
+            fetchPermits.release();
+        }
+    }
+
+    public Metrics getMetrics()
+    {
+        return new Metrics( httpPages.sum(), browserPages.sum(), cachedPages.sum(), revalidatedPages.sum(), browsers.size() );
+    }
+
+    @PreDestroy
+    public void dispose()
+    {
+        browsers.close();
+    }
+
+    private void acquireFetchPermit()
+    {
+        try
+        {
+            if ( !fetchPermits.tryAcquire( FETCH_WAIT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS ) )
+            {
+                throw new IllegalStateException( "Too many web pages are being fetched, try again later" );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while waiting to fetch a web page", e );
+        }
+    }
+
+    /**
+     * Reads a page with a plain HTTP request, conditional if a stale cached
+     * content is given.
+     *
+     * @return the response, or an empty optional if the page has to be read
+     *         with a browser
+     */
+    private Optional<Response> fetchWithHttp( URI uri, Optional<Entry> stale )
+    {
+        HttpRequest.Builder builder = HttpRequest.newBuilder( uri )
+                                                 .timeout( REQUEST_TIMEOUT )
+                                                 .header( "User-Agent", USER_AGENT )
+                                                 .header( "Accept", "text/html,application/xhtml+xml,text/plain;q=0.9,*/*;q=0.8" )
+                                                 .GET();
+        stale.map( Entry::etag ).ifPresent( etag -> builder.header( "If-None-Match", etag ) );
+        stale.map( Entry::lastModified ).ifPresent( lastModified -> builder.header( "If-Modified-Since", lastModified ) );
+        try
+        {
+            HttpResponse<String> response = httpClient.send( builder.build(), TEXT_BODY );
+            Instant expiresAt = cache.expiresAt( response.headers(), Instant.now() );
+            String etag = response.headers().firstValue( "ETag" ).orElse( null );
+            String lastModified = response.headers().firstValue( "Last-Modified" ).orElse( null );
+            if ( response.statusCode() == 304 && stale.isPresent() )
+            {
+                return Optional.of( new Response( null, expiresAt, etag, lastModified, true ) );
+            }
+            if ( response.statusCode() >= 400 )
+            {
+                // bot protections often reject plain requests but serve browsers
+                logger.info( "HTTP " + response.statusCode() + " for " + uri );
+                return Optional.empty();
+            }
+            String contentType = contentType( response.headers() );
+            if ( !isText( contentType ) )
+            {
+                // e.g. a PDF or an image, which would reach the model as garbage; not cached
+                return Optional.of( new Response( "Unsupported content type " + contentType
+                        + ": only text, HTML, JSON and XML pages can be read.", null, etag, lastModified, false ) );
+            }
+            if ( !contentType.contains( "html" ) )
+            {
+                return Optional.of( new Response( response.body(), expiresAt, etag, lastModified, false ) );
+            }
+            Document document = Jsoup.parse( response.body(), response.uri().toString() );
+            if ( needsJavaScript( document ) )
+            {
+                return Optional.empty();
+            }
+            return Optional.of( new Response( toMarkdown( document ), expiresAt, etag, lastModified, false ) );
+        }
+        catch ( IOException e )
+        {
+            logger.info( "Failed to read " + uri + " with HTTP: " + e.getMessage() );
+            return Optional.empty();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while reading " + uri, e );
+        }
+    }
+
+    /**
+     * @return the media type of a response, without parameters, in lower
+     *         case; HTML if the server does not tell
+     */
+    private static String contentType( HttpHeaders headers )
+    {
+        String contentType = headers.firstValue( "Content-Type" ).orElse( "text/html" );
+        int parameters = contentType.indexOf( ';' );
+        return ( parameters < 0 ? contentType : contentType.substring( 0, parameters ) ).trim().toLowerCase( Locale.ROOT );
+    }
+
+    /**
+     * @return whether a media type is text that can be passed to the model,
+     *         e.g. {@code text/plain}, {@code application/json} or
+     *         {@code application/xhtml+xml}
+     */
+    static boolean isText( String contentType )
+    {
+        return contentType.startsWith( "text/" ) || contentType.endsWith( "/json" ) || contentType.endsWith( "+json" )
+                || contentType.endsWith( "/xml" ) || contentType.endsWith( "+xml" );
+    }
+
+    private String fetchWithBrowser( URI uri )
+    {
+        WebDriver driver = browsers.borrow();
+        boolean healthy = false;
+        try
+        {
+            driver.get( uri.toString() );
+            Document document = Jsoup.parse( driver.getPageSource(), uri.toString() );
+            healthy = true;
+            return toMarkdown( document );
+        }
+        finally
+        {
+            browsers.release( driver, healthy );
+        }
+    }
+
+    /**
+     * @return {@code true} if the page has scripts and too little text
+     *         without them, e.g. a single page application shell
+     */
+    static boolean needsJavaScript( Document document )
+    {
+        return !document.select( "script" ).isEmpty() && mainContent( document ).text().length() < MIN_TEXT_LENGTH;
+    }
+
+    /**
+     * Finds the element with the main content of a page, without navigation,
+     * scripts and the like.
+     */
+    static Element mainContent( Document document )
+    {
+        Document cleaned = document.clone();
+        cleaned.select( BOILERPLATE ).remove();
+        for ( Element candidate : cleaned.select( "main, article, [role=main]" ) )
+        {
+            if ( candidate.text().length() >= MIN_TEXT_LENGTH )
+            {
+                return candidate;
+            }
+        }
+        return cleaned.body();
+    }
+
+    static String toMarkdown( Document document )
+    {
+        return CONVERTER.convert( mainContent( document ).outerHtml() );
+    }
+
+    /**
+     * Pool of headless browsers. A browser serves one page at a time; idle
+     * browsers are kept for reuse until they time out.
+     */
+    private class BrowserPool
+    {
+        private record IdleBrowser( WebDriver driver, long idleSinceNanos ) {}
+
+        private final Semaphore              slots   = new Semaphore( MAX_BROWSERS, true );
+
+        // guarded by this
+        private final Deque<IdleBrowser>     idle    = new ArrayDeque<>();
+        private int                          running;
+        private boolean                      closed;
+        private ScheduledExecutorService     reaper;
+
+        WebDriver borrow()
+        {
+            try
+            {
+                slots.acquire();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( "Interrupted while waiting for a browser", e );
+            }
+            synchronized ( this )
+            {
+                IdleBrowser browser = idle.pollFirst();
+                if ( browser != null )
+                {
+                    return browser.driver();
+                }
+                running++;
+                startReaper();
+            }
+            try
+            {
+                return createDriver();
+            }
+            catch ( RuntimeException | Error e )
+            {
+                synchronized ( this )
+                {
+                    running--;
+                }
+                slots.release();
+                throw e;
+            }
+        }
+
+        void release( WebDriver driver, boolean healthy )
+        {
+            boolean reuse;
+            synchronized ( this )
+            {
+                reuse = healthy && !closed;
+                if ( reuse )
+                {
+                    idle.addFirst( new IdleBrowser( driver, System.nanoTime() ) );
+                }
+                else
+                {
+                    running--;
+                }
+            }
+            if ( !reuse )
+            {
+                quit( driver );
+            }
+            slots.release();
+        }
+
+        synchronized int size()
+        {
+            return running;
+        }
+
+        void close()
+        {
+            Deque<IdleBrowser> toQuit;
+            synchronized ( this )
+            {
+                closed = true;
+                toQuit = new ArrayDeque<>( idle );
+                running -= idle.size();
+                idle.clear();
+                if ( reaper != null )
+                {
+                    reaper.shutdownNow();
+                }
+            }
+            toQuit.forEach( browser -> quit( browser.driver() ) );
+        }
+
+        private void startReaper()
+        {
+            if ( reaper != null )
+            {
+                return;
+            }
+            reaper = Executors.newSingleThreadScheduledExecutor( runnable -> {
+                Thread thread = new Thread( runnable, "AssistAI browser pool" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+            long period = BROWSER_IDLE_TIMEOUT.toSeconds() / 2;
+            reaper.scheduleWithFixedDelay( this::closeIdleBrowsers, period, period, TimeUnit.SECONDS );
+        }
+
+        private void closeIdleBrowsers()
+        {
+            var expired = new ArrayDeque<WebDriver>();
+            synchronized ( this )
+            {
+                long now = System.nanoTime();
+                // the oldest browsers are at the end
+                while ( !idle.isEmpty() && now - idle.peekLast().idleSinceNanos() > BROWSER_IDLE_TIMEOUT.toNanos() )
+                {
+                    expired.add( idle.pollLast().driver() );
+                    running--;
+                }
+            }
+            expired.forEach( this::quit );
+        }
+
+        private WebDriver createDriver()
+        {
+            ChromeOptions options = new ChromeOptions();
+            options.addArguments( "--headless" ); // Run Chrome in headless mode
+            options.addArguments( "--disable-gpu" );
+            options.addArguments( "--window-size=1920,1200" );
+            options.addArguments( "--ignore-certificate-errors" );
+            options.addArguments( "--silent" );
+
+            WebDriver driver = new ChromeDriver( options );
+            driver.manage().timeouts().pageLoadTimeout( REQUEST_TIMEOUT );
+            return driver;
+        }
+
+        private void quit( WebDriver driver )
+        {
+            try
+            {
+                driver.quit();
+            }
+            catch ( Exception e )
+            {
+                logger.error( "Failed to close the browser", e );
+            }
+        }
+    }
+}
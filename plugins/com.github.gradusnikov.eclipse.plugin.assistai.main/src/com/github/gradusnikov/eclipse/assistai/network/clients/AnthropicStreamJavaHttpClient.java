@@ -1,24 +1,17 @@
 package com.github.gradusnikov.eclipse.assistai.network.clients;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.Flow;
-import java.util.concurrent.SubmissionPublisher;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -27,42 +20,55 @@ import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
 import org.eclipse.jface.preference.IPreferenceStore;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.github.gradusnikov.eclipse.assistai.Activator;
 import com.github.gradusnikov.eclipse.assistai.chat.Attachment;
 import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
 import com.github.gradusnikov.eclipse.assistai.chat.Conversation;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpToolCatalog;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventBus;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
+import com.github.gradusnikov.eclipse.assistai.network.sse.AnthropicStreamDecoder;
+import com.github.gradusnikov.eclipse.assistai.network.sse.SseEventReader;
 import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
 import com.github.gradusnikov.eclipse.assistai.prompt.Prompts;
-import com.github.gradusnikov.eclipse.assistai.tools.ImageUtilities;
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
 
-import io.modelcontextprotocol.client.McpSyncClient;
 import jakarta.inject.Inject;
 
 /**
  * A Java HTTP client for streaming requests to Anthropic API.
  * This class allows subscribing to responses received from the Anthropic API and processes the chat completions.
+ * <p>
+ * Requests mark two prompt cache breakpoints: the system prompt, which caches the tool definitions
+ * together with it, and the last message, so the next request of an agent loop reads the whole
+ * conversation so far from the cache.
  */
 @Creatable
 public class AnthropicStreamJavaHttpClient implements LanguageModelClient
 {
-    private SubmissionPublisher<Incoming> publisher;
+    private StreamEventBus publisher;
     
-    private Supplier<Boolean> isCancelled = () -> false;
+    private final StreamCancellation cancellation = new StreamCancellation();
     
     @Inject
     private ILog logger;
     
     @Inject
     private LanguageModelClientConfiguration configuration;
+
+    @Inject
+    private LanguageModelHttpTransport transport;
     
     @Inject
     private McpClientRetistry mcpClientRegistry;
+
+    @Inject
+    private UsageMetrics usageMetrics;
+
+    @Inject
+    private RateLimiter rateLimiter;
     
     private IPreferenceStore preferenceStore;
     
@@ -70,99 +76,115 @@ public class AnthropicStreamJavaHttpClient implements LanguageModelClient
 
     public AnthropicStreamJavaHttpClient()
     {
-        publisher = new SubmissionPublisher<>();
+        publisher = new StreamEventBus();
         preferenceStore = Activator.getDefault().getPreferenceStore();
     }
     
     @Override
     public void setCancelProvider(Supplier<Boolean> isCancelled)
     {
-        this.isCancelled = isCancelled;
+        cancellation.setProvider(isCancelled);
+    }
+    
+    @Override
+    public void cancel()
+    {
+        cancellation.cancel();
     }
     @Override
-    public synchronized void subscribe(Flow.Subscriber<Incoming> subscriber)
+    public synchronized void subscribe(StreamEventSubscriber subscriber)
     {
         publisher.subscribe(subscriber);
     }
 
-    static ArrayNode clientToolsToJson(String clientName, McpSyncClient client) {
-        List<Map<String, Object>> tools = new ArrayList<>();
+    static Map<String, Object> toolToJson(McpToolCatalog.Entry entry) {
+        var tool = entry.tool();
+        // Create the main tool object
+        var toolObj = new LinkedHashMap<String, Object>();
         
-        for (var tool : client.listTools().tools()) {
-            // Create the main tool object
-            var toolObj = new LinkedHashMap<String, Object>();
-            
-            // Create the function definition
-            toolObj.put("name", clientName + "__" + tool.name());
-            toolObj.put("description", tool.description() != null ? tool.description() : "");
-            
-            // Create parameters object in the format Anthropic expects
-            var inputSchema = new LinkedHashMap<String, Object>();
-            inputSchema.put("type", tool.inputSchema().type() );
-            
-            // Add properties
-            if ( !tool.inputSchema().properties().isEmpty() )
-            {
-                inputSchema.put("properties", tool.inputSchema().properties());
-            }
-            
-            // Add required fields if present
-            if (tool.inputSchema().required() != null && !tool.inputSchema().required().isEmpty()) {
-                inputSchema.put("required", tool.inputSchema().required());
-            }
-            
-            toolObj.put("input_schema", inputSchema);
-            tools.add(toolObj);
+        // Create the function definition
+        toolObj.put("name", entry.qualifiedName());
+        toolObj.put("description", tool.description() != null ? tool.description() : "");
+        
+        // Create parameters object in the format Anthropic expects
+        var inputSchema = new LinkedHashMap<String, Object>();
+        inputSchema.put("type", tool.inputSchema().type() );
+        
+        // Add properties
+        if ( !tool.inputSchema().properties().isEmpty() )
+        {
+            inputSchema.put("properties", tool.inputSchema().properties());
         }
         
-        var objectMapper = new ObjectMapper();
-        var functionsJsonNode= objectMapper.valueToTree( tools );
-        return (ArrayNode) functionsJsonNode; 
+        // Add required fields if present
+        if (tool.inputSchema().required() != null && !tool.inputSchema().required().isEmpty()) {
+            inputSchema.put("required", tool.inputSchema().required());
+        }
+        
+        toolObj.put("input_schema", inputSchema);
+        return toolObj;
     }
     
-    private String getRequestBody(Conversation prompt, ModelApiDescriptor model)
+    private JsonRequestBody getRequestBody(Conversation prompt, ModelApiDescriptor model)
     {
-        try
-        {
-            var requestBody = new LinkedHashMap<String, Object>();
-            var messages = new ArrayList<Map<String, Object>>();
+        var requestBody = new LinkedHashMap<String, Object>();
+        var messages = new ArrayList<byte[]>();
 
-            // System message should be placed in system key, not in messages array for Anthropic
-            String systemPrompt = preferenceStore.getString(Prompts.SYSTEM.preferenceName());
+        // System message should be placed in system key, not in messages array for Anthropic
+        String systemPrompt = preferenceStore.getString(Prompts.SYSTEM.preferenceName());
+        if (systemPrompt.isBlank())
+        {
             requestBody.put("system", systemPrompt);
+        }
+        else
+        {
+            // the tools precede the system prompt, so the breakpoint caches both
+            requestBody.put("system", List.of(withCacheControl(textBlock(systemPrompt))));
+        }
 
-            // Add all messages from prompt
-            prompt.messages().stream()
+        // Add all messages from prompt, the last one with a cache breakpoint
+        var nonEmpty = prompt.messages().stream()
                              .filter( Predicate.not(ChatMessage::isEmpty) )
-                             .map(message -> toJsonPayload(message, model)).forEach(messages::add);
+                             .toList();
+        for (int i = 0; i < nonEmpty.size() - 1; i++)
+        {
+            messages.add(toJson(nonEmpty.get(i), model));
+        }
+        if (!nonEmpty.isEmpty())
+        {
+            var last = toJsonPayload(nonEmpty.getLast(), model);
+            markCacheBreakpoint(last);
+            messages.add(JsonRequestBody.toFragment(objectMapper, last));
+        }
 
-            // Add required fields for Anthropic API
-            requestBody.put("model", model.modelName());
-            requestBody.put("messages", messages);
-            requestBody.put("temperature", model.temperature() / 10.0);
-            requestBody.put("stream", true);
-            requestBody.put("max_tokens", 10000); // Configurable limit
-            
-            // Add tools if function calling is enabled
-            if (model.functionCalling())
+        // Add required fields for Anthropic API
+        requestBody.put("model", model.modelName());
+        requestBody.put("messages", new JsonRequestBody.Fragments(messages));
+        requestBody.put("temperature", model.temperature() / 10.0);
+        requestBody.put("stream", true);
+        requestBody.put("max_tokens", 10000); // Configurable limit
+        
+        // Add tools if function calling is enabled
+        if (model.functionCalling())
+        {
+            var catalog = mcpClientRegistry.getToolCatalog();
+            if (!catalog.isEmpty())
             {
-                ArrayNode tools = objectMapper.createArrayNode();
-                for (var client : mcpClientRegistry.listEnabledveClients().entrySet())
-                {
-                    tools.addAll(clientToolsToJson(client.getKey(), client.getValue()));
-                }
-                if (!tools.isEmpty())
-                {
-                    requestBody.put("tools", tools);
-                }
+                requestBody.put("tools", catalog.fragment("anthropic", AnthropicStreamJavaHttpClient::toolToJson));
             }
-
-            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestBody);
-        }
-        catch (JsonProcessingException e)
-        {
-            throw new RuntimeException(e);
         }
+
+        return JsonRequestBody.write(objectMapper, requestBody);
+    }
+
+    /**
+     * Returns the compact JSON of a message, serialized again only if the message changed.
+     */
+    private byte[] toJson(ChatMessage message, ModelApiDescriptor model)
+    {
+        // besides the message, the payload depends on these capabilities of the model only
+        var format = "anthropic:" + model.functionCalling() + ":" + model.vision();
+        return message.toJson(format, changed -> JsonRequestBody.toFragment(objectMapper, toJsonPayload(changed, model)));
     }
 
     private LinkedHashMap<String, Object> toJsonPayload(ChatMessage message, ModelApiDescriptor model)
@@ -185,9 +207,7 @@ public class AnthropicStreamJavaHttpClient implements LanguageModelClient
                     var toolUseContent = new LinkedHashMap<String, Object>();
                     toolUseContent.put("type", "tool_result");
                     toolUseContent.put("tool_use_id", functionCall.id() );
-                    toolUseContent.put("content", List.of( Map.of(
-                                                         "type", "text", 
-                                                         "text", message.getContent() ) ) );
+                    toolUseContent.put("content", List.of( textBlock( message.getContent() ) ) );
                     toolUseContent.put( "is_error", false );
                     userMessage.put("content", List.of(toolUseContent));
                 }
@@ -224,17 +244,13 @@ public class AnthropicStreamJavaHttpClient implements LanguageModelClient
                     var contentList = new ArrayList<>();
                     
                     // Add text content
-                    var textObject = new LinkedHashMap<String, String>();
-                    textObject.put("type", "text");
-                    textObject.put("text", textContent);
-                    contentList.add(textObject);
+                    contentList.add(textBlock(textContent));
                     
                     // Add image content if available
                     message.getAttachments()
                             .stream()
-                            .map(Attachment::getImageData)
+                            .map(Attachment::getImage)
                             .filter(Objects::nonNull)
-                            .map(ImageUtilities::toBase64Jpeg)
                             .map(this::toImageContent)
                             .forEachOrdered(contentList::add);
                     
@@ -253,7 +269,42 @@ public class AnthropicStreamJavaHttpClient implements LanguageModelClient
         }
     }
 
-    private LinkedHashMap<String, Object> toImageContent(String data)
+    private static Map<String, Object> textBlock(String text)
+    {
+        var textObject = new LinkedHashMap<String, Object>();
+        textObject.put("type", "text");
+        textObject.put("text", text);
+        return textObject;
+    }
+
+    private static Map<String, Object> withCacheControl(Map<String, Object> block)
+    {
+        block.put("cache_control", Map.of("type", "ephemeral"));
+        return block;
+    }
+
+    /**
+     * Sets a cache breakpoint on the last content block of the message. Text content is
+     * converted to a content block first. Blank text cannot be cached and is left as is.
+     */
+    @SuppressWarnings("unchecked")
+    private static void markCacheBreakpoint(Map<String, Object> message)
+    {
+        var content = message.get("content");
+        if (content instanceof String text && !text.isBlank())
+        {
+            message.put("content", List.of(withCacheControl(textBlock(text))));
+        }
+        else if (content instanceof List<?> blocks && !blocks.isEmpty() && blocks.getLast() instanceof Map<?, ?> block)
+        {
+            if (!"text".equals(block.get("type")) || !Objects.toString(block.get("text"), "").isBlank())
+            {
+                withCacheControl((Map<String, Object>) block);
+            }
+        }
+    }
+
+    private LinkedHashMap<String, Object> toImageContent(EncodedImage image)
     {
         var imageObject = new LinkedHashMap<String, Object>();
         imageObject.put("type", "image");
@@ -261,8 +312,8 @@ public class AnthropicStreamJavaHttpClient implements LanguageModelClient
         
         // Anthropic uses media_type instead of content type
         imageSource.put("type", "base64");
-        imageSource.put("media_type", "image/jpeg");
-        imageSource.put("data", data);
+        imageSource.put("media_type", image.getMimeType());
+        imageSource.put("data", image.toBase64());
         
         imageObject.put("source", imageSource);
         return imageObject;
@@ -272,189 +323,56 @@ public class AnthropicStreamJavaHttpClient implements LanguageModelClient
 	    return () -> {
 	        var model = configuration.getSelectedModel().orElseThrow();
 	        
-	        HttpClient client = HttpClient.newBuilder()
-	                .connectTimeout(Duration.ofSeconds(configuration.getConnectionTimoutSeconds()))
-	                .build();
-	
-	        String requestBody = getRequestBody(prompt, model);
-	        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(model.apiUrl()))
-	                .timeout(Duration.ofSeconds(configuration.getRequestTimoutSeconds()))
-	                .version(HttpClient.Version.HTTP_1_1)
+	        JsonRequestBody requestBody = getRequestBody(prompt, model);
+	        HttpRequest request = transport.newRequest(URI.create(model.apiUrl()))
 	                .header("x-api-key", model.apiKey())
 	                .header("anthropic-version", "2023-06-01") // Update to latest API version if needed
 	                .header("Content-Type", "application/json")
 	                .header("Accept", "application/json")
-	                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+	                .POST(requestBody.publisher())
 	                .build();
 	
-	        logger.info("Sending request to Anthropic API.\n\n" + requestBody);
-	
-	        // Rate limit handling variables
-	        int maxRetries = 3;
-	        int retryCount = 0;
-	        boolean shouldRetry = false;
-	        
-	        do 
-	        {
-	            shouldRetry = false;
-	            
-	            try 
-	            {
-	                HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+	        logger.info("Sending request to Anthropic API: " + prompt.messages().size() + " messages, " + requestBody.length() + " bytes.");
 	
-	                // Handle rate limit errors (429)
-	                if (response.statusCode() == 429) 
-	                {
-	                    // Get retry-after header
-	                    String retryAfter = response.headers().firstValue("retry-after").orElse("60");
-	                    int waitSeconds = Integer.parseInt(retryAfter);
-	                    
-	                    // Extract error message from response body
-	                    String responseBody = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
-	                    JsonNode errorNode = objectMapper.readTree(responseBody);
-	                    String errorType = "unknown";
-	                    String errorMessage = "Rate limit exceeded";
-	                    
-	                    if (errorNode.has("error") && errorNode.get("error").has("type")) {
-	                        errorType = errorNode.get("error").get("type").asText();
-	                    }
-	                    
-	                    if (errorNode.has("error") && errorNode.get("error").has("message")) {
-	                        errorMessage = errorNode.get("error").get("message").asText();
-	                    }
-	                    
-	                    retryCount++;
-	                    if (retryCount <= maxRetries) 
-	                    {
-	                        // Inform user about rate limiting
-	                        String rateLimitMessage = String.format(
-	                            "Rate limit exceeded (%s). Waiting %d seconds before retry %d of %d. %s", 
-	                            errorType, waitSeconds, retryCount, maxRetries, errorMessage);
-	                        
-	                        logger.warn(rateLimitMessage);
-	                        
-	                        // Wait before retrying
-                            Thread.sleep( TimeUnit.SECONDS.toMillis( waitSeconds ) );
-                            shouldRetry = true;
-	                    } 
-	                    else 
-	                    {
-	                        // Max retries exceeded
-	                        throw new IOException("Max retries exceeded for rate limit. Error: " + errorMessage);
-	                    }
-	                }
-	                else if (response.statusCode() != 200) 
-	                {
-	                    // Handle other error codes
-	                    String responseBody = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
-	                    throw new IOException("Request failed with status code: " + response.statusCode() + " and response body: " + responseBody);
-	                }
-	                else 
-	                {
-	                    // Process successful response
-	                    try (var inputStream = response.body();
-	                         var inputStreamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-	                         var reader = new BufferedReader(inputStreamReader))
-	                    {
-	                        String line;
-	                        Incoming.Type incomingType = null;
-	                        
-	                        while ((line = reader.readLine()) != null && !isCancelled.get())
-	                        {
-	                            // Skip empty lines and ping messages
-	                            if (line.isEmpty()) 
-	                            {
-	                                continue;
-	                            }
-	                            // Handle data: prefix (SSE format)
-	                            if (line.startsWith("data:")) 
-	                            {
-	                                line = line.substring(5).trim();
-	                                // Skip [DONE] marker
-	                                if ("[DONE]".equals(line)) {
-	                                    continue;
-	                                }
-	                                try 
-	                                {
-	                                    var node = objectMapper.readTree(line);
-	                                    var type = node.has("type") ? node.get("type").asText() : "";
-	                                    
-	                                    // ignore pings
-	                                    if ("ping".equals(type))
-	                                    {
-	                                        continue;
-	                                    }
-	                                    
-	                                    if ("content_block_start".equals(type))
-	                                    {
-	                                        incomingType = switch (node.get("content_block").get("type").asText())
-	                                        {
-	                                            case "text" -> Incoming.Type.CONTENT;
-	                                            case "tool_use" -> Incoming.Type.FUNCTION_CALL;
-	                                            default -> null;
-	                                        };
-	                                    }
-	                                    // Handle tool use events (function calls)
-	                                    if ("content_block_start".equals(type) && Incoming.Type.FUNCTION_CALL.equals(incomingType)) 
-	                                    {
-	                                        JsonNode toolUseNode = node.get("content_block");
-	                                        String toolName = toolUseNode.get("name").asText();
-	                                        String toolId = toolUseNode.get("id").asText();
-	                                        
-	                                        JsonNode inputNode = toolUseNode.get("input");
-	                                        String arguments = inputNode.toString();
-	                                        
-	                                        publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL, 
-	                                                String.format("\"function_call\" : { \n \"name\": \"%s\",\n \"id\": \"%s\",\n \"arguments\" :", toolName, toolId)));
-	                                    }
-	                                    // Handle content blocks
-	                                    if ("content_block_delta".equals(type) && Objects.nonNull(incomingType)) 
-	                                    {
-	                                        var delta = node.get("delta");
-	                                        if (Objects.nonNull(delta))
-	                                        {
-	                                            if (delta.has("text"))
-	                                            {
-	                                                publisher.submit(new Incoming(incomingType, delta.get("text").asText()));
-	                                            }
-	                                            else if (delta.has("partial_json"))
-	                                            {
-	                                                publisher.submit(new Incoming(incomingType, delta.get("partial_json").asText()));
-	                                            }
-	                                        }
-	                                    } 
-	
-	                                } 
-	                                catch (Exception e) 
-	                                {
-	                                    // Handle parsing errors but continue processing
-	                                    logger.error("Error parsing response line: " + line, e);
-	                                }
-	                            }
-	                        }
-	                    }
-	                }
-	            } 
-	            catch (Exception e) 
-	            {
-	                logger.error(e.getMessage(), e);
-	                publisher.closeExceptionally(e);
+	        try
+	        {
+	            // rate limits and retries are handled by the shared limiter
+	            HttpResponse<InputStream> response = rateLimiter.send(request, cancellation);
+	            if (response.statusCode() != 200)
+	            {
+	                String responseBody = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+	                throw new IOException("Request failed with status code: " + response.statusCode() + " and response body: " + responseBody);
+	            }
+	            var listener = new PublishingStreamListener(publisher, logger, usageMetrics, usage -> rateLimiter.recordUsage(request, usage));
+	            var decoder = new AnthropicStreamDecoder(listener);
+	            try (var reader = new SseEventReader(response.body()))
+	            {
+	                reader.read((event, data, length) -> !cancellation.isCancelled() && decoder.onEvent(event, data, length));
+	            }
+	            if (!cancellation.isCancelled())
+	            {
+	                listener.complete();
+	            }
+	        }
+	        catch (Exception e)
+	        {
+	            if (!cancellation.isCancelled())
+	            {
+	                logger.error(e.getMessage(), e);
+	                publisher.closeExceptionally(e);
+	            }
+	        }
+	        finally
+	        {
+	            if (cancellation.isCancelled())
+	            {
+	                publisher.closeExceptionally(new CancellationException());
+	            }
+	            else
+	            {
+	                publisher.close();
 	            }
-	            finally 
-	            {
-	                if (!shouldRetry) 
-	                {
-	                    if (isCancelled.get()) 
-	                    {
-	                        publisher.closeExceptionally(new CancellationException());
-	                    } 
-	                    else 
-	                    {
-	                        publisher.close();
-	                    }
-	                }
-	            }
-	        } while (shouldRetry && !isCancelled.get());
+	        }
 	    };
 	}
 	   
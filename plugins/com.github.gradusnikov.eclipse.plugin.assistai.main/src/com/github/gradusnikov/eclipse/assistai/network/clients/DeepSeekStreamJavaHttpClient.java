@@ -1,23 +1,17 @@
 
 package com.github.gradusnikov.eclipse.assistai.network.clients;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.Flow;
-import java.util.concurrent.SubmissionPublisher;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -26,22 +20,22 @@ import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
 import org.eclipse.jface.preference.IPreferenceStore;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.github.gradusnikov.eclipse.assistai.Activator;
 import com.github.gradusnikov.eclipse.assistai.chat.Attachment;
 import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
 import com.github.gradusnikov.eclipse.assistai.chat.Conversation;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpToolCatalog;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventBus;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
+import com.github.gradusnikov.eclipse.assistai.network.sse.OpenAIChatStreamDecoder;
+import com.github.gradusnikov.eclipse.assistai.network.sse.SseEventReader;
 import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
 import com.github.gradusnikov.eclipse.assistai.prompt.Prompts;
-import com.github.gradusnikov.eclipse.assistai.tools.ImageUtilities;
-import com.github.gradusnikov.eclipse.assistai.tools.JsonUtils;
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
 
-import io.modelcontextprotocol.client.McpSyncClient;
 import jakarta.inject.Inject;
 
 /**
@@ -51,9 +45,9 @@ import jakarta.inject.Inject;
  */
 @Creatable
 public class DeepSeekStreamJavaHttpClient implements LanguageModelClient {
-	private SubmissionPublisher<Incoming> publisher;
+	private StreamEventBus publisher;
 
-	private Supplier<Boolean> isCancelled = () -> false;
+	private final StreamCancellation cancellation = new StreamCancellation();
 
 	@Inject
 	private ILog logger;
@@ -61,107 +55,119 @@ public class DeepSeekStreamJavaHttpClient implements LanguageModelClient {
 	@Inject
 	private LanguageModelClientConfiguration configuration;
 
+	@Inject
+	private LanguageModelHttpTransport transport;
+
 	@Inject
 	private McpClientRetistry mcpClientRegistry;
 
+	@Inject
+	private UsageMetrics usageMetrics;
+
+	@Inject
+	private RateLimiter rateLimiter;
+
 	private IPreferenceStore preferenceStore;
 
 	private final ObjectMapper objectMapper = new ObjectMapper();
 
 	public DeepSeekStreamJavaHttpClient() {
-		publisher = new SubmissionPublisher<>();
+		publisher = new StreamEventBus();
 		preferenceStore = Activator.getDefault().getPreferenceStore();
 	}
 
 	@Override
 	public void setCancelProvider(Supplier<Boolean> isCancelled) {
-		this.isCancelled = isCancelled;
+		cancellation.setProvider(isCancelled);
 	}
 
 	@Override
-	public synchronized void subscribe(Flow.Subscriber<Incoming> subscriber) {
+	public void cancel() {
+		cancellation.cancel();
+	}
+
+	@Override
+	public synchronized void subscribe(StreamEventSubscriber subscriber) {
 		publisher.subscribe(subscriber);
 	}
 
-	private ArrayNode clientToolsToJson(String clientName, McpSyncClient client) {
-		List<Map<String, Object>> tools = new ArrayList<>();
+	private static Map<String, Object> toolToJson(McpToolCatalog.Entry entry) {
+		var tool = entry.tool();
+		// Create the main tool object
+		var toolObj = new LinkedHashMap<String, Object>();
+		var functionObj = new LinkedHashMap<String, Object>();
 
-		for (var tool : client.listTools().tools()) {
-			// Create the main tool object
-			var toolObj = new LinkedHashMap<String, Object>();
-			var functionObj = new LinkedHashMap<String, Object>();
+		// Create the function definition
+		functionObj.put("name", entry.qualifiedName());
+		functionObj.put("description", tool.description() != null ? tool.description() : "");
 
-			// Create the function definition
-			functionObj.put("name", clientName + "__" + tool.name());
-			functionObj.put("description", tool.description() != null ? tool.description() : "");
+		// Create parameters object in the format DeepSeek expects
+		var parametersObj = new LinkedHashMap<String, Object>();
+		parametersObj.put("type", tool.inputSchema().type());
 
-			// Create parameters object in the format DeepSeek expects
-			var parametersObj = new LinkedHashMap<String, Object>();
-			parametersObj.put("type", tool.inputSchema().type());
+		// Add properties
+		if (!tool.inputSchema().properties().isEmpty()) {
+			parametersObj.put("properties", tool.inputSchema().properties());
+		}
 
-			// Add properties
-			if (!tool.inputSchema().properties().isEmpty()) {
-				parametersObj.put("properties", tool.inputSchema().properties());
-			}
+		// Add required fields if present
+		if (tool.inputSchema().required() != null && !tool.inputSchema().required().isEmpty()) {
+			parametersObj.put("required", tool.inputSchema().required());
+		}
 
-			// Add required fields if present
-			if (tool.inputSchema().required() != null && !tool.inputSchema().required().isEmpty()) {
-				parametersObj.put("required", tool.inputSchema().required());
-			}
+		functionObj.put("parameters", parametersObj);
 
-			functionObj.put("parameters", parametersObj);
+		// Add type and function to the tool object
+		toolObj.put("type", "function");
+		toolObj.put("function", functionObj);
 
-			// Add type and function to the tool object
-			toolObj.put("type", "function");
-			toolObj.put("function", functionObj);
+		return toolObj;
+	}
 
-			tools.add(toolObj);
+	private JsonRequestBody getRequestBody(Conversation prompt, ModelApiDescriptor model) {
+		var requestBody = new LinkedHashMap<String, Object>();
+		var messages = new ArrayList<byte[]>();
+
+		// Add system message if provided
+		String systemPrompt = preferenceStore.getString(Prompts.SYSTEM.preferenceName());
+		if (systemPrompt != null && !systemPrompt.isEmpty()) {
+			var systemMessage = new LinkedHashMap<String, Object>();
+			systemMessage.put("role", "system");
+			systemMessage.put("content", systemPrompt);
+			messages.add(JsonRequestBody.toFragment(objectMapper, systemMessage));
 		}
 
-		var functionsJsonNode = objectMapper.valueToTree(tools);
-		return (ArrayNode) functionsJsonNode;
-	}
-
-	private String getRequestBody(Conversation prompt, ModelApiDescriptor model) {
-		try {
-			var requestBody = new LinkedHashMap<String, Object>();
-			var messages = new ArrayList<Map<String, Object>>();
-
-			// Add system message if provided
-			String systemPrompt = preferenceStore.getString(Prompts.SYSTEM.preferenceName());
-			if (systemPrompt != null && !systemPrompt.isEmpty()) {
-				var systemMessage = new LinkedHashMap<String, Object>();
-				systemMessage.put("role", "system");
-				systemMessage.put("content", systemPrompt);
-				messages.add(systemMessage);
+		// Add all messages from prompt
+		prompt.messages().stream().filter(Predicate.not(ChatMessage::isEmpty))
+				.map(message -> toJson(message, model)).forEach(messages::add);
+
+		// Add required fields for DeepSeek API
+		requestBody.put("model", model.modelName());
+		requestBody.put("messages", new JsonRequestBody.Fragments(messages));
+		requestBody.put("temperature", model.temperature() / 10.0);
+		requestBody.put("stream", true);
+		// the usage reports the tokens served from the DeepSeek context cache
+		requestBody.put("stream_options", Map.of("include_usage", true));
+		requestBody.put("max_tokens", 4096); // Configurable limit
+
+		// Add tools if function calling is enabled
+		if (model.functionCalling()) {
+			var catalog = mcpClientRegistry.getToolCatalog();
+			if (!catalog.isEmpty()) {
+				requestBody.put("tools", catalog.fragment("deepseek", DeepSeekStreamJavaHttpClient::toolToJson));
 			}
+		}
 
-			// Add all messages from prompt
-			prompt.messages().stream().filter(Predicate.not(ChatMessage::isEmpty))
-					.map(message -> toJsonPayload(message, model)).forEach(messages::add);
-
-			// Add required fields for DeepSeek API
-			requestBody.put("model", model.modelName());
-			requestBody.put("messages", messages);
-			requestBody.put("temperature", model.temperature() / 10.0);
-			requestBody.put("stream", true);
-			requestBody.put("max_tokens", 4096); // Configurable limit
-
-			// Add tools if function calling is enabled
-			if (model.functionCalling()) {
-				ArrayNode tools = objectMapper.createArrayNode();
-				for (var client : mcpClientRegistry.listEnabledveClients().entrySet()) {
-					tools.addAll(clientToolsToJson(client.getKey(), client.getValue()));
-				}
-				if (!tools.isEmpty()) {
-					requestBody.put("tools", tools);
-				}
-			}
+		return JsonRequestBody.write(objectMapper, requestBody);
+	}
 
-			return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestBody);
-		} catch (JsonProcessingException e) {
-			throw new RuntimeException(e);
-		}
+	/**
+	 * Returns the compact JSON of a message, serialized again only if the message changed.
+	 */
+	private byte[] toJson(ChatMessage message, ModelApiDescriptor model) {
+		// besides the message, the payload depends on the vision capability of the model only
+		var format = "deepseek:" + model.vision();
+		return message.toJson(format, changed -> JsonRequestBody.toFragment(objectMapper, toJsonPayload(changed, model)));
 	}
 
 	private LinkedHashMap<String, Object> toJsonPayload(ChatMessage message, ModelApiDescriptor model) {
@@ -229,7 +235,7 @@ public class DeepSeekStreamJavaHttpClient implements LanguageModelClient {
 					: attachmentsString + "\n\n" + message.getContent();
 
 			// Handle content format based on whether there are images (vision capability)
-			if (model.vision() && message.getAttachments().stream().anyMatch(a -> a.getImageData() != null)) {
+			if (model.vision() && message.getAttachments().stream().anyMatch(a -> a.getImage() != null)) {
 				var contentList = new ArrayList<>();
 
 				// Add text content
@@ -241,8 +247,8 @@ public class DeepSeekStreamJavaHttpClient implements LanguageModelClient {
 				}
 
 				// Add image content if available
-				message.getAttachments().stream().map(Attachment::getImageData).filter(Objects::nonNull)
-						.map(ImageUtilities::toBase64Jpeg).map(this::toImageContent).forEachOrdered(contentList::add);
+				message.getAttachments().stream().map(Attachment::getImage).filter(Objects::nonNull)
+						.map(this::toImageContent).forEachOrdered(contentList::add);
 
 				messagePayload.put("content", contentList);
 			} else {
@@ -259,12 +265,12 @@ public class DeepSeekStreamJavaHttpClient implements LanguageModelClient {
 		}
 	}
 
-	private LinkedHashMap<String, Object> toImageContent(String data) {
+	private LinkedHashMap<String, Object> toImageContent(EncodedImage image) {
 		var imageObject = new LinkedHashMap<String, Object>();
 		imageObject.put("type", "image");
 
 		// DeepSeek uses base64 format for images
-		imageObject.put("image_url", Map.of("url", "data:image/jpeg;base64," + data));
+		imageObject.put("image_url", Map.of("url", image.toDataUrl()));
 
 		return imageObject;
 	}
@@ -273,20 +279,16 @@ public class DeepSeekStreamJavaHttpClient implements LanguageModelClient {
 		return () -> {
 			var model = configuration.getSelectedModel().orElseThrow();
 
-			HttpClient client = HttpClient.newBuilder()
-					.connectTimeout(Duration.ofSeconds(configuration.getConnectionTimoutSeconds())).build();
-
-			String requestBody = getRequestBody(prompt, model);
-			HttpRequest request = HttpRequest.newBuilder().uri(URI.create(model.apiUrl()))
-					.timeout(Duration.ofSeconds(configuration.getRequestTimoutSeconds()))
-					.version(HttpClient.Version.HTTP_1_1).header("Authorization", "Bearer " + model.apiKey())
+			JsonRequestBody requestBody = getRequestBody(prompt, model);
+			HttpRequest request = transport.newRequest(URI.create(model.apiUrl()))
+					.header("Authorization", "Bearer " + model.apiKey())
 					.header("Content-Type", "application/json").header("Accept", "text/event-stream")
-					.POST(HttpRequest.BodyPublishers.ofString(requestBody)).build();
+					.POST(requestBody.publisher()).build();
 
-			logger.info("Sending request to DeepSeek API.\n\n" + requestBody);
+			logger.info("Sending request to DeepSeek API: " + prompt.messages().size() + " messages, " + requestBody.length() + " bytes.");
 
 			try {
-				HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+				HttpResponse<InputStream> response = rateLimiter.send(request, cancellation);
 
 				if (response.statusCode() != 200) {
 					String responseBody = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
@@ -295,105 +297,23 @@ public class DeepSeekStreamJavaHttpClient implements LanguageModelClient {
 					return;
 				}
 
-				try (var inputStream = response.body();
-						var inputStreamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-						var reader = new BufferedReader(inputStreamReader)) {
-					String line;
-					String currentToolCallId = null;
-					StringBuilder functionsJsonStr = new StringBuilder("function_call");
-					while ((line = reader.readLine()) != null && !isCancelled.get()) {
-						// Skip empty lines
-						if (line.isEmpty()) {
-							continue;
-						}
-
-						// Handle data: prefix (SSE format)
-						if (line.startsWith("data:")) {
-							line = line.substring(5).trim();
-							// Skip [DONE] marker
-							if ("[DONE]".equals(line)) {
-								continue;
-							}
-
-							try {
-								var node = objectMapper.readTree(line);
-								var choices = node.get("choices");
-
-								if (choices != null && choices.isArray() && choices.size() > 0) {
-									var choice = choices.get(0);
-									var delta = choice.get("delta");
-
-									if (delta != null) {
-										// Handle content (regular text response)
-										if (delta.has("content")) {
-											String content = delta.get("content").asText();
-											if (!content.isEmpty()) {
-												publisher.submit(new Incoming(Incoming.Type.CONTENT, content));
-											}
-										}
-
-										// handle function calls
-										if (delta.has("tool_calls") && delta.get("tool_calls").isArray()) {
-											var toolCalls = delta.get("tool_calls");
-											for (var toolCall : toolCalls) {
-												// Publish the function call name and ID (first chunk)
-												if (toolCall.has("index") && toolCall.has("id") && toolCall.has("type")
-														&& "function".equals(toolCall.get("type").asText())) {
-
-													currentToolCallId = toolCall.get("id").asText();
-													var function = toolCall.get("function");
-
-													if (function != null && function.has("name")) {
-														String functionName = function.get("name").asText();
-														// Publish the initial function call structure
-														if (functionsJsonStr.length() == 13) {
-															functionsJsonStr.append(String.format(
-																	" {\"name\": \"%s\",\"id\": \"%s\",\"arguments\" :",
-																	functionName, currentToolCallId));
-														} else {
-															functionsJsonStr.append(String.format(
-																	"},{\"name\": \"%s\",\"id\": \"%s\",\"arguments\" :",
-																	functionName, currentToolCallId));
-														}
-//														publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL,
-//																String.format(
-//																		"\"function_call\" : { \n \"name\": \"%s\",\n \"id\": \"%s\",\n \"arguments\" :",
-//																		functionName, currentToolCallId)));
-													}
-												}
-												// Publish argument chunks (raw JSON strings)
-												if (toolCall.has("function")
-														&& toolCall.get("function").has("arguments")) {
-													functionsJsonStr
-															.append(toolCall.get("function").get("arguments").asText());
-//													publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL,
-//															toolCall.get("function").get("arguments").asText()));
-												}
-											}
-										}
-
-										// Publish the closing brace when the function call is complete
-										var finishReason = choice.get("finish_reason");
-										if (finishReason != null && "tool_calls".equals(finishReason.asText())) {
-											publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL,
-													functionsJsonStr.append("}").toString()));
-										}
-									}
-								}
-							} catch (Exception e) {
-								// Handle parsing errors but continue processing
-								logger.error("Error parsing response line: " + line, e);
-							}
-						}
-					}
+				var listener = new PublishingStreamListener(publisher, logger, usageMetrics, usage -> rateLimiter.recordUsage(request, usage));
+				var decoder = new OpenAIChatStreamDecoder(listener);
+				try (var reader = new SseEventReader(response.body())) {
+					reader.read((event, data, length) -> !cancellation.isCancelled() && decoder.onEvent(event, data, length));
 				}
-
-				if (isCancelled.get()) {
+				if (cancellation.isCancelled()) {
 					publisher.closeExceptionally(new CancellationException());
+				} else {
+					listener.complete();
 				}
 			} catch (Exception e) {
-				logger.error(e.getMessage(), e);
-				publisher.closeExceptionally(e);
+				if (cancellation.isCancelled()) {
+					publisher.closeExceptionally(new CancellationException());
+				} else {
+					logger.error(e.getMessage(), e);
+					publisher.closeExceptionally(e);
+				}
 			} finally {
 				publisher.close();
 			}
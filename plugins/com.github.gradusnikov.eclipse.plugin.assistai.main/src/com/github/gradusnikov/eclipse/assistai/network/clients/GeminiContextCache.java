@@ -0,0 +1,271 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.e4.core.di.annotations.Creatable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.gradusnikov.eclipse.assistai.chat.TokenEstimatorRegistry;
+import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
+import com.github.gradusnikov.eclipse.assistai.tools.JsonUtils;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Explicit context caching of the Gemini API.
+ * <p>
+ * Gemini serves a stable request prefix from its cache only when the prefix
+ * has been uploaded as a {@code cachedContents} resource. The prefix of our
+ * requests is the system instruction together with the tools, which stay the
+ * same for a whole session. The cache creates one resource per distinct
+ * prefix, renews it shortly before it expires and remembers failures, so a
+ * model or key without caching support does not cost an extra round trip on
+ * every request. Prefixes below the minimum size accepted by the API are not
+ * cached at all.
+ * <p>
+ * A resource belongs to the API key that created it, so each key gets its own
+ * resources. A resource the API rejects is invalidated by the client, which
+ * then sends the prefix with its requests until the next retry.
+ * <p>
+ * A resource is created asynchronously, once for all the requests waiting for
+ * it. A waiting request can be cancelled; the creation is aborted when no
+ * request waits for it any more.
+ */
+@Creatable
+@Singleton
+public class GeminiContextCache
+{
+    /** Smallest prefix, in estimated tokens, worth caching */
+    static final int                    MIN_CACHED_TOKENS = 4096;
+
+    private static final Duration       TTL               = Duration.ofMinutes( 10 );
+
+    /** A cached content is not used when it expires within this margin */
+    private static final Duration       RENEWAL_MARGIN    = Duration.ofMinutes( 1 );
+
+    /** How long to wait before retrying a prefix that could not be cached */
+    private static final Duration       RETRY_DELAY       = Duration.ofMinutes( 10 );
+
+    @Inject
+    private ILog                        logger;
+
+    @Inject
+    private LanguageModelHttpTransport  transport;
+
+    @Inject
+    private TokenEstimatorRegistry      tokenEstimators;
+
+    private final ObjectMapper          objectMapper      = new ObjectMapper();
+
+    /**
+     * @param name
+     *            the resource name of the cached content, or {@code null} if the
+     *            prefix is not cached
+     * @param validUntil
+     *            until when the entry may be used
+     */
+    private record Entry( String name, Instant validUntil ) {}
+
+    /**
+     * A cached content being created or created already.
+     *
+     * @param exchange
+     *            the create request, or {@code null} if nothing is created
+     * @param entry
+     *            completes with the entry once the request has completed; never
+     *            completes exceptionally
+     * @param waiters
+     *            the number of requests waiting for the entry
+     */
+    private record Creation( CompletableFuture<?> exchange, CompletableFuture<Entry> entry, AtomicInteger waiters )
+    {
+        static Creation of( Entry entry )
+        {
+            return new Creation( null, CompletableFuture.completedFuture( entry ), new AtomicInteger() );
+        }
+
+        boolean isExpired( Instant now )
+        {
+            return entry.isDone() && entry.join().validUntil().isBefore( now );
+        }
+    }
+
+    private final Map<String, Creation> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cached content holding the given prefix, creating it if
+     * necessary.
+     *
+     * @param model
+     *            the model the requests are sent to
+     * @param prefix
+     *            the {@code systemInstruction}, {@code tools} and
+     *            {@code toolConfig} fields of the request
+     * @param cancellation
+     *            the cancellation of the request, which ends the wait
+     * @return the resource name to pass as {@code cachedContent}, or empty if
+     *         the prefix is sent with the request
+     * @throws CancellationException
+     *             if the request was cancelled
+     */
+    public Optional<String> lookup( ModelApiDescriptor model, Map<String, Object> prefix, StreamCancellation cancellation )
+            throws IOException, InterruptedException
+    {
+        Instant now = Instant.now();
+        entries.values().removeIf( creation -> creation.isExpired( now ) );
+
+        String json = JsonUtils.toJsonString( prefix );
+        String key = key( model, json );
+        Creation creation = entries.computeIfAbsent( key, k -> tokenEstimators.forModel( model ).estimate( json ) < MIN_CACHED_TOKENS
+                // estimated again once expired, so that the entries of abandoned prefixes are dropped
+                ? Creation.of( new Entry( null, now.plus( TTL ) ) )
+                : create( model, prefix ) );
+        if ( creation.entry().isDone() )
+        {
+            return Optional.ofNullable( creation.entry().join().name() );
+        }
+
+        creation.waiters().incrementAndGet();
+        boolean received = false;
+        try
+        {
+            // a copy, so that cancelling the wait leaves the entry to the other requests
+            Entry entry = cancellation.await( creation.entry().copy() );
+            received = true;
+            return Optional.ofNullable( entry.name() );
+        }
+        finally
+        {
+            if ( creation.waiters().decrementAndGet() == 0 && !received && !creation.entry().isDone() )
+            {
+                // nobody waits for the resource any more
+                creation.exchange().cancel( true );
+                entries.remove( key, creation );
+            }
+        }
+    }
+
+    /**
+     * Stops using the cached content of the given prefix, e.g. because the API
+     * rejected it. The prefix is sent with the requests until the next retry.
+     *
+     * @param model
+     *            the model the requests are sent to
+     * @param prefix
+     *            the prefix passed to {@link #lookup}
+     */
+    public void invalidate( ModelApiDescriptor model, Map<String, Object> prefix )
+    {
+        String key = key( model, JsonUtils.toJsonString( prefix ) );
+        entries.put( key, Creation.of( new Entry( null, Instant.now().plus( RETRY_DELAY ) ) ) );
+    }
+
+    private static String key( ModelApiDescriptor model, String prefixJson )
+    {
+        // a resource belongs to the key that created it; the key is only kept as a digest
+        return digest( model.apiUrl() + "\n" + model.modelName() + "\n" + digest( String.valueOf( model.apiKey() ) ) + "\n" + prefixJson );
+    }
+
+    private Creation create( ModelApiDescriptor model, Map<String, Object> prefix )
+    {
+        var body = new LinkedHashMap<String, Object>();
+        body.put( "model", "models/" + model.modelName() );
+        body.putAll( prefix );
+        body.put( "ttl", TTL.toSeconds() + "s" );
+
+        HttpRequest request = transport.newRequest( URI.create( baseUrl( model ) + "/cachedContents" ) )
+                                       .header( "Content-Type", "application/json" )
+                                       .header( "x-goog-api-key", model.apiKey() )
+                                       .POST( HttpRequest.BodyPublishers.ofString( JsonUtils.toJsonString( body ) ) )
+                                       .build();
+        Instant now = Instant.now();
+        CompletableFuture<HttpResponse<String>> exchange = transport.sendAsync( request,
+                HttpResponse.BodyHandlers.ofString( StandardCharsets.UTF_8 ) );
+        CompletableFuture<Entry> entry = exchange.thenApply( response -> toEntry( response, now ) ).exceptionally( e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if ( cause instanceof CancellationException )
+            {
+                // abandoned by all requests, expires right away
+                return new Entry( null, Instant.MIN );
+            }
+            logger.warn( "Gemini context cache not created: " + cause.getMessage() );
+            return new Entry( null, now.plus( RETRY_DELAY ) );
+        } );
+        return new Creation( exchange, entry, new AtomicInteger() );
+    }
+
+    private Entry toEntry( HttpResponse<String> response, Instant now )
+    {
+        if ( response.statusCode() == 200 )
+        {
+            String name = parseName( response.body() );
+            if ( !name.isBlank() )
+            {
+                logger.info( "Created Gemini context cache " + name );
+                return new Entry( name, now.plus( TTL ).minus( RENEWAL_MARGIN ) );
+            }
+        }
+        logger.warn( "Gemini context cache not created: HTTP " + response.statusCode() + " " + response.body() );
+        return new Entry( null, now.plus( RETRY_DELAY ) );
+    }
+
+    private String parseName( String body )
+    {
+        try
+        {
+            String name = objectMapper.readTree( body ).path( "name" ).textValue();
+            return name == null ? "" : name;
+        }
+        catch ( IOException e )
+        {
+            return "";
+        }
+    }
+
+    /**
+     * @return the API URL up to the API version, e.g.
+     *         {@code https://generativelanguage.googleapis.com/v1beta}
+     */
+    private static String baseUrl( ModelApiDescriptor model )
+    {
+        String url = model.apiUrl();
+        int models = url.indexOf( "/models" );
+        if ( models >= 0 )
+        {
+            url = url.substring( 0, models );
+        }
+        return url.endsWith( "/" ) ? url.substring( 0, url.length() - 1 ) : url;
+    }
+
+    private static String digest( String text )
+    {
+        try
+        {
+            var digest = MessageDigest.getInstance( "SHA-256" );
+            return HexFormat.of().formatHex( digest.digest( text.getBytes( StandardCharsets.UTF_8 ) ) );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
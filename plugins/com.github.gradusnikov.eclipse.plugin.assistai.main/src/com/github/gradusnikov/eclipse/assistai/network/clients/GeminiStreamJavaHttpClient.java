@@ -1,241 +1,267 @@
 
 package com.github.gradusnikov.eclipse.assistai.network.clients;
 
+import java.io.InputStream;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.Flow;
-import java.util.concurrent.SubmissionPublisher;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
-import org.eclipse.jface.preference.IPreferenceStore;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.github.gradusnikov.eclipse.assistai.Activator;
 import com.github.gradusnikov.eclipse.assistai.chat.Attachment;
 import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
 import com.github.gradusnikov.eclipse.assistai.chat.Conversation;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpToolCatalog;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventBus;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
+import com.github.gradusnikov.eclipse.assistai.network.sse.GeminiStreamDecoder;
+import com.github.gradusnikov.eclipse.assistai.network.sse.SseEventReader;
 import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
 import com.github.gradusnikov.eclipse.assistai.prompt.Prompts;
-import com.github.gradusnikov.eclipse.assistai.tools.ImageUtilities;
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
 
-import io.modelcontextprotocol.client.McpSyncClient;
 import jakarta.inject.Inject;
 
 /**
  * A Java HTTP client for streaming requests to Google Gemini API.
  * This class allows subscribing to responses received from the Gemini API and processes the chat completions.
+ * <p>
+ * When the system prompt and the tools are large enough, they are uploaded once to the
+ * {@link GeminiContextCache} and the requests refer to the cached content instead of repeating them.
  */
 @Creatable
 public class GeminiStreamJavaHttpClient implements LanguageModelClient
 {
-    private SubmissionPublisher<Incoming> publisher;
+    private StreamEventBus publisher;
     
-    private Supplier<Boolean> isCancelled = () -> false;
+    private final StreamCancellation cancellation = new StreamCancellation();
     
     @Inject
     private ILog logger;
     
     @Inject
     private LanguageModelClientConfiguration configuration;
+
+    @Inject
+    private LanguageModelHttpTransport transport;
     
     @Inject
     private McpClientRetistry mcpClientRegistry;
-    
-    private IPreferenceStore preferenceStore;
+
+    @Inject
+    private UsageMetrics usageMetrics;
+
+    @Inject
+    private RateLimiter rateLimiter;
+
+    @Inject
+    private GeminiContextCache contextCache;
     
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     public GeminiStreamJavaHttpClient()
     {
-        publisher = new SubmissionPublisher<>();
-        preferenceStore = Activator.getDefault().getPreferenceStore();
+        publisher = new StreamEventBus();
     }
     
     @Override
     public void setCancelProvider(Supplier<Boolean> isCancelled)
     {
-        this.isCancelled = isCancelled;
+        cancellation.setProvider(isCancelled);
+    }
+    
+    @Override
+    public void cancel()
+    {
+        cancellation.cancel();
     }
     
     @Override
-    public synchronized void subscribe(Flow.Subscriber<Incoming> subscriber)
+    public synchronized void subscribe(StreamEventSubscriber subscriber)
     {
         publisher.subscribe(subscriber);
     }
 
-    static ArrayNode clientToolsToJson(String clientName, McpSyncClient client) {
-        List<Map<String, Object>> tools = new ArrayList<>();
-        
-        for (var tool : client.listTools().tools()) {
-            try {
-                // Create the main tool object
-                var toolObj = new LinkedHashMap<String, Object>();
-                
-                // Create the function definition
-                toolObj.put("name", clientName + "__" + tool.name());
-                toolObj.put("description", tool.description() != null ? tool.description() : "");
-                
-                // Create parameters object in the format Gemini expects
-                var inputSchema = new LinkedHashMap<String, Object>();
-                inputSchema.put("type", "OBJECT"); // Always use OBJECT type for Gemini
-                
-                // Handle properties
-                Map<String, Object> properties = new LinkedHashMap<>();
-                if (tool.inputSchema().properties() != null && !tool.inputSchema().properties().isEmpty()) {
-                    // Copy existing properties
-                    properties.putAll(tool.inputSchema().properties());
-                }
-                
-                // Ensure required properties exist in properties map
-                List<String> validRequiredProps = new ArrayList<>();
-                if (tool.inputSchema().required() != null) {
-                    for (String reqProp : tool.inputSchema().required()) {
-                        // If a required property doesn't exist in properties, add it with a dummy definition
-                        if (!properties.containsKey(reqProp)) {
-                            properties.put(reqProp, Map.of(
-                                "type", "string",
-                                "description", "Parameter " + reqProp
-                            ));
-                        }
-                        validRequiredProps.add(reqProp);
+    private Map<String, Object> toolToJson(McpToolCatalog.Entry entry) {
+        var tool = entry.tool();
+        try {
+            // Create the main tool object
+            var toolObj = new LinkedHashMap<String, Object>();
+            
+            // Create the function definition
+            toolObj.put("name", entry.qualifiedName());
+            toolObj.put("description", tool.description() != null ? tool.description() : "");
+            
+            // Create parameters object in the format Gemini expects
+            var inputSchema = new LinkedHashMap<String, Object>();
+            inputSchema.put("type", "OBJECT"); // Always use OBJECT type for Gemini
+            
+            // Handle properties
+            Map<String, Object> properties = new LinkedHashMap<>();
+            if (tool.inputSchema().properties() != null && !tool.inputSchema().properties().isEmpty()) {
+                // Copy existing properties
+                properties.putAll(tool.inputSchema().properties());
+            }
+            
+            // Ensure required properties exist in properties map
+            List<String> validRequiredProps = new ArrayList<>();
+            if (tool.inputSchema().required() != null) {
+                for (String reqProp : tool.inputSchema().required()) {
+                    // If a required property doesn't exist in properties, add it with a dummy definition
+                    if (!properties.containsKey(reqProp)) {
+                        properties.put(reqProp, stringProperty("Parameter " + reqProp));
                     }
+                    validRequiredProps.add(reqProp);
                 }
-                
-                // If properties is still empty, add a dummy property
-                if (properties.isEmpty()) {
-                    properties.put("dummy", Map.of(
-                        "type", "string",
-                        "description", "Dummy parameter"
-                    ));
-                }
-                
-                // Add properties to the schema
-                inputSchema.put("properties", properties);
-                
-                // Add validated required fields if present
-                if (!validRequiredProps.isEmpty()) {
-                    inputSchema.put("required", validRequiredProps);
-                }
-                
-                toolObj.put("parameters", inputSchema);
-                tools.add(toolObj);
-            } catch (Exception e) {
-                // Log and skip problematic tools
-                System.err.println("Error processing tool " + tool.name() + ": " + e.getMessage());
             }
-        }
-        
-        var objectMapper = new ObjectMapper();
-        var functionsJsonNode = objectMapper.valueToTree(tools);
-        return (ArrayNode) functionsJsonNode; 
-    }
-
-    private String getRequestBody(Conversation prompt, ModelApiDescriptor model)
-    {
-        try
-        {
-            var requestBody = new LinkedHashMap<String, Object>();
-            var messages = new ArrayList<Map<String, Object>>();
-    
-            // Add system message if provided
-            String systemPrompt = preferenceStore.getString(Prompts.SYSTEM.preferenceName());
-            if (!systemPrompt.isEmpty()) {
-                // note gemini does not support system messages
-                ChatMessage systemMessage = new ChatMessage( UUID.randomUUID().toString(), "user");
-                systemMessage.setContent(systemPrompt);
-                messages.add(toJsonPayload(systemMessage, model));
-            }
-            
-            // Add all messages from prompt
-            prompt.messages().stream()
-                .filter(Predicate.not(ChatMessage::isEmpty))
-                .map(message -> toJsonPayload(message, model))
-                .forEach(messages::add);
-    
-            // Add required fields for Gemini API
-            requestBody.put("model", model.modelName());
-            requestBody.put("contents", messages);
-            
-            // Add generation configuration
-            var generationConfig = new LinkedHashMap<String, Object>();
             
-            // Add temperature configuration if applicable
-            if (!model.modelName().matches("^o\\d{1}(-.*)?"))
-            {
-                generationConfig.put("temperature", model.temperature() / 10.0);
+            // If properties is still empty, add a dummy property
+            if (properties.isEmpty()) {
+                properties.put("dummy", stringProperty("Dummy parameter"));
             }
             
-            // Gemini doesn't use 'stream' directly in the body but in the URL or as a query parameter
-            // So we're removing it from the body
+            // Add properties to the schema
+            inputSchema.put("properties", properties);
             
-            if (!generationConfig.isEmpty()) {
-                requestBody.put("generationConfig", generationConfig);
+            // Add validated required fields if present
+            if (!validRequiredProps.isEmpty()) {
+                inputSchema.put("required", validRequiredProps);
             }
+            
+            toolObj.put("parameters", inputSchema);
+            return toolObj;
+        } catch (Exception e) {
+            // Log and skip problematic tools
+            logger.error("Error processing tool " + entry.qualifiedName() + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static Map<String, Object> stringProperty(String description) {
+        // ordered, so that the serialized tools in the cached prefix do not change between sessions
+        var property = new LinkedHashMap<String, Object>();
+        property.put("type", "string");
+        property.put("description", description);
+        return property;
+    }
 
-            // Add function calling if enabled
-            if (model.functionCalling())
+    /**
+     * Returns the stable prefix of the request: the system prompt and the tools.
+     */
+    private Map<String, Object> getPrefix(ModelApiDescriptor model, String systemPrompt)
+    {
+        var prefix = new LinkedHashMap<String, Object>();
+        if (!systemPrompt.isEmpty()) {
+            prefix.put("systemInstruction", Map.of("parts", List.of(Map.of("text", systemPrompt))));
+        }
+        if (model.functionCalling())
+        {
+            var catalog = mcpClientRegistry.getToolCatalog();
+            
+            if (!catalog.isEmpty())
             {
-                List<Map<String, Object>> allFunctionDeclarations = new ArrayList<>();
+                // Add all function declarations as a single tool
+                List<Map<String, Object>> tools = new ArrayList<>();
+                tools.add(Map.of("functionDeclarations", catalog.fragment("gemini", this::toolToJson)));
+                prefix.put("tools", tools);
                 
-                for (var client : mcpClientRegistry.listEnabledveClients().entrySet())
-                {
-                    try {
-                        var functionDeclarations = clientToolsToJson(client.getKey(), client.getValue());
-                        if (functionDeclarations != null && functionDeclarations.size() > 0) {
-                            // Convert ArrayNode to List of Maps
-                            for (JsonNode node : functionDeclarations) {
-                                // Convert each JsonNode to a Map
-                                Map<String, Object> declarationMap = objectMapper.convertValue(node, Map.class);
-                                allFunctionDeclarations.add(declarationMap);
-                            }
-                        }
-                    } catch (Exception e) {
-                        logger.error("Error processing client " + client.getKey() + ": " + e.getMessage(), e);
-                    }
-                }
-                
-                if (!allFunctionDeclarations.isEmpty())
-                {
-                    // Add all function declarations as a single tool
-                    List<Map<String, Object>> tools = new ArrayList<>();
-                    tools.add(Map.of("functionDeclarations", allFunctionDeclarations));
-                    requestBody.put("tools", tools);
-                    
-                    // Configure function calling mode
-                    var toolConfig = new LinkedHashMap<String, Object>();
-                    var functionCallingConfig = new LinkedHashMap<String, Object>();
-                    functionCallingConfig.put("mode", "AUTO"); // AUTO, ANY, or NONE
-                    toolConfig.put("functionCallingConfig", functionCallingConfig);
-                    requestBody.put("toolConfig", toolConfig);
-                }
+                // Configure function calling mode
+                var toolConfig = new LinkedHashMap<String, Object>();
+                var functionCallingConfig = new LinkedHashMap<String, Object>();
+                functionCallingConfig.put("mode", "AUTO"); // AUTO, ANY, or NONE
+                toolConfig.put("functionCallingConfig", functionCallingConfig);
+                prefix.put("toolConfig", toolConfig);
             }
+        }
+        return prefix;
+    }
+
+    /**
+     * Builds the request body around a prefix, which is either sent with the
+     * request or referenced as a cached content.
+     */
+    JsonRequestBody getRequestBody(Conversation prompt, ModelApiDescriptor model, String systemPrompt,
+                                   Map<String, Object> prefix, Optional<String> cachedContent)
+    {
+        var requestBody = new LinkedHashMap<String, Object>();
+        var messages = new ArrayList<byte[]>();
+
+        // Add system message if provided and not cached
+        if (!systemPrompt.isEmpty() && cachedContent.isEmpty()) {
+            // note gemini does not support system messages
+            ChatMessage systemMessage = new ChatMessage( UUID.randomUUID().toString(), "user");
+            systemMessage.setContent(systemPrompt);
+            messages.add(JsonRequestBody.toFragment(objectMapper, toJsonPayload(systemMessage, model)));
+        }
+        
+        // Add all messages from prompt
+        prompt.messages().stream()
+            .filter(Predicate.not(ChatMessage::isEmpty))
+            .map(message -> toJson(message, model))
+            .forEach(messages::add);
     
-            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestBody);
+        // Add required fields for Gemini API
+        requestBody.put("model", model.modelName());
+        requestBody.put("contents", new JsonRequestBody.Fragments(messages));
+        
+        // Add generation configuration
+        var generationConfig = new LinkedHashMap<String, Object>();
+        
+        // Add temperature configuration if applicable
+        if (!model.modelName().matches("^o\\d{1}(-.*)?"))
+        {
+            generationConfig.put("temperature", model.temperature() / 10.0);
+        }
+        
+        // Gemini doesn't use 'stream' directly in the body but in the URL or as a query parameter
+        // So we're removing it from the body
+        
+        if (!generationConfig.isEmpty()) {
+            requestBody.put("generationConfig", generationConfig);
         }
-        catch (JsonProcessingException e)
+
+        // Add function calling if enabled, either directly or through the cached content
+        if (cachedContent.isPresent())
         {
-            throw new RuntimeException(e);
+            requestBody.put("cachedContent", cachedContent.get());
         }
+        else
+        {
+            if (prefix.containsKey("tools"))
+            {
+                requestBody.put("tools", prefix.get("tools"));
+                requestBody.put("toolConfig", prefix.get("toolConfig"));
+            }
+        }
+    
+        return JsonRequestBody.write(objectMapper, requestBody);
+    }
+
+    /**
+     * Returns the compact JSON of a message, serialized again only if the message changed.
+     */
+    private byte[] toJson(ChatMessage message, ModelApiDescriptor model)
+    {
+        // besides the message, the payload depends on these capabilities of the model only
+        var format = "gemini:" + model.functionCalling() + ":" + model.vision();
+        return message.toJson(format, changed -> JsonRequestBody.toFragment(objectMapper, toJsonPayload(changed, model)));
     }
     
     private LinkedHashMap<String, Object> toJsonPayload(ChatMessage message, ModelApiDescriptor model)
@@ -320,9 +346,8 @@ public class GeminiStreamJavaHttpClient implements LanguageModelClient
             // Add image content if available
             message.getAttachments()
                     .stream()
-                    .map(Attachment::getImageData)
+                    .map(Attachment::getImage)
                     .filter(Objects::nonNull)
-                    .map(ImageUtilities::toBase64Jpeg)
                     .map(this::toImagePart)
                     .forEach(parts::add);
             
@@ -334,11 +359,11 @@ public class GeminiStreamJavaHttpClient implements LanguageModelClient
         }
     }
 
-    private Map<String, Object> toImagePart(String data)
+    private Map<String, Object> toImagePart(EncodedImage image)
     {
         var inlineData = new LinkedHashMap<String, Object>();
-        inlineData.put("mime_type", "image/jpeg");
-        inlineData.put("data", data);
+        inlineData.put("mime_type", image.getMimeType());
+        inlineData.put("data", image.toBase64());
         
         return Map.of("inline_data", inlineData);
     }
@@ -380,110 +405,100 @@ public class GeminiStreamJavaHttpClient implements LanguageModelClient
         return urlBuilder.toString();
     }
 
+    private HttpRequest newRequest(Conversation prompt, ModelApiDescriptor model, String systemPrompt,
+                                   Map<String, Object> prefix, Optional<String> cachedContent)
+    {
+        JsonRequestBody requestBody = getRequestBody(prompt, model, systemPrompt, prefix, cachedContent);
+        
+        // Construct the proper URL for streaming
+        String apiUrl = constructStreamingUrl(model);
+        
+        logger.info("Sending request to Gemini API: " + prompt.messages().size() + " messages, " + requestBody.length() + " bytes.");
+        
+        return transport.newRequest(URI.create(apiUrl))
+                .header("Content-Type", "application/json")
+                .header("x-goog-api-key", model.apiKey())
+                .POST(requestBody.publisher())
+                .build();
+    }
+
+    /**
+     * Whether a failed request was rejected because of its {@code cachedContent},
+     * which then no longer exists or belongs to another project.
+     */
+    static boolean isCachedContentRejected(int statusCode, String responseBody)
+    {
+        return statusCode >= 400 && statusCode < 500 && responseBody.toLowerCase(Locale.ROOT).contains("cachedcontent");
+    }
+
     public Runnable run(Conversation prompt)
     {
         return () -> {
             var model = configuration.getSelectedModel().orElseThrow();
-            
-            HttpClient client = HttpClient.newBuilder()
-                    .connectTimeout(Duration.ofSeconds(configuration.getConnectionTimoutSeconds()))
-                    .build();
-
-            String requestBody = getRequestBody(prompt, model);
-            
-            // Construct the proper URL for streaming
-            String apiUrl = constructStreamingUrl(model);
-            
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(apiUrl))
-                    .timeout(Duration.ofSeconds(configuration.getRequestTimoutSeconds()))
-                    .header("Content-Type", "application/json")
-                    .header("x-goog-api-key", model.apiKey())
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                    .build();
-
-            logger.info("Sending request to Gemini API.\n\n" + requestBody);
 
             try
             {
-                // Use ofLines() for line-by-line processing of the streaming response
-                HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+                String systemPrompt = Activator.getDefault().getPreferenceStore().getString(Prompts.SYSTEM.preferenceName());
+                var prefix = getPrefix(model, systemPrompt);
+                // looking up the context cache may create it, which can be cancelled like the request
+                var cachedContent = prefix.isEmpty() ? Optional.<String>empty() : contextCache.lookup(model, prefix, cancellation);
+
+                HttpRequest request = newRequest(prompt, model, systemPrompt, prefix, cachedContent);
+                HttpResponse<InputStream> response = rateLimiter.send(request, cancellation);
 
                 if (response.statusCode() != 200)
                 {
-                    String responseBody = response.body().collect(Collectors.joining("\n"));
-                    logger.error("Request failed with status code: " + response.statusCode() + " and response body: " + responseBody);
-                    publisher.closeExceptionally(new RuntimeException("API request failed: " + response.statusCode()));
-                    return;
+                    String responseBody = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+                    if (cachedContent.isPresent() && isCachedContentRejected(response.statusCode(), responseBody))
+                    {
+                        // e.g. deleted or expired on the server: send the prefix with the request instead
+                        logger.warn("Gemini rejected cached content " + cachedContent.get() + ", resending the request without it: " + responseBody);
+                        contextCache.invalidate(model, prefix);
+                        request = newRequest(prompt, model, systemPrompt, prefix, Optional.empty());
+                        response = rateLimiter.send(request, cancellation);
+                        if (response.statusCode() != 200)
+                        {
+                            responseBody = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+                        }
+                    }
+                    if (response.statusCode() != 200)
+                    {
+                        logger.error("Request failed with status code: " + response.statusCode() + " and response body: " + responseBody);
+                        publisher.closeExceptionally(new RuntimeException("API request failed: " + response.statusCode()));
+                        return;
+                    }
                 }
                 
-                // Process each line as it arrives
-                response.body()
-                    .filter(line -> !line.isEmpty())
-                    .filter(line -> line.startsWith("data:"))
-                    .takeWhile(line -> !isCancelled.get())
-                    .forEach(line -> {
-                        // Extract the data part after "data:" prefix
-                        line = line.substring(5).trim();
-                        
-                        // Skip [DONE] marker
-                        if ("[DONE]".equals(line)) {
-                            return;
-                        }
-                        
-                        try {
-                            var node = objectMapper.readTree(line);
-                            
-                            // Process candidates if present
-                            if (node.has("candidates") && !node.get("candidates").isEmpty()) {
-                                var candidate = node.get("candidates").get(0);
-                                
-                                if (candidate.has("content") && candidate.get("content").has("parts")) {
-                                    var parts = candidate.get("content").get("parts");
-                                    
-                                    for (JsonNode part : parts) {
-                                        // Handle text content
-                                        if (part.has("text")) {
-                                            publisher.submit(new Incoming(Incoming.Type.CONTENT, part.get("text").asText()));
-                                        }
-                                        
-                                        // Handle function calls
-                                        if (part.has("functionCall")) {
-                                            var functionCall = part.get("functionCall");
-                                            String functionName = functionCall.get("name").asText();
-                                            
-                                            // Submit function call name
-                                            publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL, 
-                                                    String.format("\"function_call\" : { \n \"name\": \"%s\",\n \"arguments\" :", functionName)));
-                                            
-                                            // Submit function call arguments
-                                            if (functionCall.has("args")) {
-                                                publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL, 
-                                                        functionCall.get("args").toString()));
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        } 
-                        catch (Exception e) {
-                            logger.error("Error parsing response line: " + line, e);
-                        }
-                    });
+                var sentRequest = request;
+                // Process each event as it arrives
+                var listener = new PublishingStreamListener(publisher, logger, usageMetrics, usage -> rateLimiter.recordUsage(sentRequest, usage));
+                var decoder = new GeminiStreamDecoder(listener);
+                try (var reader = new SseEventReader(response.body()))
+                {
+                    reader.read((event, data, length) -> !cancellation.isCancelled() && decoder.onEvent(event, data, length));
+                }
                     
-                if (isCancelled.get())
+                if (cancellation.isCancelled())
                 {
                     publisher.closeExceptionally(new CancellationException());
                 }
                 else
                 {
+                    listener.complete();
                     publisher.close();
                 }
             }
             catch (Exception e)
             {
-                logger.error(e.getMessage(), e);
-                publisher.closeExceptionally(e);
+                if (cancellation.isCancelled())
+                {
+                    publisher.closeExceptionally(new CancellationException());
+                }
+                else
+                {
+                    logger.error(e.getMessage(), e);
+                    publisher.closeExceptionally(e);
+                }
             }
         };
     }
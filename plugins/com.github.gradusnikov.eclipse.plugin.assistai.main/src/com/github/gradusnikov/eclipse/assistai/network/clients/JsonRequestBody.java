@@ -0,0 +1,227 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * A JSON request body, written with a streaming generator into a list of byte
+ * segments that are sent as they are.
+ * <p>
+ * Parts of the body that were serialized before, e.g. the messages of a
+ * conversation, are passed as {@link Fragments}: their bytes become segments
+ * of the body without being parsed, copied or converted to a string, so a
+ * request only serializes what changed since the previous one.
+ */
+public final class JsonRequestBody
+{
+    /**
+     * Compact JSON values, written as an array.
+     */
+    @JsonSerialize( using = FragmentsSerializer.class )
+    public record Fragments( List<byte[]> values )
+    {
+    }
+
+    private final List<byte[]> segments;
+
+    private final long         length;
+
+    private JsonRequestBody( List<byte[]> segments, long length )
+    {
+        this.segments = segments;
+        this.length = length;
+    }
+
+    /**
+     * Writes a request body, e.g. a map of the request fields.
+     */
+    public static JsonRequestBody write( ObjectMapper mapper, Object body )
+    {
+        var output = new SegmentedOutputStream();
+        try ( JsonGenerator generator = mapper.createGenerator( output ) )
+        {
+            mapper.writeValue( generator, body );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+        return new JsonRequestBody( output.segments(), output.length() );
+    }
+
+    /**
+     * Serializes a value into compact JSON, to be passed later as one of the
+     * {@link Fragments}.
+     */
+    public static byte[] toFragment( ObjectMapper mapper, Object value )
+    {
+        try
+        {
+            return mapper.writeValueAsBytes( value );
+        }
+        catch ( JsonProcessingException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * @return a publisher sending the segments of the body; it can be
+     *         subscribed again, e.g. when a request is retried
+     */
+    public HttpRequest.BodyPublisher publisher()
+    {
+        return HttpRequest.BodyPublishers.fromPublisher( HttpRequest.BodyPublishers.ofByteArrays( segments ), length );
+    }
+
+    /**
+     * @return the size of the body in bytes
+     */
+    public long length()
+    {
+        return length;
+    }
+
+    /**
+     * Decodes the whole body, for tests and diagnostics only.
+     */
+    @Override
+    public String toString()
+    {
+        var bytes = new byte[(int) length];
+        int position = 0;
+        for ( byte[] segment : segments )
+        {
+            System.arraycopy( segment, 0, bytes, position, segment.length );
+            position += segment.length;
+        }
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private static final class FragmentsSerializer extends StdSerializer<Fragments>
+    {
+        private static final long serialVersionUID = 1L;
+
+        FragmentsSerializer()
+        {
+            super( Fragments.class );
+        }
+
+        @Override
+        public void serialize( Fragments fragments, JsonGenerator generator, SerializerProvider provider ) throws IOException
+        {
+            generator.writeStartArray();
+            if ( generator.getOutputTarget() instanceof SegmentedOutputStream output )
+            {
+                // the generator does not count the raw elements, so it adds no separators
+                generator.flush();
+                for ( int i = 0; i < fragments.values().size(); i++ )
+                {
+                    if ( i > 0 )
+                    {
+                        output.write( ',' );
+                    }
+                    output.append( fragments.values().get( i ) );
+                }
+            }
+            else
+            {
+                for ( byte[] value : fragments.values() )
+                {
+                    generator.writeRawValue( new String( value, StandardCharsets.UTF_8 ) );
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Collects the written bytes in chunks, and appended arrays as segments of
+     * their own.
+     */
+    private static final class SegmentedOutputStream extends OutputStream
+    {
+        private static final int   CHUNK_SIZE = 8 * 1024;
+
+        private final List<byte[]> segments   = new ArrayList<>();
+
+        private byte[]             buffer     = new byte[CHUNK_SIZE];
+
+        private int                count;
+
+        private long               length;
+
+        @Override
+        public void write( int b )
+        {
+            if ( count == buffer.length )
+            {
+                segments.add( buffer );
+                buffer = new byte[CHUNK_SIZE];
+                count = 0;
+            }
+            buffer[count++] = (byte) b;
+            length++;
+        }
+
+        @Override
+        public void write( byte[] bytes, int offset, int size )
+        {
+            while ( size > 0 )
+            {
+                if ( count == buffer.length )
+                {
+                    segments.add( buffer );
+                    buffer = new byte[CHUNK_SIZE];
+                    count = 0;
+                }
+                int chunk = Math.min( size, buffer.length - count );
+                System.arraycopy( bytes, offset, buffer, count, chunk );
+                count += chunk;
+                offset += chunk;
+                size -= chunk;
+                length += chunk;
+            }
+        }
+
+        void append( byte[] segment )
+        {
+            closeChunk();
+            segments.add( segment );
+            length += segment.length;
+        }
+
+        List<byte[]> segments()
+        {
+            closeChunk();
+            return segments;
+        }
+
+        long length()
+        {
+            return length;
+        }
+
+        private void closeChunk()
+        {
+            if ( count > 0 )
+            {
+                segments.add( Arrays.copyOf( buffer, count ) );
+                count = 0;
+            }
+        }
+    }
+}
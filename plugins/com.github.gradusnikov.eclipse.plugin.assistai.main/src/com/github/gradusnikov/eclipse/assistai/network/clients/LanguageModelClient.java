@@ -1,10 +1,9 @@
 package com.github.gradusnikov.eclipse.assistai.network.clients;
 
-import java.util.concurrent.Flow;
 import java.util.function.Supplier;
 
 import com.github.gradusnikov.eclipse.assistai.chat.Conversation;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
 
 public interface LanguageModelClient
 {
@@ -12,10 +11,15 @@ public interface LanguageModelClient
     void setCancelProvider( Supplier<Boolean> isCancelled );
 
     /**
-     * Subscribes a given Flow.Subscriber to receive String data from OpenAI API responses.
-     * @param subscriber the Flow.Subscriber to be subscribed to the publisher
+     * Cancels the running request right away, closing its connection.
      */
-    void subscribe( Flow.Subscriber<Incoming> subscriber );
+    void cancel();
+
+    /**
+     * Subscribes a given subscriber to receive the events of the model API responses.
+     * @param subscriber the subscriber to be subscribed to the event bus
+     */
+    void subscribe( StreamEventSubscriber subscriber );
 
     /**
      * Creates and returns a Runnable that will execute the HTTP request to OpenAI API
@@ -42,4 +42,31 @@ public class LanguageModelClientConfiguration
         return Integer.parseInt( prefernceStore.getString(PreferenceConstants.ASSISTAI_REQUEST_TIMEOUT_SECONDS) );
     }
     
+    /**
+     * Whether TLS endpoints may negotiate HTTP/2. Plain-text endpoints always use HTTP/1.1.
+     */
+    public boolean isHttp2Enabled()
+    {
+        IPreferenceStore prefernceStore = Activator.getDefault().getPreferenceStore();
+        return prefernceStore.getBoolean( PreferenceConstants.ASSISTAI_HTTP2_ENABLED );
+    }
+    
+    /**
+     * Whether the streamed responses are echoed to the console, for diagnostics.
+     */
+    public boolean isStreamPrintingEnabled()
+    {
+        IPreferenceStore prefernceStore = Activator.getDefault().getPreferenceStore();
+        return prefernceStore.getBoolean( PreferenceConstants.ASSISTAI_DEBUG_PRINT_STREAM );
+    }
+    
+    /**
+     * Whether the streamed responses are appended to a log file, for diagnostics.
+     */
+    public boolean isStreamFileLoggingEnabled()
+    {
+        IPreferenceStore prefernceStore = Activator.getDefault().getPreferenceStore();
+        return prefernceStore.getBoolean( PreferenceConstants.ASSISTAI_DEBUG_LOG_STREAM_TO_FILE );
+    }
+    
 }
@@ -25,7 +25,7 @@ public class LanguageModelHttpClientProvider
     @Inject
     private AppendMessageToViewSubscriber appendMessageToViewSubscriber;
     @Inject
-    private FunctionCallSubscriber functionCallSubscriber;
+    private Provider<FunctionCallSubscriber> functionCallSubscriberProvider;
     @Inject
     private PrintMessageSubscriber printMessageSubscriber;
     @Inject
@@ -36,6 +36,12 @@ public class LanguageModelHttpClientProvider
     private Provider<DeepSeekStreamJavaHttpClient> deepseekClientProvider;
     @Inject
     private Provider<GeminiStreamJavaHttpClient> geminiClientProvider;
+    @Inject
+    private LanguageModelHttpTransport transport;
+    @Inject
+    private UsageMetrics usageMetrics;
+    @Inject
+    private RateLimiter rateLimiter;
     
     public LanguageModelHttpClientProvider()
     {
@@ -56,11 +62,47 @@ public class LanguageModelHttpClientProvider
         
         
         LanguageModelClient client = clientProvider.get();
-//        client.subscribe( conversationSubscriber );
-        client.subscribe( printMessageSubscriber );
         client.subscribe( appendMessageToViewSubscriber );
-        client.subscribe( functionCallSubscriber );
-//        client.subscribe( printToFileSubscriber );
+        // tracks the function calls of one response, so every client gets its own
+        client.subscribe( functionCallSubscriberProvider.get() );
+        // diagnostics are subscribed only when enabled, so they cost nothing otherwise
+        if ( configuration.isStreamPrintingEnabled() )
+        {
+            client.subscribe( printMessageSubscriber );
+        }
+        if ( configuration.isStreamFileLoggingEnabled() )
+        {
+            client.subscribe( printToFileSubscriber );
+        }
         return client;
     }
+    
+    /**
+     * @return the pooled transport shared by all model clients
+     */
+    public LanguageModelHttpTransport getTransport()
+    {
+        return transport;
+    }
+    
+    public LanguageModelHttpTransport.Metrics getTransportMetrics()
+    {
+        return transport.getMetrics();
+    }
+    
+    /**
+     * @return the token usage and prompt cache statistics of all clients
+     */
+    public UsageMetrics.Metrics getUsageMetrics()
+    {
+        return usageMetrics.getMetrics();
+    }
+    
+    /**
+     * @return the queue time and retry statistics of all clients
+     */
+    public RateLimiter.Metrics getRateLimiterMetrics()
+    {
+        return rateLimiter.getMetrics();
+    }
 }
@@ -0,0 +1,302 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.e4.core.di.annotations.Creatable;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Shared HTTP transport used by all {@link LanguageModelClient} implementations.
+ * <p>
+ * One {@link HttpClient} is kept per endpoint (scheme, host and port), so
+ * consecutive turns of a conversation reuse the already established TCP/TLS
+ * connection instead of paying for a new handshake. TLS endpoints negotiate
+ * HTTP/2 through ALPN when enabled in the preferences; plain-text endpoints
+ * (e.g. a local Ollama) are always pinned to HTTP/1.1 to avoid the h2c upgrade
+ * dance that many local servers do not implement. All clients share a single
+ * virtual-thread executor.
+ * <p>
+ * Every TLS connection opened by a pooled client is counted, which together
+ * with the request count gives the number of requests served over a reused
+ * connection (see {@link #getMetrics()}).
+ */
+@Creatable
+@Singleton
+public class LanguageModelHttpTransport
+{
+    @Inject
+    private ILog logger;
+
+    @Inject
+    private LanguageModelClientConfiguration configuration;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Map<Endpoint, PooledClient> clients = new ConcurrentHashMap<>();
+
+    private final LongAdder requests    = new LongAdder();
+    private final LongAdder tlsRequests = new LongAdder();
+    private final LongAdder handshakes  = new LongAdder();
+    private final LongAdder http2Responses = new LongAdder();
+
+    /**
+     * Key of the connection pool.
+     */
+    public record Endpoint( String scheme, String host, int port )
+    {
+        public static Endpoint of( URI uri )
+        {
+            String scheme = uri.getScheme() == null ? "https" : uri.getScheme().toLowerCase( Locale.ROOT );
+            int port = uri.getPort() >= 0 ? uri.getPort() : ( "http".equals( scheme ) ? 80 : 443 );
+            return new Endpoint( scheme, uri.getHost(), port );
+        }
+
+        public boolean isSecure()
+        {
+            return "https".equals( scheme );
+        }
+    }
+
+    /**
+     * Snapshot of the transport counters.
+     *
+     * @param requests total number of requests sent
+     * @param newHandshakes number of TLS connections (handshakes) opened
+     * @param reusedConnections number of TLS requests served over an already open connection
+     * @param http2Responses number of responses received over HTTP/2
+     * @param pooledEndpoints number of endpoints with a live client
+     */
+    public record Metrics( long requests, long newHandshakes, long reusedConnections, long http2Responses, int pooledEndpoints ) {}
+
+    private record PooledClient( HttpClient client, int connectTimeoutSeconds, boolean http2 ) {}
+
+    /**
+     * Returns a pooled client for the endpoint of the given URI. The client is
+     * rebuilt when the connection settings have changed since it was created.
+     */
+    public HttpClient clientFor( URI uri )
+    {
+        int connectTimeout = configuration.getConnectionTimoutSeconds();
+        boolean http2 = configuration.isHttp2Enabled();
+        return clients.compute( Endpoint.of( uri ), ( endpoint, pooled ) -> {
+            if ( pooled != null && pooled.connectTimeoutSeconds() == connectTimeout && pooled.http2() == http2 )
+            {
+                return pooled;
+            }
+            if ( pooled != null )
+            {
+                pooled.client().shutdown();
+            }
+            return new PooledClient( newClient( endpoint, connectTimeout, http2 ), connectTimeout, http2 );
+        } ).client();
+    }
+
+    /**
+     * Creates a request builder with the request timeout and protocol version
+     * appropriate for the endpoint.
+     */
+    public HttpRequest.Builder newRequest( URI uri )
+    {
+        var builder = HttpRequest.newBuilder( uri )
+                                 .timeout( Duration.ofSeconds( configuration.getRequestTimoutSeconds() ) );
+        if ( !Endpoint.of( uri ).isSecure() )
+        {
+            builder.version( HttpClient.Version.HTTP_1_1 );
+        }
+        return builder;
+    }
+
+    /**
+     * Sends the request through the pooled client of its endpoint.
+     */
+    public <T> HttpResponse<T> send( HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler ) throws IOException, InterruptedException
+    {
+        var uri = request.uri();
+        var client = clientFor( uri );
+        requests.increment();
+        if ( Endpoint.of( uri ).isSecure() )
+        {
+            tlsRequests.increment();
+        }
+        HttpResponse<T> response = client.send( request, bodyHandler );
+        if ( response.version() == HttpClient.Version.HTTP_2 )
+        {
+            http2Responses.increment();
+        }
+        return response;
+    }
+
+    /**
+     * Sends the request asynchronously through the pooled client of its
+     * endpoint. Cancelling the returned future aborts the exchange.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync( HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler )
+    {
+        var uri = request.uri();
+        var client = clientFor( uri );
+        requests.increment();
+        if ( Endpoint.of( uri ).isSecure() )
+        {
+            tlsRequests.increment();
+        }
+        CompletableFuture<HttpResponse<T>> exchange = client.sendAsync( request, bodyHandler );
+        exchange.thenAccept( response -> {
+            if ( response.version() == HttpClient.Version.HTTP_2 )
+            {
+                http2Responses.increment();
+            }
+        } );
+        return exchange;
+    }
+
+    public Metrics getMetrics()
+    {
+        long opened = handshakes.sum();
+        return new Metrics( requests.sum(),
+                            opened,
+                            Math.max( 0, tlsRequests.sum() - opened ),
+                            http2Responses.sum(),
+                            clients.size() );
+    }
+
+    @PreDestroy
+    public void dispose()
+    {
+        clients.values().forEach( pooled -> pooled.client().shutdownNow() );
+        clients.clear();
+        executor.shutdownNow();
+    }
+
+    private HttpClient newClient( Endpoint endpoint, int connectTimeoutSeconds, boolean http2 )
+    {
+        var builder = HttpClient.newBuilder()
+                                .connectTimeout( Duration.ofSeconds( connectTimeoutSeconds ) )
+                                .followRedirects( HttpClient.Redirect.NORMAL )
+                                .version( http2 && endpoint.isSecure() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1 )
+                                .executor( executor );
+        if ( endpoint.isSecure() )
+        {
+            try
+            {
+                builder.sslContext( new CountingSSLContext( SSLContext.getDefault(), handshakes ) );
+            }
+            catch ( NoSuchAlgorithmException e )
+            {
+                logger.warn( "Default SSL context not available, handshake counting disabled", e );
+            }
+        }
+        logger.info( "Created HTTP client for " + endpoint );
+        return builder.build();
+    }
+
+    /**
+     * {@link SSLContext} that delegates to another context and counts the
+     * engines it creates. The JDK client creates exactly one engine per TLS
+     * connection, so the counter equals the number of handshakes.
+     */
+    private static class CountingSSLContext extends SSLContext
+    {
+        CountingSSLContext( SSLContext delegate, LongAdder counter )
+        {
+            super( new CountingSSLContextSpi( delegate, counter ), delegate.getProvider(), delegate.getProtocol() );
+        }
+    }
+
+    private static class CountingSSLContextSpi extends SSLContextSpi
+    {
+        private final SSLContext delegate;
+        private final LongAdder counter;
+
+        CountingSSLContextSpi( SSLContext delegate, LongAdder counter )
+        {
+            this.delegate = delegate;
+            this.counter = counter;
+        }
+
+        @Override
+        protected void engineInit( KeyManager[] km, TrustManager[] tm, SecureRandom sr ) throws KeyManagementException
+        {
+            delegate.init( km, tm, sr );
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory()
+        {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory()
+        {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine()
+        {
+            counter.increment();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine( String host, int port )
+        {
+            counter.increment();
+            return delegate.createSSLEngine( host, port );
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext()
+        {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext()
+        {
+            return delegate.getClientSessionContext();
+        }
+
+        // the default implementations create a throw-away engine, which would skew the counter
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters()
+        {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters()
+        {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
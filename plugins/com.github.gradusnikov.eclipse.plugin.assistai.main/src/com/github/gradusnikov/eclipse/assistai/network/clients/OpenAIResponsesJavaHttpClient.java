@@ -1,12 +1,10 @@
 package com.github.gradusnikov.eclipse.assistai.network.clients;
 
-import static java.util.function.Predicate.not;
-
+import java.io.InputStream;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -14,45 +12,46 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.Flow;
-import java.util.concurrent.SubmissionPublisher;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
 import org.eclipse.jface.preference.IPreferenceStore;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.gradusnikov.eclipse.assistai.Activator;
 import com.github.gradusnikov.eclipse.assistai.chat.Attachment;
 import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
 import com.github.gradusnikov.eclipse.assistai.chat.Conversation;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpToolCatalog;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventBus;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
+import com.github.gradusnikov.eclipse.assistai.network.sse.OpenAIResponsesStreamDecoder;
+import com.github.gradusnikov.eclipse.assistai.network.sse.SseEventReader;
 import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
 import com.github.gradusnikov.eclipse.assistai.prompt.Prompts;
-import com.github.gradusnikov.eclipse.assistai.tools.ImageUtilities;
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
 import com.github.gradusnikov.eclipse.assistai.tools.JsonUtils;
 
-import io.modelcontextprotocol.client.McpSyncClient;
 import jakarta.inject.Inject;
 
 /**
  * A Java HTTP client for streaming requests to OpenAI Responses API. This is
  * the new recommended API for agentic applications with built-in tools,
  * stateful conversations, and improved reasoning capabilities.
+ * <p>
+ * The stable prefix of the requests is cached by OpenAI automatically; the
+ * request body is laid out in a fixed order and carries a
+ * {@link PromptCacheKey} to route all requests of a session to the same cache.
  */
 @Creatable
 public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
-	private final State NULL_STATE = new NullState();
-	private State state = NULL_STATE;
-	private SubmissionPublisher<Incoming> publisher;
+	private StreamEventBus publisher;
 
-	private Supplier<Boolean> isCancelled = () -> false;
+	private final StreamCancellation cancellation = new StreamCancellation();
 
 	@Inject
 	private ILog logger;
@@ -60,25 +59,39 @@ public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
 	@Inject
 	private LanguageModelClientConfiguration configuration;
 
+	@Inject
+	private LanguageModelHttpTransport transport;
+
 	@Inject
 	private McpClientRetistry mcpClientRegistry;
 
+	@Inject
+	private UsageMetrics usageMetrics;
+
+	@Inject
+	private RateLimiter rateLimiter;
+
 	private IPreferenceStore preferenceStore;
 
 	private final ObjectMapper objectMapper = new ObjectMapper();
 
 	public OpenAIResponsesJavaHttpClient() {
-		publisher = new SubmissionPublisher<>();
+		publisher = new StreamEventBus();
 		preferenceStore = Activator.getDefault().getPreferenceStore();
 	}
 
 	@Override
 	public void setCancelProvider(Supplier<Boolean> isCancelled) {
-		this.isCancelled = isCancelled;
+		cancellation.setProvider(isCancelled);
+	}
+
+	@Override
+	public void cancel() {
+		cancellation.cancel();
 	}
 
 	@Override
-	public synchronized void subscribe(Flow.Subscriber<Incoming> subscriber) {
+	public synchronized void subscribe(StreamEventSubscriber subscriber) {
 		publisher.subscribe(subscriber);
 	}
 
@@ -122,7 +135,7 @@ public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
 	/**
 	 * Creates the request body for the Responses API
 	 */
-	private String getRequestBody(Conversation prompt, ModelApiDescriptor model) {
+	private JsonRequestBody getRequestBody(Conversation prompt, ModelApiDescriptor model) {
 		var requestBody = new LinkedHashMap<String, Object>();
 
 		// Basic parameters
@@ -134,14 +147,17 @@ public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
 			requestBody.put("instructions", systemPrompt);
 		}
 
-		// Input - can be string or array of messages
+		// Input - an array of messages
 		var input = buildInput(prompt, model);
-		requestBody.put("input", input);
+		requestBody.put("input", new JsonRequestBody.Fragments(input));
 
-		// Tools - both built-in and MCP tools
-		var tools = buildTools(model);
-		if (!tools.isEmpty()) {
-			requestBody.put("tools", tools);
+		// MCP tools if function calling is enabled
+		var catalog = model.functionCalling() ? mcpClientRegistry.getToolCatalog() : null;
+		if (PromptCacheKey.isSupported(model)) {
+			requestBody.put("prompt_cache_key", PromptCacheKey.of(model, systemPrompt, catalog));
+		}
+		if (catalog != null && !catalog.isEmpty()) {
+			requestBody.put("tools", catalog.fragment("openai-responses", OpenAIResponsesJavaHttpClient::toResponsesTool));
 
 			// Tool choice configuration
 			requestBody.put("tool_choice", "auto");
@@ -163,22 +179,20 @@ public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
 		// each time a whole conversation context is sent
 		requestBody.put("store", false);
 
-		return JsonUtils.toJsonString(requestBody);
+		return JsonRequestBody.write(objectMapper, requestBody);
 	}
 
 	/**
-	 * Builds the input field - can be a string or array of messages
+	 * Builds the input field, the compact JSON of each message, serialized again
+	 * only if the message changed
 	 */
-	private List<Map<String, Object>> buildInput(Conversation prompt, ModelApiDescriptor model) {
-		var messages = prompt.messages();
-		if (messages.isEmpty()) {
-			return new ArrayList<Map<String, Object>>();
-		}
-
-		// Otherwise use array format
-		var inputMessages = messages.stream().map(message -> toInputMessage(message, model))
+	private List<byte[]> buildInput(Conversation prompt, ModelApiDescriptor model) {
+		// besides the message, the payload depends on the vision capability of the model only
+		var format = "openai-responses:" + model.vision();
+		return prompt.messages().stream()
+				.map(message -> message.toJson(format,
+						changed -> JsonRequestBody.toFragment(objectMapper, toInputMessage(changed, model))))
 				.collect(Collectors.toList());
-		return inputMessages;
 	}
 
 	/**
@@ -220,7 +234,7 @@ public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
 				: attachmentsString + "\n\n" + message.getContent();
 
 		// Handle vision models with images
-		if (model.vision() && message.getAttachments().stream().anyMatch(a -> a.getImageData() != null)) {
+		if (model.vision() && message.getAttachments().stream().anyMatch(a -> a.getImage() != null)) {
 			var contentArray = new ArrayList<>();
 
 			// Add text content
@@ -230,8 +244,8 @@ public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
 			contentArray.add(textObject);
 
 			// Add images
-			message.getAttachments().stream().map(Attachment::getImageData).filter(Objects::nonNull)
-					.map(ImageUtilities::toBase64Jpeg).map(this::toImageContent).forEachOrdered(contentArray::add);
+			message.getAttachments().stream().map(Attachment::getImage).filter(Objects::nonNull)
+					.map(this::toImageContent).forEachOrdered(contentArray::add);
 
 			return contentArray;
 		}
@@ -243,48 +257,33 @@ public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
 	/**
 	 * Creates image content object for Responses API
 	 */
-	private Map<String, Object> toImageContent(String base64Data) {
+	private Map<String, Object> toImageContent(EncodedImage image) {
 		var imageContent = new LinkedHashMap<String, Object>();
 		imageContent.put("type", "image_url");
 
 		var imageUrl = new LinkedHashMap<String, String>();
-		imageUrl.put("url", "data:image/jpeg;base64," + base64Data);
+		imageUrl.put("url", image.toDataUrl());
 		imageContent.put("image_url", imageUrl);
 
 		return imageContent;
 	}
 
 	/**
-	 * Builds tools array including built-in and MCP tools
-	 */
-	private List<Map<String, Object>> buildTools(ModelApiDescriptor model) {
-		var tools = new ArrayList<Map<String, Object>>();
-
-		// Add MCP tools if function calling is enabled
-		if (model.functionCalling()) {
-
-			for (var client : mcpClientRegistry.listEnabledveClients().entrySet()) {
-				tools.addAll(convertMcpToolsToResponses(client.getKey(), client.getValue()));
-			}
-		}
-
-		return tools;
-	}
-
-	/**
-	 * Converts MCP tools to Responses API format
+	 * Converts an MCP tool to Responses API format
 	 */
-	private List<Map<String, Object>> convertMcpToolsToResponses(String clientName, McpSyncClient client) {
-		var tools = new ArrayList<Map<String, Object>>();
-
-		for (var tool : client.listTools().tools()) {
-			tools.add(Map.of("type", "function", "name", clientName + "__" + tool.name(), "description",
-					Optional.ofNullable(tool.description()).orElse(""), "parameters",
-					Map.of("type", tool.inputSchema().type(), "properties", tool.inputSchema().properties()),
-					"required", Optional.ofNullable(tool.inputSchema().required()).orElse(List.of())));
-		}
-
-		return tools;
+	private static Map<String, Object> toResponsesTool(McpToolCatalog.Entry entry) {
+		var tool = entry.tool();
+		// ordered maps keep the serialized tools, a part of the cached prefix, identical across sessions
+		var parameters = new LinkedHashMap<String, Object>();
+		parameters.put("type", tool.inputSchema().type());
+		parameters.put("properties", tool.inputSchema().properties());
+		var function = new LinkedHashMap<String, Object>();
+		function.put("type", "function");
+		function.put("name", entry.qualifiedName());
+		function.put("description", Optional.ofNullable(tool.description()).orElse(""));
+		function.put("parameters", parameters);
+		function.put("required", Optional.ofNullable(tool.inputSchema().required()).orElse(List.of()));
+		return function;
 	}
 
 	@Override
@@ -292,199 +291,44 @@ public class OpenAIResponsesJavaHttpClient implements LanguageModelClient {
 		return () -> {
 			var model = configuration.getSelectedModel().orElseThrow();
 
-			HttpClient client = HttpClient.newBuilder()
-					.connectTimeout(Duration.ofSeconds(configuration.getConnectionTimoutSeconds())).build();
+			JsonRequestBody requestBody = getRequestBody(prompt, model);
 
-			String requestBody = getRequestBody(prompt, model);
-
-			HttpRequest request = HttpRequest.newBuilder().uri(URI.create(model.apiUrl()))
-					.timeout(Duration.ofSeconds(configuration.getRequestTimoutSeconds()))
-					.version(HttpClient.Version.HTTP_1_1).header("Authorization", "Bearer " + model.apiKey())
+			HttpRequest request = transport.newRequest(URI.create(model.apiUrl()))
+					.header("Authorization", "Bearer " + model.apiKey())
 					.header("Accept", "text/event-stream").header("Content-Type", "application/json")
-					.POST(HttpRequest.BodyPublishers.ofString(requestBody)).build();
+					.POST(requestBody.publisher()).build();
 
-			logger.info("Sending request to OpenAI Responses API.\n\n" + requestBody);
+			logger.info("Sending request to OpenAI Responses API: " + prompt.messages().size() + " messages, " + requestBody.length() + " bytes.");
 
 			try {
-				HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+				HttpResponse<InputStream> response = rateLimiter.send(request, cancellation);
 
 				if (response.statusCode() != 200) {
-					var errorBody = response.body().collect(Collectors.joining());
+					var errorBody = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
 					throw new Exception("HTTP " + response.statusCode() + ": " + errorBody);
 				}
-				// Process each line as it arrives
-				response.body().filter(not(String::isBlank)).takeWhile(line -> !isCancelled.get())
-						.filter(line -> line.startsWith("data:")).map(line -> line.substring(5).trim())
-						.takeWhile(line -> !"[DONE]".equals(line)).forEach(this::processResponseEvent);
+				// Process each event as it arrives
+				var listener = new PublishingStreamListener(publisher, logger, usageMetrics, usage -> rateLimiter.recordUsage(request, usage));
+				var decoder = new OpenAIResponsesStreamDecoder(listener);
+				try (var reader = new SseEventReader(response.body())) {
+					reader.read((event, data, length) -> !cancellation.isCancelled() && decoder.onEvent(event, data, length));
+				}
 
-				if (isCancelled.get()) {
+				if (cancellation.isCancelled()) {
 					publisher.closeExceptionally(new CancellationException());
+				} else {
+					listener.complete();
 				}
 			} catch (Exception e) {
-				logger.error(e.getMessage(), e);
-				publisher.closeExceptionally(e);
+				if (cancellation.isCancelled()) {
+					publisher.closeExceptionally(new CancellationException());
+				} else {
+					logger.error(e.getMessage(), e);
+					publisher.closeExceptionally(e);
+				}
 			} finally {
 				publisher.close();
 			}
 		};
 	}
-
-	/**
-	 * Processes individual response events from the stream
-	 */
-	private void processResponseEvent(String data) {
-		try {
-			var jsonNode = objectMapper.readTree(data);
-
-			String eventType = Optional.ofNullable(jsonNode.get("type")).map(JsonNode::asText).orElse("");
-
-			// this is a state machine
-			// State 1: processing response created
-			// State A.1: new output - when eventType is response.output_item.added
-			// State A.2: processing output - process item, eg. response.output_text.delta
-			// response.output_text, or function_call_arguments.delta
-			// function_call_arguments.done
-			// State A.3: finishing - when eventType is response.output_item.done
-			// State 2: response.completed
-
-//            System.out.println(  "processing event: " +  jsonNode.get( "type" ).asText() );
-
-			if ("response.output_item.added".equals(eventType)) {
-				// output type
-				String outputType = Optional.ofNullable(jsonNode.get("item")).map(node -> node.get("type"))
-						.map(JsonNode::asText).orElse("");
-				state = switch (outputType) {
-				case "function_call" -> new FunctionOutputState();
-				case "reasoning" -> new ReasoningState();
-				case "message" -> new TextOutputState();
-				default -> NULL_STATE;
-				};
-				state = state.begin(jsonNode.get("item"));
-			}
-			if ("response.output_item.done".equals(eventType)) {
-				state = state.finish(jsonNode.get("item"));
-			}
-
-			state = switch (eventType) {
-			// response.output_text.delta or response.output_text, or
-			// function_call_arguments.delta
-			case String s when s.contains(".delta") -> state.update(jsonNode);
-			default -> state;
-			};
-
-		} catch (Exception e) {
-			logger.error("Error processing response event: " + data, e);
-		}
-	}
-
-	private interface State {
-		public State begin(JsonNode node);
-
-		public State update(JsonNode node);
-
-		public State finish(JsonNode node);
-	}
-
-	private class TextOutputState implements State {
-		@Override
-		public State begin(JsonNode node) {
-			return this;
-		}
-
-		@Override
-		public State update(JsonNode node) {
-			Optional.ofNullable(node.get("delta")).map(JsonNode::asText).filter(not(String::isEmpty))
-					.ifPresent(text -> publisher.submit(new Incoming(Incoming.Type.CONTENT, text)));
-			return this;
-		}
-
-		@Override
-		public State finish(JsonNode node) {
-			return NULL_STATE;
-		}
-	}
-
-	private class FunctionOutputState implements State {
-		@Override
-		public State begin(JsonNode node) {
-			var name = node.get("name").asText();
-			var callId = node.get("call_id").asText();
-
-			var functionCallJsonHeaderFormat = """
-					"function_call": {
-					    "id": "%s",
-					    "name": "%s",
-					    "arguments": """;
-
-			// Start function call JSON
-			var functionCallJson = String.format(functionCallJsonHeaderFormat, callId, name);
-			publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL, functionCallJson));
-			return this;
-		}
-
-		@Override
-		public State update(JsonNode node) {
-			// Add arguments if present
-			if (node.has("delta")) {
-				var arguments = node.get("delta").asText();
-				publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL, arguments));
-			}
-			return this;
-		}
-
-		@Override
-		public State finish(JsonNode node) {
-			// Close the JSON structure
-			publisher.submit(new Incoming(Incoming.Type.FUNCTION_CALL, "\n"));
-			return NULL_STATE;
-		}
-
-	}
-
-	private class ReasoningState implements State {
-
-		@Override
-		public State begin(JsonNode node) {
-			// Reasoning output contains model's internal reasoning
-			// For now, we'll just log it, but you might want to expose it differently
-			if (node.has("summary") && node.get("summary").isArray()) {
-				var summary = node.get("summary");
-				for (var summaryItem : summary) {
-					if (summaryItem.has("text")) {
-						logger.info("Reasoning: " + summaryItem.get("text").asText());
-					}
-				}
-			}
-			return this;
-		}
-
-		@Override
-		public State update(JsonNode node) {
-			return this;
-		}
-
-		@Override
-		public State finish(JsonNode node) {
-			return NULL_STATE;
-		}
-
-	}
-
-	private class NullState implements State {
-
-		@Override
-		public State begin(JsonNode node) {
-			return this;
-		}
-
-		@Override
-		public State update(JsonNode node) {
-			return this;
-		}
-
-		@Override
-		public State finish(JsonNode node) {
-			return NULL_STATE;
-		}
-	}
 }
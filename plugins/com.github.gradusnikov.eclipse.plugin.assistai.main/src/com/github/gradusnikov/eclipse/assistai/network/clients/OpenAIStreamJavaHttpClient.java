@@ -1,24 +1,18 @@
 package com.github.gradusnikov.eclipse.assistai.network.clients;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.Flow;
-import java.util.concurrent.SubmissionPublisher;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -26,37 +20,39 @@ import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
 import org.eclipse.jface.preference.IPreferenceStore;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.gradusnikov.eclipse.assistai.Activator;
 import com.github.gradusnikov.eclipse.assistai.chat.Attachment;
 import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
 import com.github.gradusnikov.eclipse.assistai.chat.Conversation;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming.Type;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpToolCatalog;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventBus;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
+import com.github.gradusnikov.eclipse.assistai.network.sse.OpenAIChatStreamDecoder;
+import com.github.gradusnikov.eclipse.assistai.network.sse.SseEventReader;
 import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
 import com.github.gradusnikov.eclipse.assistai.prompt.Prompts;
-import com.github.gradusnikov.eclipse.assistai.tools.ImageUtilities;
-import com.github.gradusnikov.eclipse.assistai.tools.JsonUtils;
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
 
-import io.modelcontextprotocol.client.McpSyncClient;
-import io.modelcontextprotocol.spec.McpSchema;
 import jakarta.inject.Inject;
 
 /**
  * A Java HTTP client for streaming requests to OpenAI API. This class allows
  * subscribing to responses received from the OpenAI API and processes the chat
  * completions.
+ * <p>
+ * OpenAI caches the stable prefix of the requests (tools, system prompt and the
+ * earlier messages) automatically. The request body is laid out in a fixed
+ * order, so the prefix stays identical from one request to the next, and
+ * requests to OpenAI carry a {@link PromptCacheKey} and ask for the usage,
+ * which reports the cached tokens.
  */
 @Creatable
 public class OpenAIStreamJavaHttpClient implements LanguageModelClient {
-	private SubmissionPublisher<Incoming> publisher;
+	private StreamEventBus publisher;
 
-	private Supplier<Boolean> isCancelled = () -> false;
+	private final StreamCancellation cancellation = new StreamCancellation();
 
 	@Inject
 	private ILog logger;
@@ -64,125 +60,123 @@ public class OpenAIStreamJavaHttpClient implements LanguageModelClient {
 	@Inject
 	private LanguageModelClientConfiguration configuration;
 
+	@Inject
+	private LanguageModelHttpTransport transport;
+
 	@Inject
 	private McpClientRetistry mcpClientRegistry;
 
+	@Inject
+	private UsageMetrics usageMetrics;
+
+	@Inject
+	private RateLimiter rateLimiter;
+
 	private IPreferenceStore preferenceStore;
 
 	private final ObjectMapper objectMapper = new ObjectMapper();
 
 	public OpenAIStreamJavaHttpClient() {
 
-		publisher = new SubmissionPublisher<>();
+		publisher = new StreamEventBus();
 		preferenceStore = Activator.getDefault().getPreferenceStore();
 	}
 
 	@Override
 	public void setCancelProvider(Supplier<Boolean> isCancelled) {
-		this.isCancelled = isCancelled;
+		cancellation.setProvider(isCancelled);
+	}
+
+	@Override
+	public void cancel() {
+		cancellation.cancel();
 	}
 
 	/**
-	 * Subscribes a given Flow.Subscriber to receive String data from OpenAI API
+	 * Subscribes a given subscriber to receive the events of OpenAI API
 	 * responses.
 	 * 
-	 * @param subscriber the Flow.Subscriber to be subscribed to the publisher
+	 * @param subscriber the subscriber to be subscribed to the event bus
 	 */
 	@Override
-	public synchronized void subscribe(Flow.Subscriber<Incoming> subscriber) {
+	public synchronized void subscribe(StreamEventSubscriber subscriber) {
 		publisher.subscribe(subscriber);
 	}
 
 	/**
-	 * Returns the JSON request body as a String for the given prompt.
+	 * Returns the JSON request body for the given prompt.
 	 * 
 	 * @param prompt the user input to be included in the request body
-	 * @return the JSON request body as a String
+	 * @return the JSON request body
 	 */
-	private String getRequestBody(Conversation prompt, ModelApiDescriptor model) {
-		try {
+	private JsonRequestBody getRequestBody(Conversation prompt, ModelApiDescriptor model) {
+		var requestBody = new LinkedHashMap<String, Object>();
+		var messages = new ArrayList<byte[]>();
 
-			var requestBody = new LinkedHashMap<String, Object>();
-			var messages = new ArrayList<Map<String, Object>>();
-
-			var systemMessage = new LinkedHashMap<String, Object>();
-			systemMessage.put("role", "system");
+		var systemMessage = new LinkedHashMap<String, Object>();
+		systemMessage.put("role", "system");
 //			systemMessage.put("role", "user");
 
-			systemMessage.put("content", preferenceStore.getString(Prompts.SYSTEM.preferenceName()));
-			messages.add(systemMessage);
-
-			prompt.messages().stream().map(message -> toJsonPayload(message, model)).forEach(messages::add);
+		var systemPrompt = preferenceStore.getString(Prompts.SYSTEM.preferenceName());
+		systemMessage.put("content", systemPrompt);
+		messages.add(JsonRequestBody.toFragment(objectMapper, systemMessage));
 
-			requestBody.put("model", model.modelName());
-			ArrayNode tools;
-			Map.Entry client;
-			Iterator var9;
-			if (model.functionCalling()) {
-				tools = this.objectMapper.createArrayNode();
-				var9 = this.mcpClientRegistry.listEnabledveClients().entrySet().iterator();
+		prompt.messages().stream().map(message -> toJson(message, model)).forEach(messages::add);
 
-				while (var9.hasNext()) {
-					client = (Map.Entry) var9.next();
-					tools.addAll(clientToolsToJson((String) client.getKey(), (McpSyncClient) client.getValue()));
+		requestBody.put("model", model.modelName());
+		var catalog = model.functionCalling() || model.toolCalling() ? mcpClientRegistry.getToolCatalog() : null;
+		if (catalog != null) {
+			if (!catalog.isEmpty()) {
+				if (model.functionCalling()) {
+					requestBody.put("functions", catalog.fragment("openai-functions", OpenAIStreamJavaHttpClient::toFunction));
 				}
-
-				if (!tools.isEmpty()) {
-					requestBody.put("functions", tools);
-				}
-			}
-
-			if (model.toolCalling()) {
-				tools = this.objectMapper.createArrayNode();
-				var9 = this.mcpClientRegistry.listEnabledveClients().entrySet().iterator();
-
-				while (var9.hasNext()) {
-					client = (Map.Entry) var9.next();
-					Iterator var11 = clientToolsToJson((String) client.getKey(), (McpSyncClient) client.getValue())
-							.iterator();
-
-					while (var11.hasNext()) {
-						JsonNode fn = (JsonNode) var11.next();
-						ObjectNode toolWrapper = this.objectMapper.createObjectNode();
-						toolWrapper.put("type", "function");
-						toolWrapper.set("function", fn);
-						tools.add(toolWrapper);
-					}
-				}
-
-				if (!tools.isEmpty()) {
-					requestBody.put("tools", tools);
+				if (model.toolCalling()) {
+					requestBody.put("tools", catalog.fragment("openai-tools", OpenAIStreamJavaHttpClient::toTool));
 				}
 			}
-			requestBody.put("messages", messages);
-			// o1 and o1-mini models do not support temperature
-			if (!model.modelName().matches("^o\\d{1}(-.*)?")) {
-				requestBody.put("temperature", model.temperature() / 10);
-			}
-			requestBody.put("stream", true);
-
-			String jsonString;
-			jsonString = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestBody);
-			return jsonString;
-		} catch (JsonProcessingException e) {
-			throw new RuntimeException(e);
 		}
+		requestBody.put("messages", new JsonRequestBody.Fragments(messages));
+		// o1 and o1-mini models do not support temperature
+		if (!model.modelName().matches("^o\\d{1}(-.*)?")) {
+			requestBody.put("temperature", model.temperature() / 10);
+		}
+		requestBody.put("stream", true);
+		if (PromptCacheKey.isSupported(model)) {
+			requestBody.put("stream_options", Map.of("include_usage", true));
+			requestBody.put("prompt_cache_key", PromptCacheKey.of(model, systemPrompt, catalog));
+		}
+
+		return JsonRequestBody.write(objectMapper, requestBody);
 	}
 
-	private static ArrayNode clientToolsToJson(String clientName, McpSyncClient client) {
-		List<Map<String, Object>> toolObject = new ArrayList();
-		Iterator var4 = client.listTools().tools().iterator();
+	private static Map<String, Object> toFunction(McpToolCatalog.Entry entry) {
+		var tool = entry.tool();
+		// ordered maps keep the serialized tools, a part of the cached prefix, identical across sessions
+		var parameters = new LinkedHashMap<String, Object>();
+		parameters.put("type", tool.inputSchema().type());
+		parameters.put("properties", tool.inputSchema().properties());
+		parameters.put("required", Optional.ofNullable(tool.inputSchema().required()).orElse(List.of()));
+		var function = new LinkedHashMap<String, Object>();
+		function.put("name", entry.qualifiedName());
+		function.put("description", Optional.ofNullable(tool.description()).orElse(""));
+		function.put("parameters", parameters);
+		return function;
+	}
 
-		while (var4.hasNext()) {
-			McpSchema.Tool tool = (McpSchema.Tool) var4.next();
-			toolObject.add(Map.of("name", clientName + "__" + tool.name(), "description",
-					Optional.ofNullable(tool.description()).orElse(""), "parameters",
-					Map.of("type", tool.inputSchema().type(), "properties", tool.inputSchema().properties(), "required",
-							Optional.ofNullable(tool.inputSchema().required()).orElse(List.of()))));
-		}
+	private static Map<String, Object> toTool(McpToolCatalog.Entry entry) {
+		var tool = new LinkedHashMap<String, Object>();
+		tool.put("type", "function");
+		tool.put("function", toFunction(entry));
+		return tool;
+	}
 
-		ObjectMapper objectMapper = new ObjectMapper();
-		return (ArrayNode) objectMapper.valueToTree(toolObject);
+	/**
+	 * Returns the compact JSON of a message, serialized again only if the message changed.
+	 */
+	private byte[] toJson(ChatMessage message, ModelApiDescriptor model) {
+		// besides the message, the payload depends on these capabilities of the model only
+		var format = "openai-chat:" + model.functionCalling() + ":" + model.vision();
+		return message.toJson(format, changed -> JsonRequestBody.toFragment(objectMapper, toJsonPayload(changed, model)));
 	}
 
 	private LinkedHashMap<String, Object> toJsonPayload(ChatMessage message, ModelApiDescriptor model) {
@@ -222,8 +216,8 @@ public class OpenAIStreamJavaHttpClient implements LanguageModelClient {
 				textObject.put("type", "text");
 				textObject.put("text", textContent);
 				content.add(textObject);
-				message.getAttachments().stream().map(Attachment::getImageData).filter(Objects::nonNull)
-						.map(ImageUtilities::toBase64Jpeg).map(this::toImageUrl).forEachOrdered(content::add);
+				message.getAttachments().stream().map(Attachment::getImage).filter(Objects::nonNull)
+						.map(this::toImageUrl).forEachOrdered(content::add);
 				userMessage.put("content", content);
 			} else // legacy API - just put content as text
 			{
@@ -236,24 +230,24 @@ public class OpenAIStreamJavaHttpClient implements LanguageModelClient {
 	}
 
 	/**
-	 * Converts a base64-encoded image data string into a structured JSON object
-	 * suitable for API transmission.
+	 * Converts an image into a structured JSON object suitable for API
+	 * transmission.
 	 * <p>
 	 * This method constructs a JSON object that encapsulates the image data in a
 	 * format expected by the API. The 'image_url' key is an object containing a
 	 * 'url' key, which holds the base64-encoded image data prefixed with the
 	 * appropriate data URI scheme.
 	 *
-	 * @param data the base64-encoded string of the image data
+	 * @param image the compressed image
 	 * @return a LinkedHashMap where the key 'type' is set to 'image_url', and
 	 *         'image_url' is another LinkedHashMap containing the 'url' key with
 	 *         the full data URI of the image.
 	 */
-	private LinkedHashMap<String, Object> toImageUrl(String data) {
+	private LinkedHashMap<String, Object> toImageUrl(EncodedImage image) {
 		var imageObject = new LinkedHashMap<String, Object>();
 		imageObject.put("type", "image_url");
 		var urlObject = new LinkedHashMap<String, String>();
-		urlObject.put("url", "data:image/jpeg;base64," + data);
+		urlObject.put("url", image.toDataUrl());
 		imageObject.put("image_url", urlObject);
 		return imageObject;
 	}
@@ -274,123 +268,42 @@ public class OpenAIStreamJavaHttpClient implements LanguageModelClient {
 
 			var model = configuration.getSelectedModel().orElseThrow();
 
-			HttpClient client = HttpClient.newBuilder()
-					.connectTimeout(Duration.ofSeconds(configuration.getConnectionTimoutSeconds())).build();
-
-			String requestBody = getRequestBody(prompt, model);
-			HttpRequest request = HttpRequest.newBuilder().uri(URI.create(model.apiUrl()))
-					.timeout(Duration.ofSeconds(configuration.getRequestTimoutSeconds()))
-					.version(HttpClient.Version.HTTP_1_1).header("Authorization", "Bearer " + model.apiKey())
+			JsonRequestBody requestBody = getRequestBody(prompt, model);
+			HttpRequest request = transport.newRequest(URI.create(model.apiUrl()))
+					.header("Authorization", "Bearer " + model.apiKey())
 					.header("Accept", "text/event-stream").header("Content-Type", "application/json")
-					.POST(HttpRequest.BodyPublishers.ofString(requestBody)).build();
+					.POST(requestBody.publisher()).build();
 
-			logger.info("Sending request to ChatGPT.\n\n" + requestBody);
+			logger.info("Sending request to ChatGPT: " + prompt.messages().size() + " messages, " + requestBody.length() + " bytes.");
 
 			try {
-				HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+				HttpResponse<InputStream> response = rateLimiter.send(request, cancellation);
 
 				if (response.statusCode() != 200) {
-					logger.error("Request failed with status code: " + response.statusCode() + " and response body: "
-							+ new String(response.body().readAllBytes()));
+					throw new IOException("Request failed with status code: " + response.statusCode() + " and response body: "
+							+ new String(response.body().readAllBytes(), StandardCharsets.UTF_8));
 				}
-				try (var inputStream = response.body();
-						var inputStreamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-						var reader = new BufferedReader(inputStreamReader)) {
-					String line;
-					StringBuilder functionCalls = new StringBuilder("function_call");
-					while ((line = reader.readLine()) != null && !isCancelled.get()) {
-						if (line.startsWith("data:")) {
-							var data = line.substring(5).trim();
-							if ("[DONE]".equals(data)) {
-								this.publisher.submit(new Incoming(Type.FUNCTION_CALL, functionCalls.toString()));
-								break;
-							} else {
-								var mapper = new ObjectMapper();
-								var choice = mapper.readTree(data).get("choices").get(0);
-								var node = choice.get("delta");
-								System.out.println("\n\nAAAAAAAAAAAAAAAA：" + JsonUtils.toJsonString(node));
-								if (node.has("content")) {
-									var content = node.get("content").asText();
-									if (!"null".equals(content)) {
-										publisher.submit(new Incoming(Incoming.Type.CONTENT, content));
-									}
-								}
-								handleFunctionCalls(node, functionCalls);
-							}
-						}
-					}
+				var listener = new PublishingStreamListener(publisher, logger, usageMetrics, usage -> rateLimiter.recordUsage(request, usage));
+				var decoder = new OpenAIChatStreamDecoder(listener);
+				try (var reader = new SseEventReader(response.body())) {
+					reader.read((event, data, length) -> !cancellation.isCancelled() && decoder.onEvent(event, data, length));
 				}
-				if (isCancelled.get()) {
+				if (cancellation.isCancelled()) {
 					publisher.closeExceptionally(new CancellationException());
+				} else {
+					listener.complete();
 				}
 			} catch (Exception e) {
-				logger.error(e.getMessage(), e);
-				publisher.closeExceptionally(e);
+				if (cancellation.isCancelled()) {
+					publisher.closeExceptionally(new CancellationException());
+				} else {
+					logger.error(e.getMessage(), e);
+					publisher.closeExceptionally(e);
+				}
 			} finally {
 				publisher.close();
 			}
 		};
 	}
 
-	private void handleFunctionCalls(JsonNode node, StringBuilder functionsJsonStr) {
-		if (node.has("function_call") || node.has("tool_calls")) {
-			System.out.println("\n\nGGGGGGGGGGGGG：" + JsonUtils.toJsonString(node));
-		}
-		JsonNode functionCall = node.get("function_call");
-		if (functionCall != null) {
-			if (functionCall.has("name")) {
-				if (functionsJsonStr.length() == 13) {
-					functionsJsonStr.append(String.format(
-							" {\"name\": \"%s\",\"id\": \"%s\",\"arguments\" :",
-							functionCall.get("name").asText(), ""));
-				} else {
-					functionsJsonStr.append(String.format(
-							"},{\"name\": \"%s\",\"id\": \"%s\",\"arguments\" :",
-							functionCall.get("name").asText(), ""));
-				}
-
-//				this.publisher.submit(new Incoming(Type.FUNCTION_CALL,
-//						String.format("\"function_call\" : { \n \"name\": \"%s\",\n \"arguments\" :",
-//								functionCall.get("name").asText())));
-			}
-
-			if (functionCall.has("arguments")) {
-				functionsJsonStr
-				.append(functionCall.get("arguments").asText());
-//				this.publisher.submit(new Incoming(Type.FUNCTION_CALL, functionCall.get("arguments").asText()));
-			}
-		}
-
-		JsonNode toolCalls = node.get("tool_calls");
-		if (toolCalls != null && toolCalls.isArray()) {
-			Iterator var5 = toolCalls.iterator();
-
-			while (var5.hasNext()) {
-				JsonNode call = (JsonNode) var5.next();
-				JsonNode func = call.get("function");
-				if (func != null) {
-					if (func.has("name")) {
-
-						if (functionsJsonStr.length() == 13) {
-							functionsJsonStr.append(String.format(" {\"name\": \"%s\",\"id\": \"%s\",\"arguments\" :",
-									func.get("name").asText(), call.get("id").asText()));
-						} else {
-							functionsJsonStr.append(String.format(",{\"name\": \"%s\",\"id\": \"%s\",\"arguments\" :",
-									func.get("name").asText(), call.get("id").asText()));
-						}
-
-//						this.publisher.submit(new Incoming(Type.FUNCTION_CALL,
-//								String.format("\"function_call\" : { \n \"name\": \"%s\",\n \"arguments\" :",
-//										func.get("name").asText())));
-					}
-
-					if (func.has("arguments")) {
-						functionsJsonStr.append(func.get("arguments").asText()).append("}");
-
-					}
-				}
-			}
-		}
-
-	}
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.McpToolCatalog;
+import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
+
+/**
+ * The {@code prompt_cache_key} of the OpenAI APIs. OpenAI caches prompt
+ * prefixes automatically; requests with the same key are routed to the same
+ * cache, so the key is derived from what all requests of a session share: the
+ * model, the system prompt and the tools.
+ */
+final class PromptCacheKey
+{
+    private PromptCacheKey()
+    {
+    }
+
+    /**
+     * Other OpenAI compatible servers may reject the parameter, so it is only
+     * sent to OpenAI itself.
+     */
+    static boolean isSupported( ModelApiDescriptor model )
+    {
+        return Objects.toString( model.apiUrl(), "" ).contains( "api.openai.com" );
+    }
+
+    static String of( ModelApiDescriptor model, String systemPrompt, McpToolCatalog catalog )
+    {
+        try
+        {
+            var digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( Objects.toString( model.modelName(), "" ).getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) 0 );
+            digest.update( Objects.toString( systemPrompt, "" ).getBytes( StandardCharsets.UTF_8 ) );
+            if ( catalog != null )
+            {
+                for ( McpToolCatalog.Entry entry : catalog.getEntries() )
+                {
+                    digest.update( (byte) 0 );
+                    digest.update( entry.qualifiedName().getBytes( StandardCharsets.UTF_8 ) );
+                }
+            }
+            return "assistai-" + HexFormat.of().formatHex( digest.digest(), 0, 12 );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
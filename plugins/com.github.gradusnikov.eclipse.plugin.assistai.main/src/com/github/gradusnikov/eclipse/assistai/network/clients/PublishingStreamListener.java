@@ -0,0 +1,108 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.ILog;
+
+import com.github.gradusnikov.eclipse.assistai.chat.FunctionCall;
+import com.github.gradusnikov.eclipse.assistai.chat.ToolCallAccumulator;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEvent;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventBus;
+import com.github.gradusnikov.eclipse.assistai.network.sse.StreamListener;
+import com.github.gradusnikov.eclipse.assistai.network.sse.TokenUsage;
+
+/**
+ * Bridges the decoded stream events to the {@link StreamEventBus} of a
+ * client. Content and tool call fragments are published as they arrive; tool
+ * calls are also assembled by a {@link ToolCallAccumulator} and every call is
+ * published as a {@link StreamEvent.ToolCall} as soon as its arguments are
+ * complete, so the tool can run while the model is still streaming. The last
+ * reported token usage is published on completion, recorded in the
+ * {@link UsageMetrics} and passed on to the usage listener, e.g. to count it
+ * against the {@link RateLimiter} bucket of the request. Closing the bus is
+ * left to the client.
+ */
+class PublishingStreamListener implements StreamListener
+{
+    private final StreamEventBus publisher;
+    private final ILog logger;
+    private final UsageMetrics usageMetrics;
+    private final Consumer<TokenUsage> usageListener;
+    private final ToolCallAccumulator toolCalls;
+    private TokenUsage usage;
+
+    PublishingStreamListener( StreamEventBus publisher, ILog logger, UsageMetrics usageMetrics,
+                              Consumer<TokenUsage> usageListener )
+    {
+        this.publisher = publisher;
+        this.logger = logger;
+        this.usageMetrics = usageMetrics;
+        this.usageListener = usageListener;
+        this.toolCalls = new ToolCallAccumulator( this::publishFunctionCall );
+    }
+
+    @Override
+    public void onContent( String text )
+    {
+        publisher.submit( new StreamEvent.ContentDelta( text ) );
+    }
+
+    @Override
+    public void onToolCallStart( int index, String id, String name )
+    {
+        publisher.submit( new StreamEvent.ToolCallDelta( index, id, name, "" ) );
+        toolCalls.start( index, id, name );
+    }
+
+    @Override
+    public void onToolCallArguments( int index, String fragment )
+    {
+        publisher.submit( new StreamEvent.ToolCallDelta( index, null, null, fragment ) );
+        toolCalls.append( index, fragment );
+    }
+
+    @Override
+    public void onToolCallEnd( int index )
+    {
+        toolCalls.end( index );
+    }
+
+    @Override
+    public void onUsage( TokenUsage usage )
+    {
+        this.usage = usage;
+    }
+
+    @Override
+    public void onError( String message )
+    {
+        logger.error( "Model API reported an error: " + message );
+    }
+
+    @Override
+    public void onMalformedEvent( String data, Exception e )
+    {
+        logger.error( "Error parsing response event: " + data, e );
+    }
+
+    /**
+     * Publishes the tool calls whose end could not be detected while
+     * streaming, if any, and records and publishes the token usage.
+     */
+    void complete()
+    {
+        toolCalls.finish();
+        if ( usage != null )
+        {
+            usageMetrics.record( usage );
+            usageListener.accept( usage );
+            publisher.submit( new StreamEvent.Usage( usage ) );
+            usage = null;
+        }
+    }
+
+    private void publishFunctionCall( FunctionCall functionCall )
+    {
+        publisher.submit( new StreamEvent.ToolCall( functionCall ) );
+    }
+}
@@ -0,0 +1,592 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.net.ssl.SSLSession;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.e4.core.di.annotations.Creatable;
+
+import com.github.gradusnikov.eclipse.assistai.network.clients.LanguageModelHttpTransport.Endpoint;
+import com.github.gradusnikov.eclipse.assistai.network.sse.TokenUsage;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Sends the streaming requests of all {@link LanguageModelClient}s, keeping
+ * them within the rate limits of the providers.
+ * <p>
+ * A bucket is kept per endpoint and API key. It is fed by the rate limit
+ * headers of every response ({@code x-ratelimit-*},
+ * {@code anthropic-ratelimit-*}, {@code retry-after}) and by the token usage
+ * reported at the end of a stream. A request waits in the queue of its bucket
+ * while the provider reported no remaining requests or tokens, or asked to
+ * retry later; a 429 therefore holds back every agent loop using the same key,
+ * not just the one that received it.
+ * <p>
+ * Rate limited responses, server errors and connection failures are retried
+ * with jittered exponential backoff. Retries only happen before the first byte
+ * of the response body has been received, so the stream handed to a client is
+ * never replayed.
+ * <p>
+ * Requests are sent asynchronously under a {@link StreamCancellation}, so a
+ * cancelled request releases its connection and thread at once, whether it is
+ * queued, waiting for the response or already streaming.
+ */
+@Creatable
+@Singleton
+public class RateLimiter
+{
+    /**
+     * How often and how long requests are retried.
+     *
+     * @param maxAttempts the number of attempts, including the first one
+     * @param baseDelay the backoff before the first retry
+     * @param maxDelay the upper bound of a single backoff
+     */
+    public record Policy( int maxAttempts, Duration baseDelay, Duration maxDelay )
+    {
+        public static final Policy DEFAULT = new Policy( 4, Duration.ofSeconds( 1 ), Duration.ofSeconds( 60 ) );
+    }
+
+    /**
+     * Snapshot of the limiter counters.
+     *
+     * @param requests number of requests sent, without retries
+     * @param queuedRequests number of requests that had to wait for their bucket
+     * @param queueMillis total time requests waited for their bucket
+     * @param maxQueueMillis longest time a request waited for its bucket
+     * @param retries number of retried attempts
+     * @param rateLimitedResponses number of 429 responses
+     * @param failedRequests number of requests that failed after the last attempt
+     */
+    public record Metrics( long requests, long queuedRequests, long queueMillis, long maxQueueMillis, long retries,
+                           long rateLimitedResponses, long failedRequests ) {}
+
+    /**
+     * Key of a bucket; the API key is kept as a digest only.
+     */
+    record Key( Endpoint endpoint, String credential ) {}
+
+    /** Statuses worth another attempt; 529 is Anthropic's "overloaded" */
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of( 408, 429, 500, 502, 503, 504, 529 );
+
+    /** Headers carrying the API key, depending on the provider */
+    private static final String[] CREDENTIAL_HEADERS = { "Authorization", "x-api-key", "x-goog-api-key", "api-key" };
+
+    /** Upper bound of a wait announced by a provider, guarding against bogus headers */
+    private static final Duration MAX_ANNOUNCED_WAIT = Duration.ofMinutes( 5 );
+
+    /** How often a queued request checks its bucket again */
+    private static final long BUCKET_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+    private static final Pattern DURATION = Pattern.compile( "(\\d+(?:\\.\\d+)?)(ms|h|m|s)" );
+
+    @Inject
+    private ILog logger;
+
+    @Inject
+    private LanguageModelHttpTransport transport;
+
+    private volatile Policy policy = Policy.DEFAULT;
+
+    private final Map<Key, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder  requests             = new LongAdder();
+    private final LongAdder  queuedRequests       = new LongAdder();
+    private final LongAdder  queueNanos           = new LongAdder();
+    private final AtomicLong maxQueueNanos        = new AtomicLong();
+    private final LongAdder  retries              = new LongAdder();
+    private final LongAdder  rateLimitedResponses = new LongAdder();
+    private final LongAdder  failedRequests       = new LongAdder();
+
+    public void setPolicy( Policy policy )
+    {
+        this.policy = policy;
+    }
+
+    /**
+     * Sends a streaming request once its bucket allows it, retrying rate
+     * limited, failed and interrupted attempts until the first byte of a
+     * successful response arrives.
+     *
+     * @param request
+     *            the request; its body publisher must support being subscribed again
+     * @param cancellation
+     *            the cancellation of the request; the body of the returned
+     *            response is registered with it
+     * @return the successful response, or the error response of the last attempt
+     * @throws CancellationException
+     *             if the request was cancelled
+     */
+    public HttpResponse<InputStream> send( HttpRequest request, StreamCancellation cancellation ) throws IOException, InterruptedException
+    {
+        requests.increment();
+        Bucket bucket = bucketFor( request );
+        Policy current = policy;
+        for ( int attempt = 1;; attempt++ )
+        {
+            awaitBucket( bucket, cancellation );
+            boolean lastAttempt = attempt >= current.maxAttempts();
+            HttpResponse<InputStream> response;
+            try
+            {
+                response = cancellation.await( transport.sendAsync( request, HttpResponse.BodyHandlers.ofInputStream() ) );
+                cancellation.register( response.body() );
+                bucket.update( response.headers(), System.nanoTime() );
+                if ( response.statusCode() / 100 == 2 )
+                {
+                    return firstByteReceived( response, cancellation );
+                }
+            }
+            catch ( IOException e )
+            {
+                if ( cancellation.isCancelled() )
+                {
+                    throw new CancellationException( "Request cancelled" );
+                }
+                if ( lastAttempt || !isRetryable( e ) )
+                {
+                    failedRequests.increment();
+                    throw e;
+                }
+                Duration delay = backoff( current, attempt );
+                logger.warn( String.format( "Request to %s failed (%s), retry %d of %d in %d ms", request.uri().getHost(), e,
+                                            attempt, current.maxAttempts() - 1, delay.toMillis() ) );
+                retries.increment();
+                cancellation.sleep( delay.toNanos() );
+                continue;
+            }
+
+            int status = response.statusCode();
+            if ( status == 429 )
+            {
+                rateLimitedResponses.increment();
+            }
+            if ( lastAttempt || !RETRYABLE_STATUSES.contains( status ) )
+            {
+                failedRequests.increment();
+                return response;
+            }
+            String error = readError( response );
+            Optional<Duration> retryAfter = retryAfter( response.headers(), Instant.now() );
+            Duration delay = retryAfter.isPresent() ? withJitter( retryAfter.get() ) : backoff( current, attempt );
+            logger.warn( String.format( "Request to %s failed with HTTP %d, retry %d of %d in %d ms: %s", request.uri().getHost(),
+                                        status, attempt, current.maxAttempts() - 1, delay.toMillis(), error ) );
+            retries.increment();
+            if ( status == 429 )
+            {
+                // the limit applies to the key, so hold back all requests using it
+                bucket.blockUntil( System.nanoTime() + delay.toNanos() );
+            }
+            else
+            {
+                cancellation.sleep( delay.toNanos() );
+            }
+        }
+    }
+
+    /**
+     * Counts the tokens a finished response generated against the bucket of
+     * its request. The input tokens are already reflected in the remaining
+     * tokens reported by the response headers.
+     */
+    public void recordUsage( HttpRequest request, TokenUsage usage )
+    {
+        bucketFor( request ).consume( usage.outputTokens() );
+    }
+
+    public Metrics getMetrics()
+    {
+        return new Metrics( requests.sum(),
+                            queuedRequests.sum(),
+                            TimeUnit.NANOSECONDS.toMillis( queueNanos.sum() ),
+                            TimeUnit.NANOSECONDS.toMillis( maxQueueNanos.get() ),
+                            retries.sum(),
+                            rateLimitedResponses.sum(),
+                            failedRequests.sum() );
+    }
+
+    private Bucket bucketFor( HttpRequest request )
+    {
+        return buckets.computeIfAbsent( keyOf( request ), key -> new Bucket() );
+    }
+
+    static Key keyOf( HttpRequest request )
+    {
+        String credential = "";
+        for ( String header : CREDENTIAL_HEADERS )
+        {
+            Optional<String> value = request.headers().firstValue( header );
+            if ( value.isPresent() )
+            {
+                credential = digest( value.get() );
+                break;
+            }
+        }
+        return new Key( Endpoint.of( request.uri() ), credential );
+    }
+
+    private void awaitBucket( Bucket bucket, StreamCancellation cancellation ) throws InterruptedException
+    {
+        long queuedAt = System.nanoTime();
+        long wait;
+        while ( ( wait = bucket.reserve( System.nanoTime() ) ) > 0 )
+        {
+            cancellation.sleep( Math.min( wait, BUCKET_POLL_NANOS ) );
+        }
+        long queued = System.nanoTime() - queuedAt;
+        if ( queued >= TimeUnit.MILLISECONDS.toNanos( 1 ) )
+        {
+            queuedRequests.increment();
+            queueNanos.add( queued );
+            maxQueueNanos.accumulateAndGet( queued, Math::max );
+        }
+    }
+
+    /**
+     * Reads the first byte of a successful response, so that a connection
+     * dropped before the stream started can still be retried.
+     */
+    private static HttpResponse<InputStream> firstByteReceived( HttpResponse<InputStream> response, StreamCancellation cancellation )
+            throws IOException
+    {
+        var body = new PushbackInputStream( response.body(), 1 );
+        try
+        {
+            int first = body.read();
+            if ( first >= 0 )
+            {
+                body.unread( first );
+            }
+        }
+        catch ( IOException e )
+        {
+            body.close();
+            if ( cancellation.isCancelled() )
+            {
+                throw new CancellationException( "Request cancelled" );
+            }
+            throw e;
+        }
+        return new PeekedResponse( response, body );
+    }
+
+    private static boolean isRetryable( IOException e )
+    {
+        // a request timeout means the model did not answer in time; waiting as long again rarely helps
+        return !( e instanceof HttpTimeoutException ) || e instanceof HttpConnectTimeoutException;
+    }
+
+    private static String readError( HttpResponse<InputStream> response )
+    {
+        try ( InputStream body = response.body() )
+        {
+            return new String( body.readNBytes( 1024 ), StandardCharsets.UTF_8 );
+        }
+        catch ( IOException e )
+        {
+            return e.toString();
+        }
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the delay is fixed,
+     * the other half random, so that concurrent loops spread out.
+     */
+    static Duration backoff( Policy policy, int attempt )
+    {
+        long ceiling = Math.min( policy.maxDelay().toMillis(), policy.baseDelay().toMillis() << Math.min( attempt - 1, 20 ) );
+        long half = ceiling / 2;
+        return Duration.ofMillis( half + ThreadLocalRandom.current().nextLong( ceiling - half + 1 ) );
+    }
+
+    private static Duration withJitter( Duration delay )
+    {
+        return delay.plusMillis( ThreadLocalRandom.current().nextLong( delay.toMillis() / 10 + 1 ) );
+    }
+
+    /**
+     * Parses {@code retry-after-ms} and {@code retry-after} (seconds or an
+     * HTTP date).
+     */
+    static Optional<Duration> retryAfter( HttpHeaders headers, Instant now )
+    {
+        Optional<String> millis = headers.firstValue( "retry-after-ms" );
+        if ( millis.isPresent() )
+        {
+            try
+            {
+                return Optional.of( clamp( Duration.ofMillis( (long) Double.parseDouble( millis.get().trim() ) ) ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                // fall back to retry-after
+            }
+        }
+        return headers.firstValue( "retry-after" ).flatMap( value -> {
+            try
+            {
+                return Optional.of( clamp( Duration.ofMillis( (long) ( Double.parseDouble( value.trim() ) * 1000 ) ) ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                try
+                {
+                    Instant at = ZonedDateTime.parse( value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME ).toInstant();
+                    return Optional.of( clamp( Duration.between( now, at ) ) );
+                }
+                catch ( DateTimeParseException e1 )
+                {
+                    return Optional.empty();
+                }
+            }
+        } );
+    }
+
+    /**
+     * Parses a rate limit reset: an RFC 3339 timestamp (Anthropic), a duration
+     * such as {@code 6m0s} or {@code 20ms} (OpenAI), or plain seconds.
+     */
+    static Optional<Duration> parseReset( String value, Instant now )
+    {
+        String text = value.trim();
+        try
+        {
+            return Optional.of( clamp( Duration.between( now, Instant.parse( text ) ) ) );
+        }
+        catch ( DateTimeParseException e )
+        {
+            // not a timestamp
+        }
+        try
+        {
+            return Optional.of( clamp( Duration.ofMillis( (long) ( Double.parseDouble( text ) * 1000 ) ) ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            // not plain seconds
+        }
+        Matcher matcher = DURATION.matcher( text );
+        double millis = 0;
+        int end = 0;
+        while ( matcher.find() && matcher.start() == end )
+        {
+            double amount = Double.parseDouble( matcher.group( 1 ) );
+            millis += switch ( matcher.group( 2 ) )
+            {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1_000;
+                default -> amount;
+            };
+            end = matcher.end();
+        }
+        return end > 0 && end == text.length() ? Optional.of( clamp( Duration.ofMillis( (long) millis ) ) ) : Optional.empty();
+    }
+
+    private static Duration clamp( Duration duration )
+    {
+        return duration.isNegative() ? Duration.ZERO : duration.compareTo( MAX_ANNOUNCED_WAIT ) > 0 ? MAX_ANNOUNCED_WAIT : duration;
+    }
+
+    private static String digest( String value )
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance( "SHA-256" ).digest( value.getBytes( StandardCharsets.UTF_8 ) );
+            return HexFormat.of().formatHex( hash, 0, 8 );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            return Integer.toHexString( value.hashCode() );
+        }
+    }
+
+    /**
+     * The known limits of an endpoint and API key. Unknown limits are
+     * unlimited; a limit that reached zero refills when its reset time passes.
+     */
+    static final class Bucket
+    {
+        private static final long UNLIMITED = Long.MAX_VALUE;
+
+        private long blockedUntil;
+
+        private long remainingRequests = UNLIMITED;
+
+        private long requestsResetAt;
+
+        private long remainingTokens   = UNLIMITED;
+
+        private long tokensResetAt;
+
+        /**
+         * Takes a request from the bucket.
+         *
+         * @return {@code 0} if the request may be sent now, otherwise the
+         *         nanoseconds to wait before asking again
+         */
+        synchronized long reserve( long now )
+        {
+            long readyAt = blockedUntil;
+            if ( remainingRequests <= 0 )
+            {
+                readyAt = Math.max( readyAt, requestsResetAt );
+            }
+            if ( remainingTokens <= 0 )
+            {
+                readyAt = Math.max( readyAt, tokensResetAt );
+            }
+            if ( readyAt - now > 0 )
+            {
+                return readyAt - now;
+            }
+            if ( remainingRequests <= 0 )
+            {
+                remainingRequests = UNLIMITED;
+            }
+            if ( remainingTokens <= 0 )
+            {
+                remainingTokens = UNLIMITED;
+            }
+            if ( remainingRequests != UNLIMITED )
+            {
+                remainingRequests--;
+            }
+            return 0;
+        }
+
+        synchronized void blockUntil( long until )
+        {
+            if ( until - blockedUntil > 0 )
+            {
+                blockedUntil = until;
+            }
+        }
+
+        synchronized void consume( long tokens )
+        {
+            if ( remainingTokens != UNLIMITED )
+            {
+                remainingTokens -= tokens;
+            }
+        }
+
+        synchronized void update( HttpHeaders headers, long now )
+        {
+            Instant instant = Instant.now();
+            var requests = count( headers, "x-ratelimit-remaining-requests", "anthropic-ratelimit-requests-remaining" );
+            var requestsReset = header( headers, "x-ratelimit-reset-requests", "anthropic-ratelimit-requests-reset" )
+                    .flatMap( value -> parseReset( value, instant ) );
+            if ( requests.isPresent() && requestsReset.isPresent() )
+            {
+                remainingRequests = requests.get();
+                requestsResetAt = now + requestsReset.get().toNanos();
+            }
+            var tokens = count( headers, "x-ratelimit-remaining-tokens", "anthropic-ratelimit-tokens-remaining" );
+            var tokensReset = header( headers, "x-ratelimit-reset-tokens", "anthropic-ratelimit-tokens-reset" )
+                    .flatMap( value -> parseReset( value, instant ) );
+            if ( tokens.isPresent() && tokensReset.isPresent() )
+            {
+                remainingTokens = tokens.get();
+                tokensResetAt = now + tokensReset.get().toNanos();
+            }
+        }
+
+        private static Optional<Long> count( HttpHeaders headers, String first, String second )
+        {
+            try
+            {
+                return header( headers, first, second ).map( value -> Long.parseLong( value.trim() ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                return Optional.empty();
+            }
+        }
+
+        private static Optional<String> header( HttpHeaders headers, String first, String second )
+        {
+            return headers.firstValue( first ).or( () -> headers.firstValue( second ) );
+        }
+    }
+
+    /**
+     * A response whose body was read ahead by one byte.
+     */
+    private record PeekedResponse( HttpResponse<InputStream> response, InputStream body ) implements HttpResponse<InputStream>
+    {
+        @Override
+        public int statusCode()
+        {
+            return response.statusCode();
+        }
+
+        @Override
+        public HttpRequest request()
+        {
+            return response.request();
+        }
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse()
+        {
+            return response.previousResponse();
+        }
+
+        @Override
+        public HttpHeaders headers()
+        {
+            return response.headers();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession()
+        {
+            return response.sslSession();
+        }
+
+        @Override
+        public URI uri()
+        {
+            return response.uri();
+        }
+
+        @Override
+        public HttpClient.Version version()
+        {
+            return response.version();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Cancellation of the streaming request of a {@link LanguageModelClient}.
+ * <p>
+ * {@link #cancel()} tears the request down right away: the pending HTTP
+ * exchange is cancelled, which aborts the connection, and the response body
+ * is closed, which wakes up the thread reading the stream. Waiting for a rate
+ * limit or a retry ends as well. The optional cancel provider, e.g. the
+ * progress monitor of a job, is polled as a fallback.
+ */
+public final class StreamCancellation
+{
+    /** How often the cancel provider is polled while waiting */
+    private static final long POLL_MILLIS = 100;
+
+    private volatile Supplier<Boolean> provider = () -> false;
+
+    /** guarded by this */
+    private boolean cancelled;
+
+    /** guarded by this */
+    private CompletableFuture<?> exchange;
+
+    /** guarded by this */
+    private InputStream body;
+
+    public void setProvider( Supplier<Boolean> provider )
+    {
+        this.provider = provider;
+    }
+
+    /**
+     * Cancels the request, aborting its exchange and closing its response
+     * body. Does nothing if the request was already cancelled.
+     */
+    public void cancel()
+    {
+        CompletableFuture<?> pendingExchange;
+        InputStream openBody;
+        synchronized ( this )
+        {
+            if ( cancelled )
+            {
+                return;
+            }
+            cancelled = true;
+            pendingExchange = exchange;
+            openBody = body;
+            exchange = null;
+            body = null;
+            notifyAll();
+        }
+        if ( pendingExchange != null )
+        {
+            pendingExchange.cancel( true );
+        }
+        closeQuietly( openBody );
+    }
+
+    /**
+     * @return whether the request was cancelled, directly or through the
+     *         cancel provider
+     */
+    public boolean isCancelled()
+    {
+        synchronized ( this )
+        {
+            if ( cancelled )
+            {
+                return true;
+            }
+        }
+        if ( Boolean.TRUE.equals( provider.get() ) )
+        {
+            cancel();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the response of an exchange, cancelling the exchange if the
+     * request is cancelled meanwhile.
+     *
+     * @throws IOException
+     *             if the exchange failed
+     * @throws CancellationException
+     *             if the request was cancelled
+     */
+    public <T> T await( CompletableFuture<T> pendingExchange ) throws IOException, InterruptedException
+    {
+        synchronized ( this )
+        {
+            exchange = pendingExchange;
+        }
+        try
+        {
+            while ( true )
+            {
+                throwIfCancelled();
+                try
+                {
+                    return pendingExchange.get( POLL_MILLIS, TimeUnit.MILLISECONDS );
+                }
+                catch ( TimeoutException e )
+                {
+                    // poll the provider again
+                }
+                catch ( CancellationException e )
+                {
+                    throw cancellationException();
+                }
+                catch ( ExecutionException e )
+                {
+                    throwIfCancelled();
+                    if ( e.getCause() instanceof IOException ioException )
+                    {
+                        throw ioException;
+                    }
+                    throw new IOException( e.getCause() );
+                }
+                catch ( InterruptedException e )
+                {
+                    pendingExchange.cancel( true );
+                    throw e;
+                }
+            }
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                exchange = null;
+            }
+        }
+    }
+
+    /**
+     * Registers the body of the response being read, to be closed on
+     * cancellation.
+     *
+     * @return the body
+     * @throws CancellationException
+     *             if the request was already cancelled; the body is closed
+     */
+    public InputStream register( InputStream responseBody )
+    {
+        synchronized ( this )
+        {
+            if ( !cancelled )
+            {
+                body = responseBody;
+                return responseBody;
+            }
+        }
+        closeQuietly( responseBody );
+        throw cancellationException();
+    }
+
+    /**
+     * Sleeps, waking up as soon as the request is cancelled.
+     *
+     * @throws CancellationException
+     *             if the request was cancelled
+     */
+    public void sleep( long nanos ) throws InterruptedException
+    {
+        long until = System.nanoTime() + nanos;
+        for ( long left = nanos; left > 0; left = until - System.nanoTime() )
+        {
+            throwIfCancelled();
+            synchronized ( this )
+            {
+                if ( !cancelled )
+                {
+                    TimeUnit.NANOSECONDS.timedWait( this, Math.min( left, TimeUnit.MILLISECONDS.toNanos( POLL_MILLIS ) ) );
+                }
+            }
+        }
+        throwIfCancelled();
+    }
+
+    private void throwIfCancelled()
+    {
+        if ( isCancelled() )
+        {
+            throw cancellationException();
+        }
+    }
+
+    private static CancellationException cancellationException()
+    {
+        return new CancellationException( "Request cancelled" );
+    }
+
+    private static void closeQuietly( InputStream stream )
+    {
+        if ( stream == null )
+        {
+            return;
+        }
+        try
+        {
+            stream.close();
+        }
+        catch ( IOException e )
+        {
+            // the stream is abandoned anyway
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.e4.core.di.annotations.Creatable;
+
+import com.github.gradusnikov.eclipse.assistai.network.sse.TokenUsage;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Collects the token usage reported by the model APIs, in particular how much
+ * of the input was served from the providers' prompt caches.
+ */
+@Creatable
+@Singleton
+public class UsageMetrics
+{
+    @Inject
+    private ILog logger;
+
+    private final LongAdder responses        = new LongAdder();
+    private final LongAdder cacheHits        = new LongAdder();
+    private final LongAdder inputTokens      = new LongAdder();
+    private final LongAdder outputTokens     = new LongAdder();
+    private final LongAdder cacheReadTokens  = new LongAdder();
+    private final LongAdder cacheWriteTokens = new LongAdder();
+
+    private volatile TokenUsage lastUsage;
+
+    /**
+     * Snapshot of the usage counters.
+     *
+     * @param responses number of responses with reported usage
+     * @param cacheHits number of responses that read a part of the input from the prompt cache
+     * @param inputTokens total input tokens
+     * @param outputTokens total output tokens
+     * @param cacheReadTokens input tokens read from the prompt cache
+     * @param cacheWriteTokens input tokens written to the prompt cache
+     * @param lastUsage the usage of the last response, or {@code null}
+     */
+    public record Metrics( long responses, long cacheHits, long inputTokens, long outputTokens, long cacheReadTokens,
+                           long cacheWriteTokens, TokenUsage lastUsage )
+    {
+        /**
+         * @return the share of the input tokens served from the prompt cache
+         */
+        public double cachedInputRatio()
+        {
+            return inputTokens == 0 ? 0 : (double) cacheReadTokens / inputTokens;
+        }
+    }
+
+    public void record( TokenUsage usage )
+    {
+        responses.increment();
+        if ( usage.isCacheHit() )
+        {
+            cacheHits.increment();
+        }
+        inputTokens.add( usage.inputTokens() );
+        outputTokens.add( usage.outputTokens() );
+        cacheReadTokens.add( usage.cacheReadTokens() );
+        cacheWriteTokens.add( usage.cacheWriteTokens() );
+        lastUsage = usage;
+        logger.info( "Token usage: " + usage );
+    }
+
+    public Metrics getMetrics()
+    {
+        return new Metrics( responses.sum(),
+                            cacheHits.sum(),
+                            inputTokens.sum(),
+                            outputTokens.sum(),
+                            cacheReadTokens.sum(),
+                            cacheWriteTokens.sum(),
+                            lastUsage );
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.gradusnikov.eclipse.assistai.network.events;
+
+import com.github.gradusnikov.eclipse.assistai.chat.FunctionCall;
+import com.github.gradusnikov.eclipse.assistai.network.sse.TokenUsage;
+
+/**
+ * An event of a streamed model response, published by a client on its
+ * {@link StreamEventBus}.
+ * <p>
+ * A stream is a sequence of deltas followed by exactly one terminal event,
+ * {@link Done} or {@link Failure}.
+ */
+public sealed interface StreamEvent
+{
+    /**
+     * Text of the answer. Adjacent deltas may be merged into one while a
+     * subscriber is busy.
+     */
+    record ContentDelta( String text ) implements StreamEvent {}
+
+    /**
+     * A fragment of a tool call as it streams in. The first delta of a call
+     * carries its id and name and no arguments; the following ones carry a
+     * fragment of the JSON encoded arguments and a {@code null} id and name.
+     */
+    record ToolCallDelta( int index, String id, String name, String arguments ) implements StreamEvent {}
+
+    /**
+     * A tool call whose arguments are complete, ready to be executed.
+     */
+    record ToolCall( FunctionCall functionCall ) implements StreamEvent {}
+
+    /**
+     * The token usage of the response, published once before {@link Done}.
+     */
+    record Usage( TokenUsage usage ) implements StreamEvent {}
+
+    /**
+     * The response has completed.
+     */
+    record Done() implements StreamEvent {}
+
+    /**
+     * The response has failed or was cancelled, in which case the cause is a
+     * {@link java.util.concurrent.CancellationException}.
+     */
+    record Failure( Throwable cause ) implements StreamEvent {}
+
+    /**
+     * @return whether this event ends the stream
+     */
+    default boolean isTerminal()
+    {
+        return this instanceof Done || this instanceof Failure;
+    }
+}
@@ -0,0 +1,305 @@
+package com.github.gradusnikov.eclipse.assistai.network.events;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Delivers the {@link StreamEvent}s of a response to its subscribers in
+ * batches.
+ * <p>
+ * Every subscriber has a bounded buffer that the publishing thread appends to
+ * and a drain task on the executor empties, handing everything buffered over
+ * as one array. Publishing is cheap: adjacent content deltas are merged into
+ * the pending delta instead of taking a slot of their own, and the drain task
+ * is only scheduled when the buffer was empty. When a buffer is full the
+ * {@link Overflow} policy of its subscriber applies; terminal events are
+ * never dropped and never wait.
+ * <p>
+ * A bus carries a single response: events are published by one thread, and
+ * the first terminal event closes the bus. A subscriber that throws is
+ * unsubscribed and receives a {@link StreamEvent.Failure} with the exception.
+ */
+public final class StreamEventBus
+{
+    /**
+     * What to do with an event published while the buffer of a subscriber is
+     * full.
+     */
+    public enum Overflow
+    {
+        /** Wait until the subscriber has drained its buffer */
+        BLOCK,
+        /** Discard the event, e.g. for diagnostics that must never slow the stream down */
+        DROP
+    }
+
+    private final Executor executor;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile StreamEvent terminal;
+
+    /**
+     * Creates a bus draining on the common pool.
+     */
+    public StreamEventBus()
+    {
+        this( ForkJoinPool.commonPool() );
+    }
+
+    public StreamEventBus( Executor executor )
+    {
+        this.executor = Objects.requireNonNull( executor );
+    }
+
+    /**
+     * Subscribes to the events published from now on. A subscriber added
+     * after the bus was closed receives the terminal event only.
+     */
+    public void subscribe( StreamEventSubscriber subscriber )
+    {
+        var subscription = new Subscription( subscriber, executor );
+        StreamEvent closedWith;
+        synchronized ( this )
+        {
+            closedWith = terminal;
+            if ( closedWith == null )
+            {
+                subscriptions.add( subscription );
+            }
+        }
+        if ( closedWith != null )
+        {
+            subscription.offer( closedWith );
+        }
+    }
+
+    /**
+     * Publishes an event to all subscribers. Events published after the bus
+     * was closed are ignored.
+     */
+    public void submit( StreamEvent event )
+    {
+        Objects.requireNonNull( event );
+        if ( event.isTerminal() )
+        {
+            synchronized ( this )
+            {
+                if ( terminal != null )
+                {
+                    return;
+                }
+                terminal = event;
+            }
+        }
+        else if ( terminal != null )
+        {
+            return;
+        }
+        for ( var subscription : subscriptions )
+        {
+            subscription.offer( event );
+        }
+    }
+
+    /**
+     * Completes the stream with {@link StreamEvent.Done}, unless it was
+     * already closed.
+     */
+    public void close()
+    {
+        submit( new StreamEvent.Done() );
+    }
+
+    /**
+     * Ends the stream with a {@link StreamEvent.Failure}, unless it was
+     * already closed.
+     */
+    public void closeExceptionally( Throwable cause )
+    {
+        submit( new StreamEvent.Failure( cause ) );
+    }
+
+    public boolean isClosed()
+    {
+        return terminal != null;
+    }
+
+    /**
+     * @return the number of events discarded so far by subscribers with the
+     *         {@link Overflow#DROP} policy
+     */
+    public long getDroppedEvents()
+    {
+        return subscriptions.stream().mapToLong( Subscription::dropped ).sum();
+    }
+
+    private static final class Subscription implements Runnable
+    {
+        private final StreamEventSubscriber subscriber;
+        private final Executor executor;
+        private final int capacity;
+        private final Overflow overflow;
+
+        /** guarded by this */
+        private final ArrayDeque<StreamEvent> buffer = new ArrayDeque<>();
+
+        /** content published after the last buffered event; guarded by this */
+        private final StringBuilder text = new StringBuilder();
+
+        /** guarded by this */
+        private boolean draining;
+
+        /** guarded by this */
+        private boolean cancelled;
+
+        /** guarded by this */
+        private long dropped;
+
+        Subscription( StreamEventSubscriber subscriber, Executor executor )
+        {
+            this.subscriber = Objects.requireNonNull( subscriber );
+            this.executor = executor;
+            this.capacity = Math.max( 1, subscriber.bufferSize() );
+            this.overflow = Objects.requireNonNull( subscriber.overflow() );
+        }
+
+        void offer( StreamEvent event )
+        {
+            synchronized ( this )
+            {
+                if ( cancelled )
+                {
+                    return;
+                }
+                if ( event instanceof StreamEvent.ContentDelta delta )
+                {
+                    if ( delta.text().isEmpty() )
+                    {
+                        return;
+                    }
+                    if ( !text.isEmpty() )
+                    {
+                        // pending text implies a scheduled drain
+                        text.append( delta.text() );
+                        return;
+                    }
+                }
+                if ( !event.isTerminal() && !awaitSpace() )
+                {
+                    dropped++;
+                    return;
+                }
+                if ( event instanceof StreamEvent.ContentDelta delta )
+                {
+                    text.append( delta.text() );
+                }
+                else
+                {
+                    flushText();
+                    buffer.add( event );
+                }
+                if ( draining )
+                {
+                    return;
+                }
+                draining = true;
+            }
+            executor.execute( this );
+        }
+
+        /**
+         * Waits for a free slot according to the overflow policy. An
+         * interrupted publisher stops waiting and overfills the buffer rather
+         * than losing the event.
+         *
+         * @return whether the event may be buffered
+         */
+        private boolean awaitSpace()
+        {
+            while ( buffer.size() + ( text.isEmpty() ? 0 : 1 ) >= capacity )
+            {
+                if ( cancelled || overflow == Overflow.DROP )
+                {
+                    return false;
+                }
+                try
+                {
+                    wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    return !cancelled;
+                }
+            }
+            return !cancelled;
+        }
+
+        private void flushText()
+        {
+            if ( !text.isEmpty() )
+            {
+                buffer.add( new StreamEvent.ContentDelta( text.toString() ) );
+                text.setLength( 0 );
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            while ( true )
+            {
+                StreamEvent[] batch;
+                synchronized ( this )
+                {
+                    flushText();
+                    if ( cancelled || buffer.isEmpty() )
+                    {
+                        draining = false;
+                        return;
+                    }
+                    batch = buffer.toArray( StreamEvent[]::new );
+                    buffer.clear();
+                    notifyAll();
+                }
+                try
+                {
+                    subscriber.onEvents( batch );
+                }
+                catch ( RuntimeException e )
+                {
+                    cancel( e );
+                }
+            }
+        }
+
+        private void cancel( RuntimeException e )
+        {
+            synchronized ( this )
+            {
+                cancelled = true;
+                buffer.clear();
+                text.setLength( 0 );
+                notifyAll();
+            }
+            try
+            {
+                subscriber.onEvents( new StreamEvent[] { new StreamEvent.Failure( e ) } );
+            }
+            catch ( RuntimeException ignored )
+            {
+                // the subscriber is gone already
+            }
+        }
+
+        synchronized long dropped()
+        {
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.gradusnikov.eclipse.assistai.network.events;
+
+/**
+ * Receives the events of a streamed response in batches.
+ * <p>
+ * The batches of a subscriber are delivered one at a time, in order, but not
+ * necessarily by the same thread. A batch holds whatever has been published
+ * since the previous one was handed over, so a subscriber that keeps up sees
+ * small batches and a slow one sees large batches instead of a growing queue.
+ */
+@FunctionalInterface
+public interface StreamEventSubscriber
+{
+    /** The default number of events buffered for a subscriber */
+    int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * Handles the events published since the previous batch. The array is
+     * owned by the subscriber.
+     */
+    void onEvents( StreamEvent[] events );
+
+    /**
+     * @return how many events may wait for this subscriber before the
+     *         {@link #overflow() overflow policy} applies
+     */
+    default int bufferSize()
+    {
+        return DEFAULT_BUFFER_SIZE;
+    }
+
+    /**
+     * @return what to do with an event published while the buffer of this
+     *         subscriber is full
+     */
+    default StreamEventBus.Overflow overflow()
+    {
+        return StreamEventBus.Overflow.BLOCK;
+    }
+}
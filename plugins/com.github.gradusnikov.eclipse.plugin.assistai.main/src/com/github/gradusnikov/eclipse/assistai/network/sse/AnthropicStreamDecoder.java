@@ -0,0 +1,173 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodes the Anthropic Messages API stream. Text blocks are reported as
+ * content, {@code tool_use} blocks as tool calls indexed by their content
+ * block index. The usage of {@code message_start} and {@code message_delta}
+ * is combined and reported with the latter.
+ */
+public class AnthropicStreamDecoder extends StreamDecoder
+{
+    private final BitSet toolBlocks = new BitSet();
+
+    private int inputTokens;
+    private int outputTokens;
+    private int cacheReadTokens;
+    private int cacheWriteTokens;
+
+    public AnthropicStreamDecoder( StreamListener listener )
+    {
+        super( listener );
+    }
+
+    @Override
+    protected void decode( String event, JsonParser parser ) throws IOException
+    {
+        String type = null;
+        int index = -1;
+        String blockType = null;
+        String id = null;
+        String name = null;
+        String text = null;
+        String partialJson = null;
+        String stopReason = null;
+        String error = null;
+        boolean usage = false;
+
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            JsonToken token = parser.currentToken();
+            switch ( field )
+            {
+                case "type" -> type = textValue( parser );
+                case "index" -> index = parser.getValueAsInt( -1 );
+                case "content_block", "delta" -> {
+                    if ( token != JsonToken.START_OBJECT )
+                    {
+                        parser.skipChildren();
+                        break;
+                    }
+                    String blockField;
+                    while ( ( blockField = nextField( parser ) ) != null )
+                    {
+                        switch ( blockField )
+                        {
+                            case "type" -> blockType = textValue( parser );
+                            case "id" -> id = textValue( parser );
+                            case "name" -> name = textValue( parser );
+                            case "text" -> text = textValue( parser );
+                            case "partial_json" -> partialJson = textValue( parser );
+                            case "stop_reason" -> stopReason = textValue( parser );
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                case "message" -> {
+                    if ( token != JsonToken.START_OBJECT )
+                    {
+                        parser.skipChildren();
+                        break;
+                    }
+                    String messageField;
+                    while ( ( messageField = nextField( parser ) ) != null )
+                    {
+                        if ( "usage".equals( messageField ) )
+                        {
+                            usage |= readUsage( parser );
+                        }
+                        else
+                        {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                case "usage" -> usage |= readUsage( parser );
+                case "error" -> error = token == JsonToken.START_OBJECT ? errorMessage( parser ) : textValue( parser );
+                default -> parser.skipChildren();
+            }
+        }
+        if ( type == null )
+        {
+            type = event;
+        }
+
+        switch ( type )
+        {
+            case "content_block_start" -> {
+                if ( "tool_use".equals( blockType ) && index >= 0 )
+                {
+                    toolBlocks.set( index );
+                    listener.onToolCallStart( index, id, name );
+                }
+                else if ( text != null && !text.isEmpty() )
+                {
+                    listener.onContent( text );
+                }
+            }
+            case "content_block_delta" -> {
+                if ( text != null && !text.isEmpty() )
+                {
+                    listener.onContent( text );
+                }
+                else if ( partialJson != null && !partialJson.isEmpty() )
+                {
+                    listener.onToolCallArguments( index, partialJson );
+                }
+            }
+            case "content_block_stop" -> {
+                if ( index >= 0 && toolBlocks.get( index ) )
+                {
+                    listener.onToolCallEnd( index );
+                }
+            }
+            case "message_delta" -> {
+                if ( usage )
+                {
+                    int input = inputTokens + cacheReadTokens + cacheWriteTokens;
+                    listener.onUsage( new TokenUsage( input, outputTokens, cacheReadTokens, cacheWriteTokens ) );
+                }
+                if ( stopReason != null )
+                {
+                    listener.onFinish( stopReason );
+                }
+            }
+            case "error" -> listener.onError( error );
+            default -> {
+                // message_start, message_stop, ping
+            }
+        }
+    }
+
+    /**
+     * Reads a usage object. The counts missing in the object keep their
+     * previous value, as {@code message_delta} may only carry the output.
+     */
+    private boolean readUsage( JsonParser parser ) throws IOException
+    {
+        if ( parser.currentToken() != JsonToken.START_OBJECT )
+        {
+            parser.skipChildren();
+            return false;
+        }
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            switch ( field )
+            {
+                case "input_tokens" -> inputTokens = parser.getValueAsInt( inputTokens );
+                case "output_tokens" -> outputTokens = parser.getValueAsInt( outputTokens );
+                case "cache_read_input_tokens" -> cacheReadTokens = parser.getValueAsInt( cacheReadTokens );
+                case "cache_creation_input_tokens" -> cacheWriteTokens = parser.getValueAsInt( cacheWriteTokens );
+                default -> parser.skipChildren();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodes the Gemini {@code streamGenerateContent?alt=sse} stream. Gemini
+ * sends every function call complete in a single part, so each one is
+ * reported as start, arguments and end at once, numbered in order of arrival.
+ * Thought parts are not reported as content. Every chunk carries the
+ * {@code usageMetadata} so far, including the tokens served from a cached
+ * content.
+ */
+public class GeminiStreamDecoder extends StreamDecoder
+{
+    private int nextToolIndex = 0;
+
+    public GeminiStreamDecoder( StreamListener listener )
+    {
+        super( listener );
+    }
+
+    @Override
+    protected void decode( String event, JsonParser parser ) throws IOException
+    {
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            if ( "candidates".equals( field ) && parser.currentToken() == JsonToken.START_ARRAY )
+            {
+                boolean first = true;
+                while ( parser.nextToken() != JsonToken.END_ARRAY )
+                {
+                    if ( first && parser.currentToken() == JsonToken.START_OBJECT )
+                    {
+                        decodeCandidate( parser );
+                    }
+                    else
+                    {
+                        parser.skipChildren();
+                    }
+                    first = false;
+                }
+            }
+            else if ( "usageMetadata".equals( field ) && parser.currentToken() == JsonToken.START_OBJECT )
+            {
+                decodeUsage( parser );
+            }
+            else if ( "error".equals( field ) && parser.currentToken() == JsonToken.START_OBJECT )
+            {
+                listener.onError( errorMessage( parser ) );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void decodeCandidate( JsonParser parser ) throws IOException
+    {
+        String finishReason = null;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            if ( "content".equals( field ) && parser.currentToken() == JsonToken.START_OBJECT )
+            {
+                String contentField;
+                while ( ( contentField = nextField( parser ) ) != null )
+                {
+                    if ( "parts".equals( contentField ) && parser.currentToken() == JsonToken.START_ARRAY )
+                    {
+                        while ( parser.nextToken() == JsonToken.START_OBJECT )
+                        {
+                            decodePart( parser );
+                        }
+                    }
+                    else
+                    {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            else if ( "finishReason".equals( field ) )
+            {
+                finishReason = textValue( parser );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+        if ( finishReason != null )
+        {
+            listener.onFinish( finishReason );
+        }
+    }
+
+    private void decodeUsage( JsonParser parser ) throws IOException
+    {
+        int promptTokens = 0;
+        int outputTokens = 0;
+        int cachedTokens = 0;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            switch ( field )
+            {
+                case "promptTokenCount" -> promptTokens = parser.getValueAsInt( 0 );
+                case "candidatesTokenCount", "thoughtsTokenCount" -> outputTokens += parser.getValueAsInt( 0 );
+                case "cachedContentTokenCount" -> cachedTokens = parser.getValueAsInt( 0 );
+                default -> parser.skipChildren();
+            }
+        }
+        listener.onUsage( new TokenUsage( promptTokens, outputTokens, cachedTokens, 0 ) );
+    }
+
+    private void decodePart( JsonParser parser ) throws IOException
+    {
+        String text = null;
+        boolean thought = false;
+        String id = null;
+        String name = null;
+        String arguments = null;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            switch ( field )
+            {
+                case "text" -> text = textValue( parser );
+                case "thought" -> thought = parser.getValueAsBoolean();
+                case "functionCall" -> {
+                    if ( parser.currentToken() != JsonToken.START_OBJECT )
+                    {
+                        parser.skipChildren();
+                        break;
+                    }
+                    String callField;
+                    while ( ( callField = nextField( parser ) ) != null )
+                    {
+                        switch ( callField )
+                        {
+                            case "id" -> id = textValue( parser );
+                            case "name" -> name = textValue( parser );
+                            case "args" -> arguments = copyValue( parser );
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        if ( text != null && !text.isEmpty() && !thought )
+        {
+            listener.onContent( text );
+        }
+        if ( name != null )
+        {
+            int index = nextToolIndex++;
+            listener.onToolCallStart( index, id, name );
+            listener.onToolCallArguments( index, arguments == null ? "{}" : arguments );
+            listener.onToolCallEnd( index );
+        }
+    }
+}
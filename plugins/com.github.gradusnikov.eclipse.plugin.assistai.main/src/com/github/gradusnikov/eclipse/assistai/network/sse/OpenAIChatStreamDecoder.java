@@ -0,0 +1,253 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodes the chat completions stream format used by OpenAI and the
+ * compatible APIs (DeepSeek, Groq, Ollama, ...):
+ * <pre>
+ * {"choices":[{"delta":{"content":"..","tool_calls":[{"index":0,"id":"..","function":{"name":"..","arguments":".."}}]},"finish_reason":null}]}
+ * </pre>
+ * Only the first choice is decoded. The legacy {@code function_call} delta is
+ * reported as the tool call with index 0. The {@code usage} of the last chunk,
+ * sent when requested with {@code stream_options.include_usage}, is reported
+ * with the cached tokens of OpenAI ({@code prompt_tokens_details}) or DeepSeek
+ * ({@code prompt_cache_hit_tokens}).
+ */
+public class OpenAIChatStreamDecoder extends StreamDecoder
+{
+    private int lastToolIndex = -1;
+
+    public OpenAIChatStreamDecoder( StreamListener listener )
+    {
+        super( listener );
+    }
+
+    @Override
+    protected void decode( String event, JsonParser parser ) throws IOException
+    {
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            if ( "choices".equals( field ) && parser.currentToken() == JsonToken.START_ARRAY )
+            {
+                decodeChoices( parser );
+            }
+            else if ( "usage".equals( field ) && parser.currentToken() == JsonToken.START_OBJECT )
+            {
+                decodeUsage( parser );
+            }
+            else if ( "error".equals( field ) && parser.currentToken() == JsonToken.START_OBJECT )
+            {
+                listener.onError( errorMessage( parser ) );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void decodeChoices( JsonParser parser ) throws IOException
+    {
+        boolean first = true;
+        while ( parser.nextToken() != JsonToken.END_ARRAY )
+        {
+            if ( first && parser.currentToken() == JsonToken.START_OBJECT )
+            {
+                decodeChoice( parser );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+            first = false;
+        }
+    }
+
+    private void decodeChoice( JsonParser parser ) throws IOException
+    {
+        String finishReason = null;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            if ( ( "delta".equals( field ) || "message".equals( field ) ) && parser.currentToken() == JsonToken.START_OBJECT )
+            {
+                decodeDelta( parser );
+            }
+            else if ( "finish_reason".equals( field ) )
+            {
+                finishReason = textValue( parser );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+        if ( finishReason != null )
+        {
+            listener.onFinish( finishReason );
+        }
+    }
+
+    private void decodeDelta( JsonParser parser ) throws IOException
+    {
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            if ( "content".equals( field ) )
+            {
+                String content = textValue( parser );
+                if ( content != null && !content.isEmpty() )
+                {
+                    listener.onContent( content );
+                }
+            }
+            else if ( "tool_calls".equals( field ) && parser.currentToken() == JsonToken.START_ARRAY )
+            {
+                while ( parser.nextToken() == JsonToken.START_OBJECT )
+                {
+                    decodeToolCall( parser );
+                }
+            }
+            else if ( "function_call".equals( field ) && parser.currentToken() == JsonToken.START_OBJECT )
+            {
+                decodeFunctionCall( parser );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void decodeToolCall( JsonParser parser ) throws IOException
+    {
+        int index = -1;
+        String id = null;
+        String name = null;
+        String arguments = null;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            switch ( field )
+            {
+                case "index" -> index = parser.getValueAsInt( -1 );
+                case "id" -> id = textValue( parser );
+                case "function" -> {
+                    if ( parser.currentToken() == JsonToken.START_OBJECT )
+                    {
+                        String functionField;
+                        while ( ( functionField = nextField( parser ) ) != null )
+                        {
+                            switch ( functionField )
+                            {
+                                case "name" -> name = textValue( parser );
+                                case "arguments" -> arguments = argumentsValue( parser );
+                                default -> parser.skipChildren();
+                            }
+                        }
+                    }
+                    else
+                    {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        emitToolCall( resolveIndex( index, id, name ), id, name, arguments );
+    }
+
+    private void decodeFunctionCall( JsonParser parser ) throws IOException
+    {
+        String name = null;
+        String arguments = null;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            switch ( field )
+            {
+                case "name" -> name = textValue( parser );
+                case "arguments" -> arguments = argumentsValue( parser );
+                default -> parser.skipChildren();
+            }
+        }
+        emitToolCall( 0, null, name, arguments );
+    }
+
+    private void decodeUsage( JsonParser parser ) throws IOException
+    {
+        int promptTokens = 0;
+        int completionTokens = 0;
+        int cachedTokens = 0;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            switch ( field )
+            {
+                case "prompt_tokens" -> promptTokens = parser.getValueAsInt( 0 );
+                case "completion_tokens" -> completionTokens = parser.getValueAsInt( 0 );
+                case "prompt_cache_hit_tokens" -> cachedTokens = parser.getValueAsInt( 0 );
+                case "prompt_tokens_details" -> {
+                    if ( parser.currentToken() != JsonToken.START_OBJECT )
+                    {
+                        parser.skipChildren();
+                        break;
+                    }
+                    String detailsField;
+                    while ( ( detailsField = nextField( parser ) ) != null )
+                    {
+                        if ( "cached_tokens".equals( detailsField ) )
+                        {
+                            cachedTokens = parser.getValueAsInt( 0 );
+                        }
+                        else
+                        {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        listener.onUsage( new TokenUsage( promptTokens, completionTokens, cachedTokens, 0 ) );
+    }
+
+    /**
+     * Some compatible servers omit the index; a chunk carrying an id or a name
+     * then starts a new call, anything else continues the last one.
+     */
+    private int resolveIndex( int index, String id, String name )
+    {
+        if ( index < 0 )
+        {
+            index = ( id != null || name != null ) ? lastToolIndex + 1 : Math.max( lastToolIndex, 0 );
+        }
+        lastToolIndex = index;
+        return index;
+    }
+
+    private void emitToolCall( int index, String id, String name, String arguments )
+    {
+        if ( id != null || name != null )
+        {
+            listener.onToolCallStart( index, id, name );
+        }
+        if ( arguments != null && !arguments.isEmpty() )
+        {
+            listener.onToolCallArguments( index, arguments );
+        }
+    }
+
+    /**
+     * Arguments are a JSON encoded string, but some servers send the object itself.
+     */
+    private static String argumentsValue( JsonParser parser ) throws IOException
+    {
+        return parser.currentToken() == JsonToken.START_OBJECT ? copyValue( parser ) : textValue( parser );
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodes the OpenAI Responses API stream. Function calls are indexed by
+ * their {@code output_index}; reasoning items are not reported. The usage is
+ * taken from the final {@code response} object.
+ */
+public class OpenAIResponsesStreamDecoder extends StreamDecoder
+{
+    private final BitSet functionCalls = new BitSet();
+
+    public OpenAIResponsesStreamDecoder( StreamListener listener )
+    {
+        super( listener );
+    }
+
+    @Override
+    protected void decode( String event, JsonParser parser ) throws IOException
+    {
+        String type = null;
+        int outputIndex = -1;
+        String itemType = null;
+        String callId = null;
+        String name = null;
+        String delta = null;
+        String message = null;
+        TokenUsage usage = null;
+
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            JsonToken token = parser.currentToken();
+            switch ( field )
+            {
+                case "type" -> type = textValue( parser );
+                case "output_index" -> outputIndex = parser.getValueAsInt( -1 );
+                case "delta" -> delta = textValue( parser );
+                case "message" -> message = textValue( parser );
+                case "error" -> message = token == JsonToken.START_OBJECT ? errorMessage( parser ) : textValue( parser );
+                case "response" -> {
+                    if ( token != JsonToken.START_OBJECT )
+                    {
+                        parser.skipChildren();
+                        break;
+                    }
+                    String responseField;
+                    while ( ( responseField = nextField( parser ) ) != null )
+                    {
+                        if ( "usage".equals( responseField ) && parser.currentToken() == JsonToken.START_OBJECT )
+                        {
+                            usage = readUsage( parser );
+                        }
+                        else
+                        {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                case "item" -> {
+                    if ( token != JsonToken.START_OBJECT )
+                    {
+                        parser.skipChildren();
+                        break;
+                    }
+                    String itemField;
+                    while ( ( itemField = nextField( parser ) ) != null )
+                    {
+                        switch ( itemField )
+                        {
+                            case "type" -> itemType = textValue( parser );
+                            case "call_id" -> callId = textValue( parser );
+                            case "name" -> name = textValue( parser );
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        if ( type == null )
+        {
+            type = event;
+        }
+
+        switch ( type )
+        {
+            case "response.output_item.added" -> {
+                if ( "function_call".equals( itemType ) && outputIndex >= 0 )
+                {
+                    functionCalls.set( outputIndex );
+                    listener.onToolCallStart( outputIndex, callId, name );
+                }
+            }
+            case "response.output_text.delta" -> {
+                if ( delta != null && !delta.isEmpty() )
+                {
+                    listener.onContent( delta );
+                }
+            }
+            case "response.function_call_arguments.delta" -> {
+                if ( delta != null && !delta.isEmpty() )
+                {
+                    listener.onToolCallArguments( outputIndex, delta );
+                }
+            }
+            case "response.output_item.done" -> {
+                if ( outputIndex >= 0 && functionCalls.get( outputIndex ) )
+                {
+                    listener.onToolCallEnd( outputIndex );
+                }
+            }
+            case "response.completed", "response.incomplete" -> {
+                if ( usage != null )
+                {
+                    listener.onUsage( usage );
+                }
+                listener.onFinish( type.substring( "response.".length() ) );
+            }
+            case "response.failed" -> listener.onError( message != null ? message : "Response failed" );
+            case "error" -> listener.onError( message );
+            default -> {
+                // lifecycle and reasoning events
+            }
+        }
+    }
+
+    private static TokenUsage readUsage( JsonParser parser ) throws IOException
+    {
+        int inputTokens = 0;
+        int outputTokens = 0;
+        int cachedTokens = 0;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            switch ( field )
+            {
+                case "input_tokens" -> inputTokens = parser.getValueAsInt( 0 );
+                case "output_tokens" -> outputTokens = parser.getValueAsInt( 0 );
+                case "input_tokens_details" -> {
+                    if ( parser.currentToken() != JsonToken.START_OBJECT )
+                    {
+                        parser.skipChildren();
+                        break;
+                    }
+                    String detailsField;
+                    while ( ( detailsField = nextField( parser ) ) != null )
+                    {
+                        if ( "cached_tokens".equals( detailsField ) )
+                        {
+                            cachedTokens = parser.getValueAsInt( 0 );
+                        }
+                        else
+                        {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return new TokenUsage( inputTokens, outputTokens, cachedTokens, 0 );
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+import java.io.IOException;
+
+/**
+ * Receives the events decoded by {@link SseEventReader}.
+ */
+@FunctionalInterface
+public interface SseEventHandler
+{
+    /**
+     * Called once per dispatched event.
+     * <p>
+     * The {@code data} array is owned by the reader and is reused for the next
+     * event, so implementations must consume it before returning and must not
+     * keep a reference to it.
+     *
+     * @param event the event name, {@code "message"} if the event had no {@code event:} field
+     * @param data buffer holding the UTF-8 encoded value of the {@code data:} field(s),
+     *        multiple lines joined with {@code '\n'}
+     * @param length number of valid bytes in {@code data}
+     * @return {@code true} to continue reading, {@code false} to stop
+     */
+    boolean onEvent( String event, byte[] data, int length ) throws IOException;
+}
@@ -0,0 +1,290 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental decoder for a {@code text/event-stream} response body.
+ * <p>
+ * The reader works on the raw bytes of the stream: field names are matched
+ * without decoding, and the values of {@code data:} fields are collected into
+ * a reusable byte buffer handed to the {@link SseEventHandler}, so a typical
+ * event costs no allocations besides the event name. Line endings may be CR,
+ * LF or CRLF; comments (lines starting with a colon) are ignored; multiple
+ * {@code data:} lines of one event are joined with a line feed, as required by
+ * the SSE specification.
+ * <p>
+ * Unlike a browser, the reader also dispatches an event that is not followed
+ * by a blank line when the stream ends, as some model APIs close the
+ * connection right after the last {@code data:} line.
+ */
+public class SseEventReader implements Closeable
+{
+    private static final String DEFAULT_EVENT = "message";
+
+    private static final byte[] DATA  = ascii( "data" );
+    private static final byte[] EVENT = ascii( "event" );
+    private static final byte[] ID    = ascii( "id" );
+    private static final byte[] RETRY = ascii( "retry" );
+
+    private final InputStream in;
+
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+    private boolean skipLineFeed;
+    private boolean firstLine = true;
+
+    private byte[] line = new byte[512];
+    private int lineLength;
+
+    private byte[] data = new byte[2048];
+    private int dataLength;
+    private boolean hasData;
+
+    private String eventName;
+    private String lastEventId = "";
+    private long retryMillis = -1;
+
+    public SseEventReader( InputStream in )
+    {
+        this.in = in;
+    }
+
+    /**
+     * Reads events until the end of the stream or until the handler returns
+     * {@code false}.
+     */
+    public void read( SseEventHandler handler ) throws IOException
+    {
+        while ( readLine() )
+        {
+            if ( lineLength == 0 )
+            {
+                if ( !dispatch( handler ) )
+                {
+                    return;
+                }
+            }
+            else
+            {
+                processLine();
+            }
+        }
+        dispatch( handler );
+    }
+
+    /**
+     * @return the value of the last {@code id:} field, empty if none was received
+     */
+    public String getLastEventId()
+    {
+        return lastEventId;
+    }
+
+    /**
+     * @return the reconnection time sent by the server, or -1 if none was received
+     */
+    public long getRetryMillis()
+    {
+        return retryMillis;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    private boolean dispatch( SseEventHandler handler ) throws IOException
+    {
+        if ( !hasData )
+        {
+            eventName = null;
+            return true;
+        }
+        // the last data line appended a trailing line feed
+        int length = dataLength > 0 && data[dataLength - 1] == '\n' ? dataLength - 1 : dataLength;
+        String event = eventName == null || eventName.isEmpty() ? DEFAULT_EVENT : eventName;
+        eventName = null;
+        dataLength = 0;
+        hasData = false;
+        return handler.onEvent( event, data, length );
+    }
+
+    private void processLine()
+    {
+        if ( line[0] == ':' )
+        {
+            return; // comment
+        }
+        int colon = indexOf( line, lineLength, (byte) ':' );
+        int nameLength = colon < 0 ? lineLength : colon;
+        int valueStart = colon < 0 ? lineLength : colon + 1;
+        if ( valueStart < lineLength && line[valueStart] == ' ' )
+        {
+            valueStart++;
+        }
+        int valueLength = lineLength - valueStart;
+
+        if ( fieldEquals( DATA, nameLength ) )
+        {
+            ensureDataCapacity( dataLength + valueLength + 1 );
+            System.arraycopy( line, valueStart, data, dataLength, valueLength );
+            dataLength += valueLength;
+            data[dataLength++] = '\n';
+            hasData = true;
+        }
+        else if ( fieldEquals( EVENT, nameLength ) )
+        {
+            eventName = new String( line, valueStart, valueLength, StandardCharsets.UTF_8 );
+        }
+        else if ( fieldEquals( ID, nameLength ) )
+        {
+            if ( indexOf( line, lineLength, (byte) 0 ) < 0 )
+            {
+                lastEventId = new String( line, valueStart, valueLength, StandardCharsets.UTF_8 );
+            }
+        }
+        else if ( fieldEquals( RETRY, nameLength ) )
+        {
+            retryMillis = parseDigits( valueStart, valueLength, retryMillis );
+        }
+        // unknown fields are ignored
+    }
+
+    /**
+     * Reads the next line into {@link #line} without the line terminator.
+     *
+     * @return {@code false} if the stream ended before any byte of a new line was read
+     */
+    private boolean readLine() throws IOException
+    {
+        lineLength = 0;
+        boolean readAny = false;
+        while ( true )
+        {
+            if ( position == limit && !fill() )
+            {
+                return readAny;
+            }
+            if ( skipLineFeed )
+            {
+                skipLineFeed = false;
+                if ( buffer[position] == '\n' )
+                {
+                    position++;
+                    continue;
+                }
+            }
+            readAny = true;
+            int start = position;
+            while ( position < limit )
+            {
+                byte b = buffer[position];
+                if ( b == '\n' || b == '\r' )
+                {
+                    appendToLine( start, position - start );
+                    position++;
+                    skipLineFeed = b == '\r';
+                    return true;
+                }
+                position++;
+            }
+            appendToLine( start, position - start );
+        }
+    }
+
+    private boolean fill() throws IOException
+    {
+        if ( endOfStream )
+        {
+            return false;
+        }
+        int read = in.read( buffer, 0, buffer.length );
+        if ( read <= 0 )
+        {
+            endOfStream = true;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        if ( firstLine )
+        {
+            firstLine = false;
+            // skip UTF-8 byte order mark
+            if ( limit >= 3 && buffer[0] == (byte) 0xEF && buffer[1] == (byte) 0xBB && buffer[2] == (byte) 0xBF )
+            {
+                position = 3;
+            }
+        }
+        return true;
+    }
+
+    private void appendToLine( int start, int length )
+    {
+        if ( length == 0 )
+        {
+            return;
+        }
+        if ( lineLength + length > line.length )
+        {
+            line = Arrays.copyOf( line, Math.max( line.length * 2, lineLength + length ) );
+        }
+        System.arraycopy( buffer, start, line, lineLength, length );
+        lineLength += length;
+    }
+
+    private void ensureDataCapacity( int capacity )
+    {
+        if ( capacity > data.length )
+        {
+            data = Arrays.copyOf( data, Math.max( data.length * 2, capacity ) );
+        }
+    }
+
+    private boolean fieldEquals( byte[] field, int nameLength )
+    {
+        return nameLength == field.length && Arrays.equals( line, 0, nameLength, field, 0, nameLength );
+    }
+
+    private long parseDigits( int start, int length, long defaultValue )
+    {
+        if ( length == 0 )
+        {
+            return defaultValue;
+        }
+        long value = 0;
+        for ( int i = start; i < start + length; i++ )
+        {
+            byte b = line[i];
+            if ( b < '0' || b > '9' )
+            {
+                return defaultValue;
+            }
+            value = value * 10 + ( b - '0' );
+        }
+        return value;
+    }
+
+    private static int indexOf( byte[] array, int length, byte value )
+    {
+        for ( int i = 0; i < length; i++ )
+        {
+            if ( array[i] == value )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] ascii( String value )
+    {
+        return value.getBytes( StandardCharsets.US_ASCII );
+    }
+}
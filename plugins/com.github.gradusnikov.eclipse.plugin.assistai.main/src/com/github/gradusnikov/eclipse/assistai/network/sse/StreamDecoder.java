@@ -0,0 +1,142 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Base class of the provider specific decoders turning SSE events into
+ * {@link StreamListener} callbacks.
+ * <p>
+ * Events are decoded with Jackson's streaming {@link JsonParser} directly from
+ * the reader's byte buffer; subclasses pick the fields they need and skip the
+ * rest, no tree is built.
+ */
+public abstract class StreamDecoder implements SseEventHandler
+{
+    /** Thread-safe and shared by all decoders, so buffer recycling works across streams. */
+    protected static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte[] DONE = "[DONE]".getBytes( StandardCharsets.US_ASCII );
+
+    protected final StreamListener listener;
+
+    protected StreamDecoder( StreamListener listener )
+    {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean onEvent( String event, byte[] data, int length ) throws IOException
+    {
+        if ( isDone( data, length ) )
+        {
+            return false;
+        }
+        try ( JsonParser parser = JSON_FACTORY.createParser( data, 0, length ) )
+        {
+            if ( parser.nextToken() == JsonToken.START_OBJECT )
+            {
+                decode( event, parser );
+            }
+        }
+        catch ( JsonProcessingException e )
+        {
+            listener.onMalformedEvent( new String( data, 0, length, StandardCharsets.UTF_8 ), e );
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a single event. The parser is positioned on the
+     * {@link JsonToken#START_OBJECT} of the event payload.
+     */
+    protected abstract void decode( String event, JsonParser parser ) throws IOException;
+
+    /**
+     * Advances to the next field of the current object.
+     *
+     * @return the field name, or {@code null} at the end of the object. The
+     *         parser is left on the field's value.
+     */
+    protected static String nextField( JsonParser parser ) throws IOException
+    {
+        if ( parser.nextToken() != JsonToken.FIELD_NAME )
+        {
+            return null;
+        }
+        String name = parser.currentName();
+        parser.nextToken();
+        return name;
+    }
+
+    /**
+     * @return the current scalar value as text, or {@code null} for JSON null
+     *         and structured values (which are skipped)
+     */
+    protected static String textValue( JsonParser parser ) throws IOException
+    {
+        if ( parser.currentToken().isStructStart() )
+        {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getValueAsString();
+    }
+
+    /**
+     * Copies the current value (object, array or scalar) as compact JSON text.
+     */
+    protected static String copyValue( JsonParser parser ) throws IOException
+    {
+        var writer = new StringWriter();
+        try ( JsonGenerator generator = JSON_FACTORY.createGenerator( writer ) )
+        {
+            generator.copyCurrentStructure( parser );
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Reads an error object and returns its {@code message} field.
+     */
+    protected static String errorMessage( JsonParser parser ) throws IOException
+    {
+        String message = null;
+        String field;
+        while ( ( field = nextField( parser ) ) != null )
+        {
+            if ( "message".equals( field ) )
+            {
+                message = textValue( parser );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    private static boolean isDone( byte[] data, int length )
+    {
+        int start = 0;
+        int end = length;
+        while ( start < end && Character.isWhitespace( data[start] ) )
+        {
+            start++;
+        }
+        while ( end > start && Character.isWhitespace( data[end - 1] ) )
+        {
+            end--;
+        }
+        return end - start == DONE.length && Arrays.equals( data, start, end, DONE, 0, DONE.length );
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+/**
+ * Typed callbacks produced by the provider specific stream decoders. All
+ * clients receive the same events regardless of the wire format of the
+ * model API.
+ */
+public interface StreamListener
+{
+    /**
+     * A fragment of the assistant's text response.
+     */
+    void onContent( String text );
+
+    /**
+     * A new tool call has started. For APIs streaming several calls at once the
+     * {@code index} identifies the call in the subsequent events.
+     */
+    default void onToolCallStart( int index, String id, String name ) {}
+
+    /**
+     * A fragment of the JSON encoded arguments of the tool call at {@code index}.
+     */
+    default void onToolCallArguments( int index, String fragment ) {}
+
+    /**
+     * The API signalled that the tool call at {@code index} is complete. Not
+     * every API does, so listeners must not rely on this event alone.
+     */
+    default void onToolCallEnd( int index ) {}
+
+    /**
+     * The model finished its turn, e.g. {@code stop} or {@code tool_calls}.
+     */
+    default void onFinish( String reason ) {}
+
+    /**
+     * The API reported the token usage of the response. Some APIs report it
+     * several times while streaming; the last report is the final one.
+     */
+    default void onUsage( TokenUsage usage ) {}
+
+    /**
+     * The API reported an error inside the stream.
+     */
+    default void onError( String message ) {}
+
+    /**
+     * An event could not be decoded. The stream continues with the next event.
+     */
+    default void onMalformedEvent( String data, Exception e ) {}
+}
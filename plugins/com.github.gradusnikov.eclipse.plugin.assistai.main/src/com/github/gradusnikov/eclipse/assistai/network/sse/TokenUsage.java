@@ -0,0 +1,32 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+/**
+ * Token usage reported by a model API for a single response.
+ * <p>
+ * The counts are normalized across providers: {@code inputTokens} is the
+ * whole prompt, including the tokens read from or written to the provider's
+ * prompt cache.
+ *
+ * @param inputTokens
+ *            all input tokens of the request
+ * @param outputTokens
+ *            tokens generated by the model
+ * @param cacheReadTokens
+ *            input tokens served from the prompt cache
+ * @param cacheWriteTokens
+ *            input tokens written to the prompt cache
+ */
+public record TokenUsage( int inputTokens, int outputTokens, int cacheReadTokens, int cacheWriteTokens )
+{
+    public boolean isCacheHit()
+    {
+        return cacheReadTokens > 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "input %d (cache read %d, cache write %d), output %d", inputTokens, cacheReadTokens,
+                              cacheWriteTokens, outputTokens );
+    }
+}
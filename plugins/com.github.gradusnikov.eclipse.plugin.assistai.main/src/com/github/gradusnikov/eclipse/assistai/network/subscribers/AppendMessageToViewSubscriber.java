@@ -1,34 +1,32 @@
 package com.github.gradusnikov.eclipse.assistai.network.subscribers;
 
 import java.util.Objects;
-import java.util.concurrent.Flow;
-import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.CancellationException;
 
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
 
 import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming.Type;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEvent;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
 import com.github.gradusnikov.eclipse.assistai.view.ChatViewPresenter;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 
+/**
+ * Shows the answer in the chat view. The text of a batch is appended at once,
+ * so the view is updated once per batch rather than once per token.
+ */
 @Creatable
 @Singleton
-public class AppendMessageToViewSubscriber implements Flow.Subscriber<Incoming> {
+public class AppendMessageToViewSubscriber implements StreamEventSubscriber {
 	@Inject
 	private ILog logger;
 
-	private Flow.Subscription subscription;
-
 	private ChatViewPresenter presenter;
 
 	private ChatMessage currentMessage; // 普通文本 / 工具返回
-	private ChatMessage currentFunctionCallMessage; // 工具调用
-
-	private Type lastType;
 
 	public AppendMessageToViewSubscriber() {
 	}
@@ -38,62 +36,61 @@ public class AppendMessageToViewSubscriber implements Flow.Subscriber<Incoming>
 	}
 
 	@Override
-	public void onSubscribe(Subscription subscription) {
-		Objects.requireNonNull(presenter);
-		this.subscription = subscription;
-		this.lastType = null;
-		this.currentMessage = null;
-		this.currentFunctionCallMessage = null;
-		subscription.request(1);
-	}
-
-	@Override
-	public void onNext(Incoming item) {
+	public void onEvents(StreamEvent[] events) {
 		Objects.requireNonNull(presenter);
-		Objects.requireNonNull(subscription);
-
-		// 当类型切换时结束上一条对应消息
-		if (item.type() != lastType) {
-			endCurrentMessages();
-			lastType = item.type();
-		}
 
-		switch (item.type()) {
-		case CONTENT -> handleContentMessage(item.payload());
+		boolean appended = false;
+		for (StreamEvent event : events) {
+			switch (event) {
+			case StreamEvent.ContentDelta delta -> {
+				appendContent(delta.text());
+				appended = true;
+			}
+			// 工具调用或流结束时结束当前消息
+			case StreamEvent.ToolCall toolCall -> {
+				updateIf(appended);
+				appended = false;
+				endCurrentMessage();
+			}
+			case StreamEvent.Done done -> {
+				updateIf(appended);
+				appended = false;
+				endCurrentMessage();
+			}
+			case StreamEvent.Failure failure -> {
+				updateIf(appended);
+				appended = false;
+				endCurrentMessage();
+				if (!(failure.cause() instanceof CancellationException)) {
+					logger.error(failure.cause().getMessage(), failure.cause());
+				}
+			}
+			default -> {
+			}
+			}
 		}
-
-		subscription.request(1);
+		updateIf(appended);
 	}
 
-	private void handleContentMessage(Object payload) {
+	private void appendContent(String text) {
 		if (Objects.isNull(currentMessage)) {
 			currentMessage = presenter.beginMessageFromAssistant();
 		}
 		if (Objects.nonNull(currentMessage)) {
-			currentMessage.append(payload.toString());
+			currentMessage.append(text);
+		}
+	}
+
+	private void updateIf(boolean appended) {
+		if (appended && Objects.nonNull(currentMessage)) {
 			presenter.updateMessageFromAssistant(currentMessage);
 		}
 	}
 
-	private void endCurrentMessages() {
+	private void endCurrentMessage() {
 		if (Objects.nonNull(currentMessage)) {
 			presenter.endMessageFromAssistant(currentMessage);
 			currentMessage = null;
 		}
-		if (Objects.nonNull(currentFunctionCallMessage)) {
-			presenter.endMessageFromAssistant(currentFunctionCallMessage);
-			currentFunctionCallMessage = null;
-		}
-	}
-
-	@Override
-	public void onError(Throwable throwable) {
-		logger.error(throwable.getMessage(), throwable);
-	}
-
-	@Override
-	public void onComplete() {
-		endCurrentMessages();
-		subscription = null;
 	}
 }
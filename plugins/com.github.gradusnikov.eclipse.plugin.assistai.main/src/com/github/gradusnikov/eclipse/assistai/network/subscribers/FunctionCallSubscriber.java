@@ -1,24 +1,29 @@
 package com.github.gradusnikov.eclipse.assistai.network.subscribers;
 
-import java.util.List;
-import java.util.concurrent.Flow;
-import java.util.concurrent.Flow.Subscription;
-
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
 
 import com.github.gradusnikov.eclipse.assistai.chat.FunctionCall;
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
 import com.github.gradusnikov.eclipse.assistai.jobs.ExecuteFunctionCallJob;
-import com.github.gradusnikov.eclipse.assistai.tools.FunctionCallParser;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEvent;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
 import com.github.gradusnikov.eclipse.assistai.view.ChatViewPresenter;
-import com.github.gradusnikov.eclipse.assistai.view.PartAccessor;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Provider;
 
+/**
+ * Starts the function calls of a response while it is still streaming. The
+ * first call schedules an {@link ExecuteFunctionCallJob}, which receives every
+ * call as soon as the client has assembled it and sends all the results back
+ * once the stream has completed and all calls have finished.
+ * <p>
+ * An instance follows a single response: subscribe a new one to every client.
+ * The events of a stream are delivered one batch at a time, so the job needs
+ * no synchronization.
+ */
 @Creatable
-public class FunctionCallSubscriber implements Flow.Subscriber<Incoming> {
+public class FunctionCallSubscriber implements StreamEventSubscriber {
 	@Inject
 	private ILog logger;
 	@Inject
@@ -27,62 +32,38 @@ public class FunctionCallSubscriber implements Flow.Subscriber<Incoming> {
 
 	@Inject
 	private ChatViewPresenter presenter;
-	private Subscription subscription;
-	private final StringBuffer jsonBuffer;
-
-	public FunctionCallSubscriber() {
-		jsonBuffer = new StringBuffer();
-	}
+	private ExecuteFunctionCallJob job;
 
 	@Override
-	public void onSubscribe(Subscription subscription) {
-		this.subscription = subscription;
-		jsonBuffer.setLength(0);
-		subscription.request(1);
-	}
-
-	@Override
-	public void onNext(Incoming item) {
-		if (Incoming.Type.FUNCTION_CALL == item.type()) {
-			jsonBuffer.append(item.payload());
+	public void onEvents(StreamEvent[] events) {
+		for (StreamEvent event : events) {
+			switch (event) {
+			case StreamEvent.ToolCall toolCall -> startFunctionCall(toolCall.functionCall());
+			case StreamEvent.Done done -> endOfFunctionCalls(true);
+			// the response is incomplete, do not send the results of its calls
+			case StreamEvent.Failure failure -> endOfFunctionCalls(false);
+			default -> {
+			}
+			}
 		}
-		subscription.request(1);
-	}
-
-	@Override
-	public void onError(Throwable throwable) {
-		jsonBuffer.setLength(0);
 	}
 
-	@Override
-	public void onComplete() {
-		String json = jsonBuffer.toString();
-		System.out.println("SSSSSSSSSSSSS:" + json);
-		if (!json.startsWith("function_call")) {
-			subscription.request(1);
-			return;
+	private void startFunctionCall(FunctionCall functionCall) {
+		if (job == null) {
+			job = executeFunctionCallJobProvider.get();
+			job.setSystem(true);
+			job.setPresenter(presenter);
+			job.schedule();
 		}
-		try {
-//			if (json.endsWith(":")) {
-//				json += "{}";
-//			}
-//			json += "}";
-			String substring = json.substring(13);
-			substring = "[" + substring + "]";
-			List<FunctionCall> tools = FunctionCallParser.parseFunctionCalls(substring);
-			if (!tools.isEmpty()) {
-				ExecuteFunctionCallJob job = executeFunctionCallJobProvider.get();
-				job.setFunctionCalls(tools);
-				job.setSystem(true);
-				job.setPresenter(presenter);
-				job.schedule();
-				logger.info("Scheduled batch job with " + tools.size() + " function calls");
-			}
+		job.addFunctionCall(functionCall);
+		logger.info("Started function call " + functionCall.name());
+	}
 
-		} catch (Exception e) {
-			logger.error(e.getMessage(), e);
+	private void endOfFunctionCalls(boolean sendResults) {
+		if (job != null) {
+			job.endOfFunctionCalls(sendResults);
+			job = null;
 		}
-		subscription.request(1);
 	}
 
 }
@@ -1,39 +1,41 @@
 package com.github.gradusnikov.eclipse.assistai.network.subscribers;
 
-import java.util.concurrent.Flow;
-import java.util.concurrent.Flow.Subscription;
-
 import org.eclipse.e4.core.di.annotations.Creatable;
 
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEvent;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventBus;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
 
 import jakarta.inject.Singleton;
 
+/**
+ * Echoes the streamed responses to the console, for diagnostics. Events are
+ * dropped rather than slowing the stream down when the console lags behind.
+ */
 @Creatable
 @Singleton
-public class PrintMessageSubscriber implements Flow.Subscriber<Incoming> {
-	private Flow.Subscription subscription;
-
-	@Override
-	public void onSubscribe(Subscription subscription) {
-		this.subscription = subscription;
-		subscription.request(1);
-	}
-
-	@Override
-	public void onNext(Incoming item) {
-		System.out.print(item.payload());
-		subscription.request(1);
-	}
+public class PrintMessageSubscriber implements StreamEventSubscriber {
 
 	@Override
-	public void onError(Throwable throwable) {
+	public void onEvents(StreamEvent[] events) {
+		var out = new StringBuilder();
+		for (StreamEvent event : events) {
+			switch (event) {
+			case StreamEvent.ContentDelta delta -> out.append(delta.text());
+			case StreamEvent.ToolCall toolCall -> out.append("\n[tool call] ").append(toolCall.functionCall().name()).append('\n');
+			case StreamEvent.Usage usage -> out.append("\n[usage] ").append(usage.usage());
+			case StreamEvent.Failure failure -> out.append("\n[failed] ").append(failure.cause()).append("\n\n");
+			case StreamEvent.Done done -> out.append("\n\n");
+			default -> {
+			}
+			}
+		}
+		System.out.print(out);
 	}
 
 	@Override
-	public void onComplete() {
-		System.out.print("\n\n");
-		subscription.request(1);
+	public StreamEventBus.Overflow overflow() {
+		return StreamEventBus.Overflow.DROP;
 	}
 
 }
@@ -5,8 +5,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.concurrent.Flow;
-import java.util.concurrent.Flow.Subscription;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -14,23 +12,30 @@ import jakarta.inject.Singleton;
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.e4.core.di.annotations.Creatable;
 
-import com.github.gradusnikov.eclipse.assistai.chat.Incoming;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEvent;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventBus;
+import com.github.gradusnikov.eclipse.assistai.network.events.StreamEventSubscriber;
 
+/**
+ * Appends the streamed responses to a log file, for diagnostics. A batch is
+ * written with a single append, and events are dropped rather than slowing
+ * the stream down when the disk lags behind.
+ */
 @Creatable
 @Singleton
-public class PrintToFileMessageSubscriber implements Flow.Subscriber<Incoming>
+public class PrintToFileMessageSubscriber implements StreamEventSubscriber
 {
-    private Flow.Subscription subscription;
-    
     @Inject
     private ILog logger;
-    
+
+    private boolean inMessage;
+
     private Path getFile()
     {
         Path path = Paths.get( System.getProperty( "user.home" ), "assitai.log" );
         return path;
     }
-    
+
     private void write( String str )
     {
         try
@@ -43,31 +48,39 @@ public class PrintToFileMessageSubscriber implements Flow.Subscriber<Incoming>
         }
 
     }
-    @Override
-    public void onSubscribe(Subscription subscription)
-    {
-        logger.info( "Opening a log file: " + getFile() );        
-        this.subscription = subscription;
-        write( "\n>--- BEGIN MESSAGE ---\n" );
-        subscription.request(1);
-    }
-    @Override
-    public void onNext(Incoming item)
-    {
-        write( item.payload().toString() );
-        subscription.request(1);
-    }
 
     @Override
-    public void onError(Throwable throwable)
+    public void onEvents( StreamEvent[] events )
     {
-//        subscription.request(1);
+        var out = new StringBuilder();
+        for ( StreamEvent event : events )
+        {
+            if ( !inMessage )
+            {
+                logger.info( "Opening a log file: " + getFile() );
+                out.append( "\n>--- BEGIN MESSAGE ---\n" );
+                inMessage = true;
+            }
+            switch ( event )
+            {
+                case StreamEvent.ContentDelta delta -> out.append( delta.text() );
+                case StreamEvent.ToolCall toolCall -> out.append( "\n[tool call] " ).append( toolCall.functionCall() ).append( '\n' );
+                case StreamEvent.Usage usage -> out.append( "\n[usage] " ).append( usage.usage() );
+                case StreamEvent.Failure failure -> out.append( "\n[failed] " ).append( failure.cause() );
+                default -> {}
+            }
+            if ( event.isTerminal() )
+            {
+                out.append( "\n--- END MESSAGE ---\n" );
+                inMessage = false;
+            }
+        }
+        write( out.toString() );
     }
 
     @Override
-    public void onComplete()
+    public StreamEventBus.Overflow overflow()
     {
-        write( "\n--- END MESSAGE ---\n" );
-        subscription.request(1);
+        return StreamEventBus.Overflow.DROP;
     }
 }
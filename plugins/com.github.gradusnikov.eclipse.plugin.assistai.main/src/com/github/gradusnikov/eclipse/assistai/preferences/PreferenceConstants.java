@@ -7,6 +7,13 @@ public class PreferenceConstants
 {
     public static final String ASSISTAI_CONNECTION_TIMEOUT_SECONDS = "AssistAIConnectionTimeoutSeconds";
     public static final String ASSISTAI_REQUEST_TIMEOUT_SECONDS = "AssistAIRequestTimeoutSeconds";
+    public static final String ASSISTAI_HTTP2_ENABLED = "AssistAIHttp2Enabled";
+    public static final String ASSISTAI_UI_UPDATE_INTERVAL_MILLIS = "AssistAIUiUpdateIntervalMillis";
+    public static final String ASSISTAI_DEBUG_PRINT_STREAM = "AssistAIDebugPrintStream";
+    public static final String ASSISTAI_DEBUG_LOG_STREAM_TO_FILE = "AssistAIDebugLogStreamToFile";
+    public static final String ASSISTAI_DEFAULT_CONTEXT_BUDGET = "AssistAIDefaultContextBudget";
+    public static final String ASSISTAI_WEB_CACHE_TTL_MINUTES = "AssistAIWebCacheTtlMinutes";
+    public static final String ASSISTAI_WEB_CACHE_MAX_MEGABYTES = "AssistAIWebCacheMaxMegabytes";
     public static final String ASSISTAI_SELECTED_MODEL = "AssistaAISelectedModel";
     public static final String ASSISTAI_DEFINED_MODELS = "AssistAIDefinedModels";
     
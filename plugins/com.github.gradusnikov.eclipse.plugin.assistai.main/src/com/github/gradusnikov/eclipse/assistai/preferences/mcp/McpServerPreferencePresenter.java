@@ -1,12 +1,9 @@
 package com.github.gradusnikov.eclipse.assistai.preferences.mcp;
 
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -16,6 +13,8 @@ import org.eclipse.jface.preference.IPreferenceStore;
 
 import com.github.gradusnikov.eclipse.assistai.Activator;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry.ClientStatus;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpClientRetistry.State;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpServerDescriptor;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpServerDescriptor.McpServerDescriptorWithStatus;
 import com.github.gradusnikov.eclipse.assistai.mcp.McpServerDescriptor.Status;
@@ -33,7 +32,6 @@ import jakarta.inject.Singleton;
 public class McpServerPreferencePresenter
 {
 
-    private static final int MCP_SERVER_PING_TIMEOUT_SECONDS = 1;
     private final McpClientRetistry clientRetistry;
     private final ILog logger;
     private IPreferenceStore  preferenceStore;
@@ -66,32 +64,29 @@ public class McpServerPreferencePresenter
     }
     
     /**
-     * Get all defined MCP servers
+     * Get all defined MCP servers with the startup state tracked by the client
+     * registry. Nothing is pinged, so a client that is still starting is shown
+     * as such.
      * 
      * @return list of MCP server descriptors
      */
     public List<McpServerDescriptorWithStatus> getServersWithStatus() {
-        var servers = getServers();
-        var list = servers.stream().map(server -> {
-            try 
+        Map<String, State> states = clientRetistry.getClientStatus()
+                                                  .stream()
+                                                  .collect(Collectors.toMap(ClientStatus::name, ClientStatus::state));
+        var list = getServers().stream().map(server -> {
+            if (clientRetistry.hasBuiltInServer(server.name()))
             {
-                var client = clientRetistry.listClients().get(server.name());
-                Objects.requireNonNull(server.name(), "Failed to ping MCP server: " + server.name());
-                var result = CompletableFuture.supplyAsync(client::ping)
-                                              .get(MCP_SERVER_PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                Objects.requireNonNull(result, "Failed to ping MCP server: " + server.name());
+                // built-in servers are called in-process, they are always running
                 return new McpServerDescriptorWithStatus(server, Status.RUNNING);
             }
-            catch (TimeoutException e) 
-            {
-                logger.error("Ping to MCP server timed out: " + server.name());
-                return new McpServerDescriptorWithStatus(server, Status.FAILED);
-            }
-            catch (Exception e) 
-            {
-                logger.error("Failed to connect to MCP server: " + e.getMessage());
-                return new McpServerDescriptorWithStatus(server, Status.FAILED);
-            }
+            State state = states.get(server.name());
+            Status status = state == null ? Status.NOT_CONNECTED : switch (state) {
+                case STARTING -> Status.STARTING;
+                case READY -> Status.RUNNING;
+                case FAILED -> Status.FAILED;
+            };
+            return new McpServerDescriptorWithStatus(server, status);
         }).collect(Collectors.toList());
         return list;
     }
@@ -1,7 +1,10 @@
 package com.github.gradusnikov.eclipse.assistai.preferences.models;
 
 /**
- * 
+ * Describes a model API and the capabilities of the model.
+ * <p>
+ * The {@code contextBudget} limits the estimated number of input tokens sent
+ * to the model; {@code 0} selects a default based on the model name.
  */
 public record ModelApiDescriptor(
          String uid,
@@ -12,5 +15,6 @@ public record ModelApiDescriptor(
          int temperature,
          boolean vision,
          boolean functionCalling,
-         boolean toolCalling
+         boolean toolCalling,
+         int contextBudget
          ) {} 
\ No newline at end of file
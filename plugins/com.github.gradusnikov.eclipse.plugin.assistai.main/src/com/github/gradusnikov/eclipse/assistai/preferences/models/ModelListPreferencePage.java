@@ -50,6 +50,8 @@ public class ModelListPreferencePage extends PreferencePage implements IWorkbenc
 
 	private Button withToolCalls;
 
+	private Text contextBudget;
+
 	private Scale withTemperature;
 
 	private Group form;
@@ -119,11 +121,19 @@ public class ModelListPreferencePage extends PreferencePage implements IWorkbenc
 		int selectedIndex = modelTable.getSelectionIndex();
 		ModelApiDescriptor updatedModel = new ModelApiDescriptor("", "openai", apiUrl.getText(), apiKey.getText(),
 				modelName.getText(), withTemperature.getSelection(), withVision.getSelection(),
-				withFunctionCalls.getSelection(), withToolCalls.getSelection());
+				withFunctionCalls.getSelection(), withToolCalls.getSelection(), parseContextBudget());
 		presenter.saveModel(selectedIndex, updatedModel);
 		super.performApply();
 	}
 
+	private int parseContextBudget() {
+		try {
+			return Math.max(0, Integer.parseInt(contextBudget.getText().trim()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
 	@Override
 	protected void performDefaults() {
 		super.performDefaults();
@@ -158,6 +168,8 @@ public class ModelListPreferencePage extends PreferencePage implements IWorkbenc
 		withFunctionCalls = addCheckField(form, "With Function Calls:");
 		withToolCalls = addCheckField(form, "With Tool Calls:");
 		withTemperature = addScaleField(form, "Temperature");
+		contextBudget = addTextField(form, "Context Budget (tokens):");
+		contextBudget.setToolTipText("Maximum number of input tokens sent to the model. Leave empty to use the default.");
 
 		return form;
 	}
@@ -235,6 +247,7 @@ public class ModelListPreferencePage extends PreferencePage implements IWorkbenc
 			withVision.setSelection(modelApiDescriptor.vision());
 			withFunctionCalls.setSelection(modelApiDescriptor.functionCalling());
 			withToolCalls.setSelection(modelApiDescriptor.toolCalling());
+			contextBudget.setText(modelApiDescriptor.contextBudget() > 0 ? String.valueOf(modelApiDescriptor.contextBudget()) : "");
 		});
 		setDetailsEditable(true);
 	}
@@ -248,6 +261,7 @@ public class ModelListPreferencePage extends PreferencePage implements IWorkbenc
 			withVision.setSelection(false);
 			withFunctionCalls.setSelection(false);
 			withToolCalls.setSelection(false);
+			contextBudget.setText("");
 		});
 		setDetailsEditable(false);
 	}
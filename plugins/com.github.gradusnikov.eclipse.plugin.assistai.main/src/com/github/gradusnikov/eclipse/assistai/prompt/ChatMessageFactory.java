@@ -1,7 +1,9 @@
 package com.github.gradusnikov.eclipse.assistai.prompt;
 
+import java.util.ArrayList;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -18,6 +20,7 @@ import jakarta.inject.Singleton;
 @Singleton
 public class ChatMessageFactory
 {
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile( "\\$\\{(\\S+)\\}" );
     
 	@Inject
 	private PromptContextValueProvider contextValues;
@@ -38,6 +41,15 @@ public class ChatMessageFactory
     }
     
     public ChatMessage createUserChatMessage( Prompts type)
+    {
+        return createUserChatMessageAsync( type ).join();
+    }
+    
+    /**
+     * Creates the message of a predefined prompt, resolving its context
+     * variables in the background.
+     */
+    public CompletableFuture<ChatMessage> createUserChatMessageAsync( Prompts type )
     {
         Supplier<String> promptSupplier =
             switch ( type )
@@ -50,7 +62,7 @@ public class ChatMessageFactory
                 default ->
                     throw new IllegalArgumentException();
             };
-        return createUserChatMessage( promptSupplier );
+        return createUserChatMessageAsync( promptSupplier );
     }
     
     private Supplier<String> fixErrorsPromptSupplier( )
@@ -86,26 +98,60 @@ public class ChatMessageFactory
     
     public ChatMessage createUserChatMessage( Supplier<String> promptSupplier )
     {
-        ChatMessage message = new ChatMessage( UUID.randomUUID().toString(), "user" );
-        message.setContent( updatePromptText( promptSupplier.get() ) );
-        return message;        
+        return createUserChatMessageAsync( promptSupplier ).join();
+    }
+    
+    /**
+     * Creates a user message from a prompt, resolving its context variables in
+     * the background. The future completes on a worker thread.
+     */
+    public CompletableFuture<ChatMessage> createUserChatMessageAsync( Supplier<String> promptSupplier )
+    {
+        return updatePromptTextAsync( promptSupplier.get() ).thenApply( text -> {
+            ChatMessage message = new ChatMessage( UUID.randomUUID().toString(), "user" );
+            message.setContent( text );
+            return message;
+        } );
     }
     
+    /**
+     * Replaces the context variables of a prompt, waiting for their values.
+     * Must not be called on the UI thread, see {@link #updatePromptTextAsync(String)}.
+     */
     public String updatePromptText(String promptText) 
     {
-        var pattern = Pattern.compile("\\$\\{(\\S+)\\}");
-        var matcher = pattern.matcher(promptText);
-        var out = new StringBuilder();
-        while (matcher.find()) 
+        return updatePromptTextAsync( promptText ).join();
+    }
+    
+    /**
+     * Replaces the {@code ${...}} context variables of a prompt. The distinct
+     * variables are resolved once each, concurrently.
+     */
+    public CompletableFuture<String> updatePromptTextAsync( String promptText )
+    {
+        var keys = new ArrayList<String>();
+        var matcher = VARIABLE_PATTERN.matcher( promptText );
+        while ( matcher.find() )
         {
-            var key = matcher.group(1);
-            String replacement = Optional.ofNullable( contextValues.getContextValue(key) )
-                                         .map(Matcher::quoteReplacement)
-                                         .orElse( "" );
-            matcher.appendReplacement(out, replacement);
+            keys.add( matcher.group( 1 ) );
         }
-        matcher.appendTail(out);
-        return out.toString();
+        if ( keys.isEmpty() )
+        {
+            return CompletableFuture.completedFuture( promptText );
+        }
+        return contextValues.resolve( keys ).thenApply( values -> {
+            var out = new StringBuilder();
+            var replacer = VARIABLE_PATTERN.matcher( promptText );
+            while ( replacer.find() )
+            {
+                String replacement = Optional.ofNullable( values.get( replacer.group( 1 ) ) )
+                                             .map( Matcher::quoteReplacement )
+                                             .orElse( "" );
+                replacer.appendReplacement( out, replacement );
+            }
+            replacer.appendTail( out );
+            return out.toString();
+        } );
     }
 
 
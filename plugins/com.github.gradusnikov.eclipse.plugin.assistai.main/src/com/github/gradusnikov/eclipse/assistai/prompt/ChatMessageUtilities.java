@@ -4,11 +4,9 @@ import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
-import org.eclipse.swt.graphics.ImageData;
-
 import com.github.gradusnikov.eclipse.assistai.chat.Attachment;
 import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
-import com.github.gradusnikov.eclipse.assistai.tools.ImageUtilities;
+import com.github.gradusnikov.eclipse.assistai.tools.EncodedImage;
 
 public class ChatMessageUtilities
 {
@@ -16,9 +14,9 @@ public class ChatMessageUtilities
     {
         String content = message.getContent();
 
-        List<ImageData> images = message.getAttachments()
+        List<EncodedImage> images = message.getAttachments()
                 .stream()
-                .map( Attachment::getImageData )
+                .map( Attachment::getImage )
                 .filter( Objects::nonNull )
                 .collect( Collectors.toList() );
 
@@ -31,8 +29,7 @@ public class ChatMessageUtilities
         if (!images.isEmpty())
         {
             content += "\n" + images.stream()
-                    .map( ImageUtilities::toBase64Jpeg )
-                    .map( data -> "![image](data:image/jpeg;base64," + data + ")" )
+                    .map( image -> "![image](" + image.toDataUrl() + ")" )
                     .collect( Collectors.joining( "\n" ) );
         }
 
@@ -5,16 +5,26 @@ import java.util.Arrays;
 import java.util.Base64;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Scanner;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.text.StringEscapeUtils;
+import org.eclipse.core.runtime.ILog;
 
 /**
  * A utility class for parsing and converting a text prompt to an HTML formatted
  * string.
+ * <p>
+ * Besides converting a complete text with {@link #parseToHtml()}, the parser
+ * can render a message incrementally while it is being streamed: text is fed
+ * with {@link #append(String)} and every call reports the HTML of the blocks
+ * completed since the previous call, and the HTML of the trailing block that
+ * is still open. Completed blocks never change afterwards, so only the open
+ * block has to be rendered again when more text arrives; the lines of an open
+ * code block are rendered once as well, only its last line is rendered again.
  */
 public class MarkdownParser
 {
@@ -76,8 +86,29 @@ public class MarkdownParser
     private EnumSet<ParserState> state                               = EnumSet.noneOf( ParserState.class );
 
     private final String         prompt;
+
+    private final ILog           logger;
     
     private final MarkdownTable  table = new MarkdownTable();
+
+    private final StringBuilder  latexBlockBuffer = new StringBuilder();
+
+    // incremental rendering state
+    private final StringBuilder  pendingText      = new StringBuilder();
+    private final StringBuilder  openBlockText    = new StringBuilder();
+    private final StringBuilder  openBlockHtml    = new StringBuilder();
+
+    /**
+     * The result of an incremental {@link MarkdownParser#append(String)}.
+     *
+     * @param completedHtml
+     *            the HTML of the blocks completed by the appended text, to be
+     *            added after the previously completed blocks; may be empty
+     * @param openHtml
+     *            the HTML of the trailing block that is not complete yet,
+     *            replacing the previously reported open block
+     */
+    public record Update( String completedHtml, String openHtml ) {}
     
     private class MarkdownTable
     {
@@ -129,8 +160,25 @@ public class MarkdownParser
     
     
     public MarkdownParser( String prompt )
+    {
+        this( prompt, null );
+    }
+
+    /**
+     * Creates a parser for incremental rendering with {@link #append(String)}.
+     *
+     * @param logger
+     *            reports text that could not be rendered
+     */
+    public MarkdownParser( ILog logger )
+    {
+        this( "", Objects.requireNonNull( logger ) );
+    }
+
+    private MarkdownParser( String prompt, ILog logger )
     {
         this.prompt = prompt;
+        this.logger = logger;
     }
 
     /**
@@ -141,8 +189,6 @@ public class MarkdownParser
     public String parseToHtml()
     {
         var out = new StringBuilder();
-        var latexBlockBuffer = new StringBuilder();
-        
         try (var scanner = new Scanner( prompt ))
         {
             scanner.useDelimiter( "\n" );
@@ -150,108 +196,199 @@ public class MarkdownParser
             while ( scanner.hasNext() )
             {
                 var line = scanner.next();
-                
-                var codeBlockMatcher = CODE_BLOCK_PATTERN.matcher( line );
-                var functionBlockMatcher = FUNCTION_CALL_PATTERN.matcher( line );
-                var latexMultilineBlockOpenMatcher = LATEX_MULTILINE_BLOCK_OPEN_PATTERN.matcher( line );
-                var latexSinglelineBlockOpenMatcher = LATEX_SINGLELINE_BLOCK_OPEN_PATTERN.matcher( line );
-                var latexCloseMatcher = LATEX_BLOCK_CLOSE_PATTERN.matcher( line );
-                var tableRowMatcher = TABLE_ROW_PATTERN.matcher( line );
-                var tableSeparatorMatcher = TABLE_SEPARATOR_PATTERN.matcher( line );
-                
-                // directly render code block content, skip other checks
-                boolean isCodeBlockEnd = CODE_BLOCK_PATTERN.matcher(line).matches();
-                if ( state.contains( ParserState.CODE_BLOCK ) && !isCodeBlockEnd )
-                {
-                    handleContent( out, line, !scanner.hasNext() );
-                    continue;
-                }
-                
-                // render table if next line is not a table row or is last line
-                boolean isTableRow = TABLE_ROW_PATTERN.matcher(line).matches();
-                boolean isTableSeparator = TABLE_SEPARATOR_PATTERN.matcher(line).matches();
-                if ( state.contains( ParserState.TABLE ) &&  ( (!isTableRow && !isTableSeparator)  ) )
-                {
-                    state.remove( ParserState.TABLE );
-                    renderTable( out, table );
-                    table.clear();
-                }
-                
-                if ( state.contains( ParserState.LATEX_BLOCK ) )
-                {
-                    if ( latexCloseMatcher.find() )
-                    {
-                        String latexLine = replaceFirstPattern( line, LATEX_LINE_END_PATTERN, "" );
-                        latexBlockBuffer.append( latexLine );
-                        flushLatexBlockBuffer( latexBlockBuffer, out );
-                        state.remove( ParserState.LATEX_BLOCK );
-                    }
-                    else
-                    {
-                        latexBlockBuffer.append( line ).append( "\n" );
-                    }
-                }
-                else if ( codeBlockMatcher.find() )
-                {
-                    var lang = codeBlockMatcher.group( 1 );
-                    handleCodeBlock( out, lang );
-                }
-                else if ( functionBlockMatcher.find() )
-                {
-                    handleFunctionCall( out, line );
-                }
-                else if ( line.startsWith( TATT_CONTEXTSTART ) )
-                {
-                    handleTextAttachmentStart( out, line );
-                }
-                else if ( latexMultilineBlockOpenMatcher.find() )
-                {
-                    String latexLine = replaceFirstPattern( line, LATEX_LINE_START_PATTERN, "" );
-                    latexBlockBuffer.append( latexLine );
-                    state.add( ParserState.LATEX_BLOCK );
-                }
-                else if ( latexSinglelineBlockOpenMatcher.find() )
-                {
-                    String latexLine = replaceFirstPattern( line, LATEX_LINE_START_PATTERN, "" );
-                    latexLine = replaceFirstPattern( latexLine, LATEX_LINE_END_PATTERN, "" );
-                    latexBlockBuffer.append( latexLine );
-                    flushLatexBlockBuffer( latexBlockBuffer, out );
-                }
-                else if ( tableSeparatorMatcher.find() && state.contains( ParserState.TABLE ) )
-                {
-                    handleTableSeparator( out, tableSeparatorMatcher.group( 1 ) );
-                }
-                else if ( tableRowMatcher.find() )
-                {
-                    var tableRow = tableRowMatcher.group(1);
-                    handleTableRow( out, tableRow );
-                }
-                else
-                {
-                    handleContent( out, line, !scanner.hasNext() );
-                }
+                parseLine( out, line, !scanner.hasNext() );
             }
-            // handle any remaining table rows
-            if ( state.contains( ParserState.TABLE )  )
+            finish( out );
+        }
+        catch ( Exception e )
+        {
+            // Add error handling
+        	e.printStackTrace();
+            out.append( "<div class=\"error\">Error parsing content: " ).append( e.getMessage() ).append( "</div>" );
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends streamed text to the message being rendered.
+     * <p>
+     * A line is parsed only once it is known not to be the last line of the
+     * message, i.e. when some text follows its line break, because the last
+     * line is rendered differently. A block is complete when the parser is
+     * not inside a code block, table, LaTeX block or attachment after such a
+     * line. The open block is rendered by a fresh parser, so the result always
+     * equals {@link #parseToHtml()} of the whole text. An open code block is
+     * the exception: its complete lines were rendered as they were parsed, so
+     * only its last line is rendered and the block closed after them, the way
+     * {@link #parseToHtml()} closes it.
+     *
+     * @param text
+     *            the text to append
+     * @return the newly completed HTML and the HTML of the open block
+     */
+    public Update append( String text )
+    {
+        pendingText.append( text );
+        var completed = new StringBuilder();
+        try
+        {
+            int lineEnd;
+            while ( ( lineEnd = pendingText.indexOf( "\n" ) ) >= 0 && lineEnd + 1 < pendingText.length() )
             {
-                state.remove( ParserState.TABLE );
-                renderTable( out, table );
-                table.clear();
+                String line = pendingText.substring( 0, lineEnd );
+                pendingText.delete( 0, lineEnd + 1 );
+                openBlockText.append( line ).append( '\n' );
+                parseLine( openBlockHtml, line, false );
+                if ( state.isEmpty() )
+                {
+                    completed.append( openBlockHtml );
+                    openBlockHtml.setLength( 0 );
+                    openBlockText.setLength( 0 );
+                }
             }
+        }
+        catch ( Exception e )
+        {
+            logger.error( "Error parsing content: " + e.getMessage(), e );
+            completed.append( "<div class=\"error\">Error parsing content: " ).append( e.getMessage() ).append( "</div>" );
+        }
+        return new Update( completed.toString(), renderOpenBlock() );
+    }
+
+    /**
+     * Ends incremental rendering: the open block is reported as completed.
+     *
+     * @return the HTML of the remaining text
+     */
+    public Update complete()
+    {
+        String html = renderOpenBlock();
+        openBlockText.setLength( 0 );
+        openBlockHtml.setLength( 0 );
+        pendingText.setLength( 0 );
+        state.clear();
+        table.clear();
+        latexBlockBuffer.setLength( 0 );
+        return new Update( html, "" );
+    }
+
+    /**
+     * @return the HTML of the open block and the text after it, rendered as
+     *         the end of the message
+     */
+    private String renderOpenBlock()
+    {
+        if ( state.equals( EnumSet.of( ParserState.CODE_BLOCK ) ) && !pendingText.isEmpty() )
+        {
+            // the pending text is a single line, possibly with its line break
+            int length = pendingText.charAt( pendingText.length() - 1 ) == '\n' ? pendingText.length() - 1 : pendingText.length();
+            var out = new StringBuilder( openBlockHtml.length() + length + 32 ).append( openBlockHtml );
+            parseLine( out, pendingText.substring( 0, length ), true );
+            // rendering the last line closes the block, which stays open for the next lines
+            state.add( ParserState.CODE_BLOCK );
+            return out.toString();
+        }
+        return new MarkdownParser( openBlockText.toString() + pendingText ).parseToHtml();
+    }
 
-            // Handle any remaining LaTeX buffer content
-            if ( latexBlockBuffer.length() > 0 )
+    private void parseLine( StringBuilder out, String line, boolean lastLine )
+    {
+        var codeBlockMatcher = CODE_BLOCK_PATTERN.matcher( line );
+        var functionBlockMatcher = FUNCTION_CALL_PATTERN.matcher( line );
+        var latexMultilineBlockOpenMatcher = LATEX_MULTILINE_BLOCK_OPEN_PATTERN.matcher( line );
+        var latexSinglelineBlockOpenMatcher = LATEX_SINGLELINE_BLOCK_OPEN_PATTERN.matcher( line );
+        var latexCloseMatcher = LATEX_BLOCK_CLOSE_PATTERN.matcher( line );
+        var tableRowMatcher = TABLE_ROW_PATTERN.matcher( line );
+        var tableSeparatorMatcher = TABLE_SEPARATOR_PATTERN.matcher( line );
+        
+        // directly render code block content, skip other checks
+        boolean isCodeBlockEnd = CODE_BLOCK_PATTERN.matcher(line).matches();
+        if ( state.contains( ParserState.CODE_BLOCK ) && !isCodeBlockEnd )
+        {
+            handleContent( out, line, lastLine );
+            return;
+        }
+        
+        // render table if next line is not a table row or is last line
+        boolean isTableRow = TABLE_ROW_PATTERN.matcher(line).matches();
+        boolean isTableSeparator = TABLE_SEPARATOR_PATTERN.matcher(line).matches();
+        if ( state.contains( ParserState.TABLE ) &&  ( (!isTableRow && !isTableSeparator)  ) )
+        {
+            state.remove( ParserState.TABLE );
+            renderTable( out, table );
+            table.clear();
+        }
+        
+        if ( state.contains( ParserState.LATEX_BLOCK ) )
+        {
+            if ( latexCloseMatcher.find() )
             {
+                String latexLine = replaceFirstPattern( line, LATEX_LINE_END_PATTERN, "" );
+                latexBlockBuffer.append( latexLine );
                 flushLatexBlockBuffer( latexBlockBuffer, out );
+                state.remove( ParserState.LATEX_BLOCK );
+            }
+            else
+            {
+                latexBlockBuffer.append( line ).append( "\n" );
             }
         }
-        catch ( Exception e )
+        else if ( codeBlockMatcher.find() )
         {
-            // Add error handling
-        	e.printStackTrace();
-            out.append( "<div class=\"error\">Error parsing content: " ).append( e.getMessage() ).append( "</div>" );
+            var lang = codeBlockMatcher.group( 1 );
+            handleCodeBlock( out, lang );
+        }
+        else if ( functionBlockMatcher.find() )
+        {
+            handleFunctionCall( out, line );
+        }
+        else if ( line.startsWith( TATT_CONTEXTSTART ) )
+        {
+            handleTextAttachmentStart( out, line );
+        }
+        else if ( latexMultilineBlockOpenMatcher.find() )
+        {
+            String latexLine = replaceFirstPattern( line, LATEX_LINE_START_PATTERN, "" );
+            latexBlockBuffer.append( latexLine );
+            state.add( ParserState.LATEX_BLOCK );
+        }
+        else if ( latexSinglelineBlockOpenMatcher.find() )
+        {
+            String latexLine = replaceFirstPattern( line, LATEX_LINE_START_PATTERN, "" );
+            latexLine = replaceFirstPattern( latexLine, LATEX_LINE_END_PATTERN, "" );
+            latexBlockBuffer.append( latexLine );
+            flushLatexBlockBuffer( latexBlockBuffer, out );
+        }
+        else if ( tableSeparatorMatcher.find() && state.contains( ParserState.TABLE ) )
+        {
+            handleTableSeparator( out, tableSeparatorMatcher.group( 1 ) );
+        }
+        else if ( tableRowMatcher.find() )
+        {
+            var tableRow = tableRowMatcher.group(1);
+            handleTableRow( out, tableRow );
+        }
+        else
+        {
+            handleContent( out, line, lastLine );
+        }
+    }
+
+    private void finish( StringBuilder out )
+    {
+        // handle any remaining table rows
+        if ( state.contains( ParserState.TABLE )  )
+        {
+            state.remove( ParserState.TABLE );
+            renderTable( out, table );
+            table.clear();
+        }
+
+        // Handle any remaining LaTeX buffer content
+        if ( latexBlockBuffer.length() > 0 )
+        {
+            flushLatexBlockBuffer( latexBlockBuffer, out );
         }
-        return out.toString();
     }
 
     /**
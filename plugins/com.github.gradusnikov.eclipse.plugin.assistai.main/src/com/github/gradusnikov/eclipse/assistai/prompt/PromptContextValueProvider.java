@@ -1,7 +1,20 @@
 package com.github.gradusnikov.eclipse.assistai.prompt;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.Callable;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -17,6 +30,15 @@ import com.github.gradusnikov.eclipse.assistai.tools.UISynchronizeCallable;
 
 import jakarta.inject.Inject;
 
+/**
+ * Resolves the {@code ${...}} variables of the prompts.
+ * <p>
+ * Only the facts bound to the UI, the active editor file and its selection,
+ * are captured on the UI thread, in a single hop. All values are then
+ * computed concurrently on a pool of worker threads; each value has a timeout
+ * and a size limit, so a slow or huge value degrades to an empty or truncated
+ * one instead of holding up the prompt.
+ */
 @Creatable
 public class PromptContextValueProvider 
 {
@@ -30,6 +52,29 @@ public class PromptContextValueProvider
     private static final String CURRENT_FILE_NAME = "currentFileName";
     private static final String CURRENT_PROJECT_NAME = "currentProjectName";
     
+    /**
+     * How long a value may take to compute, and how many characters it may have.
+     */
+    private record Limits( Duration timeout, int maxLength ) {}
+    
+    private static final Limits DEFAULT_LIMITS = new Limits( Duration.ofSeconds( 5 ), 100_000 );
+    
+    private static final Map<String, Limits> LIMITS = Map.of(
+            CURRENT_FILE_CONTENT, new Limits( Duration.ofSeconds( 5 ), 200_000 ),
+            ERRORS, new Limits( Duration.ofSeconds( 10 ), 50_000 ),
+            CONSOLE_OUTPUT, new Limits( Duration.ofSeconds( 5 ), 50_000 ),
+            GIT_DIFF, new Limits( Duration.ofSeconds( 10 ), 100_000 ) );
+    
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool( new WorkerThreadFactory() );
+    
+    /**
+     * The facts captured on the UI thread.
+     * 
+     * @param file the file of the active editor
+     * @param selection the formatted selection of the active editor, if requested
+     */
+    private record UiSnapshot( Optional<IFile> file, String selection ) {}
+    
     @Inject
     ILog logger;
     @Inject
@@ -43,43 +88,138 @@ public class PromptContextValueProvider
 	@Inject
 	private GitService gitService;
 	
+	/**
+	 * Resolves a single value. The calling thread waits for the value, so it
+	 * should not be the UI thread; see {@link #resolve(Collection)}.
+	 */
 	public String getContextValue( String key )
 	{
 	    Objects.requireNonNull( key );
+	    return resolve( List.of( key ) ).join().getOrDefault( key, "" );
+	}
+	
+	/**
+	 * Resolves the values of the given keys concurrently. Each distinct key is
+	 * resolved once; a value that fails or times out resolves to an empty
+	 * string. The returned future does not complete on the UI thread, and the
+	 * UI thread must not wait for it, as some values need a short hop to the UI
+	 * thread.
+	 * 
+	 * @param keys the variable names, without {@code ${}}
+	 * @return the values by key, in the order of the keys
+	 */
+	public CompletableFuture<Map<String, String>> resolve( Collection<String> keys )
+	{
+	    Set<String> distinctKeys = new LinkedHashSet<>( keys );
+	    if ( distinctKeys.isEmpty() )
+	    {
+	        return CompletableFuture.completedFuture( Map.of() );
+	    }
+	    UiSnapshot snapshot = captureUiSnapshot( distinctKeys );
 	    
+	    var futures = new LinkedHashMap<String, CompletableFuture<String>>();
+	    for ( String key : distinctKeys )
+	    {
+	        Limits limits = LIMITS.getOrDefault( key, DEFAULT_LIMITS );
+	        var future = CompletableFuture.supplyAsync( () -> computeValue( key, snapshot ), WORKERS )
+	                                      .orTimeout( limits.timeout().toMillis(), TimeUnit.MILLISECONDS )
+	                                      .handle( ( value, e ) -> {
+	                                          if ( e != null )
+	                                          {
+	                                              logger.warn( "Cannot resolve ${" + key + "}: " + e );
+	                                              return "";
+	                                          }
+	                                          return truncate( value, limits.maxLength() );
+	                                      } );
+	        futures.put( key, future );
+	    }
+	    return CompletableFuture.allOf( futures.values().toArray( CompletableFuture[]::new ) )
+	                            .thenApply( ignored -> {
+	                                var values = new LinkedHashMap<String, String>();
+	                                futures.forEach( ( key, future ) -> values.put( key, future.join() ) );
+	                                return values;
+	                            } );
+	}
+	
+	/**
+	 * Captures the active editor file, and the selection if needed, in one
+	 * call to the UI thread.
+	 */
+	private UiSnapshot captureUiSnapshot( Set<String> keys )
+	{
+	    try
+	    {
+	        return uiSync.syncCall( () -> {
+	            Optional<IFile> file = editorService.getCurrentlyOpenedFile();
+	            String selection = "";
+	            if ( keys.contains( SELECTED_CONTENT ) )
+	            {
+	                try
+	                {
+	                    selection = editorService.getEditorSelection();
+	                }
+	                catch ( Exception e )
+	                {
+	                    logger.error( e.getMessage(), e );
+	                }
+	            }
+	            return new UiSnapshot( file, selection );
+	        } );
+	    }
+	    catch ( Exception e )
+	    {
+	        logger.error( e.getMessage(), e );
+	        return new UiSnapshot( Optional.empty(), "" );
+	    }
+	}
+	
+	private String computeValue( String key, UiSnapshot snapshot )
+	{
+	    Optional<IFile> file = snapshot.file();
 	    return switch (  key ) {
-            case CURRENT_PROJECT_NAME -> safeGetString( () -> editorService.getCurrentlyOpenedFile().map( IFile::getProject ).map(IProject::getName).orElse( "" ) );
-	        case CURRENT_FILE_PATH -> safeGetString( () -> editorService.getCurrentlyOpenedFile().map( IFile::getProjectRelativePath ).map(IPath::toString).orElse( "" ) );
-            case CURRENT_FILE_NAME -> safeGetString( () -> editorService.getCurrentlyOpenedFile().map( IFile::getName ).orElse( "" ) );
-	        case CURRENT_FILE_CONTENT -> safeGetString(() -> editorService.getCurrentlyOpenedFileContent() );
-	        case SELECTED_CONTENT -> safeGetString(() -> editorService.getEditorSelection() );
-	        case ERRORS -> safeGetString( () -> codeAnalysisService.getCompilationErrors( getContextValue(CURRENT_PROJECT_NAME), "ERROR", -1 ) );
-	        case CONSOLE_OUTPUT -> safeGetString( () -> consoleService.getConsoleOutput( null, 100, true) ) ;
-            case GIT_DIFF -> safeGetString( () -> gitService.getCurrentDiff() ) ;
+            case CURRENT_PROJECT_NAME -> projectName( file );
+	        case CURRENT_FILE_PATH -> file.map( IFile::getProjectRelativePath ).map(IPath::toString).orElse( "" );
+            case CURRENT_FILE_NAME -> file.map( IFile::getName ).orElse( "" );
+	        case CURRENT_FILE_CONTENT -> file.map( editorService::getFileContent ).orElse( "" );
+	        case SELECTED_CONTENT -> snapshot.selection();
+	        case ERRORS -> codeAnalysisService.getCompilationErrors( projectName( file ), "ERROR", -1 );
+	        case CONSOLE_OUTPUT -> consoleService.getConsoleOutput( null, 100, true);
+            case GIT_DIFF -> file.map( gitService::getStagedDiff ).orElse( "" );
 	        default -> {
                 logger.warn("Unknown context key: " + key);
                 yield "";
 	        }
 	    };
 	}
-    /**
-     * Safely executes a supplier function and handles any exceptions.
-     * 
-     * @param supplier The function that provides the context value
-     * @return The context value, or empty string if an error occurs
-     */
-	private String safeGetString( Callable<String> supplier )
+	
+	private static String projectName( Optional<IFile> file )
 	{
-	    try
+	    return file.map( IFile::getProject ).map( IProject::getName ).orElse( "" );
+	}
+	
+	private static String truncate( String value, int maxLength )
+	{
+	    if ( value == null )
 	    {
-	        return uiSync.syncCall( supplier );
+	        return "";
 	    }
-	    catch ( Exception e )
+	    if ( value.length() <= maxLength )
 	    {
-	        logger.error( e.getMessage(), e );
-	        return "";
+	        return value;
 	    }
+	    return value.substring( 0, maxLength ) + "\n[... " + ( value.length() - maxLength ) + " characters truncated]";
 	}
 	
-	
+	private static class WorkerThreadFactory implements ThreadFactory
+	{
+	    private final AtomicInteger count = new AtomicInteger();
+	    
+	    @Override
+	    public Thread newThread( Runnable runnable )
+	    {
+	        Thread thread = new Thread( runnable, "AssistAI prompt context " + count.incrementAndGet() );
+	        thread.setDaemon( true );
+	        return thread;
+	    }
+	}
 }
@@ -90,7 +90,8 @@ public class ModelApiDescriptorRepository
 	    		  updatedModelStub.temperature(), 
 	    		  updatedModelStub.vision(),
 	    		  updatedModelStub.functionCalling(),
-	    		  updatedModelStub.toolCalling()
+	    		  updatedModelStub.toolCalling(),
+	    		  updatedModelStub.contextBudget()
 	       );
         addOrReplace.accept( toStore );
         
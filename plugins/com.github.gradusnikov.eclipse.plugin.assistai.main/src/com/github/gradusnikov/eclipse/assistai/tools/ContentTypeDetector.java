@@ -21,11 +21,15 @@ import jakarta.inject.Singleton;
 public class ContentTypeDetector
 {
     private static final String UNKNOWN = "unknown";
+    
+    /** Shared by all users, creating a Tika loads its whole MIME type registry */
+    static final Tika               TIKA    = new Tika();
+    
     private final Tika              tika;
 
     public ContentTypeDetector()
     {
-        this.tika = new Tika();
+        this.tika = TIKA;
     }
     
     public String detectCharset( byte[] content )
@@ -0,0 +1,130 @@
+package com.github.gradusnikov.eclipse.assistai.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.Objects;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+
+/**
+ * An image kept as compressed bytes, as sent to the language models.
+ * <p>
+ * Opaque images are stored as JPEG, images with transparency as PNG. The
+ * Base64 payloads are computed on first use and kept, so that an image is
+ * encoded once per conversation rather than once per request.
+ */
+public final class EncodedImage
+{
+    public static final String JPEG         = "image/jpeg";
+
+    public static final String PNG          = "image/png";
+
+    private static final int   JPEG_QUALITY = 85;
+
+    private final byte[]       bytes;
+
+    private final String       mimeType;
+
+    private final int          width;
+
+    private final int          height;
+
+    private volatile String    base64;
+
+    private volatile String    dataUrl;
+
+    private EncodedImage( byte[] bytes, String mimeType, int width, int height )
+    {
+        this.bytes = bytes;
+        this.mimeType = mimeType;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Compresses an image, scaling it down first if its longest edge exceeds
+     * {@code maxEdge}.
+     *
+     * @param image
+     *            the decoded image
+     * @param maxEdge
+     *            the maximum width and height in pixels
+     */
+    public static EncodedImage encode( ImageData image, int maxEdge )
+    {
+        Objects.requireNonNull( image, "ImageData argument is null" );
+        ImageData scaled = ImageUtilities.scaleToFit( image, maxEdge );
+        boolean transparent = scaled.getTransparencyType() != SWT.TRANSPARENCY_NONE;
+
+        ImageLoader loader = new ImageLoader();
+        loader.data = new ImageData[] { scaled };
+        loader.compression = JPEG_QUALITY;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        loader.save( output, transparent ? SWT.IMAGE_PNG : SWT.IMAGE_JPEG );
+        return new EncodedImage( output.toByteArray(), transparent ? PNG : JPEG, scaled.width, scaled.height );
+    }
+
+    public String getMimeType()
+    {
+        return mimeType;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return the size of the compressed image in bytes
+     */
+    public int getSize()
+    {
+        return bytes.length;
+    }
+
+    /**
+     * @return the compressed image as Base64, e.g. for an Anthropic or Gemini
+     *         image part
+     */
+    public String toBase64()
+    {
+        String result = base64;
+        if ( result == null )
+        {
+            result = Base64.getEncoder().encodeToString( bytes );
+            base64 = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the compressed image as a {@code data:} URL, e.g. for an OpenAI
+     *         image URL or markdown
+     */
+    public String toDataUrl()
+    {
+        String result = dataUrl;
+        if ( result == null )
+        {
+            result = "data:" + mimeType + ";base64," + toBase64();
+            dataUrl = result;
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the image again.
+     */
+    public ImageData toImageData()
+    {
+        return new ImageLoader().load( new ByteArrayInputStream( bytes ) )[0];
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.gradusnikov.eclipse.assistai.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Glob patterns over slash-separated resource paths, as accepted by the tools:
+ * {@code **} matches across folders, {@code *} and {@code ?} within a name,
+ * and {@code {a,b}} matches either alternative. A glob without a slash, e.g.
+ * {@code *.java}, matches the last segment of a path only.
+ */
+public final class GlobPattern
+{
+    private GlobPattern()
+    {
+    }
+
+    /**
+     * @param glob
+     *            a glob pattern; a leading slash is ignored
+     * @return a predicate testing relative paths without a leading slash
+     */
+    public static Predicate<String> compile( String glob )
+    {
+        String trimmed = glob.trim();
+        Pattern pattern = toPattern( trimmed );
+        if ( trimmed.contains( "/" ) )
+        {
+            return path -> pattern.matcher( path ).matches();
+        }
+        return path -> pattern.matcher( path.substring( path.lastIndexOf( '/' ) + 1 ) ).matches();
+    }
+
+    /**
+     * @param globs
+     *            comma or whitespace separated glob patterns, may be
+     *            {@code null}
+     * @return a predicate matching any of the globs, or {@code null} if there
+     *         are none
+     */
+    public static Predicate<String> compileAny( String globs )
+    {
+        if ( Objects.isNull( globs ) || globs.isBlank() )
+        {
+            return null;
+        }
+        List<Predicate<String>> predicates = Arrays.stream( split( globs ) )
+                                                   .filter( glob -> !glob.isBlank() )
+                                                   .map( GlobPattern::compile )
+                                                   .toList();
+        return path -> predicates.stream().anyMatch( predicate -> predicate.test( path ) );
+    }
+
+    /**
+     * Translates a glob into a regular expression.
+     */
+    private static Pattern toPattern( String glob )
+    {
+        var regex = new StringBuilder();
+        String normalized = glob.startsWith( "/" ) ? glob.substring( 1 ) : glob;
+        boolean inAlternatives = false;
+        for ( int i = 0; i < normalized.length(); i++ )
+        {
+            char c = normalized.charAt( i );
+            switch ( c )
+            {
+                case '*' ->
+                {
+                    if ( normalized.startsWith( "**/", i ) )
+                    {
+                        regex.append( "(?:.*/)?" );
+                        i += 2;
+                    }
+                    else if ( normalized.startsWith( "**", i ) )
+                    {
+                        regex.append( ".*" );
+                        i++;
+                    }
+                    else
+                    {
+                        regex.append( "[^/]*" );
+                    }
+                }
+                case '?' -> regex.append( "[^/]" );
+                case '{' ->
+                {
+                    inAlternatives = true;
+                    regex.append( "(?:" );
+                }
+                case '}' ->
+                {
+                    inAlternatives = false;
+                    regex.append( ')' );
+                }
+                case ',' -> regex.append( inAlternatives ? "|" : "," );
+                default -> regex.append( Pattern.quote( String.valueOf( c ) ) );
+            }
+        }
+        return Pattern.compile( regex.toString() );
+    }
+
+    /**
+     * Splits a list of globs at commas and whitespace outside of braces.
+     */
+    private static String[] split( String globs )
+    {
+        var parts = new ArrayList<String>();
+        var current = new StringBuilder();
+        int braces = 0;
+        for ( char c : globs.toCharArray() )
+        {
+            if ( c == '{' )
+            {
+                braces++;
+            }
+            else if ( c == '}' )
+            {
+                braces--;
+            }
+            if ( braces <= 0 && ( c == ',' || Character.isWhitespace( c ) ) )
+            {
+                parts.add( current.toString() );
+                current.setLength( 0 );
+            }
+            else
+            {
+                current.append( c );
+            }
+        }
+        parts.add( current.toString() );
+        return parts.toArray( String[]::new );
+    }
+}
@@ -1,35 +1,26 @@
 package com.github.gradusnikov.eclipse.assistai.tools;
 
-import java.io.ByteArrayOutputStream;
-import java.util.Base64;
-
 import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.ImageLoader;
 
 public class ImageUtilities
 {
     /**
-     * Converts ImageData to a Base64 encoded JPEG string.
+     * Scales an image down so that neither edge exceeds {@code maxEdge},
+     * keeping its aspect ratio.
      *
-     * @param image
-     *            ImageData to be converted to Base64
-     * @return Base64 encoded JPEG string
+     * @return the image itself if it already fits
      */
-    public static String toBase64Jpeg( ImageData image )
+    public static ImageData scaleToFit( ImageData image, int maxEdge )
     {
-        if ( image == null )
+        int longest = Math.max( image.width, image.height );
+        if ( longest <= maxEdge )
         {
-            throw new IllegalArgumentException( "ImageData argument is null" );
+            return image;
         }
-
-        ImageLoader loader = new ImageLoader();
-        loader.data = new ImageData[] { image }; // Set the image data
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        // Save as JPEG format
-        loader.save( outputStream, org.eclipse.swt.SWT.IMAGE_JPEG );
-        String base64 = Base64.getEncoder().encodeToString( outputStream.toByteArray() );
-        return base64;
+        double scale = (double) maxEdge / longest;
+        int width = Math.max( 1, (int) Math.round( image.width * scale ) );
+        int height = Math.max( 1, (int) Math.round( image.height * scale ) );
+        return image.scaledTo( width, height );
     }
 
     public static ImageData createPreview( ImageData imageData )
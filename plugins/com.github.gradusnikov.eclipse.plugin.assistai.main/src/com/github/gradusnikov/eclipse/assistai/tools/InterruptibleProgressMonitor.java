@@ -0,0 +1,31 @@
+package com.github.gradusnikov.eclipse.assistai.tools;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * A progress monitor that is canceled once the thread that created it is
+ * interrupted.
+ * <p>
+ * Tool calls are cancelled by interrupting the thread they run in. Passing
+ * this monitor to the jobs, builds and launches a tool starts lets them stop
+ * at their next cancellation check, also when they run in other threads that
+ * never see the interrupt.
+ */
+public class InterruptibleProgressMonitor extends NullProgressMonitor
+{
+    private final Thread owner;
+
+    /**
+     * Creates a monitor bound to the current thread.
+     */
+    public InterruptibleProgressMonitor()
+    {
+        this.owner = Thread.currentThread();
+    }
+
+    @Override
+    public boolean isCanceled()
+    {
+        return super.isCanceled() || owner.isInterrupted();
+    }
+}
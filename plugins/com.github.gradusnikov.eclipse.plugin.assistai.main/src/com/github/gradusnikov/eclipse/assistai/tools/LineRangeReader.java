@@ -0,0 +1,356 @@
+package com.github.gradusnikov.eclipse.assistai.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Reads line ranges of text files without loading the whole file.
+ * <p>
+ * For local files in an ASCII compatible encoding (e.g. UTF-8 or ISO-8859-1)
+ * the offsets of all line starts are collected once by scanning the
+ * memory-mapped file, and cached per file until its modification stamp or
+ * size changes; a range is then read with a single positioned read. Other
+ * files are streamed up to the requested range.
+ * <p>
+ * Lines end with {@code \n}, {@code \r\n} or a lone {@code \r}. A line
+ * longer than the byte limit is cut at a character boundary.
+ */
+public final class LineRangeReader
+{
+    private static final int                 MAX_CACHED_INDEXES = 32;
+
+    private static final int                 MAP_CHUNK_SIZE     = 64 * 1024 * 1024;
+
+    private static final Map<Path, LineIndex> INDEXES           = Collections.synchronizedMap( new LinkedHashMap<>( 16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Path, LineIndex> eldest )
+        {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    } );
+
+    /**
+     * A range of lines read from a file.
+     *
+     * @param text
+     *            the lines, without the line break after the last one
+     * @param startLine
+     *            the 1-based number of the first line read
+     * @param endLine
+     *            the number of the last line read, possibly partially if
+     *            {@code truncated}
+     * @param totalLines
+     *            the number of lines of the file
+     * @param truncated
+     *            {@code true} if the range was cut short to stay within the
+     *            byte limit
+     */
+    public record Slice( String text, int startLine, int endLine, int totalLines, boolean truncated )
+    {
+        /**
+         * @return {@code true} if the slice holds the whole file
+         */
+        public boolean isComplete()
+        {
+            return !truncated && startLine <= 1 && endLine >= totalLines;
+        }
+
+        /**
+         * @return the lines read, without line breaks; empty if the range
+         *         starts beyond the end of the file
+         */
+        public List<String> lines()
+        {
+            return endLine < startLine ? List.of() : List.of( text.split( "\r\n|\r|\n", -1 ) );
+        }
+    }
+
+    /**
+     * The offsets of the line starts of a file.
+     */
+    private record LineIndex( long stamp, long length, long[] offsets )
+    {
+    }
+
+    private LineRangeReader()
+    {
+    }
+
+    /**
+     * Reads a range of lines of a workspace file.
+     *
+     * @param file
+     *            the file
+     * @param startLine
+     *            the 1-based first line, or {@code null} for the first line of
+     *            the file
+     * @param endLine
+     *            the last line, inclusive, or {@code null} for the last line of
+     *            the file
+     * @param maxBytes
+     *            the maximum number of bytes to read; the range ends at the last
+     *            whole line within the limit
+     */
+    public static Slice read( IFile file, Integer startLine, Integer endLine, long maxBytes ) throws IOException, CoreException
+    {
+        Objects.requireNonNull( file );
+        Charset charset = Charset.forName( file.getCharset() );
+        IPath location = file.getLocation();
+        if ( Objects.nonNull( location ) && isAsciiCompatible( charset ) )
+        {
+            return read( location.toPath(), file.getModificationStamp(), charset, startLine, endLine, maxBytes );
+        }
+        try ( InputStream input = file.getContents() )
+        {
+            return read( input, charset, startLine, endLine, maxBytes );
+        }
+    }
+
+    /**
+     * Reads a range of lines of a local file in an ASCII compatible encoding.
+     *
+     * @param stamp
+     *            the modification stamp of the file, the cached line index is
+     *            rebuilt when it changes
+     */
+    public static Slice read( Path path, long stamp, Charset charset, Integer startLine, Integer endLine, long maxBytes ) throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) )
+        {
+            LineIndex index = lineIndex( path, stamp, channel );
+            long[] offsets = index.offsets();
+            int totalLines = offsets.length;
+            if ( totalLines == 0 )
+            {
+                return new Slice( "", 1, 0, 0, false );
+            }
+            int first = Math.max( 1, Objects.requireNonNullElse( startLine, 1 ) );
+            if ( first > totalLines )
+            {
+                return new Slice( "", first, totalLines, totalLines, false );
+            }
+            int last = clamp( Objects.requireNonNullElse( endLine, totalLines ), first, totalLines );
+            long from = offsets[first - 1];
+            long to = last < totalLines ? offsets[last] : index.length();
+            boolean truncated = false;
+            boolean cut = false;
+            if ( to - from > maxBytes )
+            {
+                truncated = true;
+                // the last line ending within the limit
+                int position = Arrays.binarySearch( offsets, first, last, from + maxBytes );
+                int fitting = position >= 0 ? position : -position - 2;
+                if ( fitting >= first )
+                {
+                    last = fitting;
+                    to = offsets[fitting];
+                }
+                else
+                {
+                    // a single line longer than the limit
+                    last = first;
+                    to = from + maxBytes;
+                    cut = true;
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate( (int) ( to - from ) );
+            while ( buffer.hasRemaining() && channel.read( buffer, from + buffer.position() ) >= 0 )
+            {
+                // read until the buffer is full
+            }
+            buffer.flip();
+            return new Slice( stripLastLineBreak( decode( buffer, charset, cut ) ), first, last, totalLines, truncated );
+        }
+    }
+
+    /**
+     * Reads a range of lines from a stream, counting the lines up to its end.
+     */
+    static Slice read( InputStream input, Charset charset, Integer startLine, Integer endLine, long maxBytes ) throws IOException
+    {
+        var reader = new BufferedReader( new InputStreamReader( input, charset ) );
+        int first = Math.max( 1, Objects.requireNonNullElse( startLine, 1 ) );
+        int last = Objects.requireNonNullElse( endLine, Integer.MAX_VALUE );
+        var text = new StringBuilder();
+        long bytes = 0;
+        int lineNumber = 0;
+        int lastRead = first - 1;
+        boolean truncated = false;
+        String line;
+        while ( ( line = reader.readLine() ) != null )
+        {
+            lineNumber++;
+            if ( lineNumber < first || lineNumber > last || truncated )
+            {
+                continue;
+            }
+            // estimated as UTF-8, the encoding of the response
+            long lineBytes = line.getBytes( StandardCharsets.UTF_8 ).length + 1;
+            if ( bytes + lineBytes > maxBytes )
+            {
+                truncated = true;
+                if ( lastRead < first )
+                {
+                    text.append( line, 0, prefixLength( line, maxBytes ) );
+                    lastRead = first;
+                }
+                continue;
+            }
+            text.append( line ).append( '\n' );
+            bytes += lineBytes;
+            lastRead = lineNumber;
+        }
+        if ( lineNumber == 0 )
+        {
+            return new Slice( "", 1, 0, 0, false );
+        }
+        if ( first > lineNumber )
+        {
+            return new Slice( "", first, lineNumber, lineNumber, false );
+        }
+        return new Slice( stripLastLineBreak( text.toString() ), first, Math.max( first, lastRead ), lineNumber, truncated );
+    }
+
+    private static LineIndex lineIndex( Path path, long stamp, FileChannel channel ) throws IOException
+    {
+        Path key = path.toAbsolutePath();
+        long length = channel.size();
+        LineIndex index = INDEXES.get( key );
+        if ( Objects.nonNull( index ) && index.stamp() == stamp && index.length() == length )
+        {
+            return index;
+        }
+        long[] offsets = new long[1024];
+        int count = 0;
+        if ( length > 0 )
+        {
+            offsets[count++] = 0;
+        }
+        // whether the previous byte was a \r, which may be followed by a \n in the next chunk
+        boolean afterCr = false;
+        for ( long chunk = 0; chunk < length; chunk += MAP_CHUNK_SIZE )
+        {
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, chunk, Math.min( MAP_CHUNK_SIZE, length - chunk ) );
+            while ( buffer.hasRemaining() )
+            {
+                byte b = buffer.get();
+                long position = chunk + buffer.position();
+                long next = -1;
+                if ( b == '\n' )
+                {
+                    next = position;
+                }
+                else if ( afterCr )
+                {
+                    // a lone \r ended the previous line
+                    next = position - 1;
+                }
+                afterCr = b == '\r';
+                if ( next > 0 && next < length )
+                {
+                    if ( count == offsets.length )
+                    {
+                        offsets = Arrays.copyOf( offsets, count * 2 );
+                    }
+                    offsets[count++] = next;
+                }
+            }
+        }
+        index = new LineIndex( stamp, length, Arrays.copyOf( offsets, count ) );
+        INDEXES.put( key, index );
+        return index;
+    }
+
+    /**
+     * @return {@code true} if line breaks are single bytes in the charset, so
+     *         that lines can be found in the raw bytes
+     */
+    private static boolean isAsciiCompatible( Charset charset )
+    {
+        return Arrays.equals( "\n\r".getBytes( charset ), new byte[] { '\n', '\r' } );
+    }
+
+    /**
+     * Decodes the bytes read; if they were cut within a line, the bytes of a
+     * character cut in half are left out.
+     */
+    private static String decode( ByteBuffer bytes, Charset charset, boolean cut )
+    {
+        if ( !cut )
+        {
+            return charset.decode( bytes ).toString();
+        }
+        CharsetDecoder decoder = charset.newDecoder()
+                                        .onMalformedInput( CodingErrorAction.REPLACE )
+                                        .onUnmappableCharacter( CodingErrorAction.REPLACE );
+        CharBuffer chars = CharBuffer.allocate( (int) Math.ceil( bytes.remaining() * (double) decoder.maxCharsPerByte() ) );
+        // not the end of the input, so that an incomplete last character stays undecoded
+        decoder.decode( bytes, chars, false );
+        return chars.flip().toString();
+    }
+
+    /**
+     * @return the length of the longest prefix of the line whose UTF-8 encoding
+     *         fits into the given number of bytes, ending at a character
+     *         boundary
+     */
+    private static int prefixLength( String line, long maxBytes )
+    {
+        long bytes = 0;
+        int end = 0;
+        while ( end < line.length() )
+        {
+            int codePoint = line.codePointAt( end );
+            bytes += codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if ( bytes > maxBytes )
+            {
+                break;
+            }
+            end += Character.charCount( codePoint );
+        }
+        return end;
+    }
+
+    private static String stripLastLineBreak( String text )
+    {
+        if ( text.endsWith( "\r\n" ) )
+        {
+            return text.substring( 0, text.length() - 2 );
+        }
+        if ( text.endsWith( "\n" ) || text.endsWith( "\r" ) )
+        {
+            return text.substring( 0, text.length() - 1 );
+        }
+        return text;
+    }
+
+    private static int clamp( int value, int min, int max )
+    {
+        return Math.max( min, Math.min( value, max ) );
+    }
+}
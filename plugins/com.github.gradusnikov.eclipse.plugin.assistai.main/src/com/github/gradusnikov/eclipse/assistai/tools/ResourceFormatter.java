@@ -81,7 +81,7 @@ public class ResourceFormatter
     public String formatFile() throws IOException, CoreException
     {
         var lines = ResourceUtilities.readFileLines( file );
-        return formatLines( lines, 0, lines.size() - 1 );
+        return formatLines( lines, 0, lines.size() - 1, lines.size() );
     }
 
     /**
@@ -100,31 +100,34 @@ public class ResourceFormatter
      */
     public String format( int from, int to ) throws IOException, CoreException
     {
-        var lines = ResourceUtilities.readFileLines( file );
-        return formatLines( lines, from, to );
+        // only the lines of the range are read
+        var slice = LineRangeReader.read( file, from + 1, to + 1, Long.MAX_VALUE );
+        return formatLines( slice.lines(), from, to, slice.totalLines() );
     }
 
     /**
-     * Formats a list of lines with line numbers.
+     * Formats a range of lines with line numbers.
      * 
      * @param lines
-     *            The list of lines to format
+     *            The lines of the range, the first one being line {@code from}
      * @param from
      *            The zero-based starting line index (inclusive)
      * @param to
      *            The zero-based ending line index (inclusive)
+     * @param totalLines
+     *            The number of lines of the file
      * @return A formatted string with line numbers and content
      * @throws IllegalArgumentException
      *             If the line range is invalid
      */
-    private String formatLines( List<String> lines, int from, int to )
+    private String formatLines( List<String> lines, int from, int to, int totalLines )
     {
-        if ( from < 0 || from >= lines.size() || to < 0 || to >= lines.size() || from > to )
+        if ( from < 0 || from >= totalLines || to < 0 || to >= totalLines || from > to )
         {
             throw new IllegalArgumentException( "Illegal line range" );
         }
 
-        var numDigits = Integer.toString( lines.size() ).length();
+        var numDigits = Integer.toString( totalLines ).length();
 
         var out = new StringBuilder();
         // append header
@@ -133,7 +136,7 @@ public class ResourceFormatter
         out.append( file.getProject().getName() );
         out.append( " FILE: " );
         out.append( file.getProjectRelativePath() );
-        if ( from > 0 || to < lines.size() - 1 )
+        if ( from > 0 || to < totalLines - 1 )
         {
             out.append( " (PARTIAL)" );
         }
@@ -142,7 +145,7 @@ public class ResourceFormatter
         for ( int i = from; i <= to; i++ )
         {
             var lineNumber = indexing.applyToLine( i );
-            out.append( String.format( "%0" + numDigits + "d: %s\n", lineNumber, lines.get( i ) ) );
+            out.append( String.format( "%0" + numDigits + "d: %s\n", lineNumber, lines.get( i - from ) ) );
         }
 
         out.append( " === END FILE === " );
@@ -1,18 +1,13 @@
 package com.github.gradusnikov.eclipse.assistai.tools;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
-import org.apache.tika.Tika;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -28,20 +23,27 @@ import org.eclipse.jdt.core.dom.TypeDeclaration;
 
 public class ResourceUtilities
 {
+	/**
+	 * Reads all lines of a file, for callers that rewrite the whole file.
+	 * 
+	 * @see #readFileLines(IFile, Integer, Integer)
+	 */
 	public static List<String> readFileLines( IFile file ) throws IOException, CoreException
+	{
+		return readFileLines( file, null, null );
+	}
+
+	/**
+	 * Reads a range of lines of a file through the {@link LineRangeReader}, so
+	 * that the lines outside the range are not loaded.
+	 * 
+	 * @param startLine the 1-based first line, or {@code null} for the first line of the file
+	 * @param endLine the last line, inclusive, or {@code null} for the last line of the file
+	 */
+	public static List<String> readFileLines( IFile file, Integer startLine, Integer endLine ) throws IOException, CoreException
 	{
 		Objects.requireNonNull(file);
-        List<String> lines = new ArrayList<>();
-        try (InputStream is = file.getContents(); 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is, Charset.forName(file.getCharset())))) 
-        {
-            String line;
-            while ((line = reader.readLine()) != null) 
-            {
-                lines.add(line);
-            }
-        }
-        return lines;
+		return LineRangeReader.read( file, startLine, endLine, Long.MAX_VALUE ).lines();
 	}
 	/** 
 	 * Recursively creates a folder hierarchy. 
@@ -64,14 +66,7 @@ public class ResourceUtilities
 	
 	public static byte[] readInputStream(InputStream inputStream) throws IOException 
 	{
-	    ByteArrayOutputStream result = new ByteArrayOutputStream();
-	    byte[] buffer = new byte[1024];
-	    int length;
-	    while ((length = inputStream.read(buffer)) != -1) 
-	    {
-	        result.write(buffer, 0, length);
-	    }
-	    return result.toByteArray();
+	    return inputStream.readAllBytes();
 	}
 	
     public static String readFileContent( IFile file ) throws IOException, CoreException
@@ -80,14 +75,7 @@ public class ResourceUtilities
         // Read file content
         try (InputStream is = file.getContents()) 
         {
-            ByteArrayOutputStream content = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = is.read(buffer)) != -1)
-            {
-                content.write(buffer, 0, length);
-            }
-            return content.toString( file.getCharset() );
+            return new String( is.readAllBytes(), Charset.forName( file.getCharset() ) );
         }
     }
     
@@ -258,20 +246,11 @@ public class ResourceUtilities
     {
 		Objects.requireNonNull(file);
 
-        int MAX_FILE_SIZE_KB = 1024;
-        // Check file size to avoid loading extremely large files
-        long fileSizeInKB = file.getLocation().toFile().length() / 1024;
-        if (fileSizeInKB > MAX_FILE_SIZE_KB) 
-        {
-            // Limit to 1MB
-            throw new IOException( "Error: File '" + file.getFullPath().toFile() + "' is too large (" + fileSizeInKB + " KB). Maximum size is " + MAX_FILE_SIZE_KB +  " KB." );
-        }
-        
-        // Use Apache Tika to detect content type
-        Tika tika = new Tika();
+        // Use the shared Apache Tika to detect content type, it reads the head of the file only;
+        // large files are read in ranges, see LineRangeReader
         try
         {
-            String mimeType = tika.detect(file.getLocation().toFile());
+            String mimeType = ContentTypeDetector.TIKA.detect(file.getLocation().toFile());
             
             // Check if this is a text file
             if ( !isTextMimeType( mimeType )) {
@@ -0,0 +1,182 @@
+package com.github.gradusnikov.eclipse.assistai.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+
+/**
+ * In-memory line diff of two texts.
+ * <p>
+ * Both texts are handed to JGit as UTF-8 byte arrays, so no temporary files
+ * are involved. The {@link HistogramDiff} is shared and every thread reuses
+ * its own {@link DiffFormatter} together with the output buffer it writes to.
+ * Besides the unified diff text, the result carries the hunks as structured
+ * data, grouped the same way as in the text.
+ */
+public final class TextDiff
+{
+    private static final HistogramDiff DIFF_ALGORITHM = new HistogramDiff();
+
+    private static final ThreadLocal<PooledFormatter> FORMATTERS = ThreadLocal.withInitial( PooledFormatter::new );
+
+    /** Buffers larger than this are not kept for reuse */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+
+    private static class PooledFormatter
+    {
+        final ByteArrayOutputStream output    = new ByteArrayOutputStream();
+        final DiffFormatter         formatter = new DiffFormatter( output );
+
+        PooledFormatter()
+        {
+            formatter.setDiffComparator( RawTextComparator.DEFAULT );
+        }
+    }
+
+    /**
+     * A single edit. Line indices are 0-based, start inclusive and end
+     * exclusive.
+     *
+     * @param type
+     *            the kind of edit
+     * @param originalText
+     *            the replaced lines of the original text, including line breaks
+     * @param proposedText
+     *            the replacing lines of the proposed text, including line breaks
+     */
+    public record Change( Edit.Type type, int originalStart, int originalEnd, int proposedStart, int proposedEnd,
+                          String originalText, String proposedText ) {}
+
+    /**
+     * A group of changes that appears as one {@code @@} section of the
+     * unified diff. Line indices are 0-based; the ranges include the context
+     * lines.
+     */
+    public record Hunk( int originalStart, int originalLength, int proposedStart, int proposedLength, List<Change> changes ) {}
+
+    /**
+     * @param unifiedDiff
+     *            the diff in unified format with a file header, or an empty
+     *            string if the texts do not differ
+     * @param hunks
+     *            the hunks of the diff, in order
+     */
+    public record Result( String unifiedDiff, List<Hunk> hunks )
+    {
+        public boolean isEmpty()
+        {
+            return hunks.isEmpty();
+        }
+    }
+
+    private TextDiff()
+    {
+    }
+
+    /**
+     * Computes the difference between two texts.
+     *
+     * @param path
+     *            the path written to the header of the unified diff
+     * @param original
+     *            the original text
+     * @param proposed
+     *            the proposed text
+     * @param contextLines
+     *            number of unchanged lines shown around every change
+     */
+    public static Result diff( String path, String original, String proposed, int contextLines )
+    {
+        RawText rawOriginal = new RawText( original.getBytes( StandardCharsets.UTF_8 ) );
+        RawText rawProposed = new RawText( proposed.getBytes( StandardCharsets.UTF_8 ) );
+        EditList edits = DIFF_ALGORITHM.diff( RawTextComparator.DEFAULT, rawOriginal, rawProposed );
+        if ( edits.isEmpty() )
+        {
+            return new Result( "", List.of() );
+        }
+        String unifiedDiff = format( path, edits, rawOriginal, rawProposed, contextLines );
+        List<Hunk> hunks = toHunks( edits, rawOriginal, rawProposed, contextLines );
+        return new Result( unifiedDiff, hunks );
+    }
+
+    private static String format( String path, EditList edits, RawText original, RawText proposed, int contextLines )
+    {
+        PooledFormatter pooled = FORMATTERS.get();
+        ByteArrayOutputStream output = pooled.output;
+        output.reset();
+        try
+        {
+            output.write( ( "--- /" + path + "\n" ).getBytes( StandardCharsets.UTF_8 ) );
+            output.write( ( "+++ /" + path + "\n" ).getBytes( StandardCharsets.UTF_8 ) );
+            pooled.formatter.setContext( contextLines );
+            pooled.formatter.format( edits, original, proposed );
+            pooled.formatter.flush();
+            return output.toString( StandardCharsets.UTF_8 );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+        finally
+        {
+            if ( output.size() > MAX_POOLED_BUFFER_SIZE )
+            {
+                // do not pin the memory of an unusually large diff
+                FORMATTERS.remove();
+            }
+        }
+    }
+
+    /**
+     * Groups the edits into hunks following the rules of
+     * {@link DiffFormatter}: edits separated by no more than twice the
+     * number of context lines share a hunk.
+     */
+    private static List<Hunk> toHunks( EditList edits, RawText original, RawText proposed, int contextLines )
+    {
+        var hunks = new ArrayList<Hunk>();
+        int index = 0;
+        while ( index < edits.size() )
+        {
+            int end = index;
+            while ( end + 1 < edits.size() && isCombined( edits.get( end ), edits.get( end + 1 ), contextLines ) )
+            {
+                end++;
+            }
+            Edit first = edits.get( index );
+            Edit last = edits.get( end );
+            int originalStart = Math.max( 0, first.getBeginA() - contextLines );
+            int proposedStart = Math.max( 0, first.getBeginB() - contextLines );
+            int originalEnd = Math.min( original.size(), last.getEndA() + contextLines );
+            int proposedEnd = Math.min( proposed.size(), last.getEndB() + contextLines );
+
+            var changes = new ArrayList<Change>( end - index + 1 );
+            for ( Edit edit : edits.subList( index, end + 1 ) )
+            {
+                changes.add( new Change( edit.getType(), edit.getBeginA(), edit.getEndA(), edit.getBeginB(), edit.getEndB(),
+                                         original.getString( edit.getBeginA(), edit.getEndA(), false ),
+                                         proposed.getString( edit.getBeginB(), edit.getEndB(), false ) ) );
+            }
+            hunks.add( new Hunk( originalStart, originalEnd - originalStart, proposedStart, proposedEnd - proposedStart,
+                                 List.copyOf( changes ) ) );
+            index = end + 1;
+        }
+        return List.copyOf( hunks );
+    }
+
+    private static boolean isCombined( Edit current, Edit next, int contextLines )
+    {
+        return next.getBeginA() - current.getEndA() <= 2 * contextLines
+                || next.getBeginB() - current.getEndB() <= 2 * contextLines;
+    }
+}
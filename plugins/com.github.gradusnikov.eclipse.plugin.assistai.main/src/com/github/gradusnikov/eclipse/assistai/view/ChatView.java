@@ -1,7 +1,9 @@
 package com.github.gradusnikov.eclipse.assistai.view;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -121,6 +123,27 @@ public class ChatView
 	private Menu modelMenu;
 	
 	private Map<String, String> autocompleteModel;
+
+    /** Renderers of the messages being streamed; accessed in the UI thread only */
+    private final Map<String, StreamedMessage> streamedMessages = new HashMap<>();
+
+    /** DOM updates waiting to be taken by the browser; accessed in the UI thread only */
+    private final List<Object[]> pendingMessagePatches = new ArrayList<>();
+
+    /**
+     * The text of a streamed message rendered so far, with the parser that
+     * holds the state of its rendering.
+     */
+    private static class StreamedMessage
+    {
+        final MarkdownParser parser;
+        String               text = "";
+
+        StreamedMessage( ILog logger )
+        {
+            parser = new MarkdownParser( logger );
+        }
+    }
     
     public ChatView()
     {
@@ -142,7 +165,11 @@ public class ChatView
 
     public void clearChatView()
     {
-        uiSync.asyncExec( () -> initializeChatView( browser ) );
+        uiSync.asyncExec( () -> {
+            streamedMessages.clear();
+            pendingMessagePatches.clear();
+            initializeChatView( browser );
+        } );
     }
 
     public void clearUserInput()
@@ -590,6 +617,7 @@ public class ChatView
         new DiffCodeFunction( browser, "eclipseDiffCode" );
         new InsertCodeFunction( browser, "eclipseInsertCode" );
         new NewFileFunction( browser, "eclipseNewFile" );
+        new TakeMessagePatchesFunction( browser, "eclipseTakeMessagePatches" );
     }
 
     private void initializeChatView( Browser browser )
@@ -659,43 +687,81 @@ public class ChatView
         return jsContent;
     }
 
+    /**
+     * Renders the complete message body, replacing the current content of the
+     * message.
+     */
     public void setMessageHtml( String messageId, String messageBody )
     {
         uiSync.asyncExec( () -> {
+            streamedMessages.remove( messageId );
             MarkdownParser parser = new MarkdownParser( messageBody );
-
-            String fixedHtml = escapeHtmlQuotes( fixLineBreaks( parser.parseToHtml() ) );
-            // inject and highlight html message
-            browser.execute( "document.getElementById(\"message-" + messageId + "\").innerHTML = '" + fixedHtml + "';renderCode();" );
-            // Scroll down
-            browser.execute( "window.scrollTo(0, document.body.scrollHeight);" );
+            patchMessage( messageId, true, parser.parseToHtml(), "" );
+            flushMessagePatches();
         } );
     }
 
     /**
-     * Replaces newline characters with line break escape sequences in the given
-     * string.
+     * Renders a message that is being streamed. When the body extends the
+     * previously rendered body, only the appended text is parsed and only the
+     * changed part of the message is updated; otherwise the message is
+     * rendered again. Must be called in the UI thread; the update is shown by
+     * {@link #flushMessagePatches()}.
      *
-     * @param html
-     *            The input string containing newline characters.
-     * @return A string with newline characters replaced by line break escape
-     *         sequences.
+     * @see MessageUpdateScheduler
      */
-    private String fixLineBreaks( String html )
+    public void updateMessageHtml( String messageId, String messageBody )
     {
-        return html.replace( "\n", "\\n" ).replace( "\r", "" );
+        StreamedMessage message = streamedMessages.get( messageId );
+        boolean reset = Objects.isNull( message ) || !messageBody.startsWith( message.text );
+        if ( reset )
+        {
+            message = new StreamedMessage( logger );
+            streamedMessages.put( messageId, message );
+        }
+        else if ( messageBody.length() == message.text.length() )
+        {
+            return;
+        }
+        MarkdownParser.Update update = message.parser.append( messageBody.substring( message.text.length() ) );
+        message.text = messageBody;
+        patchMessage( messageId, reset, update.completedHtml(), update.openHtml() );
     }
 
     /**
-     * Escapes HTML quotation marks in the given string.
-     * 
-     * @param html
-     *            The input string containing HTML.
-     * @return A string with escaped quotation marks for proper HTML handling.
+     * Ends the streaming of a message: its last block is rendered as complete.
+     * Must be called in the UI thread; the update is shown by
+     * {@link #flushMessagePatches()}.
      */
-    private String escapeHtmlQuotes( String html )
+    public void completeMessageHtml( String messageId )
     {
-        return html.replace( "\"", "\\\"" ).replace( "'", "\\'" );
+        StreamedMessage message = streamedMessages.remove( messageId );
+        if ( Objects.nonNull( message ) )
+        {
+            patchMessage( messageId, false, message.parser.complete().completedHtml(), "" );
+        }
+    }
+
+    /**
+     * Applies the queued message updates in the browser and scrolls down, in
+     * a single script call. Must be called in the UI thread.
+     */
+    public void flushMessagePatches()
+    {
+        if ( !pendingMessagePatches.isEmpty() )
+        {
+            browser.execute( "applyMessagePatches();" );
+        }
+    }
+
+    /**
+     * Queues a DOM update of a message. The browser takes all queued updates at
+     * once through {@link TakeMessagePatchesFunction}, so the HTML does not have
+     * to be escaped into a script.
+     */
+    private void patchMessage( String messageId, boolean reset, String completedHtml, String openHtml )
+    {
+        pendingMessagePatches.add( new Object[] { messageId, reset, completedHtml, openHtml } );
     }
 
     public void appendMessage( String messageId, String role )
@@ -733,6 +799,7 @@ public class ChatView
 	public void removeMessage( String messageId )
     {
 	    uiSync.asyncExec(() -> {
+	        streamedMessages.remove( messageId );
 	        browser.execute("""
 	                var node = document.getElementById("message-${id}");
 	                if(node) {
@@ -1064,6 +1131,24 @@ public class ChatView
             return null;
         }
     }
+    /**
+     * Hands the queued message updates over to the browser. Called by
+     * {@code applyMessagePatches()} in {@code textview.js}.
+     */
+    private class TakeMessagePatchesFunction extends BrowserFunction
+    {
+        public TakeMessagePatchesFunction( Browser browser, String name )
+        {
+            super( browser, name );
+        }
+        @Override
+        public Object function( Object[] arguments )
+        {
+            Object[] patches = pendingMessagePatches.toArray();
+            pendingMessagePatches.clear();
+            return patches;
+        }
+    }
     private class NewFileFunction extends BrowserFunction
     {
         public NewFileFunction( Browser browser, String name )
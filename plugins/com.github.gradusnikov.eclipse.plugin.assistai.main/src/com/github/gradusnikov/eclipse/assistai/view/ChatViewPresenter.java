@@ -1,7 +1,5 @@
 package com.github.gradusnikov.eclipse.assistai.view;
 
-import static com.github.gradusnikov.eclipse.assistai.tools.ImageUtilities.createPreview;
-
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
@@ -13,8 +11,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -107,12 +106,18 @@ public class ChatViewPresenter {
 	@Inject
 	private UISynchronize uiSync;
 
+	@Inject
+	private MessageUpdateScheduler messageUpdateScheduler;
+
 	private IPreferenceStore preferences;
 
 	private static final String LAST_SELECTED_DIR_KEY = "lastSelectedDirectory";
 
 	private final List<Attachment> attachments = new ArrayList<>();
 
+	/** Completes when the last message sent was added to the conversation; accessed in the UI thread only */
+	private CompletableFuture<Void> lastSend = CompletableFuture.completedFuture(null);
+
 	@PostConstruct
 	public void init() {
 		preferences = Activator.getDefault().getPreferenceStore();
@@ -141,33 +146,45 @@ public class ChatViewPresenter {
 	}
 
 	public void onSendUserMessage(String text) {
-		ChatMessage message = createUserMessage(text);
-		conversation.add(message);
-		ChatMessage displayedMessage = createUserMessage("");
-		displayedMessage.setContent(text);
+		var messageAttachments = List.copyOf(attachments);
+		attachments.clear();
 		applyToView(part -> {
 			part.clearUserInput();
 			part.clearAttachments();
-			part.appendMessage(message.getId(), message.getRole());
-			String content = ChatMessageUtilities.toMarkdownContent(displayedMessage);
-			part.setMessageHtml(message.getId(), content);
-			attachments.clear();
 		});
-		sendConversationJobProvider.get().schedule();
+		// the context variables are resolved in the background, not to block the UI,
+		// but the messages are added and sent in the order they were entered
+		CompletableFuture<ChatMessage> created = createUserMessage(text, messageAttachments);
+		lastSend = lastSend.thenCompose(previous -> created).thenAccept(message -> {
+			conversation.add(message);
+			ChatMessage displayedMessage = new ChatMessage(UUID.randomUUID().toString(), "user");
+			displayedMessage.setContent(text);
+			displayedMessage.setAttachments(messageAttachments);
+			applyToView(part -> {
+				part.appendMessage(message.getId(), message.getRole());
+				String content = ChatMessageUtilities.toMarkdownContent(displayedMessage);
+				part.setMessageHtml(message.getId(), content);
+			});
+			sendConversationJobProvider.get().schedule();
+		}).exceptionally(e -> {
+			logger.error("Cannot create the user message: " + e.getMessage(), e);
+			return null;
+		});
 	}
 
-	private ChatMessage createUserMessage(String userMessage) {
+	private CompletableFuture<ChatMessage> createUserMessage(String userMessage, List<Attachment> messageAttachments) {
 		Pattern commandPattern = Pattern.compile("^/(\\S+)");
 		Matcher commandMatcher = commandPattern.matcher(userMessage);
-		Supplier<String> supplier = () -> userMessage;
-		if (commandMatcher.find()) {
-			supplier = () -> promptRepository.findPromptByCommandName(commandMatcher.group(1))
-					.map(chatMessageFactory::createUserChatMessage).map(ChatMessage::getContent).orElse(userMessage);
-		}
-
-		ChatMessage message = chatMessageFactory.createUserChatMessage(supplier);
-		message.setAttachments(attachments);
-		return message;
+		Optional<Prompts> command = commandMatcher.find()
+				? promptRepository.findPromptByCommandName(commandMatcher.group(1))
+				: Optional.empty();
+
+		var message = command.isPresent() ? chatMessageFactory.createUserChatMessageAsync(command.get())
+				: chatMessageFactory.createUserChatMessageAsync(() -> userMessage);
+		return message.thenApply(created -> {
+			created.setAttachments(messageAttachments);
+			return created;
+		});
 	}
 
 	public ChatMessage beginFunctionCallMessage() {
@@ -191,12 +208,20 @@ public class ChatViewPresenter {
 	}
 
 	public void updateMessageFromAssistant(ChatMessage message) {
-		applyToView(messageView -> {
-			messageView.setMessageHtml(message.getId(), message.getContent());
-		});
+		messageUpdateScheduler.update(message.getId(), message.getContent());
+	}
+
+	/**
+	 * Completes a message begun by {@link #beginFunctionCallMessage()}, which
+	 * renders its code blocks. Unlike a reply, it leaves the input disabled as
+	 * the conversation continues.
+	 */
+	public void endFunctionCallMessage(ChatMessage message) {
+		messageUpdateScheduler.complete(message.getId());
 	}
 
 	public void endMessageFromAssistant(ChatMessage message) {
+		messageUpdateScheduler.complete(message.getId());
 		applyToView(messageView -> {
 			messageView.setInputEnabled(true);
 			if (message.getContent().isBlank()) {
@@ -282,8 +307,7 @@ public class ChatViewPresenter {
 
 				ImageData[] imageDataArray = new ImageLoader().load(selectedFilePath);
 				if (imageDataArray.length > 0) {
-					attachments
-							.add(new Attachment.ImageAttachment(imageDataArray[0], createPreview(imageDataArray[0])));
+					attachments.add(new Attachment.ImageAttachment(imageDataArray[0], logger));
 					applyToView(messageView -> {
 						messageView.setAttachments(attachments);
 					});
@@ -301,7 +325,7 @@ public class ChatViewPresenter {
 	}
 
 	public void onAttachmentAdded(ImageData imageData) {
-		attachments.add(new Attachment.ImageAttachment(imageData, createPreview(imageData)));
+		attachments.add(new Attachment.ImageAttachment(imageData, logger));
 		applyToView(messageView -> {
 			messageView.setAttachments(attachments);
 		});
@@ -0,0 +1,220 @@
+package com.github.gradusnikov.eclipse.assistai.view;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.e4.core.di.annotations.Creatable;
+import org.eclipse.e4.ui.di.UISynchronize;
+import org.eclipse.swt.widgets.Display;
+
+import com.github.gradusnikov.eclipse.assistai.Activator;
+import com.github.gradusnikov.eclipse.assistai.preferences.PreferenceConstants;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Coalesces the updates of streamed messages before they reach the
+ * {@link ChatView}.
+ * <p>
+ * Updates may be submitted from any thread at any rate. For every message only
+ * the latest body is kept, and all pending updates are rendered together at
+ * most once per frame with {@link Display#timerExec(int, Runnable)}, so the
+ * event queue receives a single runnable per frame instead of one per token.
+ * The frame interval is read from
+ * {@link PreferenceConstants#ASSISTAI_UI_UPDATE_INTERVAL_MILLIS}; when
+ * rendering a frame takes longer than the interval allows, the scheduler backs
+ * off to keep the UI thread responsive to user input.
+ */
+@Creatable
+@Singleton
+public class MessageUpdateScheduler
+{
+    /** Upper bound of the adaptive frame interval */
+    private static final long   MAX_INTERVAL_MILLIS = 250;
+
+    /** Rendering may take at most this share of a frame before backing off */
+    private static final double MAX_FRAME_LOAD      = 0.5;
+
+    /** Weight of the last sample in the moving averages */
+    private static final double SMOOTHING           = 0.2;
+
+    @Inject
+    private ILog                logger;
+
+    @Inject
+    private UISynchronize       uiSync;
+
+    @Inject
+    private PartAccessor        partAccessor;
+
+    /**
+     * Scheduler statistics.
+     *
+     * @param submittedUpdates
+     *            updates submitted since start
+     * @param coalescedUpdates
+     *            updates replaced by a later update of the same message before
+     *            being rendered
+     * @param flushes
+     *            frames rendered since start
+     * @param flushRate
+     *            recent rate of rendered frames per second while streaming
+     * @param queueDepth
+     *            messages currently waiting to be rendered
+     * @param maxQueueDepth
+     *            the largest number of messages rendered in one frame
+     * @param averageFlushMillis
+     *            moving average of the time spent rendering a frame
+     * @param intervalMillis
+     *            the current frame interval, including the back-off
+     */
+    public record Metrics( long submittedUpdates, long coalescedUpdates, long flushes, double flushRate, int queueDepth,
+                           int maxQueueDepth, double averageFlushMillis, long intervalMillis ) {}
+
+    private static class PendingUpdate
+    {
+        String  body;
+        boolean complete;
+    }
+
+    private Map<String, PendingUpdate> pending = new LinkedHashMap<>();
+    private boolean                    flushScheduled;
+
+    // statistics, guarded by this
+    private long   submittedUpdates;
+    private long   coalescedUpdates;
+    private long   flushes;
+    private int    maxQueueDepth;
+    private long   lastFlushNanos;
+    private double averageFlushMillis;
+    private double averageFlushPeriodMillis;
+    private long   intervalMillis = -1;
+
+    /**
+     * Schedules rendering of the current body of a streamed message.
+     */
+    public void update( String messageId, String body )
+    {
+        synchronized ( this )
+        {
+            submittedUpdates++;
+            PendingUpdate update = pending.computeIfAbsent( messageId, id -> new PendingUpdate() );
+            if ( update.body != null )
+            {
+                coalescedUpdates++;
+            }
+            update.body = body;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Schedules completion of a streamed message, after its pending update.
+     */
+    public void complete( String messageId )
+    {
+        synchronized ( this )
+        {
+            pending.computeIfAbsent( messageId, id -> new PendingUpdate() ).complete = true;
+        }
+        scheduleFlush();
+    }
+
+    public synchronized Metrics getMetrics()
+    {
+        double flushRate = averageFlushPeriodMillis > 0 ? 1000.0 / averageFlushPeriodMillis : 0;
+        return new Metrics( submittedUpdates, coalescedUpdates, flushes, flushRate, pending.size(), maxQueueDepth,
+                            averageFlushMillis, currentInterval() );
+    }
+
+    private void scheduleFlush()
+    {
+        synchronized ( this )
+        {
+            if ( flushScheduled )
+            {
+                return;
+            }
+            flushScheduled = true;
+        }
+        uiSync.asyncExec( () -> Display.getCurrent().timerExec( (int) currentInterval(), this::flush ) );
+    }
+
+    private void flush()
+    {
+        Map<String, PendingUpdate> batch;
+        synchronized ( this )
+        {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+        if ( batch.isEmpty() )
+        {
+            return;
+        }
+        long start = System.nanoTime();
+        try
+        {
+            partAccessor.findMessageView().ifPresent( view -> {
+                batch.forEach( ( messageId, update ) -> {
+                    if ( update.body != null )
+                    {
+                        view.updateMessageHtml( messageId, update.body );
+                    }
+                    if ( update.complete )
+                    {
+                        view.completeMessageHtml( messageId );
+                    }
+                } );
+                view.flushMessagePatches();
+            } );
+        }
+        catch ( Exception e )
+        {
+            logger.error( "Failed to render message updates", e );
+        }
+        recordFlush( start, System.nanoTime(), batch.size() );
+    }
+
+    private synchronized void recordFlush( long start, long end, int queueDepth )
+    {
+        double flushMillis = TimeUnit.NANOSECONDS.toMicros( end - start ) / 1000.0;
+        averageFlushMillis = flushes == 0 ? flushMillis : average( averageFlushMillis, flushMillis );
+        if ( lastFlushNanos > 0 )
+        {
+            double periodMillis = TimeUnit.NANOSECONDS.toMillis( start - lastFlushNanos );
+            // ignore the pauses between responses
+            if ( periodMillis < 1000 )
+            {
+                averageFlushPeriodMillis = averageFlushPeriodMillis == 0 ? periodMillis : average( averageFlushPeriodMillis, periodMillis );
+            }
+        }
+        lastFlushNanos = start;
+        flushes++;
+        maxQueueDepth = Math.max( maxQueueDepth, queueDepth );
+
+        long baseInterval = getBaseInterval();
+        long loadInterval = (long) Math.ceil( averageFlushMillis / MAX_FRAME_LOAD );
+        intervalMillis = Math.min( MAX_INTERVAL_MILLIS, Math.max( baseInterval, loadInterval ) );
+    }
+
+    private synchronized long currentInterval()
+    {
+        return intervalMillis > 0 ? intervalMillis : getBaseInterval();
+    }
+
+    private long getBaseInterval()
+    {
+        int interval = Activator.getDefault().getPreferenceStore().getInt( PreferenceConstants.ASSISTAI_UI_UPDATE_INTERVAL_MILLIS );
+        return Math.max( 1, Math.min( MAX_INTERVAL_MILLIS, interval ) );
+    }
+
+    private static double average( double average, double sample )
+    {
+        return average + SMOOTHING * ( sample - average );
+    }
+}
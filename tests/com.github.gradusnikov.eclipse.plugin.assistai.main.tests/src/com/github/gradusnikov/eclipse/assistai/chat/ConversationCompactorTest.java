@@ -0,0 +1,195 @@
+package com.github.gradusnikov.eclipse.assistai.chat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.gradusnikov.eclipse.assistai.chat.Attachment.FileContentAttachment;
+import com.github.gradusnikov.eclipse.assistai.tools.JsonUtils;
+
+/**
+ * Test cases for fitting conversations into a context budget.
+ */
+public class ConversationCompactorTest {
+
+    /** One token per character keeps the expected numbers readable */
+    private static final TokenEstimator CHARS = text -> text == null ? 0 : text.length();
+
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final ConversationCompactor compactor = new ConversationCompactor();
+
+    private static ChatMessage message(String role, String content) {
+        var message = new ChatMessage(UUID.randomUUID().toString(), role);
+        message.setContent(content);
+        return message;
+    }
+
+    private static ChatMessage toolResult(String name, String content) {
+        var message = new ChatMessage(UUID.randomUUID().toString(), name, "function");
+        message.setContent(content);
+        return message;
+    }
+
+    private static String lines(int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(i -> "line " + i).collect(Collectors.joining("\n"));
+    }
+
+    private static Conversation conversationOf(ChatMessage... messages) {
+        var conversation = new Conversation();
+        conversation.addAll(List.of(messages));
+        return conversation;
+    }
+
+    private List<ChatMessage> compact(Conversation conversation, int budget) {
+        return compactor.compact(conversation, CHARS, budget, 0, 0).conversation().messages();
+    }
+
+    @Test
+    public void testRepeatedAttachmentIsReplacedByReference() {
+        var first = message("user", "look at this");
+        first.setAttachments(List.of(new FileContentAttachment("/p/A.java", 1, 3, "class A {}")));
+        var second = message("user", "and again");
+        second.setAttachments(List.of(new FileContentAttachment("/p/A.java", 1, 3, "class A {}"),
+                new FileContentAttachment("/p/B.java", 1, 3, "class B {}")));
+        var conversation = conversationOf(first, message("assistant", "ok"), second);
+
+        List<ChatMessage> compacted = compact(conversation, UNLIMITED);
+
+        assertSame(first, compacted.get(0));
+        ChatMessage deduplicated = compacted.get(2);
+        assertNotSame(second, deduplicated);
+        var attachments = deduplicated.getAttachments();
+        assertTrue(((FileContentAttachment) attachments.get(0)).getSelectedContent().startsWith("(unchanged"));
+        assertEquals("class B {}", ((FileContentAttachment) attachments.get(1)).getSelectedContent());
+        // the source message is left alone
+        assertEquals("class A {}", ((FileContentAttachment) second.getAttachments().get(0)).getSelectedContent());
+
+        // the next request reuses the same copy, so its estimate and JSON stay cached
+        assertSame(deduplicated, compact(conversation, UNLIMITED).get(2));
+    }
+
+    @Test
+    public void testStaleDumpIsTruncatedOnlyWhenOverBudgetAndStaysTruncated() {
+        var dump = toolResult("readConsole", lines(100));
+        var conversation = conversationOf(message("user", "build it"), dump, message("user", "now what?"));
+
+        // within budget the dump is sent as it is
+        assertSame(dump, compact(conversation, UNLIMITED).get(1));
+
+        int total = compactor.compact(conversation, CHARS, UNLIMITED, 0, 0).breakdown().total();
+        ChatMessage truncated = compact(conversation, total - 1).get(1);
+        String[] truncatedLines = truncated.getContent().split("\n", -1);
+        assertEquals(10 + 1 + 20, truncatedLines.length);
+        assertEquals("line 1", truncatedLines[0]);
+        assertEquals("line 10", truncatedLines[9]);
+        assertEquals("[... 70 lines omitted ...]", truncatedLines[10]);
+        assertEquals("line 81", truncatedLines[11]);
+        assertEquals("line 100", truncatedLines[30]);
+
+        // once truncated, later requests keep sending the same truncated message
+        assertSame(truncated, compact(conversation, UNLIMITED).get(1));
+    }
+
+    @Test
+    public void testDumpInLastTurnIsNotTruncated() {
+        var dump = toolResult("readConsole", lines(100));
+        var conversation = conversationOf(message("user", "build it"), dump);
+
+        assertSame(dump, compact(conversation, 10).get(1));
+    }
+
+    @Test
+    public void testStaleToolResultsAreSummarizedOldestFirst() {
+        var older = toolResult("readFile", "x".repeat(1000));
+        var newer = toolResult("readFile", "y".repeat(1000));
+        var small = toolResult("readFile", "short");
+        var conversation = conversationOf(message("user", "read"), older, message("user", "read more"), newer, small,
+                message("user", "thanks"));
+
+        int total = compactor.compact(conversation, CHARS, UNLIMITED, 0, 0).breakdown().total();
+        List<ChatMessage> compacted = compact(conversation, total - 500);
+
+        assertEquals("[Output of readFile removed to save context: 1 lines. Call the tool again if the output is needed.]",
+                compacted.get(1).getContent());
+        // the budget was met after the first summary
+        assertSame(newer, compacted.get(3));
+        assertSame(small, compacted.get(4));
+        assertEquals(6, compacted.size());
+    }
+
+    @Test
+    public void testOldestTurnsAreDroppedButNeverTheLastOne() {
+        var lastQuestion = message("user", "q".repeat(1000));
+        var conversation = conversationOf(message("user", "a".repeat(100)), message("assistant", "b".repeat(100)),
+                message("user", "c".repeat(100)), message("assistant", "d".repeat(100)), lastQuestion);
+
+        var compaction = compactor.compact(conversation, CHARS, 1300, 0, 0);
+        List<ChatMessage> compacted = compaction.conversation().messages();
+        assertEquals(3, compacted.size());
+        assertEquals(2, compaction.breakdown().removedMessages());
+        assertFalse(compaction.breakdown().isOverBudget());
+
+        compaction = compactor.compact(conversation, CHARS, 10, 0, 0);
+        assertEquals(List.of(lastQuestion), compaction.conversation().messages());
+        assertEquals(4, compaction.breakdown().removedMessages());
+        assertTrue(compaction.breakdown().isOverBudget());
+    }
+
+    @Test
+    public void testChangedMessageIsEstimatedAgain() {
+        var answer = message("assistant", "short");
+        var conversation = conversationOf(message("user", "hello"), answer);
+        int messages = compactor.compact(conversation, CHARS, UNLIMITED, 0, 0).breakdown().messages();
+
+        // same length, different estimate
+        TokenEstimator words = text -> text == null ? 0 : text.toString().split(" ").length;
+        answer.setContent("a b c");
+        assertEquals(messages, compactor.compact(conversation, CHARS, UNLIMITED, 0, 0).breakdown().messages());
+        int wordsBefore = compactor.compact(conversation, words, UNLIMITED, 0, 0).breakdown().messages();
+        answer.setContent("abcde");
+        assertEquals(wordsBefore - 2, compactor.compact(conversation, words, UNLIMITED, 0, 0).breakdown().messages());
+
+        answer.setFunctionCall(new FunctionCall("1", "readFile", Map.of("path", "/p/A.java")));
+        assertTrue(compactor.compact(conversation, CHARS, UNLIMITED, 0, 0).breakdown().functionCalls() > 0);
+    }
+
+    @Test
+    public void testBreakdownTotals() {
+        var question = message("user", "hello");
+        question.setAttachments(List.of(new FileContentAttachment("/p/A.java", 1, 3, "class A {}")));
+        var call = message("assistant", "");
+        var functionCall = new FunctionCall("1", "readFile", Map.of("path", "/p/A.java"));
+        call.setFunctionCall(functionCall);
+        var result = toolResult("readFile", "content");
+        var conversation = conversationOf(question, call, result);
+
+        TokenBreakdown breakdown = compactor.compact(conversation, CHARS, 100_000, 30, 70).breakdown();
+
+        int overhead = 4;
+        int attachment = question.getAttachments().get(0).toChatMessageContent().length();
+        int functionCallTokens = "readFile".length() + JsonUtils.toJsonString(functionCall.arguments()).length();
+        assertEquals(100_000, breakdown.budget());
+        assertEquals(30, breakdown.systemPrompt());
+        assertEquals(70, breakdown.tools());
+        assertEquals(overhead + 5 + overhead, breakdown.messages());
+        assertEquals(functionCallTokens, breakdown.functionCalls());
+        assertEquals(overhead + 7, breakdown.functionResults());
+        assertEquals(attachment, breakdown.attachments());
+        assertEquals(0, breakdown.images());
+        assertEquals(0, breakdown.removedMessages());
+        int total = 30 + 70 + overhead + 5 + overhead + functionCallTokens + overhead + 7 + attachment;
+        assertEquals(total, breakdown.total());
+        assertEquals(total, breakdown.uncompacted());
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.gradusnikov.eclipse.assistai.chat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for the assembly of streamed tool calls.
+ */
+public class ToolCallAccumulatorTest {
+
+    @Test
+    public void testInterleavedCallsCompleteAsSoonAsTheirArgumentsClose() {
+        List<FunctionCall> calls = new ArrayList<>();
+        var accumulator = new ToolCallAccumulator(calls::add);
+
+        accumulator.start(0, "call_a", "files__read");
+        accumulator.start(1, "call_b", "files__list");
+        accumulator.append(0, "{\"path\":\"a{");
+        accumulator.append(1, "{\"dir\":");
+        accumulator.append(1, "\"src\"}");
+
+        assertEquals(1, calls.size());
+        assertEquals(new FunctionCall("call_b", "files__list", Map.of("dir", "src")), calls.get(0));
+
+        accumulator.append(0, "}.txt\"}");
+
+        assertEquals(2, calls.size());
+        assertEquals(new FunctionCall("call_a", "files__read", Map.of("path", "a{}.txt")), calls.get(1));
+
+        // late fragments of a completed call are ignored
+        accumulator.append(1, " ");
+        accumulator.finish();
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void testCallsWithoutArgumentsCompleteAtTheEnd() {
+        List<FunctionCall> calls = new ArrayList<>();
+        var accumulator = new ToolCallAccumulator(calls::add);
+
+        accumulator.start(0, null, "clock__now");
+        accumulator.append(0, "");
+        assertTrue(calls.isEmpty());
+
+        accumulator.finish();
+
+        assertEquals(1, calls.size());
+        assertEquals("clock__now", calls.get(0).name());
+        assertEquals(Map.of(), calls.get(0).arguments());
+        assertTrue(!calls.get(0).id().isEmpty());
+    }
+
+    @Test
+    public void testCallWaitsForItsName() {
+        List<FunctionCall> calls = new ArrayList<>();
+        var accumulator = new ToolCallAccumulator(calls::add);
+
+        accumulator.append(3, "{\"q\":1}");
+        assertTrue(calls.isEmpty());
+
+        accumulator.start(3, "call_c", "search__run");
+
+        assertEquals(List.of(new FunctionCall("call_c", "search__run", Map.of("q", 1))), calls);
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.gradusnikov.eclipse.assistai.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.McpClientServerFactory.InMemorySyncClientServer;
+import com.github.gradusnikov.eclipse.assistai.mcp.servers.TimeMcpServer;
+
+import io.modelcontextprotocol.spec.McpSchema.CallToolRequest;
+import io.modelcontextprotocol.spec.McpSchema.CallToolResult;
+import io.modelcontextprotocol.spec.McpSchema.TextContent;
+
+/**
+ * Measures the latency of a tool call through {@link McpClientRetistry#callTool}
+ * for a built-in server, dispatched directly, and for the same server behind
+ * the in-memory MCP transport, as external servers are called.
+ * <p>
+ * Not part of the test run; run it with {@code -Dassistai.benchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "assistai.benchmark", matches = "true")
+public class McpCallLatencyBenchmark {
+
+    private static final int WARMUP_CALLS = 2_000;
+
+    private static final int MEASURED_CALLS = 10_000;
+
+    private static final CallToolRequest REQUEST = new CallToolRequest("convertTimeZone",
+            Map.of("time", "2023-05-15 14:30:00", "sourceZone", "UTC", "targetZone", "Europe/Paris"));
+
+    private McpClientRetistry registry;
+
+    private InMemorySyncClientServer inMemory;
+
+    @BeforeEach
+    public void setUp() {
+        var factory = new McpClientServerFactory();
+        registry = new McpClientRetistry(factory);
+        registry.addBuiltInServer("direct", new TimeMcpServer());
+        inMemory = factory.creteInMemorySyncClientServer(new TimeMcpServer());
+        inMemory.client().initialize();
+        registry.addClient("transport", inMemory.client());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        inMemory.client().closeGracefully();
+        inMemory.server().closeGracefully();
+    }
+
+    @Test
+    public void benchmarkCallLatency() {
+        assertEquals(textOf(call("transport")), textOf(call("direct")));
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call("transport");
+            call("direct");
+        }
+
+        double transportMicros = measure("transport");
+        double directMicros = measure("direct");
+
+        System.out.printf("MCP tool call latency: in-memory transport %.1f us, direct %.1f us per call%n", transportMicros,
+                directMicros);
+    }
+
+    /**
+     * @return the average latency of a call, in microseconds
+     */
+    private double measure(String clientName) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call(clientName);
+        }
+        return (System.nanoTime() - start) / 1000.0 / MEASURED_CALLS;
+    }
+
+    private CallToolResult call(String clientName) {
+        return registry.callTool(clientName, REQUEST).orElseThrow();
+    }
+
+    private static String textOf(CallToolResult result) {
+        assertEquals(1, result.content().size());
+        return ((TextContent) result.content().get(0)).text();
+    }
+}
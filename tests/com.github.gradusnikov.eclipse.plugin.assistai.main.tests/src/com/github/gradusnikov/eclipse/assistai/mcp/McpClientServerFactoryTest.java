@@ -0,0 +1,76 @@
+package com.github.gradusnikov.eclipse.assistai.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.McpClientServerFactory.DirectServer;
+import com.github.gradusnikov.eclipse.assistai.mcp.McpClientServerFactory.InMemorySyncClientServer;
+import com.github.gradusnikov.eclipse.assistai.mcp.servers.TimeMcpServer;
+
+import io.modelcontextprotocol.spec.McpSchema.CallToolRequest;
+import io.modelcontextprotocol.spec.McpSchema.CallToolResult;
+import io.modelcontextprotocol.spec.McpSchema.TextContent;
+
+/**
+ * Compares the direct dispatch of built-in tools with the calls through the
+ * in-memory MCP transport.
+ */
+public class McpClientServerFactoryTest {
+
+    private static final Map<String, Object> ARGUMENTS = Map.of("time", "2023-05-15 14:30:00", "sourceZone", "UTC",
+            "targetZone", "Europe/Paris");
+
+    private McpClientServerFactory factory;
+
+    private InMemorySyncClientServer inMemory;
+
+    private DirectServer direct;
+
+    @BeforeEach
+    public void setUp() {
+        factory = new McpClientServerFactory();
+        inMemory = factory.creteInMemorySyncClientServer(new TimeMcpServer());
+        inMemory.client().initialize();
+        direct = factory.createDirectServer(new TimeMcpServer());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        inMemory.client().closeGracefully();
+        inMemory.server().closeGracefully();
+    }
+
+    @Test
+    public void testDirectServerListsTheSameTools() {
+        assertEquals(inMemory.client().listTools().tools(), direct.tools());
+    }
+
+    @Test
+    public void testDirectCallReturnsTheSameResult() {
+        CallToolResult expected = inMemory.client().callTool(new CallToolRequest("convertTimeZone", ARGUMENTS));
+        CallToolResult actual = factory.callTool(direct, "convertTimeZone", ARGUMENTS);
+
+        assertEquals(expected.isError(), actual.isError());
+        assertEquals(textOf(expected), textOf(actual));
+        assertTrue(textOf(actual).startsWith("2023-05-15 16:30:00"));
+    }
+
+    @Test
+    public void testRepeatedDirectCallsKeepReturningTheSameResult() {
+        var request = new CallToolRequest("convertTimeZone", ARGUMENTS);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(textOf(inMemory.client().callTool(request)), textOf(factory.callTool(direct, "convertTimeZone", ARGUMENTS)));
+        }
+    }
+
+    private static String textOf(CallToolResult result) {
+        assertEquals(1, result.content().size());
+        return ((TextContent) result.content().get(0)).text();
+    }
+}
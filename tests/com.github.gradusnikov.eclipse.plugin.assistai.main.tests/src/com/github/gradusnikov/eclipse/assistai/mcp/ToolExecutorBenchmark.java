@@ -0,0 +1,86 @@
+package com.github.gradusnikov.eclipse.assistai.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.ToolExecutorTest.SampleServer;
+
+/**
+ * Measures the per-call overhead of the invoker table of {@link ToolExecutor}
+ * next to the reflective dispatch it replaced, which looked up the method
+ * among the declared methods, mapped the arguments through the parameter
+ * annotations and called {@link Method#invoke}.
+ * <p>
+ * Not part of the test run; run it with {@code -Dassistai.benchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "assistai.benchmark", matches = "true")
+public class ToolExecutorBenchmark {
+
+    private static final int WARMUP_CALLS = 100_000;
+
+    private static final int MEASURED_CALLS = 1_000_000;
+
+    private static final Map<String, Object> ARGUMENTS = Map.of("maxLines", 100, "includeAllConsoles", true);
+
+    private final SampleServer server = new SampleServer();
+
+    private final ToolExecutor executor = new ToolExecutor(server);
+
+    @Test
+    public void benchmarkCallOverhead() throws Exception {
+        assertEquals(executor.invoke("console", ARGUMENTS), invokeReflectively("console", ARGUMENTS));
+        long sink = 0;
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            sink += executor.invoke("console", ARGUMENTS).hashCode();
+            sink += invokeReflectively("console", ARGUMENTS).hashCode();
+            sink += server.console(i, Boolean.TRUE).hashCode();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            sink += executor.invoke("console", ARGUMENTS).hashCode();
+        }
+        long executorNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            sink += invokeReflectively("console", ARGUMENTS).hashCode();
+        }
+        long reflectiveNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            sink += server.console((Integer) ARGUMENTS.get("maxLines"), (Boolean) ARGUMENTS.get("includeAllConsoles")).hashCode();
+        }
+        long plainNanos = System.nanoTime() - start;
+
+        System.out.printf("Tool call latency: invoker table %.1f ns, reflective dispatch %.1f ns, plain call %.1f ns per call (%d)%n",
+                (double) executorNanos / MEASURED_CALLS, (double) reflectiveNanos / MEASURED_CALLS,
+                (double) plainNanos / MEASURED_CALLS, sink & 1);
+    }
+
+    /**
+     * The dispatch before the invoker table: the method and the names of its
+     * parameters are looked up on every call.
+     */
+    private Object invokeReflectively(String name, Map<String, Object> args) throws Exception {
+        Method method = Arrays.stream(server.getClass().getDeclaredMethods())
+                .filter(candidate -> candidate.isAnnotationPresent(Tool.class))
+                .filter(candidate -> name.equals(ToolExecutor.toFunctionName(candidate)))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Tool " + name + " not found!"));
+        Object[] values = Arrays.stream(method.getParameters())
+                .map(ToolExecutor::toParamName)
+                .map(args::get)
+                .toArray();
+        return method.invoke(server, values);
+    }
+}
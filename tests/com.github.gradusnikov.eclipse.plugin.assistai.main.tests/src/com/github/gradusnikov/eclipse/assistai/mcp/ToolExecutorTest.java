@@ -0,0 +1,79 @@
+package com.github.gradusnikov.eclipse.assistai.mcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for the binding of tool arguments and the dispatch of tool calls.
+ */
+public class ToolExecutorTest {
+
+    @McpServer(name = "sample")
+    public static class SampleServer {
+
+        @Tool(name = "console", description = "Reads the console")
+        public String console(@ToolParam(name = "maxLines", description = "", type = "integer") Integer maxLines,
+                @ToolParam(name = "includeAllConsoles", description = "", type = "boolean") Boolean includeAllConsoles) {
+            return maxLines + ":" + includeAllConsoles;
+        }
+
+        @Tool(name = "primitives", description = "Takes primitive parameters")
+        public String primitives(@ToolParam(name = "count", description = "") int count, @ToolParam(name = "flag", description = "") boolean flag,
+                @ToolParam(name = "ratio", description = "") double ratio) {
+            return count + ":" + flag + ":" + ratio;
+        }
+
+        @Tool(name = "echo", description = "Echoes the text")
+        public String echo(@ToolParam(name = "text", description = "") String text) {
+            return text;
+        }
+
+        @Tool(name = "fail", description = "Always fails")
+        public String fail() {
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    private final ToolExecutor executor = new ToolExecutor(new SampleServer());
+
+    @Test
+    public void testJsonValuesAreConvertedToParameterTypes() {
+        assertEquals("100:true", executor.invoke("console", Map.of("maxLines", 100, "includeAllConsoles", true)));
+        assertEquals("100:true", executor.invoke("console", Map.of("maxLines", "100", "includeAllConsoles", "TRUE")));
+        assertEquals("100:null", executor.invoke("console", Map.of("maxLines", 100.0)));
+        assertEquals("42", executor.invoke("echo", Map.of("text", 42)));
+        assertEquals("[\"a\",\"b\"]", executor.invoke("echo", Map.of("text", List.of("a", "b"))).toString().replaceAll("\\s", ""));
+    }
+
+    @Test
+    public void testMissingPrimitiveArgumentsDefaultToZero() {
+        assertEquals("0:false:0.0", executor.invoke("primitives", Map.of()));
+        var args = new HashMap<String, Object>();
+        args.put("count", 3L);
+        args.put("flag", null);
+        args.put("ratio", 1);
+        assertEquals("3:false:1.0", executor.invoke("primitives", args));
+    }
+
+    @Test
+    public void testInvalidCallsFail() {
+        assertThrows(IllegalArgumentException.class, () -> executor.invoke("console", Map.of("maxLines", "many")));
+        assertThrows(IllegalArgumentException.class, () -> executor.invoke("console", Map.of("includeAllConsoles", 1)));
+        assertThrows(RuntimeException.class, () -> executor.invoke("missing", Map.of()));
+        assertThrows(IllegalStateException.class, () -> executor.invoke("fail", Map.of()));
+    }
+
+    @Test
+    public void testInvocationMatchesPlainCall() {
+        var server = new SampleServer();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(server.console(i, i % 2 == 0), executor.invoke("console", Map.of("maxLines", i, "includeAllConsoles", i % 2 == 0)));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.services.FakeResources;
+
+/**
+ * Test cases for choosing the files of the code index and for the search.
+ */
+public class CodeIndexTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void testOnlyTopLevelBuildFoldersAreExcluded() throws Exception {
+        for (String path : new String[] { "build/Generated.java", "src/com/example/build/Tool.java", "src/com/example/out/Printer.java",
+                "src/gen/Stub.java", "src/.cache/Entry.java", "logo.png" }) {
+            Files.createDirectories(folder.resolve(path).getParent());
+            Files.writeString(folder.resolve(path), "");
+        }
+        var resources = new FakeResources(folder, "sample", Set.of("src/gen"));
+
+        assertTrue(CodeIndex.isExcluded(resources.resource("build/Generated.java")));
+        assertFalse(CodeIndex.isExcluded(resources.resource("src/com/example/build/Tool.java")));
+        assertFalse(CodeIndex.isExcluded(resources.resource("src/com/example/out/Printer.java")));
+        assertTrue(CodeIndex.isExcluded(resources.resource("src/gen/Stub.java")));
+        assertTrue(CodeIndex.isExcluded(resources.resource("src/.cache/Entry.java")));
+        assertTrue(CodeIndex.isExcluded(resources.resource("logo.png")));
+    }
+
+    @Test
+    public void testBacktrackingPatternIsAborted() {
+        // the back reference keeps the matcher from remembering failed positions
+        var pattern = Pattern.compile("(a*)*\\1b");
+        var text = new CodeIndex.DeadlineCharSequence("a".repeat(40) + "!", System.nanoTime() + 100_000_000L);
+
+        long start = System.nanoTime();
+        assertThrows(RuntimeException.class, () -> pattern.matcher(text).find());
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+    }
+
+    @Test
+    public void testMatchingWithinDeadlineFindsText() {
+        var text = new CodeIndex.DeadlineCharSequence("class Sample {}", System.nanoTime() + 5_000_000_000L);
+
+        assertTrue(Pattern.compile("Sample").matcher(text).find());
+    }
+
+    @Test
+    public void testPatternIsMatchedAgainstSingleLines() {
+        String content = "class A {\r\n    void run() {}\r\n}\r\n";
+
+        assertEquals(List.of("/p/A.java:2: void run() {}"), hits(content, "^\\s+void\\s+\\w+\\(\\) \\{\\}$", 10));
+        assertEquals(List.of(), hits(content, "\\{\\s+void", 10));
+        assertEquals(List.of(), hits(content, "A \\{[^}]*run", 10));
+        assertEquals(List.of("/p/A.java:1: class A {", "/p/A.java:2: void run() {}", "/p/A.java:3: }"), hits(content, "\\S", 10));
+    }
+
+    @Test
+    public void testHitsAreLimited() {
+        var hits = new ArrayList<String>();
+
+        assertTrue(CodeIndex.addHits("/p/A.java", "a\na\na\n", Pattern.compile("a").matcher("a\na\na\n"), hits, 2));
+        assertEquals(2, hits.size());
+    }
+
+    private static List<String> hits(String content, String regex, int maxHits) {
+        var hits = new ArrayList<String>();
+        assertFalse(CodeIndex.addHits("/p/A.java", content, Pattern.compile(regex).matcher(content), hits, maxHits));
+        return hits;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.index.SymbolTable.Kind;
+import com.github.gradusnikov.eclipse.assistai.mcp.index.SymbolTable.Symbol;
+
+/**
+ * Test cases for the symbol table.
+ */
+public class SymbolTableTest {
+
+    private static final String CLIENT = "/p/src/com/example/HttpClient.java";
+
+    private static final String CACHE = "/p/src/com/example/ClientCache.java";
+
+    private final SymbolTable table = new SymbolTable();
+
+    @BeforeEach
+    public void setUp() {
+        table.put(CLIENT, List.of(
+                new Symbol("HttpClient", Kind.CLASS, "com.example", CLIENT, 3),
+                new Symbol("send", Kind.METHOD, "com.example.HttpClient", CLIENT, 10),
+                new Symbol("client", Kind.FIELD, "com.example.HttpClient", CLIENT, 5)));
+        table.put(CACHE, List.of(
+                new Symbol("ClientCache", Kind.CLASS, "com.example", CACHE, 7),
+                new Symbol("send", Kind.METHOD, "com.example.ClientCache", CACHE, 20)));
+    }
+
+    @Test
+    public void testMatchesAreRanked() {
+        assertEquals(List.of("com.example.HttpClient.client", "com.example.ClientCache", "com.example.HttpClient"),
+                names(table.find("client", 10)));
+        assertEquals(List.of("com.example.HttpClient.client", "com.example.ClientCache"), names(table.find("client", 2)));
+    }
+
+    @Test
+    public void testQualifiedQueryFiltersContainer() {
+        assertEquals(List.of("com.example.ClientCache.send", "com.example.HttpClient.send"), names(table.find("send", 10)));
+        assertEquals(List.of("com.example.HttpClient.send"), names(table.find("HttpClient.send", 10)));
+        assertEquals(List.of("com.example.HttpClient"), names(table.find("com.example.HttpClient", 10)));
+        assertEquals(List.of(), names(table.find("example.Other.send", 10)));
+    }
+
+    @Test
+    public void testSymbolsAreReplacedPerFile() {
+        table.put(CLIENT, List.of(new Symbol("HttpClient2", Kind.RECORD, "com.example", CLIENT, 1)));
+        table.remove(CACHE);
+
+        assertEquals(List.of("com.example.HttpClient2"), names(table.find("Client", 10)));
+        assertEquals(1, table.size());
+    }
+
+    private static List<String> names(List<Symbol> symbols) {
+        return symbols.stream().map(Symbol::qualifiedName).toList();
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for the trigram text index.
+ */
+public class TrigramIndexTest {
+
+    @Test
+    public void testCandidatesContainAllLiterals() {
+        var index = new TrigramIndex();
+        index.put("/p/A.java", "class HttpClientFactory { }");
+        index.put("/p/B.java", "class Client { HttpRequest request; }");
+        index.put("/p/C.txt", "nothing to see here");
+
+        assertEquals(List.of("/p/A.java", "/p/B.java"), index.candidates(List.of("http")));
+        assertEquals(List.of("/p/A.java"), index.candidates(List.of("HttpClient")));
+        assertEquals(List.of("/p/B.java"), index.candidates(List.of("Client", "request")));
+        assertEquals(List.of(), index.candidates(List.of("missing")));
+        assertEquals(List.of("/p/A.java", "/p/B.java", "/p/C.txt"), index.candidates(List.of("ab")));
+    }
+
+    @Test
+    public void testReplacedAndRemovedDocumentsAreNotFound() {
+        var index = new TrigramIndex();
+        index.put("/p/A.java", "old content");
+        index.put("/p/A.java", "new content");
+        index.put("/p/sub/B.java", "new content");
+        index.put("/p/subway/C.java", "new content");
+
+        assertEquals(List.of(), index.candidates(List.of("old")));
+        index.remove("/p/A.java");
+        index.removeAll("/p/sub/");
+
+        assertEquals(List.of("/p/subway/C.java"), index.candidates(List.of("new")));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testRequiredLiteralsOfRegex() {
+        assertEquals(List.of("HttpClient"), TrigramIndex.requiredLiterals("HttpClient"));
+        assertEquals(List.of("new", "HttpClient("), TrigramIndex.requiredLiterals("new\\s+HttpClient\\("));
+        assertEquals(List.of("ab.c"), TrigramIndex.requiredLiterals("\\Qab.\\Ecd?"));
+        assertEquals(List.of("colo"), TrigramIndex.requiredLiterals("colou?r"));
+        assertEquals(List.of("todo"), TrigramIndex.requiredLiterals("(?i)todo"));
+        assertEquals(List.of("get", "Name"), TrigramIndex.requiredLiterals("get[A-Z]\\w*Name"));
+        assertEquals(List.of(), TrigramIndex.requiredLiterals("foo|bar"));
+        assertEquals(List.of("load"), TrigramIndex.requiredLiterals("load(Foo|Bar)"));
+    }
+
+    @Test
+    public void testIndexNeverMissesMatches() {
+        var random = new Random(42);
+        var index = new TrigramIndex();
+        var documents = new String[500];
+        for (int i = 0; i < documents.length; i++) {
+            var text = new StringBuilder();
+            for (int j = 0; j < 200; j++) {
+                text.append((char) ('a' + random.nextInt(6)));
+            }
+            documents[i] = text.toString();
+            index.put("/p/" + i, documents[i]);
+        }
+        for (int i = 0; i < documents.length; i += 3) {
+            index.remove("/p/" + i);
+        }
+        for (String regex : List.of("abcd", "fa.e", "dd?ea", "(?i)ACEF", "bb[ab]ff")) {
+            var pattern = Pattern.compile(regex);
+            var candidates = index.candidates(TrigramIndex.requiredLiterals(regex));
+            for (int i = 0; i < documents.length; i++) {
+                if (i % 3 != 0 && pattern.matcher(documents[i]).find()) {
+                    assertTrue(candidates.contains("/p/" + i), regex + " in document " + i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for applying batch edit operations to documents.
+ */
+public class EditOperationTest {
+
+    private static void applyAll(IDocument document, List<EditOperation> edits) {
+        edits.forEach(edit -> edit.apply(document));
+    }
+
+    @Test
+    public void testOperationsApplyInOrder() {
+        IDocument document = new Document("a\nb\nc\n");
+        applyAll(document, EditOperation.parseAll("""
+                [{"filePath": "A.java", "operation": "replace", "oldString": "b", "newString": "B"},
+                 {"filePath": "A.java", "operation": "insert", "line": 1, "newString": "first"},
+                 {"filePath": "A.java", "operation": "insert", "line": 5, "newString": "last"},
+                 {"filePath": "A.java", "operation": "delete", "startLine": 2, "endLine": 2}]
+                """));
+        assertEquals("first\nB\nc\nlast\n", document.get());
+    }
+
+    @Test
+    public void testReplaceWithinLineRangeKeepsLineDelimiters() {
+        IDocument document = new Document("x = 1;\r\nx = 1;\r\nx = 1;\r\n");
+        applyAll(document, EditOperation.parseAll("""
+                [{"filePath": "A.java", "operation": "replace", "oldString": "x = 1;\\nx", "newString": "x = 2;\\ny",
+                  "startLine": 2, "endLine": 3}]
+                """));
+        assertEquals("x = 1;\r\nx = 2;\r\ny = 1;\r\n", document.get());
+    }
+
+    @Test
+    public void testDeleteAllOccurrences() {
+        IDocument document = new Document("int a; // TODO\nint b; // TODO\n");
+        applyAll(document, EditOperation.parseAll("""
+                [{"filePath": "A.java", "operation": "delete", "oldString": " // TODO"}]
+                """));
+        assertEquals("int a;\nint b;\n", document.get());
+    }
+
+    @Test
+    public void testInsertAppendsToFileWithoutTrailingLineBreak() {
+        IDocument document = new Document("a\nb");
+        applyAll(document, EditOperation.parseAll("""
+                [{"filePath": "A.java", "operation": "insert", "line": 3, "newString": "c"}]
+                """));
+        assertEquals("a\nb\nc", document.get());
+    }
+
+    @Test
+    public void testInvalidOperations() {
+        assertThrows(IllegalArgumentException.class, () -> EditOperation.parseAll("[]"));
+        assertThrows(IllegalArgumentException.class, () -> EditOperation.parseAll("""
+                [{"filePath": "A.java", "operation": "rename"}]
+                """));
+        assertThrows(IllegalArgumentException.class, () -> EditOperation.parseAll("""
+                [{"filePath": "A.java", "operation": "insert", "newString": "x"}]
+                """));
+        EditOperation missing = EditOperation.parseAll("""
+                [{"filePath": "A.java", "operation": "replace", "oldString": "y", "startLine": 1, "endLine": 1}]
+                """).get(0);
+        var error = assertThrows(IllegalStateException.class, () -> missing.apply(new Document("x\ny\n")));
+        assertTrue(error.getMessage().contains("within lines 1-1"), error.getMessage());
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Presents a folder of the file system as an Eclipse project, for code that
+ * only reads the resource tree and must be tested without a workspace.
+ */
+public final class FakeResources {
+
+    private final Path root;
+
+    private final String projectName;
+
+    private final Set<String> derived;
+
+    /**
+     * @param root
+     *            the project folder
+     * @param derived
+     *            the project relative paths of the resources marked derived
+     */
+    public FakeResources(Path root, String projectName, Set<String> derived) {
+        this.root = root;
+        this.projectName = projectName;
+        this.derived = derived;
+    }
+
+    public IProject project() {
+        return (IProject) resource(root);
+    }
+
+    /**
+     * @param path
+     *            a project relative path
+     */
+    public IResource resource(String path) {
+        return resource(root.resolve(path));
+    }
+
+    private IResource resource(Path path) {
+        Class<?> type = path.equals(root) ? IProject.class : Files.isDirectory(path) ? IFolder.class : IFile.class;
+        String relative = root.relativize(path).toString().replace('\\', '/');
+        return (IResource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getName":
+                return path.equals(root) ? projectName : path.getFileName().toString();
+            case "getType":
+                return type == IProject.class ? IResource.PROJECT : type == IFolder.class ? IResource.FOLDER : IResource.FILE;
+            case "getParent":
+                return path.equals(root) ? null : resource(path.getParent());
+            case "getProject":
+                return resource(root);
+            case "getFullPath":
+                return IPath.fromPortableString("/" + projectName + (relative.isEmpty() ? "" : "/" + relative));
+            case "getLocation":
+                return IPath.fromOSString(path.toString());
+            case "getFileExtension":
+                String name = path.getFileName().toString();
+                return name.contains(".") ? name.substring(name.lastIndexOf('.') + 1) : null;
+            case "getCharset":
+                return "UTF-8";
+            case "exists":
+                return Files.exists(path);
+            case "isDerived":
+                return derived.contains(relative);
+            case "isTeamPrivateMember":
+                return false;
+            case "getFile":
+                return resource(path.resolve(((IPath) args[0]).toOSString()));
+            case "getFolder":
+                return resource(path.resolve(((IPath) args[0]).toOSString()));
+            case "members":
+                try (Stream<Path> children = Files.list(path)) {
+                    return children.sorted(Comparator.comparing(Path::toString)).map(this::resource).toArray(IResource[]::new);
+                }
+            case "getContents":
+                try {
+                    return Files.newInputStream(path);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return path.hashCode();
+            case "toString":
+                return "/" + projectName + "/" + relative;
+            default:
+                throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+}
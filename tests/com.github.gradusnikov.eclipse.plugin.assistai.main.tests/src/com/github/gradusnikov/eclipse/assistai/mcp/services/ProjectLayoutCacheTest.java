@@ -0,0 +1,64 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.services.ProjectLayout.Options;
+
+/**
+ * Test cases for walking project trees into layout snapshots.
+ */
+public class ProjectLayoutCacheTest {
+
+    @TempDir
+    Path folder;
+
+    private final ProjectLayoutCache cache = new ProjectLayoutCache();
+
+    private String layoutOf(Set<String> derived) throws Exception {
+        ProjectLayout layout = cache.get(new FakeResources(folder, "sample", derived).project());
+        return layout.render(new Options(0, null, null, 0, 100)).text();
+    }
+
+    private void write(String path, String content) throws Exception {
+        Path file = folder.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    @Test
+    public void testGitignoreOfProjectOutsideGitRepository() throws Exception {
+        write(".gitignore", "*.log\ngenerated/\n");
+        write("app.log", "");
+        write("generated/Gen.java", "");
+        write("src/App.java", "");
+
+        assertEquals("""
+                .gitignore
+                generated/ [ignored]
+                src/
+                  App.java
+                """, layoutOf(Set.of()));
+    }
+
+    @Test
+    public void testOnlyTopLevelBuildFoldersAreSkipped() throws Exception {
+        write("build/classes/App.class", "");
+        write("src/com/example/build/Tool.java", "");
+        write("src/gen/Stub.java", "");
+
+        assertEquals("""
+                build/ [ignored]
+                src/
+                  com/example/build/
+                    Tool.java
+                  gen/ [derived]
+                """, layoutOf(Set.of("src/gen")));
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.services.ProjectLayout.Mark;
+import com.github.gradusnikov.eclipse.assistai.mcp.services.ProjectLayout.Options;
+import com.github.gradusnikov.eclipse.assistai.tools.GlobPattern;
+
+/**
+ * Test cases for rendering project layout snapshots.
+ */
+public class ProjectLayoutTest {
+
+    private final ProjectLayout layout = new ProjectLayout.Builder()
+            .file("pom.xml")
+            .enter("src")
+                .enter("main")
+                    .enter("java")
+                        .enter("com")
+                            .enter("example")
+                                .file("App.java")
+                                .file("Util.java")
+                                .file("logo.png")
+                            .leave()
+                        .leave()
+                    .leave()
+                .leave()
+                .enter("test")
+                    .file("AppTest.java")
+                .leave()
+            .leave()
+            .folder("target", Mark.DERIVED)
+            .folder("node_modules", Mark.IGNORED)
+            .build(3);
+
+    @Test
+    public void testSingleChildFoldersAreJoined() {
+        assertEquals("""
+                pom.xml
+                src/
+                  main/java/com/example/
+                    App.java
+                    Util.java
+                    logo.png
+                  test/
+                    AppTest.java
+                target/ [derived]
+                node_modules/ [ignored]
+                """, render(0, null, null, 0, 100).text());
+        assertEquals(5, layout.getFiles());
+        assertEquals(8, layout.getFolders());
+    }
+
+    @Test
+    public void testDeepFoldersShowFileCount() {
+        assertEquals("""
+                pom.xml
+                src/
+                  main/ (3 files)
+                  test/ (1 file)
+                target/ [derived]
+                node_modules/ [ignored]
+                """, render(2, null, null, 0, 100).text());
+    }
+
+    @Test
+    public void testIncludeAndExcludeGlobs() {
+        assertEquals("""
+                src/main/java/com/example/
+                  App.java
+                  Util.java
+                """, render(0, "*.java", "test", 0, 100).text());
+        assertEquals("""
+                pom.xml
+                src/test/
+                  AppTest.java
+                target/ [derived]
+                node_modules/ [ignored]
+                """, render(0, null, "src/main/**", 0, 100).text());
+    }
+
+    @Test
+    public void testPages() {
+        var first = render(0, null, null, 0, 4);
+        var last = render(0, null, null, first.nextOffset(), 4);
+        var beyond = render(0, null, null, 20, 4);
+
+        assertEquals(10, first.totalLines());
+        assertEquals(4, first.nextOffset());
+        assertEquals("""
+                  test/
+                    AppTest.java
+                target/ [derived]
+                node_modules/ [ignored]
+                """, render(0, null, null, 6, 4).text());
+        assertEquals(8, last.nextOffset());
+        assertEquals("", beyond.text());
+        assertEquals(-1, beyond.nextOffset());
+    }
+
+    private ProjectLayout.Page render(int maxDepth, String include, String exclude, int offset, int pageSize) {
+        return layout.render(new Options(maxDepth, GlobPattern.compileAny(include), GlobPattern.compileAny(exclude), offset, pageSize));
+    }
+}
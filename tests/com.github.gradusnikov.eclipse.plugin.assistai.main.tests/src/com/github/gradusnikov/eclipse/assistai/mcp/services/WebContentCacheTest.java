@@ -0,0 +1,97 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.http.HttpHeaders;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.services.WebContentCache.Entry;
+
+/**
+ * Test cases for the disk-backed web content cache.
+ */
+public class WebContentCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(30);
+
+    private static final Instant NOW = Instant.parse("2026-01-01T10:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testEntriesSurviveRestart() {
+        var entry = new Entry("page:https://example.com/", "# Example", NOW, NOW.plusSeconds(60), "\"v1\"", null);
+        new WebContentCache(null, directory, TTL, 1 << 20).put(entry);
+
+        var restarted = new WebContentCache(null, directory, TTL, 1 << 20);
+
+        assertEquals(entry, restarted.get(entry.key()).orElseThrow());
+        assertTrue(restarted.get("page:https://example.com/other").isEmpty());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        var probe = new WebContentCache(null, directory.resolve("probe"), TTL, Long.MAX_VALUE);
+        probe.put(entry("probe"));
+        long entrySize;
+        try (var files = Files.list(directory.resolve("probe"))) {
+            entrySize = Files.size(files.findFirst().orElseThrow());
+        }
+
+        var cache = new WebContentCache(null, directory.resolve("cache"), TTL, entrySize * 2 + entrySize / 2);
+        cache.put(entry("a"));
+        cache.put(entry("b"));
+        cache.get("a");
+        cache.put(entry("c"));
+
+        assertTrue(cache.get("a").isPresent());
+        assertFalse(cache.get("b").isPresent());
+        assertTrue(cache.get("c").isPresent());
+    }
+
+    @Test
+    public void testExpiryHonorsCachingHeaders() {
+        var cache = new WebContentCache(null, directory, TTL, 1 << 20);
+
+        assertNull(cache.expiresAt(headers(Map.of("Cache-Control", List.of("private, no-store"))), NOW));
+        assertEquals(NOW, cache.expiresAt(headers(Map.of("Cache-Control", List.of("no-cache"))), NOW));
+        assertEquals(NOW.plusSeconds(60), cache.expiresAt(headers(Map.of("Cache-Control", List.of("public, max-age=60"))), NOW));
+        assertEquals(NOW.plus(TTL), cache.expiresAt(headers(Map.of("Cache-Control", List.of("max-age=86400"))), NOW));
+        assertEquals(NOW.plusSeconds(120), cache.expiresAt(headers(Map.of("Expires", List.of("Thu, 1 Jan 2026 10:02:00 GMT"))), NOW));
+        assertEquals(NOW.plus(TTL), cache.expiresAt(headers(Map.of()), NOW));
+    }
+
+    @Test
+    public void testKeysAreNormalized() {
+        assertEquals("page:https://example.com/a?x=2&y=1", WebContentCache.urlKey(" HTTPS://Example.COM:443/a?y=1&x=2#top "));
+        assertEquals("page:http://localhost:8080/", WebContentCache.urlKey("http://localhost:8080"));
+        assertEquals("search:eclipse plugin", WebContentCache.searchKey("  Eclipse \t Plugin "));
+    }
+
+    private static Entry entry(String key) {
+        // random text does not compress, so all entries have the same size
+        var random = new Random(key.hashCode());
+        var content = new StringBuilder();
+        for (int i = 0; i < 4096; i++) {
+            content.append((char) ('a' + random.nextInt(26)));
+        }
+        return new Entry(key, content.toString(), NOW, NOW.plusSeconds(60), null, null);
+    }
+
+    private static HttpHeaders headers(Map<String, List<String>> headers) {
+        return HttpHeaders.of(headers, (name, value) -> true);
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.gradusnikov.eclipse.assistai.mcp.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.ILogListener;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Bundle;
+
+import com.github.gradusnikov.eclipse.assistai.mcp.services.WebContentCache.Status;
+
+/**
+ * Test cases for reading web pages, against a local stand-in HTTP server.
+ */
+public class WebPageServiceTest {
+
+    private static final String ARTICLE = "<html><head><title>Article</title><script>var tracking = 1;</script></head><body>"
+            + "<nav><a href=\"/\">Home</a> <a href=\"/blog\">Navigation link</a></nav>"
+            + "<article><h1>Pooled browsers</h1><p>" + "Reading a page with a plain request is much cheaper than starting a browser. ".repeat(5)
+            + "</p></article><footer>Copyright footer</footer></body></html>";
+
+    private static final String APPLICATION_SHELL = "<html><body><div id=\"root\"></div>"
+            + "<noscript>You need to enable JavaScript to run this app.</noscript><script src=\"/app.js\"></script></body></html>";
+
+    private LocalHttpServer server;
+
+    private WebPageService service;
+
+    @TempDir
+    Path cacheDirectory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new LocalHttpServer(Map.of(
+                "/article", new Response("text/html; charset=utf-8", ARTICLE, "max-age=60", null),
+                "/notes.txt", new Response("text/plain", "plain *text* notes", "no-store", null),
+                "/tagged", new Response("text/html", ARTICLE, "no-cache", "\"v1\""),
+                "/data.json", new Response("application/json; charset=utf-8", "{\"a\": 1}", "no-store", null),
+                "/paper.pdf", new Response("application/pdf", "%PDF-1.7 \u0000\u0001 binary", "max-age=60", null)));
+
+        IEclipseContext context = EclipseContextFactory.create();
+        ILog log = new ILog() {
+            @Override
+            public void removeLogListener(ILogListener listener) {
+            }
+
+            @Override
+            public void log(IStatus status) {
+                System.out.println(status.getMessage());
+            }
+
+            @Override
+            public Bundle getBundle() {
+                return null;
+            }
+
+            @Override
+            public void addLogListener(ILogListener listener) {
+            }
+        };
+        context.set(ILog.class, log);
+        context.set(WebContentCache.class, new WebContentCache(log, cacheDirectory, Duration.ofMinutes(10), 1 << 20));
+        // not made by the injector, which would keep the singleton across tests
+        service = new WebPageService();
+        ContextInjectionFactory.inject(service, context);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        service.dispose();
+        server.close();
+    }
+
+    @Test
+    public void testStaticPageIsReadWithoutBrowser() {
+        String markdown = service.read(server.url("/article")).content();
+
+        assertTrue(markdown.contains("Pooled browsers"));
+        assertTrue(markdown.contains("much cheaper than starting a browser"));
+        assertFalse(markdown.contains("Navigation link"));
+        assertFalse(markdown.contains("Copyright footer"));
+        assertEquals(new WebPageService.Metrics(1, 0, 0, 0, 0), service.getMetrics());
+    }
+
+    @Test
+    public void testPlainTextIsReturnedAsIs() {
+        assertEquals("plain *text* notes", service.read(server.url("/notes.txt")).content());
+    }
+
+    @Test
+    public void testOnlyTextContentIsReturned() {
+        assertEquals("{\"a\": 1}", service.read(server.url("/data.json")).content());
+        assertEquals("Unsupported content type application/pdf: only text, HTML, JSON and XML pages can be read.",
+                service.read(server.url("/paper.pdf")).content());
+        assertTrue(WebPageService.isText("application/rss+xml"));
+        assertFalse(WebPageService.isText("image/png"));
+    }
+
+    @Test
+    public void testFreshPageIsServedFromCache() {
+        var first = service.read(server.url("/article"));
+        var second = service.read(server.url("/article#section"));
+
+        assertEquals(Status.MISS, first.status());
+        assertEquals(Status.HIT, second.status());
+        assertEquals(first.content(), second.content());
+        assertEquals(1, server.requests("/article"));
+    }
+
+    @Test
+    public void testStalePageIsRevalidated() {
+        var first = service.read(server.url("/tagged"));
+        var second = service.read(server.url("/tagged"));
+
+        assertEquals(Status.MISS, first.status());
+        assertEquals(Status.REVALIDATED, second.status());
+        assertEquals(first.content(), second.content());
+        assertEquals(2, server.requests("/tagged"));
+        assertEquals(1, service.getMetrics().revalidatedPages());
+    }
+
+    @Test
+    public void testUncacheablePageIsNotStored() throws IOException {
+        service.read(server.url("/notes.txt"));
+        service.read(server.url("/notes.txt"));
+
+        assertEquals(2, server.requests("/notes.txt"));
+        try (var files = Files.list(cacheDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testApplicationShellNeedsJavaScript() {
+        assertTrue(WebPageService.needsJavaScript(Jsoup.parse(APPLICATION_SHELL)));
+        assertFalse(WebPageService.needsJavaScript(Jsoup.parse(ARTICLE)));
+    }
+
+    private record Response(String contentType, String body, String cacheControl, String etag) {
+    }
+
+    /**
+     * Minimal HTTP/1.1 server answering GET requests with fixed responses,
+     * honoring If-None-Match.
+     */
+    private static class LocalHttpServer implements AutoCloseable {
+        private final ServerSocket socket;
+        private final Map<String, Response> responses;
+        private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+        LocalHttpServer(Map<String, Response> responses) throws IOException {
+            this.responses = responses;
+            this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread thread = new Thread(this::serve, "Local HTTP server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String url(String path) {
+            return "http://127.0.0.1:" + socket.getLocalPort() + path;
+        }
+
+        int requests(String path) {
+            return requests.getOrDefault(path, new AtomicInteger()).get();
+        }
+
+        private void serve() {
+            while (!socket.isClosed()) {
+                try (Socket connection = socket.accept()) {
+                    var reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                    String path = reader.readLine().split(" ")[1];
+                    String ifNoneMatch = null;
+                    for (String header = reader.readLine(); !header.isEmpty(); header = reader.readLine()) {
+                        if (header.toLowerCase().startsWith("if-none-match:")) {
+                            ifNoneMatch = header.substring(header.indexOf(':') + 1).trim();
+                        }
+                    }
+                    requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+                    Response response = responses.get(path);
+                    boolean notModified = response != null && response.etag() != null && response.etag().equals(ifNoneMatch);
+                    byte[] body = response == null || notModified ? new byte[0] : response.body().getBytes(StandardCharsets.UTF_8);
+                    String status = response == null ? "404 Not Found" : notModified ? "304 Not Modified" : "200 OK";
+                    String head = "HTTP/1.1 " + status + "\r\n"
+                            + "Content-Type: " + (response == null ? "text/plain" : response.contentType()) + "\r\n"
+                            + (response == null ? "" : "Cache-Control: " + response.cacheControl() + "\r\n")
+                            + (response == null || response.etag() == null ? "" : "ETag: " + response.etag() + "\r\n")
+                            + "Content-Length: " + body.length + "\r\n" + "Connection: close\r\n\r\n";
+                    OutputStream output = connection.getOutputStream();
+                    output.write(head.getBytes(StandardCharsets.US_ASCII));
+                    output.write(body);
+                    output.flush();
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
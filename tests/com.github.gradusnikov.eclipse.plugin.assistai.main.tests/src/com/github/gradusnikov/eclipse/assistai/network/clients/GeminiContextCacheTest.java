@@ -0,0 +1,277 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.ILogListener;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
+import com.github.gradusnikov.eclipse.assistai.chat.Conversation;
+import com.github.gradusnikov.eclipse.assistai.chat.TokenEstimatorRegistry;
+import com.github.gradusnikov.eclipse.assistai.preferences.models.ModelApiDescriptor;
+
+/**
+ * Test cases for the explicit context caching of Gemini requests.
+ */
+public class GeminiContextCacheTest {
+
+    private static final ModelApiDescriptor MODEL = new ModelApiDescriptor("1", "gemini",
+            "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-pro:streamGenerateContent", "key",
+            "gemini-2.5-pro", 7, false, true, false, 0);
+
+    private static final String SYSTEM_PROMPT = "You are a helpful assistant. ".repeat(2000);
+
+    private static final Map<String, Object> PREFIX = Map.of(
+            "systemInstruction", Map.of("parts", List.of(Map.of("text", SYSTEM_PROMPT))),
+            "tools", List.of(Map.of("functionDeclarations", List.of(Map.of("name", "readFile")))),
+            "toolConfig", Map.of("functionCallingConfig", Map.of("mode", "AUTO")));
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** The create requests sent, completed by the test */
+    private final List<CompletableFuture<HttpResponse<String>>> exchanges = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private GeminiContextCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        IEclipseContext context = EclipseContextFactory.create();
+        context.set(ILog.class, new ILog() {
+            @Override
+            public void removeLogListener(ILogListener listener) {
+            }
+
+            @Override
+            public void log(IStatus status) {
+            }
+
+            @Override
+            public void info(String message) {
+            }
+
+            @Override
+            public void warn(String message) {
+            }
+
+            @Override
+            public Bundle getBundle() {
+                return null;
+            }
+
+            @Override
+            public void addLogListener(ILogListener listener) {
+            }
+        });
+        context.set(LanguageModelHttpTransport.class, new LanguageModelHttpTransport() {
+            @Override
+            public HttpRequest.Builder newRequest(URI uri) {
+                return HttpRequest.newBuilder(uri);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+                var exchange = new CompletableFuture<HttpResponse<String>>();
+                exchanges.add(exchange);
+                return (CompletableFuture<HttpResponse<T>>) (CompletableFuture<?>) exchange;
+            }
+        });
+        context.set(TokenEstimatorRegistry.class, new TokenEstimatorRegistry());
+        cache = new GeminiContextCache();
+        ContextInjectionFactory.inject(cache, context);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Future<Optional<String>> lookupLater(StreamCancellation cancellation) {
+        return executor.submit(() -> cache.lookup(MODEL, PREFIX, cancellation));
+    }
+
+    private void awaitExchanges(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && exchanges.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, exchanges.size());
+    }
+
+    private static HttpResponse<String> created(String name) {
+        return new HttpResponse<>() {
+            @Override
+            public int statusCode() {
+                return 200;
+            }
+
+            @Override
+            public HttpRequest request() {
+                return null;
+            }
+
+            @Override
+            public Optional<HttpResponse<String>> previousResponse() {
+                return Optional.empty();
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return HttpHeaders.of(Map.of(), (header, value) -> true);
+            }
+
+            @Override
+            public String body() {
+                return "{\"name\":\"" + name + "\"}";
+            }
+
+            @Override
+            public Optional<SSLSession> sslSession() {
+                return Optional.empty();
+            }
+
+            @Override
+            public URI uri() {
+                return null;
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+            }
+        };
+    }
+
+    @Test
+    public void testRequestReferencesCachedContentInsteadOfPrefix() throws Exception {
+        var client = new GeminiStreamJavaHttpClient();
+        var question = new ChatMessage("2", "user");
+        question.setContent("Hello");
+        var conversation = new Conversation();
+        conversation.add(question);
+
+        JsonNode cached = mapper.readTree(client.getRequestBody(conversation, MODEL, SYSTEM_PROMPT, PREFIX,
+                Optional.of("cachedContents/abc")).toString());
+        assertEquals("cachedContents/abc", cached.path("cachedContent").textValue());
+        assertFalse(cached.has("systemInstruction"));
+        assertFalse(cached.has("tools"));
+        assertFalse(cached.has("toolConfig"));
+        assertEquals(1, cached.path("contents").size());
+        assertEquals("Hello", cached.path("contents").get(0).path("parts").get(0).path("text").textValue());
+
+        JsonNode uncached = mapper.readTree(client.getRequestBody(conversation, MODEL, SYSTEM_PROMPT, PREFIX,
+                Optional.empty()).toString());
+        assertFalse(uncached.has("cachedContent"));
+        assertTrue(uncached.has("tools"));
+        assertTrue(uncached.has("toolConfig"));
+        // the system prompt is sent as the first message instead
+        assertEquals(2, uncached.path("contents").size());
+        assertEquals(SYSTEM_PROMPT, uncached.path("contents").get(0).path("parts").get(0).path("text").textValue());
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneCreation() throws Exception {
+        Future<Optional<String>> first = lookupLater(new StreamCancellation());
+        Future<Optional<String>> second = lookupLater(new StreamCancellation());
+        awaitExchanges(1);
+
+        exchanges.get(0).complete(created("cachedContents/abc"));
+        assertEquals(Optional.of("cachedContents/abc"), first.get(5, TimeUnit.SECONDS));
+        assertEquals(Optional.of("cachedContents/abc"), second.get(5, TimeUnit.SECONDS));
+
+        // later requests use the created content right away
+        assertEquals(Optional.of("cachedContents/abc"), cache.lookup(MODEL, PREFIX, new StreamCancellation()));
+        assertEquals(1, exchanges.size());
+    }
+
+    @Test
+    public void testCancelledRequestAbortsCreation() throws Exception {
+        var cancellation = new StreamCancellation();
+        Future<Optional<String>> lookup = lookupLater(cancellation);
+        awaitExchanges(1);
+
+        cancellation.cancel();
+        var thrown = assertThrows(ExecutionException.class, () -> lookup.get(5, TimeUnit.SECONDS));
+        assertTrue(thrown.getCause() instanceof CancellationException);
+        assertTrue(exchanges.get(0).isCancelled());
+
+        // the next request tries again
+        Future<Optional<String>> retry = lookupLater(new StreamCancellation());
+        awaitExchanges(2);
+        exchanges.get(1).complete(created("cachedContents/def"));
+        assertEquals(Optional.of("cachedContents/def"), retry.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOtherApiKeyGetsOwnCachedContent() throws Exception {
+        Future<Optional<String>> first = lookupLater(new StreamCancellation());
+        awaitExchanges(1);
+        exchanges.get(0).complete(created("cachedContents/abc"));
+        assertEquals(Optional.of("cachedContents/abc"), first.get(5, TimeUnit.SECONDS));
+
+        var otherKey = new ModelApiDescriptor("1", "gemini", MODEL.apiUrl(), "other-key", MODEL.modelName(), 7, false, true, false, 0);
+        Future<Optional<String>> second = executor.submit(() -> cache.lookup(otherKey, PREFIX, new StreamCancellation()));
+        awaitExchanges(2);
+        exchanges.get(1).complete(created("cachedContents/def"));
+        assertEquals(Optional.of("cachedContents/def"), second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInvalidatedPrefixIsSentWithRequest() throws Exception {
+        Future<Optional<String>> lookup = lookupLater(new StreamCancellation());
+        awaitExchanges(1);
+        exchanges.get(0).complete(created("cachedContents/abc"));
+        assertEquals(Optional.of("cachedContents/abc"), lookup.get(5, TimeUnit.SECONDS));
+
+        cache.invalidate(MODEL, PREFIX);
+        assertEquals(Optional.empty(), cache.lookup(MODEL, PREFIX, new StreamCancellation()));
+        assertEquals(1, exchanges.size());
+    }
+
+    @Test
+    public void testRejectedCachedContentIsRecognized() {
+        assertTrue(GeminiStreamJavaHttpClient.isCachedContentRejected(403, "{\"error\":{\"message\":\"CachedContent not found (or permission denied)\"}}"));
+        assertFalse(GeminiStreamJavaHttpClient.isCachedContentRejected(400, "{\"error\":{\"message\":\"Invalid argument\"}}"));
+        assertFalse(GeminiStreamJavaHttpClient.isCachedContentRejected(500, "cachedContent"));
+    }
+
+    @Test
+    public void testSmallPrefixIsNotCached() throws Exception {
+        var prefix = Map.<String, Object>of("systemInstruction", Map.of("parts", List.of(Map.of("text", "Be brief."))));
+        assertEquals(Optional.empty(), cache.lookup(MODEL, prefix, new StreamCancellation()));
+        assertTrue(exchanges.isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.gradusnikov.eclipse.assistai.chat.ChatMessage;
+
+/**
+ * Test cases for request bodies built from cached message fragments.
+ */
+public class JsonRequestBodyTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Map<String, Object> requestBody(Object messages) {
+        var body = new LinkedHashMap<String, Object>();
+        body.put("model", "gpt");
+        body.put("messages", messages);
+        body.put("stream", true);
+        return body;
+    }
+
+    private static String publish(JsonRequestBody body) throws Exception {
+        var bytes = new ByteArrayOutputStream();
+        var done = new CompletableFuture<Void>();
+        body.publisher().subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] chunk = new byte[item.remaining()];
+                item.get(chunk);
+                bytes.writeBytes(chunk);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.get(5, TimeUnit.SECONDS);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFragmentsAreWrittenAsArrayElements() throws Exception {
+        var messages = List.of(Map.of("role", "user", "content", "Zażółć \"gęślą\""),
+                Map.of("role", "assistant", "content", "x".repeat(20_000)));
+        var fragments = messages.stream().map(message -> JsonRequestBody.toFragment(mapper, message)).toList();
+
+        JsonRequestBody body = JsonRequestBody.write(mapper, requestBody(new JsonRequestBody.Fragments(fragments)));
+
+        String expected = mapper.writeValueAsString(requestBody(messages));
+        assertEquals(expected, body.toString());
+        assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, body.length());
+        assertEquals(expected, publish(body));
+        assertEquals(body.length(), body.publisher().contentLength());
+        // a publisher can be subscribed again, e.g. for a retried request
+        assertEquals(expected, publish(body));
+    }
+
+    @Test
+    public void testEmptyFragmentsAndPlainSerialization() throws Exception {
+        JsonRequestBody body = JsonRequestBody.write(mapper, requestBody(new JsonRequestBody.Fragments(List.of())));
+        assertEquals("{\"model\":\"gpt\",\"messages\":[],\"stream\":true}", body.toString());
+
+        var fragments = new JsonRequestBody.Fragments(List.of("{\"a\":1}".getBytes(StandardCharsets.UTF_8), "2".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("{\"model\":\"gpt\",\"messages\":[{\"a\":1},2],\"stream\":true}",
+                mapper.writeValueAsString(requestBody(fragments)));
+    }
+
+    @Test
+    public void testMessageIsSerializedAgainOnlyAfterChange() {
+        var message = new ChatMessage("1", "user");
+        message.setContent("hello");
+        var serializations = new AtomicInteger();
+        Function<ChatMessage, byte[]> serializer = changed -> {
+            serializations.incrementAndGet();
+            return JsonRequestBody.toFragment(mapper, Map.of("content", changed.getContent()));
+        };
+
+        byte[] first = message.toJson("openai", serializer);
+        assertSame(first, message.toJson("openai", serializer));
+        assertEquals(1, serializations.get());
+
+        message.toJson("anthropic", serializer);
+        assertEquals(2, serializations.get());
+
+        message.append(" world");
+        assertEquals("{\"content\":\"hello world\"}", new String(message.toJson("openai", serializer), StandardCharsets.UTF_8));
+        assertEquals(3, serializations.get());
+    }
+}
@@ -0,0 +1,370 @@
+package com.github.gradusnikov.eclipse.assistai.network.clients;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.ILogListener;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+
+/**
+ * Test cases for rate limiting and retrying model requests, against a local
+ * stand-in server.
+ */
+public class RateLimiterTest {
+
+    private static final String RESET = "RESET";
+
+    private ScriptedHttpServer server;
+
+    private LanguageModelHttpTransport transport;
+
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new ScriptedHttpServer();
+
+        IEclipseContext context = EclipseContextFactory.create();
+        ILog log = new ILog() {
+            @Override
+            public void removeLogListener(ILogListener listener) {
+            }
+
+            @Override
+            public void log(IStatus status) {
+                System.out.println(status.getMessage());
+            }
+
+            @Override
+            public void info(String message) {
+                System.out.println(message);
+            }
+
+            @Override
+            public void warn(String message) {
+                System.out.println(message);
+            }
+
+            @Override
+            public Bundle getBundle() {
+                return null;
+            }
+
+            @Override
+            public void addLogListener(ILogListener listener) {
+            }
+        };
+        context.set(ILog.class, log);
+        context.set(LanguageModelClientConfiguration.class, new LanguageModelClientConfiguration(null) {
+            @Override
+            public int getConnectionTimoutSeconds() {
+                return 5;
+            }
+
+            @Override
+            public int getRequestTimoutSeconds() {
+                return 10;
+            }
+
+            @Override
+            public boolean isHttp2Enabled() {
+                return false;
+            }
+        });
+        // not made by the injector, which would keep the singletons across tests
+        transport = new LanguageModelHttpTransport();
+        ContextInjectionFactory.inject(transport, context);
+        context.set(LanguageModelHttpTransport.class, transport);
+        rateLimiter = new RateLimiter();
+        ContextInjectionFactory.inject(rateLimiter, context);
+        rateLimiter.setPolicy(new RateLimiter.Policy(3, Duration.ofMillis(10), Duration.ofMillis(50)));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        transport.dispose();
+        server.close();
+    }
+
+    private HttpRequest request(String apiKey) {
+        return transport.newRequest(URI.create(server.url()))
+                .header("Authorization", "Bearer " + apiKey)
+                .POST(HttpRequest.BodyPublishers.ofString("{\"stream\":true}"))
+                .build();
+    }
+
+    private static String response(String status, Map<String, String> headers, String body) {
+        var text = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+        headers.forEach((name, value) -> text.append(name).append(": ").append(value).append("\r\n"));
+        return text.append("Content-Length: ").append(body.getBytes(StandardCharsets.UTF_8).length).append("\r\n")
+                .append("Connection: close\r\n\r\n").append(body).toString();
+    }
+
+    private static String stream(Map<String, String> headers) {
+        return response("200 OK", headers, "data: hello\n\n");
+    }
+
+    @Test
+    public void testRateLimitedRequestIsRetriedAfterRetryAfter() throws Exception {
+        server.script(response("429 Too Many Requests", Map.of("retry-after-ms", "200"), "{\"error\":\"rate_limit\"}"),
+                stream(Map.of()));
+
+        long start = System.nanoTime();
+        var response = rateLimiter.send(request("key"), new StreamCancellation());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("data: hello\n\n", new String(response.body().readAllBytes(), StandardCharsets.UTF_8));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 200);
+        assertEquals(2, server.requests());
+        var metrics = rateLimiter.getMetrics();
+        assertEquals(1, metrics.requests());
+        assertEquals(1, metrics.retries());
+        assertEquals(1, metrics.rateLimitedResponses());
+        assertEquals(1, metrics.queuedRequests());
+    }
+
+    @Test
+    public void testServerErrorIsReturnedAfterLastAttempt() throws Exception {
+        String unavailable = response("503 Service Unavailable", Map.of(), "overloaded");
+        server.script(unavailable, unavailable, unavailable, stream(Map.of()));
+
+        var response = rateLimiter.send(request("key"), new StreamCancellation());
+
+        assertEquals(503, response.statusCode());
+        assertEquals(3, server.requests());
+        assertEquals(2, rateLimiter.getMetrics().retries());
+        assertEquals(1, rateLimiter.getMetrics().failedRequests());
+    }
+
+    @Test
+    public void testDroppedConnectionIsRetried() throws Exception {
+        server.script(RESET, stream(Map.of()));
+
+        var response = rateLimiter.send(request("key"), new StreamCancellation());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("data: hello\n\n", new String(response.body().readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals(2, server.requests());
+    }
+
+    @Test
+    public void testExhaustedLimitHoldsBackRequestsOfSameKey() throws Exception {
+        server.script(stream(Map.of("x-ratelimit-remaining-requests", "0", "x-ratelimit-reset-requests", "300ms")),
+                stream(Map.of()), stream(Map.of()));
+
+        rateLimiter.send(request("key"), new StreamCancellation()).body().close();
+        long start = System.nanoTime();
+        rateLimiter.send(request("other key"), new StreamCancellation()).body().close();
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 250, "other keys are not held back");
+        rateLimiter.send(request("key"), new StreamCancellation()).body().close();
+        long waited = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertTrue(waited >= 250, "waited " + waited + " ms");
+        assertEquals(1, rateLimiter.getMetrics().queuedRequests());
+        assertTrue(rateLimiter.getMetrics().maxQueueMillis() >= 200);
+    }
+
+    @Test
+    public void testCancelledWhileWaitingForRetry() {
+        server.script(response("429 Too Many Requests", Map.of("retry-after", "10"), ""), stream(Map.of()));
+        var cancellation = new StreamCancellation();
+        cancelLater(cancellation);
+
+        long start = System.nanoTime();
+        assertThrows(CancellationException.class, () -> rateLimiter.send(request("key"), cancellation));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 2000);
+        assertEquals(1, server.requests());
+    }
+
+    @Test
+    public void testCancelProviderIsPolledWhileWaiting() {
+        server.script(response("429 Too Many Requests", Map.of("retry-after", "10"), ""), stream(Map.of()));
+        var cancellation = new StreamCancellation();
+        long deadline = System.nanoTime() + Duration.ofMillis(300).toNanos();
+        cancellation.setProvider(() -> System.nanoTime() > deadline);
+
+        assertThrows(CancellationException.class, () -> rateLimiter.send(request("key"), cancellation));
+        assertEquals(1, server.requests());
+    }
+
+    @Test
+    public void testCancelAbortsExchangeWaitingForResponse() throws Exception {
+        server.hold("");
+        var cancellation = new StreamCancellation();
+        cancelLater(cancellation);
+
+        long start = System.nanoTime();
+        assertThrows(CancellationException.class, () -> rateLimiter.send(request("key"), cancellation));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 2000);
+        assertTrue(server.awaitClosed(), "connection closed");
+    }
+
+    @Test
+    public void testCancelClosesStalledStream() throws Exception {
+        server.hold("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "d\r\ndata: hello\n\n\r\n");
+        var cancellation = new StreamCancellation();
+        var response = rateLimiter.send(request("key"), cancellation);
+        var body = response.body();
+        assertEquals("data: hello\n\n", new String(body.readNBytes(13), StandardCharsets.UTF_8));
+        cancelLater(cancellation);
+
+        long start = System.nanoTime();
+        assertThrows(IOException.class, () -> body.read());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 2000);
+        assertTrue(cancellation.isCancelled());
+        assertTrue(server.awaitClosed(), "connection closed");
+    }
+
+    /**
+     * Cancels the request shortly after the server received it.
+     */
+    private void cancelLater(StreamCancellation cancellation) {
+        Thread.ofVirtual().start(() -> {
+            try {
+                while (server.requests() == 0) {
+                    Thread.sleep(10);
+                }
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            cancellation.cancel();
+        });
+    }
+
+    @Test
+    public void testResetAndRetryAfterHeaders() {
+        Instant now = Instant.parse("2025-01-01T00:00:00Z");
+        assertEquals(Optional.of(Duration.ofMinutes(5)), RateLimiter.parseReset("6m0s", now));
+        assertEquals(Optional.of(Duration.ofSeconds(90)), RateLimiter.parseReset("1m30s", now));
+        assertEquals(Optional.of(Duration.ofMillis(20)), RateLimiter.parseReset("20ms", now));
+        assertEquals(Optional.of(Duration.ofMillis(1500)), RateLimiter.parseReset("1.5s", now));
+        assertEquals(Optional.of(Duration.ofSeconds(2)), RateLimiter.parseReset("2", now));
+        assertEquals(Optional.of(Duration.ofSeconds(30)), RateLimiter.parseReset("2025-01-01T00:00:30Z", now));
+        assertEquals(Optional.empty(), RateLimiter.parseReset("soon", now));
+
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(now.plusSeconds(7).atOffset(ZoneOffset.UTC));
+        assertEquals(Optional.of(Duration.ofSeconds(7)), RateLimiter.retryAfter(headers("retry-after", date), now));
+        assertEquals(Optional.of(Duration.ofSeconds(3)), RateLimiter.retryAfter(headers("retry-after", "3"), now));
+        assertEquals(Optional.of(Duration.ofMillis(250)), RateLimiter.retryAfter(headers("retry-after-ms", "250"), now));
+    }
+
+    private static HttpHeaders headers(String name, String value) {
+        return HttpHeaders.of(Map.of(name, List.of(value)), (n, v) -> true);
+    }
+
+    private record Reply(String text, boolean hold) {
+    }
+
+    /**
+     * Minimal HTTP/1.1 server answering each request with the next scripted
+     * response, or dropping the connection for {@link #RESET}. A held reply
+     * keeps the connection open until the client closes it.
+     */
+    private static class ScriptedHttpServer implements AutoCloseable {
+        private final ServerSocket socket;
+        private final ConcurrentLinkedQueue<Reply> script = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        ScriptedHttpServer() throws IOException {
+            this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread thread = new Thread(this::serve, "Scripted HTTP server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void script(String... responses) {
+            for (String response : responses) {
+                script.add(new Reply(response, false));
+            }
+        }
+
+        void hold(String partialResponse) {
+            script.add(new Reply(partialResponse, true));
+        }
+
+        boolean awaitClosed() throws InterruptedException {
+            return closed.await(2, TimeUnit.SECONDS);
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + socket.getLocalPort() + "/v1/chat/completions";
+        }
+
+        int requests() {
+            return requests.get();
+        }
+
+        private void serve() {
+            while (!socket.isClosed()) {
+                try (Socket connection = socket.accept()) {
+                    var reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                    int contentLength = 0;
+                    for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                        if (line.toLowerCase().startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                    reader.skip(contentLength);
+                    requests.incrementAndGet();
+                    Reply reply = script.poll();
+                    if (reply == null || RESET.equals(reply.text())) {
+                        continue;
+                    }
+                    OutputStream output = connection.getOutputStream();
+                    output.write(reply.text().getBytes(StandardCharsets.UTF_8));
+                    output.flush();
+                    if (reply.hold()) {
+                        // returns once the client closes the connection
+                        while (connection.getInputStream().read() >= 0) {
+                        }
+                        closed.countDown();
+                    }
+                } catch (IOException e) {
+                    // closed
+                    closed.countDown();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
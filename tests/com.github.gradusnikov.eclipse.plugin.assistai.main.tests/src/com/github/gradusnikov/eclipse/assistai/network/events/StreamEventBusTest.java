@@ -0,0 +1,223 @@
+package com.github.gradusnikov.eclipse.assistai.network.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.gradusnikov.eclipse.assistai.chat.FunctionCall;
+
+/**
+ * Test cases for the batched delivery of stream events.
+ */
+public class StreamEventBusTest {
+
+    /** Runs the drain tasks only when asked to. */
+    private static class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private static class Recorder implements StreamEventSubscriber {
+        final List<StreamEvent[]> batches = new ArrayList<>();
+        private final int bufferSize;
+        private final StreamEventBus.Overflow overflow;
+
+        Recorder() {
+            this(DEFAULT_BUFFER_SIZE, StreamEventBus.Overflow.BLOCK);
+        }
+
+        Recorder(int bufferSize, StreamEventBus.Overflow overflow) {
+            this.bufferSize = bufferSize;
+            this.overflow = overflow;
+        }
+
+        @Override
+        public synchronized void onEvents(StreamEvent[] events) {
+            batches.add(events);
+        }
+
+        @Override
+        public int bufferSize() {
+            return bufferSize;
+        }
+
+        @Override
+        public StreamEventBus.Overflow overflow() {
+            return overflow;
+        }
+
+        synchronized List<StreamEvent> events() {
+            return batches.stream().flatMap(Arrays::stream).toList();
+        }
+    }
+
+    private static StreamEvent.ToolCallDelta fragment(String arguments) {
+        return new StreamEvent.ToolCallDelta(0, null, null, arguments);
+    }
+
+    @Test
+    public void testEventsPublishedMeanwhileAreDeliveredAsOneBatch() {
+        var executor = new ManualExecutor();
+        var bus = new StreamEventBus(executor);
+        var recorder = new Recorder();
+        bus.subscribe(recorder);
+
+        var call = new StreamEvent.ToolCall(new FunctionCall("1", "readFile", Map.of()));
+        bus.submit(new StreamEvent.ContentDelta("Hel"));
+        bus.submit(new StreamEvent.ContentDelta(""));
+        bus.submit(new StreamEvent.ContentDelta("lo"));
+        bus.submit(call);
+        bus.submit(new StreamEvent.ContentDelta("!"));
+        bus.close();
+        // the drain task is scheduled once for the whole batch
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        assertEquals(1, recorder.batches.size());
+        assertEquals(List.of(new StreamEvent.ContentDelta("Hello"), call, new StreamEvent.ContentDelta("!"), new StreamEvent.Done()),
+                recorder.events());
+    }
+
+    @Test
+    public void testNothingIsDeliveredAfterTheTerminalEvent() {
+        var executor = new ManualExecutor();
+        var bus = new StreamEventBus(executor);
+        var recorder = new Recorder();
+        bus.subscribe(recorder);
+
+        bus.submit(new StreamEvent.ContentDelta("partial"));
+        bus.closeExceptionally(new IllegalStateException("broken"));
+        bus.close();
+        bus.submit(new StreamEvent.ContentDelta("late"));
+        executor.runAll();
+
+        List<StreamEvent> events = recorder.events();
+        assertEquals(2, events.size());
+        assertInstanceOf(StreamEvent.Failure.class, events.get(1));
+        assertTrue(bus.isClosed());
+
+        // a late subscriber learns how the stream ended
+        var late = new Recorder();
+        bus.subscribe(late);
+        executor.runAll();
+        assertEquals(List.of(events.get(1)), late.events());
+    }
+
+    @Test
+    public void testDropPolicyDiscardsEventsButKeepsTheTerminalOne() {
+        var executor = new ManualExecutor();
+        var bus = new StreamEventBus(executor);
+        var dropping = new Recorder(2, StreamEventBus.Overflow.DROP);
+        var complete = new Recorder();
+        bus.subscribe(dropping);
+        bus.subscribe(complete);
+
+        for (int i = 0; i < 5; i++) {
+            bus.submit(fragment(String.valueOf(i)));
+        }
+        bus.close();
+        executor.runAll();
+
+        assertEquals(List.of(fragment("0"), fragment("1"), new StreamEvent.Done()), dropping.events());
+        assertEquals(6, complete.events().size());
+        assertEquals(3, bus.getDroppedEvents());
+    }
+
+    @Test
+    public void testBlockPolicyWaitsForTheSubscriber() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            var bus = new StreamEventBus(executor);
+            var release = new CountDownLatch(1);
+            var recorder = new Recorder(1, StreamEventBus.Overflow.BLOCK) {
+                @Override
+                public void onEvents(StreamEvent[] events) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.onEvents(events);
+                }
+            };
+            bus.subscribe(recorder);
+
+            var publisher = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    bus.submit(fragment(String.valueOf(i)));
+                }
+                bus.close();
+            });
+            publisher.start();
+            // the publisher fills the single slot and has to wait for the stuck subscriber
+            publisher.join(300);
+            assertTrue(publisher.isAlive());
+
+            release.countDown();
+            publisher.join(5000);
+            assertFalse(publisher.isAlive());
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+            List<StreamEvent> events = recorder.events();
+            assertEquals(101, events.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(fragment(String.valueOf(i)), events.get(i));
+            }
+            assertEquals(0, bus.getDroppedEvents());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailingSubscriberIsUnsubscribed() {
+        var executor = new ManualExecutor();
+        var bus = new StreamEventBus(executor);
+        var received = new ArrayList<StreamEvent>();
+        bus.subscribe(events -> {
+            received.addAll(List.of(events));
+            if (events[0] instanceof StreamEvent.ContentDelta) {
+                throw new IllegalStateException("view disposed");
+            }
+        });
+        var other = new Recorder();
+        bus.subscribe(other);
+
+        bus.submit(new StreamEvent.ContentDelta("a"));
+        executor.runAll();
+        bus.submit(new StreamEvent.ContentDelta("b"));
+        bus.close();
+        executor.runAll();
+
+        assertEquals(2, received.size());
+        var failure = assertInstanceOf(StreamEvent.Failure.class, received.get(1));
+        assertEquals("view disposed", failure.cause().getMessage());
+        assertEquals(3, other.events().size());
+    }
+}
@@ -0,0 +1,207 @@
+package com.github.gradusnikov.eclipse.assistai.network.sse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for the SSE reader and the provider stream decoders.
+ */
+public class SseEventReaderTest {
+
+    private record Event(String name, String data) {
+    }
+
+    @Test
+    public void testMultiLineDataEventsAndComments() throws IOException {
+        String stream = ": keep-alive\r\n"
+                + "event: update\r\n"
+                + "id: 7\r\n"
+                + "data: first\r\n"
+                + "data:second\r\n"
+                + "\r\n"
+                + "data: {\"a\":1}\r"
+                + "\r"
+                + "data: last\n";
+
+        var reader = new SseEventReader(new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)));
+        List<Event> events = readAll(reader);
+
+        assertEquals(List.of(new Event("update", "first\nsecond"),
+                new Event("message", "{\"a\":1}"),
+                new Event("message", "last")), events);
+        assertEquals("7", reader.getLastEventId());
+    }
+
+    @Test
+    public void testEventsSplitAcrossReads() throws IOException {
+        String stream = "data: zażółć 😀\r\n\r\ndata: [DONE]\r\n\r\n";
+        byte[] bytes = stream.getBytes(StandardCharsets.UTF_8);
+        // deliver the body one byte at a time, splitting CRLF pairs and multi-byte characters
+        InputStream trickle = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        List<Event> events = readAll(new SseEventReader(trickle));
+
+        assertEquals(List.of(new Event("message", "zażółć 😀"),
+                new Event("message", "[DONE]")), events);
+    }
+
+    @Test
+    public void testOpenAIDecoderInterleavedToolCalls() throws IOException {
+        String stream = """
+                data: {"choices":[{"delta":{"role":"assistant","content":"Hi"},"finish_reason":null}]}
+
+                data: {"choices":[{"delta":{"tool_calls":[{"index":0,"id":"a","type":"function","function":{"name":"x__read","arguments":""}}]}}]}
+
+                data: {"choices":[{"delta":{"tool_calls":[{"index":1,"id":"b","type":"function","function":{"name":"x__list","arguments":"{\\"p\\":"}}]}}]}
+
+                data: {"choices":[{"delta":{"tool_calls":[{"index":0,"function":{"arguments":"{}"}},{"index":1,"function":{"arguments":"2}"}}]}}]}
+
+                data: {"choices":[{"delta":{},"finish_reason":"tool_calls"}]}
+
+                data: [DONE]
+
+                data: {"choices":[{"delta":{"content":"ignored"}}]}
+
+                """;
+        var recorder = new RecordingListener();
+        var decoder = new OpenAIChatStreamDecoder(recorder);
+
+        new SseEventReader(new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8))).read(decoder);
+
+        assertEquals(List.of("content:Hi",
+                "start:0:a:x__read",
+                "start:1:b:x__list",
+                "args:1:{\"p\":",
+                "args:0:{}",
+                "args:1:2}",
+                "finish:tool_calls"), recorder.calls);
+    }
+
+    @Test
+    public void testAnthropicDecoderToolUseBlock() throws IOException {
+        String stream = """
+                event: content_block_start
+                data: {"type":"content_block_start","index":0,"content_block":{"type":"text","text":""}}
+
+                event: content_block_delta
+                data: {"type":"content_block_delta","index":0,"delta":{"type":"text_delta","text":"Let me check"}}
+
+                event: content_block_start
+                data: {"type":"content_block_start","index":1,"content_block":{"type":"tool_use","id":"toolu_1","name":"x__read","input":{}}}
+
+                event: content_block_delta
+                data: {"type":"content_block_delta","index":1,"delta":{"type":"input_json_delta","partial_json":"{\\"path\\": \\"a\\"}"}}
+
+                event: content_block_stop
+                data: {"type":"content_block_stop","index":1}
+
+                event: ping
+                data: {"type": "ping"}
+
+                event: message_delta
+                data: {"type":"message_delta","delta":{"stop_reason":"tool_use"}}
+
+                """;
+        var recorder = new RecordingListener();
+
+        new SseEventReader(new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)))
+                .read(new AnthropicStreamDecoder(recorder));
+
+        assertEquals(List.of("content:Let me check",
+                "start:1:toolu_1:x__read",
+                "args:1:{\"path\": \"a\"}",
+                "end:1",
+                "finish:tool_use"), recorder.calls);
+    }
+
+    @Test
+    public void testUsageWithCachedTokens() throws IOException {
+        String anthropic = """
+                event: message_start
+                data: {"type":"message_start","message":{"id":"msg_1","content":[],"usage":{"input_tokens":20,"cache_creation_input_tokens":0,"cache_read_input_tokens":1800,"output_tokens":1}}}
+
+                event: message_delta
+                data: {"type":"message_delta","delta":{"stop_reason":"end_turn"},"usage":{"output_tokens":15}}
+
+                """;
+        var recorder = new RecordingListener();
+        new SseEventReader(new ByteArrayInputStream(anthropic.getBytes(StandardCharsets.UTF_8)))
+                .read(new AnthropicStreamDecoder(recorder));
+        assertEquals(List.of("usage:1820/15/1800/0", "finish:end_turn"), recorder.calls);
+
+        String openai = """
+                data: {"choices":[{"delta":{"content":"Hi"},"finish_reason":"stop"}],"usage":null}
+
+                data: {"choices":[],"usage":{"prompt_tokens":2006,"completion_tokens":300,"prompt_tokens_details":{"cached_tokens":1920}}}
+
+                data: [DONE]
+
+                """;
+        recorder = new RecordingListener();
+        new SseEventReader(new ByteArrayInputStream(openai.getBytes(StandardCharsets.UTF_8)))
+                .read(new OpenAIChatStreamDecoder(recorder));
+        assertEquals(List.of("content:Hi", "finish:stop", "usage:2006/300/1920/0"), recorder.calls);
+    }
+
+    private static List<Event> readAll(SseEventReader reader) throws IOException {
+        List<Event> events = new ArrayList<>();
+        reader.read((name, data, length) -> {
+            events.add(new Event(name, new String(data, 0, length, StandardCharsets.UTF_8)));
+            return true;
+        });
+        return events;
+    }
+
+    private static class RecordingListener implements StreamListener {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void onContent(String text) {
+            calls.add("content:" + text);
+        }
+
+        @Override
+        public void onToolCallStart(int index, String id, String name) {
+            calls.add("start:" + index + ":" + id + ":" + name);
+        }
+
+        @Override
+        public void onToolCallArguments(int index, String fragment) {
+            calls.add("args:" + index + ":" + fragment);
+        }
+
+        @Override
+        public void onToolCallEnd(int index) {
+            calls.add("end:" + index);
+        }
+
+        @Override
+        public void onFinish(String reason) {
+            calls.add("finish:" + reason);
+        }
+
+        @Override
+        public void onUsage(TokenUsage usage) {
+            calls.add("usage:" + usage.inputTokens() + "/" + usage.outputTokens() + "/" + usage.cacheReadTokens() + "/"
+                    + usage.cacheWriteTokens());
+        }
+
+        @Override
+        public void onMalformedEvent(String data, Exception e) {
+            calls.add("malformed:" + data);
+        }
+    }
+}
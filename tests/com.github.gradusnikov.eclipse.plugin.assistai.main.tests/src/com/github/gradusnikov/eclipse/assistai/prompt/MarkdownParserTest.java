@@ -5,10 +5,15 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Base64;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.ILogListener;
+import org.eclipse.core.runtime.IStatus;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
 
 
 /**
@@ -16,6 +21,27 @@ import org.junit.jupiter.api.Test;
  */
 public class MarkdownParserTest {
 
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private static final ILog LOGGER = new ILog() {
+        @Override
+        public void removeLogListener(ILogListener listener) {
+        }
+
+        @Override
+        public void log(IStatus status) {
+        }
+
+        @Override
+        public Bundle getBundle() {
+            return null;
+        }
+
+        @Override
+        public void addLogListener(ILogListener listener) {
+        }
+    };
+
     @Test
     public void testInlineLatexRendering() {
         // Test inline LaTeX with $ syntax
@@ -245,6 +271,67 @@ public class MarkdownParserTest {
         var out = parser.parseToHtml();
         Assertions.assertTrue( out.contains( expected ) );
     }
+
+    @Test
+    public void testIncrementalRenderingMatchesFullParse() {
+        String content = """
+                # Title
+                Some **bold** text with `code` and $x^2$.
+                
+                ```java
+                int a = 1;
+                ```
+                | A | B |
+                |---|--:|
+                | 1 | 2 |
+                $$
+                \\sum_{i=1}^n i
+                $$
+                - last item
+                """;
+        for (int chunkSize : new int[] { 1, 3, 7, 64 }) {
+            MarkdownParser parser = new MarkdownParser(LOGGER);
+            StringBuilder rendered = new StringBuilder();
+            String open = "";
+            for (int i = 0; i < content.length(); i += chunkSize) {
+                var update = parser.append(content.substring(i, Math.min(content.length(), i + chunkSize)));
+                rendered.append(update.completedHtml());
+                open = update.openHtml();
+            }
+            String expected = new MarkdownParser(content).parseToHtml();
+            assertEquals(withoutIds(expected), withoutIds(rendered + open));
+            assertEquals(withoutIds(expected), withoutIds(rendered + parser.complete().completedHtml()));
+        }
+    }
+
+    @Test
+    public void testOpenCodeBlockIsRenderedIncrementally() {
+        MarkdownParser parser = new MarkdownParser(LOGGER);
+        String content = "Some code:\n```java\nint x;\n";
+        var update = parser.append(content);
+        String completed = update.completedHtml();
+        Matcher id = ID_PATTERN.matcher(update.openHtml());
+        assertTrue(id.find());
+        for (int i = 0; i < 50; i++) {
+            String line = "int a" + i + " = " + i + " < 1 ? 0 : 1;\n";
+            for (String chunk : new String[] { line.substring(0, 5), line.substring(5) }) {
+                content += chunk;
+                update = parser.append(chunk);
+                assertEquals("", update.completedHtml());
+                // the block is the same element while it grows
+                assertTrue(update.openHtml().contains(id.group()));
+                assertEquals(withoutIds(new MarkdownParser(content).parseToHtml()), withoutIds(completed + update.openHtml()));
+            }
+        }
+        content += "```";
+        update = parser.append("```");
+        assertEquals(withoutIds(new MarkdownParser(content).parseToHtml()), withoutIds(completed + update.openHtml()));
+        assertTrue(update.openHtml().endsWith("</code></pre></div>\n"));
+    }
+
+    private static String withoutIds(String html) {
+        return ID_PATTERN.matcher(html).replaceAll("id");
+    }
         
 }
 
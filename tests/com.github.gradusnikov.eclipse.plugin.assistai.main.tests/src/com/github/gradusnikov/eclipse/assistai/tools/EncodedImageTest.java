@@ -0,0 +1,117 @@
+package com.github.gradusnikov.eclipse.assistai.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.ILogListener;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Bundle;
+
+import com.github.gradusnikov.eclipse.assistai.chat.Attachment;
+
+/**
+ * Test cases for compressed image attachments.
+ */
+public class EncodedImageTest {
+
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+    private final ILog logger = new ILog() {
+        @Override
+        public void removeLogListener(ILogListener listener) {
+        }
+
+        @Override
+        public void log(IStatus status) {
+        }
+
+        @Override
+        public void error(String message, Throwable exception) {
+            errors.add(exception);
+        }
+
+        @Override
+        public Bundle getBundle() {
+            return null;
+        }
+
+        @Override
+        public void addLogListener(ILogListener listener) {
+        }
+    };
+
+    private static ImageData image(int width, int height) {
+        var data = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0x00FF00, 0x0000FF));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                data.setPixel(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8);
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void testLargeImageIsScaledDownAndCompressed() {
+        ImageData source = image(4000, 1000);
+        EncodedImage encoded = EncodedImage.encode(source, 2048);
+
+        assertEquals(EncodedImage.JPEG, encoded.getMimeType());
+        assertEquals(2048, encoded.getWidth());
+        assertEquals(512, encoded.getHeight());
+        assertTrue(encoded.getSize() < source.data.length / 10, "compressed size " + encoded.getSize());
+
+        ImageData decoded = encoded.toImageData();
+        assertEquals(2048, decoded.width);
+        assertEquals(512, decoded.height);
+    }
+
+    @Test
+    public void testPayloadsAreEncodedOnce() {
+        EncodedImage encoded = EncodedImage.encode(image(64, 32), 2048);
+
+        assertSame(encoded.toBase64(), encoded.toBase64());
+        assertSame(encoded.toDataUrl(), encoded.toDataUrl());
+        assertEquals("data:image/jpeg;base64," + encoded.toBase64(), encoded.toDataUrl());
+    }
+
+    @Test
+    public void testTransparentImageIsStoredAsPng() {
+        ImageData source = image(40, 20);
+        source.alphaData = new byte[40 * 20];
+
+        EncodedImage encoded = EncodedImage.encode(source, 2048);
+
+        assertEquals(EncodedImage.PNG, encoded.getMimeType());
+        assertEquals(40, encoded.getWidth());
+    }
+
+    @Test
+    public void testImageAttachmentEncodesInBackground() {
+        var attachment = new Attachment.ImageAttachment(image(3000, 3000), logger);
+
+        EncodedImage encoded = attachment.getImage();
+
+        assertSame(encoded, attachment.getImage());
+        assertEquals(Attachment.ImageAttachment.MAX_EDGE, encoded.getWidth());
+        assertEquals(Attachment.ImageAttachment.MAX_EDGE, encoded.getHeight());
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void testImageThatCannotBeCompressedIsLeftOut() {
+        var attachment = new Attachment.ImageAttachment(null, logger);
+
+        assertNull(attachment.getImage());
+        assertNull(attachment.getImage());
+        assertEquals(1, errors.size());
+    }
+}
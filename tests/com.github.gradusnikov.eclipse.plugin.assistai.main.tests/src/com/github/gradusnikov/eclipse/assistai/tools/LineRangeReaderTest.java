@@ -0,0 +1,118 @@
+package com.github.gradusnikov.eclipse.assistai.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.gradusnikov.eclipse.assistai.tools.LineRangeReader.Slice;
+
+/**
+ * Test cases for reading line ranges of files.
+ */
+public class LineRangeReaderTest {
+
+    private static final String TEXT = "first\nsecond line\nthird ąę\r\nfourth\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testWholeFile() throws IOException {
+        var slice = read(TEXT, 1, null, null, 1000);
+
+        assertEquals("first\nsecond line\nthird ąę\r\nfourth", slice.text());
+        assertEquals(new Slice(slice.text(), 1, 4, 4, false), slice);
+        assertTrue(slice.isComplete());
+    }
+
+    @Test
+    public void testRanges() throws IOException {
+        assertEquals(new Slice("second line\nthird ąę", 2, 3, 4, false), read(TEXT, 1, 2, 3, 1000));
+        assertEquals(new Slice("fourth", 4, 4, 4, false), read(TEXT, 1, 4, 99, 1000));
+        assertEquals(new Slice("", 9, 4, 4, false), read(TEXT, 1, 9, null, 1000));
+        assertEquals(new Slice("", 1, 0, 0, false), read("", 1, null, null, 1000));
+        assertEquals(new Slice("no line break", 1, 1, 1, false), read("no line break", 1, null, null, 1000));
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        assertEquals(List.of("first", "second line", "third ąę", "fourth"), read(TEXT, 1, null, null, 1000).lines());
+        assertEquals(List.of("second line"), read(TEXT, 1, 2, 2, 1000).lines());
+        assertEquals(List.of("a", ""), read("a\n\n", 1, null, null, 1000).lines());
+        assertEquals(List.of(), read(TEXT, 1, 9, null, 1000).lines());
+        assertEquals(List.of(), read("", 1, null, null, 1000).lines());
+    }
+
+    @Test
+    public void testByteLimitEndsAtWholeLine() throws IOException {
+        var slice = read(TEXT, 1, 1, null, 20);
+
+        assertEquals(new Slice("first\nsecond line", 1, 2, 4, true), slice);
+        assertFalse(slice.isComplete());
+        assertEquals(new Slice("sec", 2, 2, 4, true), read(TEXT, 1, 2, null, 3));
+    }
+
+    @Test
+    public void testLoneCarriageReturnEndsLine() throws IOException {
+        var slice = read("a\rb\r\nc\r", 1, null, null, 1000);
+
+        assertEquals(new Slice("a\rb\r\nc", 1, 3, 3, false), slice);
+        assertEquals(List.of("a", "b", "c"), slice.lines());
+        assertEquals(new Slice("b", 2, 2, 3, false), read("a\rb\r\nc\r", 1, 2, 2, 1000));
+        assertEquals(List.of("a", "", "b"), read("a\r\rb", 1, null, null, 1000).lines());
+    }
+
+    @Test
+    public void testCutLineEndsAtCharacterBoundary() throws IOException {
+        // "ą" and "ę" take two bytes each
+        assertEquals(new Slice("third ą", 3, 3, 4, true), read(TEXT, 1, 3, null, 9));
+        assertEquals(new Slice("third ą", 3, 3, 4, true), read(TEXT, 1, 3, null, 8));
+        var streamed = LineRangeReader.read(new ByteArrayInputStream(TEXT.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, 3, null, 9);
+        assertEquals("third ą", streamed.text());
+    }
+
+    @Test
+    public void testIndexIsRebuiltWhenFileChanges() throws IOException {
+        Path file = write("a\nb\n");
+        assertEquals("b", LineRangeReader.read(file, 1, StandardCharsets.UTF_8, 2, 2, 1000).text());
+
+        Files.writeString(file, "a\nchanged\nc\n");
+
+        assertEquals(new Slice("changed", 2, 2, 3, false), LineRangeReader.read(file, 2, StandardCharsets.UTF_8, 2, 2, 1000));
+    }
+
+    @Test
+    public void testStreamedReadMatchesIndexedRead() throws IOException {
+        Integer[][] ranges = { { null, null }, { 2, 3 }, { 3, null }, { 9, null } };
+        for (Integer[] range : ranges) {
+            var indexed = read(TEXT, 1, range[0], range[1], 1000);
+            var streamed = LineRangeReader.read(new ByteArrayInputStream(TEXT.getBytes(StandardCharsets.UTF_8)),
+                    StandardCharsets.UTF_8, range[0], range[1], 1000);
+            assertEquals(indexed.text().replace("\r", ""), streamed.text());
+            assertEquals(indexed.startLine(), streamed.startLine());
+            assertEquals(indexed.endLine(), streamed.endLine());
+            assertEquals(indexed.totalLines(), streamed.totalLines());
+        }
+    }
+
+    private Slice read(String content, long stamp, Integer startLine, Integer endLine, long maxBytes) throws IOException {
+        return LineRangeReader.read(write(content), stamp, StandardCharsets.UTF_8, startLine, endLine, maxBytes);
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = Files.createTempFile(directory, "lines", ".txt");
+        Files.writeString(file, content);
+        return file;
+    }
+}
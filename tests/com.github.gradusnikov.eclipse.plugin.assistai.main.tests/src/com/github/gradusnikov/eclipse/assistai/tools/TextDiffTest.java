@@ -0,0 +1,57 @@
+package com.github.gradusnikov.eclipse.assistai.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.jgit.diff.Edit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test cases for the in-memory text diff.
+ */
+public class TextDiffTest {
+
+    @Test
+    public void testIdenticalTextsHaveNoDiff() {
+        var result = TextDiff.diff("src/A.java", "a\nb\n", "a\nb\n", 3);
+
+        assertTrue(result.isEmpty());
+        assertEquals("", result.unifiedDiff());
+    }
+
+    @Test
+    public void testUnifiedDiffAndHunks() {
+        String original = "1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n11\n12\n";
+        String proposed = "1\ntwo\n3\n4\n5\n6\n7\n8\n9\n10\n12\n";
+
+        var result = TextDiff.diff("src/A.java", original, proposed, 1);
+
+        assertEquals("--- /src/A.java\n"
+                + "+++ /src/A.java\n"
+                + "@@ -1,3 +1,3 @@\n"
+                + " 1\n"
+                + "-2\n"
+                + "+two\n"
+                + " 3\n"
+                + "@@ -10,3 +10,2 @@\n"
+                + " 10\n"
+                + "-11\n"
+                + " 12\n", result.unifiedDiff());
+
+        assertEquals(List.of(
+                new TextDiff.Hunk(0, 3, 0, 3, List.of(new TextDiff.Change(Edit.Type.REPLACE, 1, 2, 1, 2, "2\n", "two\n"))),
+                new TextDiff.Hunk(9, 3, 9, 2, List.of(new TextDiff.Change(Edit.Type.DELETE, 10, 11, 10, 10, "11\n", "")))),
+                result.hunks());
+    }
+
+    @Test
+    public void testNearbyEditsShareHunk() {
+        var result = TextDiff.diff("A.txt", "a\nb\nc\nd\ne\n", "A\nb\nc\nD\ne\n", 1);
+
+        assertEquals(1, result.hunks().size());
+        assertEquals(2, result.hunks().get(0).changes().size());
+        assertEquals(1, result.unifiedDiff().lines().filter(line -> line.startsWith("@@")).count());
+    }
+}